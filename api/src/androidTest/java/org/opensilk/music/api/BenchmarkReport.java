@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.api;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Timing loops in the tests only run when asked for with -Pbenchmarks, and
+ * write their numbers to build/benchmarks instead of asserting on them. How
+ * fast something ran on a shared box is no reason to fail the build, the
+ * benchmarks only check things that come out the same on every run. Same
+ * as the one in the app tests, which we cant see from here.
+ *
+ * Created by drew on 1/13/15.
+ */
+public final class BenchmarkReport {
+
+    public static final String PROP_ENABLED = "orpheus.benchmarks";
+    public static final String PROP_DIR = "orpheus.benchmarks.dir";
+
+    private BenchmarkReport() {
+        //static
+    }
+
+    /**
+     * Skips the calling test unless benchmarks were asked for
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue(Boolean.getBoolean(PROP_ENABLED));
+    }
+
+    /**
+     * Appends a line to the owners report file
+     */
+    public static void report(Class<?> owner, String format, Object... args) {
+        final File dir = new File(System.getProperty(PROP_DIR, "build/benchmarks"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Unable to create " + dir);
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(
+                    new File(dir, owner.getSimpleName() + ".txt"), true), "UTF-8");
+            writer.write(String.format(Locale.US, format, args));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.api.model;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.api.BenchmarkReport;
+import org.opensilk.music.api.OrpheusApi;
+import org.opensilk.music.api.model.spi.Bundleable;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config( manifest = Config.NONE)
+public class ItemBatchTest {
+
+    @Test
+    public void ensureBatchRoundTrips() {
+        List<Bundleable> items = new ArrayList<>();
+        items.add(new Folder.Builder().setIdentity("f1").setName("Folder").setChildCount(3).build());
+        items.add(new Artist.Builder().setIdentity("ar1").setName("Artist").setAlbumCount(1).setSongCount(2).build());
+        items.add(new Album.Builder().setIdentity("al1").setName("Album").setArtistName("Artist")
+                .setSongCount(2).setArtworkUri(Uri.parse("http://example.com/art")).build());
+        items.addAll(makeSongs(2));
+        ItemBatch.Writer writer = new ItemBatch.Writer();
+        for (Bundleable b : items) {
+            writer.add(b);
+        }
+        ItemBatch batch = parcel(writer.build());
+        assertThat(batch.size()).isEqualTo(items.size());
+        assertThat(batch.getItems()).isEqualTo(items);
+    }
+
+    @Test
+    public void ensureStringsShared() {
+        ItemBatch.Writer writer = new ItemBatch.Writer();
+        for (Song s : makeSongs(100)) {
+            writer.add(s);
+        }
+        ItemBatch batch = writer.build();
+        // identity, name and data uri per song plus the shared album, artist and mime type
+        assertThat(batch.table).hasSize(303);
+        writer.reset();
+        assertThat(writer.size()).isEqualTo(0);
+        assertThat(writer.estimatedSize()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ensureMalformedThrows() {
+        new ItemBatch(new byte[]{ItemBatch.KIND_SONG}, new int[]{0}, new int[0], new String[]{"x"}).getItems();
+    }
+
+    /**
+     * Not a real binder, but parceling dominates the cost of a transaction.
+     */
+    @Test
+    public void benchmarkItemsPerSecond() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        final List<Song> songs = makeSongs(500);
+        final int rounds = 20;
+        List<Bundleable> fromBundles = null;
+        long start = System.nanoTime();
+        for (int r=0; r<rounds; r++) {
+            List<Bundle> bundles = new ArrayList<>(songs.size());
+            for (Song s : songs) {
+                bundles.add(s.toBundle());
+            }
+            Parcel p = Parcel.obtain();
+            p.writeTypedList(bundles);
+            p.setDataPosition(0);
+            List<Bundle> out = p.createTypedArrayList(Bundle.CREATOR);
+            fromBundles = new ArrayList<>(out.size());
+            for (Bundle b : out) {
+                fromBundles.add(OrpheusApi.materializeBundle(b));
+            }
+            p.recycle();
+        }
+        long bundleNanos = System.nanoTime() - start;
+        List<Bundleable> fromBatches = null;
+        start = System.nanoTime();
+        for (int r=0; r<rounds; r++) {
+            ItemBatch.Writer writer = new ItemBatch.Writer();
+            for (Song s : songs) {
+                writer.add(s);
+            }
+            fromBatches = parcel(writer.build()).getItems();
+        }
+        long batchNanos = System.nanoTime() - start;
+        long items = (long) songs.size() * rounds;
+        // both ways have to deliver the same songs, how fast is only reported
+        assertThat(fromBundles).isEqualTo(songs);
+        assertThat(fromBatches).isEqualTo(songs);
+        BenchmarkReport.report(ItemBatchTest.class, "bundles: %d items/s, batches: %d items/s",
+                items * 1000000000L / Math.max(1, bundleNanos),
+                items * 1000000000L / Math.max(1, batchNanos));
+    }
+
+    static ItemBatch parcel(ItemBatch batch) {
+        Parcel p = Parcel.obtain();
+        batch.writeToParcel(p, 0);
+        p.setDataPosition(0);
+        ItemBatch out = ItemBatch.CREATOR.createFromParcel(p);
+        p.recycle();
+        return out;
+    }
+
+    static List<Song> makeSongs(int count) {
+        List<Song> songs = new ArrayList<>(count);
+        for (int ii=0; ii<count; ii++) {
+            songs.add(new Song.Builder()
+                    .setIdentity("s" + ii)
+                    .setName("Song " + ii)
+                    .setAlbumName("Album")
+                    .setArtistName("Artist")
+                    .setDuration(ii)
+                    .setDataUri(Uri.parse("http://example.com/song" + ii))
+                    .setMimeType("audio/mp3")
+                    .build());
+        }
+        return songs;
+    }
+
+}
@@ -61,6 +61,10 @@ public class OrpheusApi {
      * Api version 0.2.0, used internally
      */
     public static final int API_020 = 20000;
+    /**
+     * Api version 0.3.0, used internally
+     */
+    public static final int API_030 = 30000;
 
     /**
      * Transforms Bundles passed to Orpheus into a {@link org.opensilk.music.api.model.spi.Bundleable} object
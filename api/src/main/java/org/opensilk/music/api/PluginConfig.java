@@ -67,6 +67,8 @@ public class PluginConfig {
     public static final String META_MENU_NAME_PICKER = "menu_picker";
     public static final String META_SETTINGS_COMPONENT = "settingsComponent";
     public static final String META_MENU_NAME_SETTINGS = "menu_settings";
+    /** @since API_030 */
+    public static final String META_MAX_PAGE_SIZE = "max_page_size";
 
     protected PluginConfig(int apiVersion,
                            int capabilities,
@@ -142,6 +144,17 @@ public class PluginConfig {
             return this;
         }
 
+        /**
+         * Largest maxResults Orpheus should ask for. Pages are sent in as many batches
+         * as needed so this only needs to be set if your backend has a limit.
+         *
+         * @since API_030
+         */
+        public Builder setMaxPageSize(int maxPageSize) {
+            meta.putInt(META_MAX_PAGE_SIZE, maxPageSize);
+            return this;
+        }
+
         public PluginConfig build() {
             if (pickerComponent == null) {
                 throw new IllegalArgumentException("pickerComponent must not be null");
@@ -26,7 +26,12 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import org.opensilk.music.api.callback.BatchResult;
 import org.opensilk.music.api.callback.Result;
+import org.opensilk.music.api.exception.ParcelableException;
+import org.opensilk.music.api.model.ItemBatch;
+
+import java.util.List;
 
 /**
  * Created by drew on 6/9/14.
@@ -176,6 +181,65 @@ public abstract class RemoteLibraryService extends Service {
             service.search(libraryIdentity, query, maxResults, paginationBundle, callback);
         }
 
+        @Override
+        public void browseFoldersBatched(String libraryIdentity, String folderIdentity,
+                                         int maxResults, Bundle paginationBundle, BatchResult callback) throws RemoteException {
+            service.browseFolders(libraryIdentity, folderIdentity, maxResults, paginationBundle, new BatchingResult(callback));
+        }
+
+        @Override
+        public void listSongsInFolderBatched(String libraryIdentity, String folderIdentity,
+                                             int maxResults, Bundle paginationBundle, BatchResult callback) throws RemoteException {
+            service.listSongsInFolder(libraryIdentity, folderIdentity, maxResults, paginationBundle, new BatchingResult(callback));
+        }
+
+        @Override
+        public void searchBatched(String libraryIdentity, String query, int maxResults,
+                                  Bundle paginationBundle, BatchResult callback) throws RemoteException {
+            service.search(libraryIdentity, query, maxResults, paginationBundle, new BatchingResult(callback));
+        }
+
+    }
+
+    /**
+     * Stands in for the Result callback so plugins don't need to change, packs the
+     * page into {@link ItemBatch}es each small enough for one transaction.
+     */
+    static final class BatchingResult extends Result.Stub {
+        /** Binder transactions are limited to 1MB shared by the whole process, stay well under */
+        static final int MAX_BATCH_BYTES = 128 * 1024;
+
+        private final BatchResult callback;
+
+        BatchingResult(BatchResult callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onNext(List<Bundle> items, Bundle paginationBundle) throws RemoteException {
+            final ItemBatch.Writer writer = new ItemBatch.Writer();
+            try {
+                for (Bundle b : items) {
+                    writer.add(OrpheusApi.materializeBundle(b));
+                    if (writer.estimatedSize() >= MAX_BATCH_BYTES) {
+                        callback.onBatch(writer.build(), false, null);
+                        writer.reset();
+                    }
+                }
+            } catch (RemoteException e) {
+                throw e;
+            } catch (Exception e) {
+                callback.onError(new ParcelableException(e));
+                return;
+            }
+            callback.onBatch(writer.build(), true, paginationBundle);
+        }
+
+        @Override
+        public void onError(ParcelableException e) throws RemoteException {
+            callback.onError(e);
+        }
+
     }
 
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.api.model;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import org.opensilk.music.api.model.spi.Bundleable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packed list of model objects for passing across the binder.
+ * <p>
+ * Instead of a keyed Bundle per item the batch holds four arrays: the kind of each item,
+ * the string fields of every item as indexes into a shared string table, the int fields
+ * of every item, and the table itself. Repeated strings (artist and album names) are
+ * sent once and the whole batch is written with four bulk parcel calls.
+ *
+ * @since API_030
+ *
+ * Created by drew on 1/13/15.
+ */
+public class ItemBatch implements Parcelable {
+
+    static final int FORMAT_VERSION = 1;
+
+    static final byte KIND_SONG = 1;
+    static final byte KIND_ALBUM = 2;
+    static final byte KIND_ARTIST = 3;
+    static final byte KIND_FOLDER = 4;
+
+    // Fields per kind, in the order they are written
+    static final int SONG_STRINGS = 9, SONG_INTS = 1;
+    static final int ALBUM_STRINGS = 5, ALBUM_INTS = 1;
+    static final int ARTIST_STRINGS = 2, ARTIST_INTS = 2;
+    static final int FOLDER_STRINGS = 4, FOLDER_INTS = 1;
+
+    final byte[] kinds;
+    final int[] strings;
+    final int[] ints;
+    final String[] table;
+
+    ItemBatch(byte[] kinds, int[] strings, int[] ints, String[] table) {
+        this.kinds = kinds;
+        this.strings = strings;
+        this.ints = ints;
+        this.table = table;
+    }
+
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * @return newly built items in the order they were added
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    @NonNull
+    public List<Bundleable> getItems() {
+        final List<Bundleable> items = new ArrayList<>(kinds.length);
+        int s = 0, i = 0;
+        try {
+            for (byte kind : kinds) {
+                switch (kind) {
+                    case KIND_SONG:
+                        items.add(new Song.Builder()
+                                .setIdentity(str(s++))
+                                .setName(str(s++))
+                                .setAlbumName(str(s++))
+                                .setArtistName(str(s++))
+                                .setAlbumArtistName(str(s++))
+                                .setAlbumIdentity(str(s++))
+                                .setDataUri(uri(s++))
+                                .setArtworkUri(uri(s++))
+                                .setMimeType(str(s++))
+                                .setDuration(ints[i++])
+                                .build());
+                        break;
+                    case KIND_ALBUM:
+                        items.add(new Album.Builder()
+                                .setIdentity(str(s++))
+                                .setName(str(s++))
+                                .setArtistName(str(s++))
+                                .setDate(str(s++))
+                                .setArtworkUri(uri(s++))
+                                .setSongCount(ints[i++])
+                                .build());
+                        break;
+                    case KIND_ARTIST:
+                        items.add(new Artist.Builder()
+                                .setIdentity(str(s++))
+                                .setName(str(s++))
+                                .setAlbumCount(ints[i++])
+                                .setSongCount(ints[i++])
+                                .build());
+                        break;
+                    case KIND_FOLDER:
+                        items.add(new Folder.Builder()
+                                .setIdentity(str(s++))
+                                .setName(str(s++))
+                                .setParentIdentity(str(s++))
+                                .setDate(str(s++))
+                                .setChildCount(ints[i++])
+                                .build());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown kind " + kind);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException|NullPointerException e) {
+            throw new IllegalArgumentException("Malformed batch", e);
+        }
+        return items;
+    }
+
+    String str(int ref) {
+        final int idx = strings[ref];
+        return idx >= 0 ? table[idx] : null;
+    }
+
+    Uri uri(int ref) {
+        final String s = str(ref);
+        return s != null ? Uri.parse(s) : null;
+    }
+
+    /**
+     * Packs items into batches, use {@link #estimatedSize()} to keep each
+     * batch under the binder transaction limit.
+     */
+    public static final class Writer {
+        private byte[] kinds = new byte[16];
+        private int count;
+        private int[] strings = new int[64];
+        private int stringCount;
+        private int[] ints = new int[16];
+        private int intCount;
+        private final List<String> table = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+        private int estimatedSize;
+
+        /**
+         * @throws IllegalArgumentException if the item is not one of the model classes
+         */
+        public Writer add(Bundleable item) {
+            if (item instanceof Song) {
+                final Song s = (Song) item;
+                kind(KIND_SONG);
+                str(s.identity); str(s.name); str(s.albumName); str(s.artistName);
+                str(s.albumArtistName); str(s.albumIdentity); uri(s.dataUri);
+                uri(s.artworkUri); str(s.mimeType);
+                num(s.duration);
+            } else if (item instanceof Album) {
+                final Album a = (Album) item;
+                kind(KIND_ALBUM);
+                str(a.identity); str(a.name); str(a.artistName); str(a.date); uri(a.artworkUri);
+                num(a.songCount);
+            } else if (item instanceof Artist) {
+                final Artist a = (Artist) item;
+                kind(KIND_ARTIST);
+                str(a.identity); str(a.name);
+                num(a.albumCount); num(a.songCount);
+            } else if (item instanceof Folder) {
+                final Folder f = (Folder) item;
+                kind(KIND_FOLDER);
+                str(f.identity); str(f.name); str(f.parentIdentity); str(f.date);
+                num(f.childCount);
+            } else {
+                throw new IllegalArgumentException("Can't batch " + (item != null ? item.getClass() : null));
+            }
+            return this;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @return rough number of bytes the batch will take in a Parcel
+         */
+        public int estimatedSize() {
+            return estimatedSize;
+        }
+
+        public ItemBatch build() {
+            return new ItemBatch(Arrays.copyOf(kinds, count),
+                    Arrays.copyOf(strings, stringCount),
+                    Arrays.copyOf(ints, intCount),
+                    table.toArray(new String[table.size()]));
+        }
+
+        public void reset() {
+            count = stringCount = intCount = estimatedSize = 0;
+            table.clear();
+            index.clear();
+        }
+
+        private void kind(byte kind) {
+            if (count == kinds.length) kinds = Arrays.copyOf(kinds, count * 2);
+            kinds[count++] = kind;
+            estimatedSize += 1;
+        }
+
+        private void str(String s) {
+            int ref = -1;
+            if (s != null) {
+                Integer idx = index.get(s);
+                if (idx == null) {
+                    idx = table.size();
+                    table.add(s);
+                    index.put(s, idx);
+                    // length prefix, utf16 chars, terminator and padding
+                    estimatedSize += 8 + s.length() * 2;
+                }
+                ref = idx;
+            }
+            if (stringCount == strings.length) strings = Arrays.copyOf(strings, stringCount * 2);
+            strings[stringCount++] = ref;
+            estimatedSize += 4;
+        }
+
+        private void uri(Uri uri) {
+            str(uri != null ? uri.toString() : null);
+        }
+
+        private void num(int n) {
+            if (intCount == ints.length) ints = Arrays.copyOf(ints, intCount * 2);
+            ints[intCount++] = n;
+            estimatedSize += 4;
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(FORMAT_VERSION);
+        dest.writeByteArray(kinds);
+        dest.writeIntArray(strings);
+        dest.writeIntArray(ints);
+        dest.writeStringArray(table);
+    }
+
+    public static final Creator<ItemBatch> CREATOR = new Creator<ItemBatch>() {
+        @Override
+        public ItemBatch createFromParcel(Parcel source) {
+            final int version = source.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unknown batch format " + version);
+            }
+            return new ItemBatch(
+                    source.createByteArray(),
+                    source.createIntArray(),
+                    source.createIntArray(),
+                    source.createStringArray()
+            );
+        }
+
+        @Override
+        public ItemBatch[] newArray(int size) {
+            return new ItemBatch[size];
+        }
+    };
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo;
+
+import android.net.Uri;
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.api.meta.ArtInfo;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class NowPlayingInfoTest {
+
+    @Test
+    public void testParcelRoundTrip() {
+        NowPlayingInfo info = new NowPlayingInfo.Builder()
+                .setVersion(7)
+                .setAudioId(12)
+                .setAlbumId(3)
+                .setTrackName("Track")
+                .setArtistName("Artist")
+                .setAlbumName("Album")
+                .setDataUri(Uri.parse("content://media/1"))
+                .setMimeType("audio/mp3")
+                .setFromSDCard(true)
+                .build();
+        Parcel p = Parcel.obtain();
+        info.writeToParcel(p, 0);
+        p.setDataPosition(0);
+        NowPlayingInfo out = NowPlayingInfo.CREATOR.createFromParcel(p);
+        p.recycle();
+        assertThat(out.version).isEqualTo(7);
+        assertThat(out.audioId).isEqualTo(12);
+        assertThat(out.albumId).isEqualTo(3);
+        assertThat(out.trackName).isEqualTo("Track");
+        assertThat(out.albumArtistName).isNull();
+        assertThat(out.dataUri).isEqualTo(info.dataUri);
+        assertThat(out.artworkUri).isNull();
+        assertThat(out.fromSDCard).isTrue();
+    }
+
+    @Test
+    public void testArtInfoPrefersAlbumArtist() {
+        NowPlayingInfo info = new NowPlayingInfo.Builder()
+                .setArtistName("Artist").setAlbumName("Album").build();
+        assertThat(info.getArtInfo()).isEqualTo(new ArtInfo("Artist", "Album", null));
+        info = new NowPlayingInfo.Builder()
+                .setArtistName("Artist").setAlbumArtistName("Various").setAlbumName("Album").build();
+        assertThat(info.getArtInfo().artistName).isEqualTo("Various");
+    }
+
+}
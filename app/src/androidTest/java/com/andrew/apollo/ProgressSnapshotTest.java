@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo;
+
+import android.content.Intent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ProgressSnapshotTest {
+
+    @Test
+    public void testExtrapolatesWhilePlaying() {
+        ProgressSnapshot s = new ProgressSnapshot(ProgressSnapshot.STATE_PLAYING, 10000, 100000, 5000, 1.0f);
+        assertThat(s.getPosition(5000)).isEqualTo(10000);
+        assertThat(s.getPosition(7500)).isEqualTo(12500);
+        assertThat(s.getProgress(7500)).isEqualTo(125);
+        // never past the end
+        assertThat(s.getPosition(500000)).isEqualTo(100000);
+    }
+
+    @Test
+    public void testPausedHolds() {
+        ProgressSnapshot s = new ProgressSnapshot(ProgressSnapshot.STATE_PAUSED, 10000, 100000, 5000, 0f);
+        assertThat(s.getPosition(60000)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testBufferingHolds() {
+        // still playing but waiting on data
+        ProgressSnapshot s = new ProgressSnapshot(ProgressSnapshot.STATE_PLAYING, 10000, 100000, 5000, 0f);
+        assertThat(s.isPlaying()).isTrue();
+        assertThat(s.getPosition(60000)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testUnknown() {
+        assertThat(ProgressSnapshot.EMPTY.getPosition(1000)).isEqualTo(-1);
+        assertThat(ProgressSnapshot.EMPTY.getProgress(1000)).isEqualTo(1000);
+        assertThat(ProgressSnapshot.fromIntent(new Intent("x"))).isSameAs(ProgressSnapshot.EMPTY);
+    }
+
+    @Test
+    public void testIntentRoundTrip() {
+        ProgressSnapshot s = new ProgressSnapshot(ProgressSnapshot.STATE_PLAYING, 1, 2, 3, 1.0f);
+        ProgressSnapshot r = ProgressSnapshot.fromIntent(s.toIntent(MusicPlaybackService.PROGRESS_CHANGED));
+        assertThat(r.state).isEqualTo(s.state);
+        assertThat(r.position).isEqualTo(1);
+        assertThat(r.duration).isEqualTo(2);
+        assertThat(r.timestamp).isEqualTo(3);
+        assertThat(r.speed).isEqualTo(1.0f);
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Correctness of the queue journal and a comparison of its save and load
+ * times against the reverse hex strings we used to keep in SharedPreferences.
+ *
+ * Created by drew on 1/12/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class QueueJournalTest {
+
+    static final char HEX_DIGITS[] = new char[] {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testEditsRoundTrip() throws Exception {
+        File file = mFolder.newFile("queue.journal");
+        QueueJournal journal = new QueueJournal(file);
+        assertThat(journal.load()).isNull();
+
+        List<Long> model = new ArrayList<>();
+        long[] initial = makeIds(50);
+        for (long id : initial) model.add(id);
+        journal.insert(initial, 0, initial.length, 0);
+        journal.setHistory(new int[]{1, 2, 3});
+        journal.commit(initial, initial.length, 7);
+
+        long[] more = new long[]{1000, 1001, 1002};
+        journal.insert(more, 0, more.length, 10);
+        model.addAll(10, Arrays.asList(1000L, 1001L, 1002L));
+        journal.remove(0, 4);
+        model.subList(0, 5).clear();
+        journal.move(0, 20);
+        model.add(20, model.remove(0));
+        journal.move(30, 2);
+        model.add(2, model.remove(30));
+        journal.setAutoHistory(Arrays.asList(9, 8));
+        long[] expected = toArray(model);
+        journal.commit(expected, expected.length, 7);
+        journal.close();
+
+        QueueJournal.Snapshot s = new QueueJournal(file).load();
+        assertThat(s).isNotNull();
+        assertThat(s.cardId).isEqualTo(7);
+        assertThat(Arrays.copyOf(s.queue, s.length)).isEqualTo(expected);
+        assertThat(s.history).isEqualTo(new int[]{1, 2, 3});
+        assertThat(s.autoHistory).isEqualTo(new int[]{9, 8});
+    }
+
+    @Test
+    public void testTornTailKeepsPrefix() throws Exception {
+        File file = mFolder.newFile("queue.journal");
+        QueueJournal journal = new QueueJournal(file);
+        journal.load();
+        long[] ids = makeIds(100);
+        journal.commit(ids, ids.length, 1);
+        journal.insert(new long[]{5, 6}, 0, 2, 100);
+        journal.commit(ids, ids.length + 2, 1);
+        journal.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        journal = new QueueJournal(file);
+        QueueJournal.Snapshot s = journal.load();
+        assertThat(s.length).isEqualTo(100);
+        assertThat(Arrays.copyOf(s.queue, s.length)).isEqualTo(ids);
+        // next commit must rewrite instead of appending after the garbage
+        assertThat(journal.mNeedsSnapshot).isTrue();
+        journal.close();
+    }
+
+    @Test
+    public void testCompacts() throws Exception {
+        File file = mFolder.newFile("queue.journal");
+        QueueJournal journal = new QueueJournal(file);
+        journal.load();
+        long[] ids = makeIds(10);
+        journal.commit(ids, ids.length, 1);
+        for (int ii=0; ii<QueueJournal.COMPACT_MAX_RECORDS / 2 + 1; ii++) {
+            journal.move(0, 9);
+            journal.move(9, 0);
+        }
+        assertThat(journal.needsCompaction()).isTrue();
+        journal.commit(ids, ids.length, 1);
+        journal.close();
+        assertThat(file.length()).isLessThan(200);
+        assertThat(Arrays.copyOf(new QueueJournal(file).load().queue, ids.length)).isEqualTo(ids);
+    }
+
+    @Test
+    public void benchmarkSaveAndLoad() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        // warm up the jit
+        run(10000, false);
+        for (int size : new int[]{1000, 10000, 100000}) {
+            run(size, true);
+        }
+    }
+
+    void run(int size, boolean report) throws Exception {
+        final long[] ids = makeIds(size);
+        final File legacyFile = mFolder.newFile();
+        final File journalFile = mFolder.newFile();
+        journalFile.delete();
+
+        long start = System.nanoTime();
+        writeString(legacyFile, encodeLegacy(ids, size));
+        final long legacySave = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long[] legacyLoaded = decodeLegacy(readString(legacyFile));
+        final long legacyLoad = System.nanoTime() - start;
+        assertThat(legacyLoaded).isEqualTo(ids);
+
+        QueueJournal journal = new QueueJournal(journalFile);
+        journal.load();
+        start = System.nanoTime();
+        journal.commit(ids, size, 1);
+        journal.close();
+        final long journalSave = System.nanoTime() - start;
+
+        // appending one track, legacy rewrites everything
+        start = System.nanoTime();
+        writeString(legacyFile, encodeLegacy(ids, size));
+        final long legacyAppend = System.nanoTime() - start;
+
+        journal = new QueueJournal(journalFile);
+        start = System.nanoTime();
+        QueueJournal.Snapshot s = journal.load();
+        final long journalLoad = System.nanoTime() - start;
+        assertThat(s.length).isEqualTo(size);
+        assertThat(Arrays.copyOf(s.queue, size)).isEqualTo(ids);
+
+        start = System.nanoTime();
+        journal.insert(new long[]{42}, 0, 1, size);
+        journal.commit(null, size + 1, 1);
+        journal.close();
+        final long journalAppend = System.nanoTime() - start;
+
+        s = new QueueJournal(journalFile).load();
+        assertThat(s.length).isEqualTo(size + 1);
+        assertThat(Arrays.copyOf(s.queue, size)).isEqualTo(ids);
+        assertThat(s.queue[size]).isEqualTo(42);
+
+        if (report) {
+            BenchmarkReport.report(QueueJournalTest.class,
+                    "QueueJournal entries=%d legacy(save=%.2fms load=%.2fms append=%.2fms size=%d) " +
+                            "journal(save=%.2fms load=%.2fms append=%.2fms size=%d)",
+                    size, legacySave / 1e6, legacyLoad / 1e6, legacyAppend / 1e6, legacyFile.length(),
+                    journalSave / 1e6, journalLoad / 1e6, journalAppend / 1e6, journalFile.length());
+        }
+    }
+
+    static long[] makeIds(int size) {
+        final Random r = new Random(42);
+        final long[] ids = new long[size];
+        for (int ii=0; ii<size; ii++) {
+            ids[ii] = 1 + r.nextInt(1 << 20);
+        }
+        return ids;
+    }
+
+    static long[] toArray(List<Long> list) {
+        long[] a = new long[list.size()];
+        for (int ii=0; ii<a.length; ii++) {
+            a[ii] = list.get(ii);
+        }
+        return a;
+    }
+
+    /** The encoder MusicPlaybackService used before the journal */
+    static String encodeLegacy(long[] list, int len) {
+        final StringBuilder q = new StringBuilder();
+        for (int i = 0; i < len; i++) {
+            long n = list[i];
+            if (n < 0) {
+                continue;
+            } else if (n == 0) {
+                q.append("0;");
+            } else {
+                while (n != 0) {
+                    final int digit = (int)(n & 0xf);
+                    n >>>= 4;
+                    q.append(HEX_DIGITS[digit]);
+                }
+                q.append(";");
+            }
+        }
+        return q.toString();
+    }
+
+    /** The decoder MusicPlaybackService used before the journal */
+    static long[] decodeLegacy(String q) {
+        long[] list = new long[16];
+        int plen = 0;
+        int n = 0;
+        int shift = 0;
+        for (int i = 0; i < q.length(); i++) {
+            final char c = q.charAt(i);
+            if (c == ';') {
+                if (plen == list.length) {
+                    list = Arrays.copyOf(list, plen * 2);
+                }
+                list[plen++] = n;
+                n = 0;
+                shift = 0;
+            } else {
+                if (c >= '0' && c <= '9') {
+                    n += c - '0' << shift;
+                } else if (c >= 'a' && c <= 'f') {
+                    n += 10 + c - 'a' << shift;
+                }
+                shift += 4;
+            }
+        }
+        return Arrays.copyOf(list, plen);
+    }
+
+    static void writeString(File file, String s) throws IOException {
+        // SharedPreferences writes the whole xml file on every apply
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            w.write("<map><string name=\"queue\">");
+            w.write(s);
+            w.write("</string></map>");
+        } finally {
+            w.close();
+        }
+    }
+
+    static String readString(File file) throws IOException {
+        Reader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = r.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+            int start = sb.indexOf(">", sb.indexOf("<string")) + 1;
+            int end = sb.indexOf("</string>");
+            return sb.substring(start, end);
+        } finally {
+            r.close();
+        }
+    }
+
+}
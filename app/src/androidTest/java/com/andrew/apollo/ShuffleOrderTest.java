@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Correctness of the shuffle order and a comparison against the per track
+ * rebuild getNextPosition used to do, at a 100k track queue.
+ *
+ * Created by drew on 1/12/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ShuffleOrderTest {
+
+    static final int QUEUE_SIZE = 100000;
+    static final int ADVANCES = 2000;
+
+    @Test
+    public void testVisitsEveryPositionOnce() {
+        ShuffleOrder order = new ShuffleOrder(new Random(1));
+        order.reset(500);
+        boolean[] seen = new boolean[500];
+        for (int ii=0; ii<500; ii++) {
+            int pos = order.next(false);
+            assertThat(seen[pos]).isFalse();
+            seen[pos] = true;
+        }
+        assertThat(order.peekNext(false)).isEqualTo(-1);
+        assertThat(order.peekNext(true)).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void testPeekIsStableAndPreviousWalksBack() {
+        ShuffleOrder order = new ShuffleOrder(new Random(2));
+        order.reset(100);
+        int a = order.next(false);
+        int b = order.peekNext(false);
+        assertThat(order.peekNext(false)).isEqualTo(b);
+        order.setCurrent(b);
+        int c = order.next(false);
+        assertThat(order.previous()).isEqualTo(b);
+        assertThat(order.previous()).isEqualTo(a);
+        assertThat(order.previous()).isEqualTo(-1);
+        // going forward again replays the same order
+        assertThat(order.next(false)).isEqualTo(b);
+        assertThat(order.next(false)).isEqualTo(c);
+    }
+
+    @Test
+    public void testEditsKeepOrderConsistent() {
+        Random r = new Random(3);
+        ShuffleOrder order = new ShuffleOrder(r);
+        order.reset(200);
+        for (int ii=0; ii<50; ii++) {
+            order.next(false);
+        }
+        int length = 200;
+        for (int ii=0; ii<500; ii++) {
+            switch (r.nextInt(4)) {
+                case 0:
+                    int count = 1 + r.nextInt(5);
+                    order.insert(r.nextInt(length + 1), count);
+                    length += count;
+                    break;
+                case 1:
+                    if (length > 10) {
+                        int first = r.nextInt(length - 5);
+                        order.remove(first, first + r.nextInt(5));
+                        length = order.size();
+                    }
+                    break;
+                case 2:
+                    order.move(r.nextInt(length), r.nextInt(length));
+                    break;
+                default:
+                    order.next(true);
+                    break;
+            }
+            assertConsistent(order, length);
+        }
+    }
+
+    @Test
+    public void testRestore() {
+        ShuffleOrder order = new ShuffleOrder(new Random(4));
+        order.restore(10, new int[]{3, 7, 3, 12}, 5);
+        assertThat(order.current()).isEqualTo(5);
+        assertThat(order.getHistory(100)).isEqualTo(new int[]{3, 7});
+        assertThat(order.previous()).isEqualTo(7);
+    }
+
+    @Test
+    public void benchmarkAdvance() {
+        BenchmarkReport.assumeEnabled();
+        // warm up the jit
+        runLegacy(ADVANCES / 4);
+        runOrder(ADVANCES / 4);
+        long legacy = runLegacy(ADVANCES);
+        long engine = runOrder(ADVANCES);
+        BenchmarkReport.report(ShuffleOrderTest.class,
+                "Shuffle tracks=%d advances=%d legacy=%.3fms/advance engine=%.5fms/advance",
+                QUEUE_SIZE, ADVANCES, legacy / 1e6 / ADVANCES, engine / 1e6 / ADVANCES);
+    }
+
+    @Test
+    public void benchmarkEdits() {
+        BenchmarkReport.assumeEnabled();
+        ShuffleOrder order = new ShuffleOrder(new Random(5));
+        order.reset(QUEUE_SIZE);
+        for (int ii=0; ii<1000; ii++) {
+            order.next(false);
+        }
+        long start = System.nanoTime();
+        for (int ii=0; ii<100; ii++) {
+            order.insert(order.size(), 10);
+        }
+        long append = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int ii=0; ii<100; ii++) {
+            order.insert(ii * 7, 1);
+        }
+        long insert = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int ii=0; ii<100; ii++) {
+            order.remove(ii * 7, ii * 7);
+        }
+        long remove = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int ii=0; ii<100; ii++) {
+            order.move(ii, ii + 50);
+        }
+        long move = System.nanoTime() - start;
+        assertConsistent(order, order.size());
+        BenchmarkReport.report(ShuffleOrderTest.class,
+                "Shuffle tracks=%d append=%.4fms insert=%.4fms remove=%.4fms move=%.4fms",
+                QUEUE_SIZE, append / 1e6 / 100, insert / 1e6 / 100, remove / 1e6 / 100, move / 1e6 / 100);
+    }
+
+    static long runOrder(int advances) {
+        ShuffleOrder order = new ShuffleOrder(new Random(6));
+        order.reset(QUEUE_SIZE);
+        int pos = -1;
+        long start = System.nanoTime();
+        for (int ii=0; ii<advances; ii++) {
+            // same calls the service makes, setNextTrack then next
+            order.setCurrent(pos);
+            order.peekNext(true);
+            order.setCurrent(pos);
+            pos = order.peekNext(true);
+            assertThat(pos).isGreaterThanOrEqualTo(0).isLessThan(QUEUE_SIZE);
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long runLegacy(int advances) {
+        LinkedList<Integer> history = new LinkedList<>();
+        Random random = new Random(6);
+        int pos = -1;
+        long start = System.nanoTime();
+        for (int ii=0; ii<advances; ii++) {
+            legacyNextPosition(history, random, pos);
+            pos = legacyNextPosition(history, random, pos);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /** What MusicPlaybackService.getNextPosition did for SHUFFLE_NORMAL */
+    static int legacyNextPosition(LinkedList<Integer> history, Random random, int playPos) {
+        if (playPos >= 0) {
+            history.add(playPos);
+        }
+        if (history.size() > MusicPlaybackService.MAX_HISTORY_SIZE) {
+            history.remove(0);
+        }
+        final int numTracks = QUEUE_SIZE;
+        final int[] tracks = new int[numTracks];
+        for (int i = 0; i < numTracks; i++) {
+            tracks[i] = i;
+        }
+        final int numHistory = history.size();
+        int numUnplayed = numTracks;
+        for (int i = 0; i < numHistory; i++) {
+            final int idx = history.get(i);
+            if (idx < numTracks && tracks[idx] >= 0) {
+                numUnplayed--;
+                tracks[idx] = -1;
+            }
+        }
+        int skip = random.nextInt(numUnplayed);
+        int cnt = -1;
+        while (true) {
+            while (tracks[++cnt] < 0) {
+                ;
+            }
+            skip--;
+            if (skip < 0) {
+                break;
+            }
+        }
+        return cnt;
+    }
+
+    static void assertConsistent(ShuffleOrder order, int length) {
+        assertThat(order.size()).isEqualTo(length);
+        boolean[] seen = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            int pos = order.mOrder[i];
+            assertThat(pos).isGreaterThanOrEqualTo(0).isLessThan(length);
+            assertThat(seen[pos]).isFalse();
+            seen[pos] = true;
+            assertThat(order.mSlot[pos]).isEqualTo(i);
+        }
+        assertThat(order.mDrawn).isLessThanOrEqualTo(length);
+        if (order.mCursor >= 0) {
+            assertThat(order.mCursor).isLessThan(order.mDrawn);
+        }
+    }
+
+}
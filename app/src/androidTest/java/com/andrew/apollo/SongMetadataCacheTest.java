@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.andrew.apollo.provider.MusicProvider;
+import com.andrew.apollo.provider.MusicStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class SongMetadataCacheTest {
+
+    static final long[] QUEUE = {1, 2, 3, 4, 5};
+
+    FakeRecentsProvider mProvider;
+    SongMetadataCache mCache;
+
+    @Before
+    public void setup() {
+        mProvider = new FakeRecentsProvider();
+        for (long id : QUEUE) {
+            mProvider.playCounts.put(id, 0);
+        }
+        ShadowContentResolver.registerProvider(MusicProvider.RECENTS_URI.getAuthority(), mProvider);
+        // not registered, notifications are delivered by hand so each is seen exactly once
+        mCache = new SongMetadataCache(Robolectric.application);
+    }
+
+    @Test
+    public void testTrackChangesWithPlaycountUpdatesDontQuery() {
+        // what warm does in the background
+        mCache.load(QUEUE);
+        assertThat(mProvider.queries).isEqualTo(1);
+        // play through the queue twice
+        for (int round=1; round<=2; round++) {
+            for (long id : QUEUE) {
+                changeTrack(id);
+                assertThat(mProvider.playCounts.get(id)).isEqualTo(round);
+                assertThat(mCache.get(id).playCount).isEqualTo(round);
+            }
+        }
+        assertThat(mProvider.queries).isEqualTo(1);
+        assertThat(mProvider.updates).isEqualTo(QUEUE.length * 2);
+    }
+
+    @Test
+    public void testOthersWritesStillEvict() {
+        mCache.load(QUEUE);
+        changeTrack(1);
+        // someone else touches the row
+        mCache.mObserver.onChange(false, ContentUris.withAppendedId(MusicProvider.RECENTS_URI, 1));
+        assertThat(mCache.peek(1)).isNull();
+        assertThat(mCache.get(1).playCount).isEqualTo(1);
+        assertThat(mProvider.queries).isEqualTo(2);
+    }
+
+    @Test
+    public void testUncachedRowAsksProvider() {
+        mCache.recordPlayed(3);
+        for (Uri uri : mProvider.drainNotified()) {
+            mCache.mObserver.onChange(false, uri);
+        }
+        // the count had to be looked up
+        assertThat(mProvider.queries).isEqualTo(1);
+        assertThat(mProvider.playCounts.get(3L)).isEqualTo(1);
+        assertThat(mCache.mSelfWrites).isEmpty();
+        assertThat(mCache.get(3).playCount).isEqualTo(1);
+        assertThat(mProvider.queries).isEqualTo(2);
+    }
+
+    @Test
+    public void testMissingRowIsNotMarked() {
+        mCache.load(QUEUE);
+        mProvider.playCounts.remove(2L);
+        mCache.recordPlayed(2);
+        assertThat(mCache.mSelfWrites).isEmpty();
+        assertThat(mCache.peek(2)).isNull();
+    }
+
+    @Test
+    public void testPreJellyBeanNotificationForOwnWriteKeepsCache() {
+        mCache.load(QUEUE);
+        mCache.recordPlayed(1);
+        mCache.mObserver.onChange(false);
+        assertThat(mCache.get(2)).isNotNull();
+        assertThat(mProvider.queries).isEqualTo(1);
+        // nothing pending, anything else marks it all stale
+        mCache.mObserver.onChange(false);
+        assertThat(mCache.get(2)).isNotNull();
+        assertThat(mProvider.queries).isEqualTo(2);
+    }
+
+    /**
+     * What the service does on a track change, then the provider's notification
+     */
+    void changeTrack(long id) {
+        mCache.get(id);
+        mCache.recordPlayed(id);
+        for (Uri uri : mProvider.drainNotified()) {
+            mCache.mObserver.onChange(false, uri);
+        }
+    }
+
+    /**
+     * Recents rows holding only a play count, counts the queries
+     */
+    static class FakeRecentsProvider extends ContentProvider {
+        final Map<Long, Integer> playCounts = new HashMap<>();
+        final List<Uri> notified = new ArrayList<>();
+        int queries;
+        int updates;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            queries++;
+            final List<Long> ids = new ArrayList<>();
+            if (selectionArgs != null) {
+                // the legacy play count lookup
+                ids.add(Long.parseLong(selectionArgs[0]));
+            } else {
+                String list = selection.substring(selection.indexOf('(') + 1, selection.lastIndexOf(')'));
+                for (String part : list.split(",")) {
+                    ids.add(Long.parseLong(part.trim()));
+                }
+            }
+            MatrixCursor c = new MatrixCursor(projection);
+            for (long id : ids) {
+                if (!playCounts.containsKey(id)) {
+                    continue;
+                }
+                Object[] row = new Object[projection.length];
+                for (int ii=0; ii<projection.length; ii++) {
+                    if (MusicStore.Cols._ID.equals(projection[ii])) {
+                        row[ii] = id;
+                    } else if (MusicStore.Cols.PLAYCOUNT.equals(projection[ii])) {
+                        row[ii] = playCounts.get(id);
+                    } else if (MusicStore.Cols.NAME.equals(projection[ii])) {
+                        row[ii] = "song" + id;
+                    }
+                }
+                c.addRow(row);
+            }
+            return c;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            final long id = ContentUris.parseId(uri);
+            if (!playCounts.containsKey(id)) {
+                return 0;
+            }
+            updates++;
+            playCounts.put(id, values.getAsInteger(MusicStore.Cols.PLAYCOUNT));
+            notified.add(uri);
+            return 1;
+        }
+
+        List<Uri> drainNotified() {
+            List<Uri> uris = new ArrayList<>(notified);
+            notified.clear();
+            return uris;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks the library index follows MediaStore through adds, edits and removals
+ * and that an unchanged library costs a single id query.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class LibraryIndexerTest {
+
+    FakeMediaProvider mProvider;
+    MusicStore mStore;
+    LibraryIndexer mIndexer;
+
+    @Before
+    public void setup() {
+        mProvider = new FakeMediaProvider();
+        ShadowContentResolver.registerProvider(MediaStore.AUTHORITY, mProvider);
+        Robolectric.application.deleteDatabase(MusicStore.FILENAME);
+        mStore = new MusicStore(Robolectric.application);
+        mIndexer = new LibraryIndexer(Robolectric.application, mStore);
+        // album 1 by artist 1 has songs 1-3, album 2 by artist 1 has 4-5, album 3 by artist 2 has 6
+        for (long id=1; id<=6; id++) {
+            long album = id <= 3 ? 1 : id <= 5 ? 2 : 3;
+            mProvider.songs.put(id, new long[]{album, album == 3 ? 2 : 1, 100});
+        }
+    }
+
+    @Test
+    public void testInitialSync() {
+        assertThat(mIndexer.ensureSynced()).isTrue();
+        assertThat(count(MusicStore.LIBRARY_SONGS_TABLE)).isEqualTo(6);
+        assertThat(longAt(MusicStore.LIBRARY_ALBUMS_TABLE, MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS, 1)).isEqualTo(3);
+        assertThat(longAt(MusicStore.LIBRARY_ARTISTS_TABLE, MediaStore.Audio.ArtistColumns.NUMBER_OF_ALBUMS, 1)).isEqualTo(2);
+        assertThat(longAt(MusicStore.LIBRARY_ARTISTS_TABLE, MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS, 1)).isEqualTo(5);
+        assertThat(count(MusicStore.LIBRARY_GENRES_TABLE)).isEqualTo(2);
+        assertThat(count(MusicStore.LIBRARY_GENRE_MEMBERS_VIEW)).isEqualTo(6);
+        // second call is free
+        mProvider.queries = 0;
+        assertThat(mIndexer.ensureSynced()).isFalse();
+        assertThat(mProvider.queries).isEqualTo(0);
+    }
+
+    @Test
+    public void testUnchangedCostsOneQuery() {
+        mIndexer.sync();
+        mProvider.queries = 0;
+        assertThat(mIndexer.sync()).isFalse();
+        assertThat(mProvider.queries).isEqualTo(1);
+    }
+
+    @Test
+    public void testIncrementalChanges() {
+        mIndexer.sync();
+        // song 3 moves to album 3, song 5 is deleted, song 7 is added to a new album by a new artist
+        mProvider.songs.put(3L, new long[]{3, 2, 200});
+        mProvider.songs.remove(5L);
+        mProvider.songs.put(7L, new long[]{4, 3, 100});
+        mProvider.fetched.clear();
+        assertThat(mIndexer.sync()).isTrue();
+        // only the changed rows were fetched
+        assertThat(mProvider.fetched).containsOnly(3L, 7L);
+        assertThat(count(MusicStore.LIBRARY_SONGS_TABLE)).isEqualTo(6);
+        assertThat(longAt(MusicStore.LIBRARY_ALBUMS_TABLE, MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS, 1)).isEqualTo(2);
+        assertThat(longAt(MusicStore.LIBRARY_ALBUMS_TABLE, MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS, 2)).isEqualTo(1);
+        assertThat(longAt(MusicStore.LIBRARY_ALBUMS_TABLE, MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS, 3)).isEqualTo(2);
+        assertThat(longAt(MusicStore.LIBRARY_ALBUMS_TABLE, MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS, 4)).isEqualTo(1);
+        assertThat(longAt(MusicStore.LIBRARY_ARTISTS_TABLE, MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS, 1)).isEqualTo(3);
+        assertThat(longAt(MusicStore.LIBRARY_ARTISTS_TABLE, MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS, 2)).isEqualTo(2);
+        assertThat(longAt(MusicStore.LIBRARY_ARTISTS_TABLE, MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS, 3)).isEqualTo(1);
+        // removing the last song of an album drops the album
+        mProvider.songs.remove(7L);
+        mIndexer.sync();
+        assertThat(count(MusicStore.LIBRARY_ALBUMS_TABLE)).isEqualTo(3);
+        assertThat(count(MusicStore.LIBRARY_ARTISTS_TABLE)).isEqualTo(2);
+    }
+
+    @Test
+    public void testSearchFollowsIndex() {
+        mIndexer.sync();
+        assertThat(search("title")).hasSize(6);
+        assertThat(search("TITLE3")).containsOnly(LibrarySearch.KIND_SONG + 3);
+        mProvider.songs.remove(3L);
+        mIndexer.sync();
+        assertThat(search("title3")).isEmpty();
+        assertThat(search("title")).hasSize(5);
+    }
+
+    @Test
+    public void testMatchExpression() {
+        assertThat(LibrarySearch.makeMatchExpression("  Led zep ")).isEqualTo("led* zep*");
+        assertThat(LibrarySearch.makeMatchExpression("\"AC/DC\" -OR")).isEqualTo("ac* dc* or*");
+        assertThat(LibrarySearch.makeMatchExpression(" *-: ")).isNull();
+        assertThat(LibrarySearch.makeMatchExpression(null)).isNull();
+    }
+
+    List<String> search(String filter) {
+        String match = LibrarySearch.makeMatchExpression(filter);
+        Cursor c = mStore.getReadableDatabase().rawQuery(LibrarySearch.SQL, new String[]{match, match, match});
+        try {
+            List<String> results = new ArrayList<>();
+            while (c.moveToNext()) {
+                results.add(c.getString(c.getColumnIndex(LibrarySearch.KIND))
+                        + c.getLong(c.getColumnIndex(BaseColumns._ID)));
+            }
+            return results;
+        } finally {
+            c.close();
+        }
+    }
+
+    int count(String table) {
+        Cursor c = mStore.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + table, null);
+        try {
+            c.moveToFirst();
+            return c.getInt(0);
+        } finally {
+            c.close();
+        }
+    }
+
+    long longAt(String table, String column, long id) {
+        SQLiteDatabase db = mStore.getReadableDatabase();
+        Cursor c = db.query(table, new String[]{column}, BaseColumns._ID + "=" + id, null, null, null, null);
+        try {
+            assertThat(c.moveToFirst()).isTrue();
+            return c.getLong(0);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Songs as id -> {album id, artist id, date modified}, genre is the song id parity
+     */
+    static class FakeMediaProvider extends ContentProvider {
+        final TreeMap<Long, long[]> songs = new TreeMap<>();
+        final Set<Long> fetched = new HashSet<>();
+        int queries;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            queries++;
+            List<String> path = uri.getPathSegments();
+            MatrixCursor c = new MatrixCursor(projection);
+            if ("media".equals(path.get(2))) {
+                Set<Long> only = null;
+                if (selection != null && selection.startsWith(BaseColumns._ID + " IN (")) {
+                    only = new HashSet<>();
+                    String ids = selection.substring(selection.indexOf('(') + 1, selection.indexOf(')'));
+                    for (String id : ids.split(",")) {
+                        only.add(Long.parseLong(id));
+                    }
+                    fetched.addAll(only);
+                }
+                for (long id : songs.keySet()) {
+                    if (only == null || only.contains(id)) {
+                        c.addRow(makeSongRow(projection, id, songs.get(id)));
+                    }
+                }
+            } else if (path.size() == 3) {
+                // external/audio/genres
+                c.addRow(new Object[]{0L, "Even"});
+                c.addRow(new Object[]{1L, "Odd"});
+            } else {
+                // external/audio/genres/all/members
+                for (long id : songs.keySet()) {
+                    c.addRow(new Object[]{id % 2, id});
+                }
+            }
+            return c;
+        }
+
+        static Object[] makeSongRow(String[] cols, long id, long[] song) {
+            Object[] row = new Object[cols.length];
+            for (int ii=0; ii<cols.length; ii++) {
+                String col = cols[ii];
+                if (BaseColumns._ID.equals(col)) {
+                    row[ii] = id;
+                } else if (MediaStore.Audio.AudioColumns.ALBUM_ID.equals(col)) {
+                    row[ii] = song[0];
+                } else if (MediaStore.Audio.AudioColumns.ARTIST_ID.equals(col)) {
+                    row[ii] = song[1];
+                } else if (MediaStore.Audio.AudioColumns.DATE_MODIFIED.equals(col)) {
+                    row[ii] = song[2];
+                } else if (MediaStore.Audio.AudioColumns.IS_MUSIC.equals(col)
+                        || MediaStore.Audio.AudioColumns.YEAR.equals(col)
+                        || MediaStore.Audio.AudioColumns.TRACK.equals(col)
+                        || MediaStore.Audio.AudioColumns.DURATION.equals(col)
+                        || MediaStore.Audio.AudioColumns.DATE_ADDED.equals(col)) {
+                    row[ii] = 1L;
+                } else {
+                    row[ii] = col + id;
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+
+}
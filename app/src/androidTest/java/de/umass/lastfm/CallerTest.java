@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.umass.lastfm.cache.DiskLruResponseCache;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks a fetched response is answered whether or not the cache kept it.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class CallerTest {
+
+    File dir;
+
+    @Before
+    public void setup() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "lfmcache-" + System.nanoTime());
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testStoredResponseIsAnswered() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        assertThat(read(Caller.storeResponse(cache, "a", stream("a"), Long.MAX_VALUE))).isEqualTo("a");
+        assertThat(read(cache.load("a"))).isEqualTo("a");
+    }
+
+    @Test
+    public void testConcurrentIdenticalCallsAreAnswered() throws Exception {
+        final DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        final String name = "album.getinfoalbumGold Motelartist";
+        final int threads = 2;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final String[] results = new String[threads];
+        for (int ii=0; ii<threads; ii++) {
+            final int n = ii;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[n] = read(Caller.storeResponse(cache, name, stream("response" + n), Long.MAX_VALUE));
+                    } catch (Exception ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        // each caller got its own response back, whichever lost the race for the entry didn't cache it
+        assertThat(results[0]).isEqualTo("response0");
+        assertThat(results[1]).isEqualTo("response1");
+    }
+
+    @Test
+    public void testUnopenedCacheStillAnswers() throws Exception {
+        // a file where the directory should be, the cache can't open
+        dir.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(dir, "not a dir");
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        assertThat(read(Caller.storeResponse(cache, "a", stream("a"), Long.MAX_VALUE))).isEqualTo("a");
+        assertThat(cache.contains("a")).isFalse();
+    }
+
+    static InputStream stream(String s) throws Exception {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    static String read(InputStream is) throws Exception {
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+}
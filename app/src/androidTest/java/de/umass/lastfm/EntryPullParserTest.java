@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks the pull parser agrees with the DOM builder on the recorded
+ * responses and measures both.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class EntryPullParserTest {
+
+    @Test
+    public void testAlbumMatchesDom() throws Exception {
+        byte[] data = readResource("raw/lfm_albumresp.xml");
+        Album pulled = EntryPullParser.parseAlbum(new ByteArrayInputStream(data));
+        Album built = ResponseBuilder.buildItem(buildDom(data), Album.class);
+        assertThat(pulled.getName()).isEqualTo("Gold Motel").isEqualTo(built.getName());
+        assertThat(pulled.getMbid()).isEqualTo("488fb0f9-1f19-4253-a2ce-a1059609484e").isEqualTo(built.getMbid());
+        assertThat(pulled.getUrl()).isEqualTo(built.getUrl());
+        assertThat(pulled.getArtist()).isEqualTo(built.getArtist());
+        for (ImageSize size : ImageSize.values()) {
+            assertThat(pulled.getImageURL(size)).isEqualTo(built.getImageURL(size));
+        }
+        // not from the tracks
+        assertThat(pulled.getImageURL(ImageSize.MEGA)).isEqualTo("http://userserve-ak.last.fm/serve/_/77201856/Gold+Motel.png");
+    }
+
+    @Test
+    public void testArtistMatchesDom() throws Exception {
+        byte[] data = readResource("raw/lfm_artistresp.xml");
+        Artist pulled = EntryPullParser.parseArtist(new ByteArrayInputStream(data));
+        Artist built = ResponseBuilder.buildItem(buildDom(data), Artist.class);
+        assertThat(pulled.getName()).isEqualTo("Gold Motel").isEqualTo(built.getName());
+        assertThat(pulled.getMbid()).isEqualTo(built.getMbid());
+        assertThat(pulled.getUrl()).isEqualTo(built.getUrl());
+        for (ImageSize size : ImageSize.values()) {
+            assertThat(pulled.getImageURL(size)).isEqualTo(built.getImageURL(size));
+        }
+        // not from the similar artists
+        assertThat(pulled.getImageURL(ImageSize.SMALL)).isEqualTo("http://userserve-ak.last.fm/serve/34/67560456.jpg");
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedStatusThrows() throws Exception {
+        byte[] data = "<lfm status=\"failed\"><error code=\"6\">Artist not found</error></lfm>".getBytes("UTF-8");
+        EntryPullParser.parseArtist(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void testFailedStatusCarriesErrorCode() throws Exception {
+        byte[] data = "<lfm status=\"failed\"><error code=\"6\">Artist not found</error></lfm>".getBytes("UTF-8");
+        try {
+            EntryPullParser.parseArtist(new ByteArrayInputStream(data));
+        } catch (StatusException e) {
+            assertThat(e.errorCode).isEqualTo(StatusException.ERROR_INVALID_PARAMETERS);
+            return;
+        }
+        throw new AssertionError("Expected StatusException");
+    }
+
+    /**
+     * Allocation counts are only available on hotspot, they are reported as -1 otherwise.
+     */
+    @Test
+    public void benchmarkParse() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        final String[] fixtures = {"raw/lfm_albumresp.xml", "raw/lfm_artistresp.xml"};
+        final int rounds = 200;
+        for (String fixture : fixtures) {
+            final byte[] data = readResource(fixture);
+            final boolean album = fixture.contains("album");
+            // both have to come up with the same entry, the times are only reported
+            assertSameEntry(parsePull(data, album), parseDom(data, album));
+            // warm up both paths
+            for (int ii=0; ii<20; ii++) {
+                parseDom(data, album);
+                parsePull(data, album);
+            }
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int ii=0; ii<rounds; ii++) {
+                parseDom(data, album);
+            }
+            long domNanos = System.nanoTime() - start;
+            long domBytes = allocatedBytes() - bytes;
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int ii=0; ii<rounds; ii++) {
+                parsePull(data, album);
+            }
+            long pullNanos = System.nanoTime() - start;
+            long pullBytes = allocatedBytes() - bytes;
+            BenchmarkReport.report(EntryPullParserTest.class, "%s: dom %dus %d bytes, pull %dus %d bytes per response",
+                    fixture, domNanos / rounds / 1000, bytes < 0 ? -1 : domBytes / rounds,
+                    pullNanos / rounds / 1000, bytes < 0 ? -1 : pullBytes / rounds);
+        }
+    }
+
+    static void assertSameEntry(MusicEntry pulled, MusicEntry built) {
+        assertThat(pulled.getName()).isEqualTo(built.getName());
+        assertThat(pulled.getMbid()).isEqualTo(built.getMbid());
+        assertThat(pulled.getUrl()).isEqualTo(built.getUrl());
+        for (ImageSize size : ImageSize.values()) {
+            assertThat(pulled.getImageURL(size)).isEqualTo(built.getImageURL(size));
+        }
+    }
+
+    static MusicEntry parseDom(byte[] data, boolean album) throws Exception {
+        Result result = buildDom(data);
+        return album ? ResponseBuilder.buildItem(result, Album.class)
+                : ResponseBuilder.buildItem(result, Artist.class);
+    }
+
+    static MusicEntry parsePull(byte[] data, boolean album) throws Exception {
+        InputStream in = new ByteArrayInputStream(data);
+        return album ? EntryPullParser.parseAlbum(in) : EntryPullParser.parseArtist(in);
+    }
+
+    static Result buildDom(byte[] data) throws Exception {
+        return Result.createOkResult(DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().parse(new ByteArrayInputStream(data)));
+    }
+
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    byte[] readResource(String name) throws IOException {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+        try {
+            return IOUtils.toByteArray(is);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+}
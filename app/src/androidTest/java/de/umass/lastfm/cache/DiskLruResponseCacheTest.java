@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm.cache;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks expirations survive a reopen, lookups are served from the index
+ * and the cache stays under its size.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class DiskLruResponseCacheTest {
+
+    File dir;
+
+    @Before
+    public void setup() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "lfmcache-" + System.nanoTime());
+    }
+
+    @After
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testStoreLoad() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        long future = System.currentTimeMillis() + 60000;
+        cache.store("album.getinfo", stream("<lfm status=\"ok\"/>"), future);
+        assertThat(cache.contains("album.getinfo")).isTrue();
+        assertThat(cache.isExpired("album.getinfo")).isFalse();
+        assertThat(read(cache.load("album.getinfo"))).isEqualTo("<lfm status=\"ok\"/>");
+        assertThat(cache.contains("artist.getinfo")).isFalse();
+        cache.remove("album.getinfo");
+        assertThat(cache.contains("album.getinfo")).isFalse();
+        assertThat(cache.load("album.getinfo")).isNull();
+    }
+
+    @Test
+    public void testExpirationSurvivesReopen() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        cache.store("old", stream("old"), System.currentTimeMillis() - 1000);
+        cache.store("new", stream("new"), Long.MAX_VALUE);
+        DiskLruResponseCache reopened = new DiskLruResponseCache(dir, 1024 * 1024);
+        assertThat(reopened.index).isEmpty();
+        assertThat(reopened.isExpired("old")).isTrue();
+        assertThat(reopened.isExpired("new")).isFalse();
+        // both are indexed now
+        assertThat(reopened.index).hasSize(2);
+    }
+
+    @Test
+    public void testSweepDropsExpired() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        cache.store("old", stream("old"), System.currentTimeMillis() - 1000);
+        cache.store("new", stream("new"), Long.MAX_VALUE);
+        cache.sweep();
+        assertThat(cache.index).hasSize(1);
+        assertThat(cache.load("old")).isNull();
+        assertThat(read(cache.load("new"))).isEqualTo("new");
+    }
+
+    @Test
+    public void testBoundedBySize() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 4096);
+        char[] chars = new char[1000];
+        String body = new String(chars).replace('\0', 'x');
+        for (int ii=0; ii<20; ii++) {
+            cache.store("entry" + ii, stream(body), Long.MAX_VALUE);
+        }
+        // eviction runs on the cache's own thread, give it a moment
+        Thread.sleep(200);
+        assertThat(FileUtils.sizeOfDirectory(dir)).isLessThan(3 * 4096);
+        assertThat(read(cache.load("entry19"))).isEqualTo(body);
+        assertThat(cache.load("entry0")).isNull();
+        assertThat(cache.index.containsKey("entry0")).isFalse();
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        cache.store("a", stream("a"), Long.MAX_VALUE);
+        cache.clear();
+        assertThat(cache.contains("a")).isFalse();
+        // still usable
+        cache.store("b", stream("b"), Long.MAX_VALUE);
+        assertThat(read(cache.load("b"))).isEqualTo("b");
+    }
+
+    @Test
+    public void testStoreWhileEntryIsBeingWritten() throws Exception {
+        final DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        // another caller is in the middle of writing the same response
+        final DiskLruCache.Editor writer = cache.diskCache.edit(DiskLruResponseCache.toKey("a"));
+        cache.store("a", stream("a"), Long.MAX_VALUE);
+        assertThat(cache.contains("a")).isFalse();
+        assertThat(cache.load("a")).isNull();
+        writer.abort();
+    }
+
+    @Test
+    public void testUnopenedCache() throws Exception {
+        // a file where the directory should be, the cache can't open
+        dir.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(dir, "not a dir");
+        DiskLruResponseCache cache = new DiskLruResponseCache(dir, 1024 * 1024);
+        assertThat(cache.diskCache).isNull();
+        cache.store("a", stream("a"), Long.MAX_VALUE);
+        assertThat(cache.contains("a")).isFalse();
+        assertThat(cache.load("a")).isNull();
+    }
+
+    @Test
+    public void testKeysSanitized() {
+        assertThat(DiskLruResponseCache.toKey("abc123")).isEqualTo("abc123");
+        assertThat(DiskLruResponseCache.toKey("artist.getinfoartistGold Motel")).hasSize(32).matches("[0-9a-f]+");
+    }
+
+    static InputStream stream(String s) throws Exception {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    static String read(InputStream is) throws Exception {
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+}
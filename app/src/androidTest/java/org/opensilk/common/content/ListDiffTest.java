@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.common.content;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Applies random diffs to an adapter and checks it ends up with the new list,
+ * and that small edits produce small change sets.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ListDiffTest {
+
+    static final ListDiff.Keyer<Item> KEYER = new ListDiff.Keyer<Item>() {
+        @Override
+        public Object keyOf(Item item) {
+            return item.id;
+        }
+    };
+
+    @Test
+    public void testSingleEdits() {
+        List<Item> old = makeItems(100);
+
+        List<Item> removed = new ArrayList<>(old);
+        removed.remove(40);
+        assertOps(old, removed, ListDiff.REMOVE);
+
+        List<Item> inserted = new ArrayList<>(old);
+        inserted.add(10, new Item(1000, 0));
+        inserted.add(11, new Item(1001, 0));
+        assertOps(old, inserted, ListDiff.INSERT);
+
+        List<Item> moved = new ArrayList<>(old);
+        moved.add(moved.remove(0));
+        assertOps(old, moved, ListDiff.MOVE);
+
+        List<Item> changed = new ArrayList<>(old);
+        changed.set(5, new Item(5, 1));
+        assertOps(old, changed, ListDiff.CHANGE);
+
+        assertThat(ListDiff.compute(old, old, KEYER).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random r = new Random(7);
+        for (int round=0; round<500; round++) {
+            List<Item> old = makeItems(r.nextInt(60));
+            List<Item> next = new ArrayList<>(old);
+            int edits = r.nextInt(10);
+            for (int ii=0; ii<edits; ii++) {
+                switch (r.nextInt(4)) {
+                    case 0:
+                        next.add(r.nextInt(next.size() + 1), new Item(1000 + round * 100 + ii, 0));
+                        break;
+                    case 1:
+                        if (!next.isEmpty()) next.remove(r.nextInt(next.size()));
+                        break;
+                    case 2:
+                        if (!next.isEmpty()) next.add(r.nextInt(next.size()), next.remove(r.nextInt(next.size())));
+                        break;
+                    default:
+                        if (!next.isEmpty()) {
+                            int pos = r.nextInt(next.size());
+                            next.set(pos, new Item(next.get(pos).id, next.get(pos).version + 1));
+                        }
+                        break;
+                }
+            }
+            TestAdapter adapter = new TestAdapter(old);
+            ListDiff<Item> diff = ListDiff.compute(old, next, KEYER);
+            assertThat(diff.replace).isFalse();
+            adapter.applyDiff(diff);
+            assertThat(adapter.getItems()).isEqualTo(next);
+        }
+    }
+
+    @Test
+    public void testShuffleReplaces() {
+        List<Item> old = makeItems(500);
+        List<Item> next = new ArrayList<>(old);
+        Collections.shuffle(next, new Random(3));
+        ListDiff<Item> diff = ListDiff.compute(old, next, KEYER);
+        assertThat(diff.replace).isTrue();
+        TestAdapter adapter = new TestAdapter(old);
+        adapter.applyDiff(diff);
+        assertThat(adapter.getItems()).isEqualTo(next);
+    }
+
+    static void assertOps(List<Item> old, List<Item> next, int type) {
+        ListDiff<Item> diff = ListDiff.compute(old, next, KEYER);
+        assertThat(diff.ops).hasSize(1);
+        assertThat(diff.ops.get(0).type).isEqualTo(type);
+        TestAdapter adapter = new TestAdapter(old);
+        adapter.applyDiff(diff);
+        assertThat(adapter.getItems()).isEqualTo(next);
+    }
+
+    static List<Item> makeItems(int count) {
+        List<Item> items = new ArrayList<>(count);
+        for (int ii=0; ii<count; ii++) {
+            items.add(new Item(ii, 0));
+        }
+        return items;
+    }
+
+    static class Item {
+        final long id;
+        final int version;
+
+        Item(long id, int version) {
+            this.id = id;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item)) return false;
+            Item item = (Item) o;
+            return id == item.id && version == item.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (id ^ (id >>> 32)) + version;
+        }
+
+        @Override
+        public String toString() {
+            return id + "v" + version;
+        }
+    }
+
+    static class TestAdapter extends RecyclerListAdapter<Item, RecyclerView.ViewHolder> {
+        TestAdapter(List<Item> items) {
+            super(new ArrayList<>(items));
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return null;
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+    }
+
+}
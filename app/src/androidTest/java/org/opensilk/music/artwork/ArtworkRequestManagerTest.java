@@ -35,13 +35,16 @@ import org.opensilk.common.widget.AnimatedImageView;
 import org.opensilk.music.AppPreferences;
 import org.opensilk.music.api.meta.ArtInfo;
 import org.opensilk.music.artwork.cache.ArtworkCache;
+import org.opensilk.music.artwork.cache.BitmapDecoder;
 import org.opensilk.music.artwork.cache.BitmapDiskCache;
+import org.opensilk.music.artwork.cache.NegativeArtworkCache;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import de.umass.lastfm.Album;
 import de.umass.lastfm.Artist;
+import rx.schedulers.Schedulers;
 
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.fest.assertions.api.Assertions.assertThat;
@@ -70,7 +73,9 @@ public class ArtworkRequestManagerTest {
         queue = new RequestQueue(new MockCache(), new BasicNetwork(new MockHttpStack()), 1, new ImmediateResponseDelivery());
         queue.start();
         gson = new Gson();
-        artworkManager = new ArtworkRequestManagerImpl(Robolectric.application, prefs, l1, l2, queue, gson);
+        artworkManager = new ArtworkRequestManagerImpl(Robolectric.application, prefs, l1, l2, queue, gson,
+                new BitmapDecoder(1, null), new ArtworkScheduler(1), new NegativeArtworkCache(
+                        Robolectric.application, null, Schedulers.immediate()));
     }
 
     @After
@@ -107,7 +112,7 @@ public class ArtworkRequestManagerTest {
         AnimatedImageView imageView = new AnimatedImageView(activity, null);
         artworkManager.newAlbumRequest(imageView, null, artInfo, ArtworkType.THUMBNAIL);
         Mockito.verify(l1).getArtwork(cacheKey);
-        Mockito.verify(l2, Mockito.never()).getBitmap(cacheKey);
+        Mockito.verify(l2, Mockito.never()).getArtwork(cacheKey);
         assertThat(((BitmapDrawable) imageView.getDrawable()).getBitmap()).isSameAs(bitmap);
     }
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.api.meta.ArtInfo;
+import org.opensilk.music.artwork.ArtworkRequestManagerImpl.IArtworkRequest;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ArtworkRequestRegistryTest {
+
+    static class FakeRequest implements IArtworkRequest {
+        final AtomicInteger recipients = new AtomicInteger();
+        volatile boolean complete;
+
+        @Override
+        public synchronized boolean addRecipient(ImageContainer c) {
+            if (complete) return false;
+            recipients.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void onRecipientUnsubscribed(ImageContainer c) {
+        }
+    }
+
+    static class FakeFactory implements ArtworkRequestRegistry.Factory {
+        final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public IArtworkRequest create(RequestKey key) {
+            created.incrementAndGet();
+            return new FakeRequest();
+        }
+    }
+
+    ArtworkRequestRegistry registry;
+    FakeFactory factory;
+    RequestKey key;
+
+    @Before
+    public void setUp() {
+        registry = new ArtworkRequestRegistry();
+        factory = new FakeFactory();
+        key = new RequestKey(new ArtInfo("artist", "album", null), ArtworkType.THUMBNAIL);
+    }
+
+    ImageContainer newContainer() {
+        return new ImageContainer(null, null, ArtworkScheduler.PRIORITY_PREFETCH);
+    }
+
+    @Test
+    public void testAttachCoalescesSameKey() {
+        IArtworkRequest r1 = registry.attach(key, newContainer(), factory);
+        IArtworkRequest r2 = registry.attach(new RequestKey(new ArtInfo("artist", "album", null),
+                ArtworkType.THUMBNAIL), newContainer(), factory);
+        assertThat(r2).isSameAs(r1);
+        assertThat(factory.created.get()).isEqualTo(1);
+        assertThat(((FakeRequest) r1).recipients.get()).isEqualTo(2);
+        assertThat(registry.getStats().coalesced).isEqualTo(1);
+        assertThat(registry.getStats().inflight).isEqualTo(1);
+    }
+
+    @Test
+    public void testAttachDifferentTypeIsNewRequest() {
+        IArtworkRequest r1 = registry.attach(key, newContainer(), factory);
+        IArtworkRequest r2 = registry.attach(new RequestKey(key.artInfo, ArtworkType.LARGE), newContainer(), factory);
+        assertThat(r2).isNotSameAs(r1);
+        assertThat(registry.getStats().coalesced).isEqualTo(0);
+        assertThat(registry.getStats().inflight).isEqualTo(2);
+    }
+
+    @Test
+    public void testAttachReplacesCompletedRequest() {
+        FakeRequest r1 = (FakeRequest) registry.attach(key, newContainer(), factory);
+        // completed but not yet removed
+        r1.complete = true;
+        IArtworkRequest r2 = registry.attach(key, newContainer(), factory);
+        assertThat(r2).isNotSameAs(r1);
+        assertThat(factory.created.get()).isEqualTo(2);
+        assertThat(registry.getStats().coalesced).isEqualTo(0);
+        assertThat(registry.inflight.get(key)).isSameAs(r2);
+    }
+
+    @Test
+    public void testRemoveOnlyRemovesSameRequest() {
+        FakeRequest r1 = (FakeRequest) registry.attach(key, newContainer(), factory);
+        r1.complete = true;
+        IArtworkRequest r2 = registry.attach(key, newContainer(), factory);
+        // stale completion must not unregister the replacement
+        registry.remove(key, r1);
+        assertThat(registry.inflight.get(key)).isSameAs(r2);
+        registry.remove(key, r2);
+        assertThat(registry.getStats().inflight).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentAttachSingleFetch() throws Exception {
+        final int threads = 8;
+        final int perThread = 250;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int ii=0; ii<threads; ii++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int jj=0; jj<perThread; jj++) {
+                            registry.attach(key, newContainer(), factory);
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        // Losing creators may have been built but only one was ever started
+        FakeRequest winner = (FakeRequest) registry.inflight.get(key);
+        assertThat(winner.recipients.get()).isEqualTo(threads * perThread);
+        assertThat(registry.getStats().coalesced).isEqualTo(threads * perThread - 1);
+    }
+
+    @Test
+    public void testHitMissCounters() {
+        registry.recordHit();
+        registry.recordHit();
+        registry.recordMiss();
+        ArtworkRequestRegistry.Stats stats = registry.getStats();
+        assertThat(stats.hits).isEqualTo(2);
+        assertThat(stats.misses).isEqualTo(1);
+    }
+
+}
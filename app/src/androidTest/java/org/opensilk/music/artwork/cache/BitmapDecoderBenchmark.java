@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Measures covers decoded per second through the BitmapDecoder gate at
+ * different concurrency limits. The robolectric BitmapFactory does not
+ * really decode, so each "decode" inflates a deflated cover sized buffer
+ * which is the bulk of the work of a png decode.
+ *
+ * Created by drew on 1/10/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class BitmapDecoderBenchmark {
+
+    static final int COVER_SIZE = 300 * 300 * 4;
+    static final int COVERS = 400;
+    /** Mirrors Schedulers.io() handing us more threads than we want decoding */
+    static final int CALLER_THREADS = 16;
+
+    @Test
+    public void testCalculateMaxConcurrent() {
+        assertThat(BitmapDecoder.calculateMaxConcurrent(4, 64, 16)).isEqualTo(4);
+        assertThat(BitmapDecoder.calculateMaxConcurrent(8, 32, 16)).isEqualTo(2);
+        assertThat(BitmapDecoder.calculateMaxConcurrent(8, 8, 16)).isEqualTo(1);
+        assertThat(BitmapDecoder.calculateMaxConcurrent(0, 0, 0)).isEqualTo(1);
+    }
+
+    @Test
+    public void benchmarkCoversPerSecond() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        final byte[] compressed = makeCover();
+        // warm up the jit
+        run(compressed, 4, COVERS / 4);
+        for (int workers : new int[]{1, 2, 4, 8}) {
+            double perSecond = run(compressed, workers, COVERS);
+            BenchmarkReport.report(BitmapDecoderBenchmark.class,
+                    "BitmapDecoder workers=%d covers/sec=%.1f", workers, perSecond);
+        }
+    }
+
+    static double run(final byte[] compressed, int workers, int covers) throws InterruptedException {
+        final BitmapDecoder decoder = new BitmapDecoder(workers, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(CALLER_THREADS);
+        final CountDownLatch latch = new CountDownLatch(covers);
+        final AtomicInteger decoding = new AtomicInteger();
+        final AtomicInteger maxDecoding = new AtomicInteger();
+        final AtomicInteger decoded = new AtomicInteger();
+        final long start = System.nanoTime();
+        for (int ii=0; ii<covers; ii++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    decoder.acquire();
+                    try {
+                        final int now = decoding.incrementAndGet();
+                        int max;
+                        while (now > (max = maxDecoding.get()) && !maxDecoding.compareAndSet(max, now)) {
+                            // retry
+                        }
+                        if (inflate(compressed) == COVER_SIZE) {
+                            decoded.incrementAndGet();
+                        }
+                        decoding.decrementAndGet();
+                    } finally {
+                        decoder.release();
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        latch.await();
+        final long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        // Whatever the timing, the decoder must hold the line and every cover must come out whole
+        assertThat(maxDecoding.get()).isLessThanOrEqualTo(workers);
+        assertThat(decoded.get()).isEqualTo(covers);
+        return covers / (elapsed / 1e9);
+    }
+
+    static byte[] makeCover() {
+        byte[] raw = new byte[COVER_SIZE];
+        Random r = new Random(42);
+        // gradients with some noise so it compresses like artwork, not like zeros
+        for (int ii=0; ii<raw.length; ii++) {
+            raw[ii] = (byte) ((ii / 1200) + r.nextInt(16));
+        }
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buf = new byte[COVER_SIZE];
+        int len = deflater.deflate(buf);
+        deflater.end();
+        byte[] out = new byte[len];
+        System.arraycopy(buf, 0, out, 0, len);
+        return out;
+    }
+
+    /**
+     * @return number of bytes inflated
+     */
+    static int inflate(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] out = new byte[COVER_SIZE];
+        int total = 0;
+        try {
+            while (!inflater.finished() && total < COVER_SIZE) {
+                int n = inflater.inflate(out, total, COVER_SIZE - total);
+                if (n == 0 && inflater.needsInput()) break;
+                total += n;
+            }
+            return total;
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.artwork.ArtworkNotFoundException;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.FileNotFoundException;
+import java.util.Collections;
+
+import de.umass.lastfm.Artist;
+import de.umass.lastfm.opensilk.ArtistRequest;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class NegativeArtworkCacheTest {
+
+    static final String KEY = "#THUMBNAIL#artist#album";
+
+    static class TestNegativeArtworkCache extends NegativeArtworkCache {
+        long now = 1000;
+
+        TestNegativeArtworkCache(String name) {
+            super(Robolectric.application, name, Schedulers.immediate());
+        }
+
+        @Override
+        long now() {
+            return now;
+        }
+    }
+
+    TestNegativeArtworkCache cache;
+
+    @Before
+    public void setUp() {
+        Robolectric.application.deleteDatabase("negative_test.db");
+        cache = new TestNegativeArtworkCache("negative_test.db");
+    }
+
+    @Test
+    public void testNotFoundSticksForLongTtl() {
+        cache.putFailure(KEY, new FileNotFoundException());
+        assertThat(cache.isSuppressed(KEY)).isTrue();
+        cache.now += NegativeArtworkCache.TTL_ERROR + 1;
+        assertThat(cache.isSuppressed(KEY)).isTrue();
+        cache.now += NegativeArtworkCache.TTL_NOT_FOUND;
+        assertThat(cache.isSuppressed(KEY)).isFalse();
+    }
+
+    @Test
+    public void testErrorExpiresAfterShortTtl() {
+        cache.putFailure(KEY, new TimeoutError());
+        assertThat(cache.isSuppressed(KEY)).isTrue();
+        cache.now += NegativeArtworkCache.TTL_ERROR;
+        assertThat(cache.isSuppressed(KEY)).isFalse();
+    }
+
+    @Test
+    public void testClassifiesFailures() {
+        assertThat(NegativeArtworkCache.isNotFound(new FileNotFoundException())).isTrue();
+        assertThat(NegativeArtworkCache.isNotFound(new ArtworkNotFoundException("No image urls"))).isTrue();
+        assertThat(NegativeArtworkCache.isNotFound(new ParseError(new ArtworkNotFoundException("Unknown mbid")))).isTrue();
+        // bugs arent a reason to stop looking for a week
+        assertThat(NegativeArtworkCache.isNotFound(new NullPointerException())).isFalse();
+        assertThat(NegativeArtworkCache.isNotFound(new ParseError(new IllegalArgumentException()))).isFalse();
+        assertThat(NegativeArtworkCache.isNotFound(new ServerError(
+                new NetworkResponse(404, new byte[0], Collections.<String, String>emptyMap(), false)))).isTrue();
+        assertThat(NegativeArtworkCache.isNotFound(new ServerError(
+                new NetworkResponse(503, new byte[0], Collections.<String, String>emptyMap(), false)))).isFalse();
+        assertThat(NegativeArtworkCache.isNotFound(new ParseError(new OutOfMemoryError()))).isFalse();
+        assertThat(NegativeArtworkCache.isNotFound(new NoConnectionError())).isFalse();
+        assertThat(NegativeArtworkCache.isNotFound(new TimeoutError())).isFalse();
+    }
+
+    @Test
+    public void testFailedStatusResponse() throws Exception {
+        VolleyError notFound = parseArtist("<lfm status=\"failed\">"
+                + "<error code=\"6\">The artist you supplied could not be found</error></lfm>");
+        assertThat(notFound).isInstanceOf(ParseError.class);
+        assertThat(NegativeArtworkCache.isNotFound(notFound)).isTrue();
+        VolleyError rateLimited = parseArtist("<lfm status=\"failed\">"
+                + "<error code=\"29\">Rate limit exceeded</error></lfm>");
+        assertThat(NegativeArtworkCache.isNotFound(rateLimited)).isFalse();
+        VolleyError noCode = parseArtist("<lfm status=\"failed\"></lfm>");
+        assertThat(NegativeArtworkCache.isNotFound(noCode)).isFalse();
+    }
+
+    @Test
+    public void testTruncatedResponse() throws Exception {
+        VolleyError truncated = parseArtist("<lfm status=\"ok\"><artist><name>Gold Mo");
+        assertThat(truncated).isInstanceOf(ParseError.class);
+        assertThat(NegativeArtworkCache.isNotFound(truncated)).isFalse();
+        cache.putFailure(KEY, truncated);
+        cache.now += NegativeArtworkCache.TTL_ERROR;
+        assertThat(cache.isSuppressed(KEY)).isFalse();
+    }
+
+    static VolleyError parseArtist(String body) throws Exception {
+        Response<Artist> response = new TestArtistRequest().parse(body.getBytes("UTF-8"));
+        assertThat(response.isSuccess()).isFalse();
+        return response.error;
+    }
+
+    static class TestArtistRequest extends ArtistRequest {
+        TestArtistRequest() {
+            super("http://ws.audioscrobbler.com/2.0/", null);
+        }
+
+        Response<Artist> parse(byte[] data) {
+            return parseNetworkResponse(new NetworkResponse(data));
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.putFailure(KEY, new FileNotFoundException());
+        cache.invalidate(KEY);
+        assertThat(cache.isSuppressed(KEY)).isFalse();
+    }
+
+    @Test
+    public void testPersistsAcrossInstances() {
+        cache.putFailure(KEY, new FileNotFoundException());
+        cache.mStore.close();
+        TestNegativeArtworkCache other = new TestNegativeArtworkCache("negative_test.db");
+        assertThat(other.isSuppressed(KEY)).isTrue();
+    }
+
+    @Test
+    public void testTrimDropsExpired() {
+        cache.put("expired", 10);
+        cache.put(KEY, NegativeArtworkCache.TTL_NOT_FOUND);
+        cache.now += 11;
+        cache.trim();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.isSuppressed(KEY)).isTrue();
+    }
+
+    @Test
+    public void testTrimCapsEntries() {
+        for (int ii=0; ii<NegativeArtworkCache.MAX_ENTRIES + 10; ii++) {
+            // first ones expire soonest
+            cache.put("key" + ii, NegativeArtworkCache.TTL_ERROR + ii);
+        }
+        // puts trim on their own now and then
+        assertThat(cache.size()).isLessThan(NegativeArtworkCache.MAX_ENTRIES + NegativeArtworkCache.TRIM_INTERVAL);
+        cache.trim();
+        assertThat(cache.size()).isEqualTo(NegativeArtworkCache.MAX_ENTRIES);
+        assertThat(cache.isSuppressed("key0")).isFalse();
+        assertThat(cache.isSuppressed("key" + (NegativeArtworkCache.MAX_ENTRIES + 9))).isTrue();
+    }
+
+    @Test
+    public void testPendingWritesAreVisible() {
+        TestScheduler scheduler = new TestScheduler();
+        NegativeArtworkCache deferred = new NegativeArtworkCache(Robolectric.application, null, scheduler);
+        deferred.put(KEY, NegativeArtworkCache.TTL_ERROR);
+        assertThat(deferred.size()).isEqualTo(0);
+        assertThat(deferred.isSuppressed(KEY)).isTrue();
+        scheduler.triggerActions();
+        assertThat(deferred.size()).isEqualTo(1);
+        assertThat(deferred.mPending).isEmpty();
+        deferred.invalidate(KEY);
+        assertThat(deferred.isSuppressed(KEY)).isTrue();
+        scheduler.triggerActions();
+        assertThat(deferred.isSuppressed(KEY)).isFalse();
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.support.v7.graphics.Palette;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Measures an L2 hit with the palette generated from the bitmap against one
+ * with the palette read back from the disk cache. Both pay for the decode,
+ * which like {@link BitmapDecoderBenchmark} is stood in for by an inflate.
+ * The cover is 100px square, the size Palette scales down to before
+ * quantizing, so the generate side leaves out the scale.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PaletteRestoreBenchmark {
+
+    static final int DIMEN = 100;
+    static final int ROUNDS = 200;
+
+    @Test
+    public void benchmarkGenerateVsRestore() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        Assume.assumeTrue(PaletteCodec.isSupported());
+        final byte[] compressed = BitmapDecoderBenchmark.makeCover();
+        final Bitmap cover = makeCover();
+        final Palette generated = Palette.generate(cover);
+        // a blank bitmap would make generate look cheap
+        assertThat(generated.getSwatches()).isNotEmpty();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PaletteCodec.write(generated, out);
+        final byte[] stored = out.toByteArray();
+        // the restored palette has to be the one we would have generated
+        assertSameSwatches(PaletteCodec.read(stored), generated);
+
+        // warm up both paths
+        for (int ii=0; ii<20; ii++) {
+            generate(compressed, cover);
+            restore(compressed, stored);
+        }
+        long start = System.nanoTime();
+        for (int ii=0; ii<ROUNDS; ii++) {
+            generate(compressed, cover);
+        }
+        final long generateNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int ii=0; ii<ROUNDS; ii++) {
+            restore(compressed, stored);
+        }
+        final long restoreNanos = System.nanoTime() - start;
+        BenchmarkReport.report(PaletteRestoreBenchmark.class,
+                "L2 hit: decode+generate %dus, decode+restore %dus per cover, stored palette %d bytes",
+                generateNanos / ROUNDS / 1000, restoreNanos / ROUNDS / 1000, stored.length);
+    }
+
+    static Palette generate(byte[] compressed, Bitmap cover) {
+        assertThat(BitmapDecoderBenchmark.inflate(compressed)).isEqualTo(BitmapDecoderBenchmark.COVER_SIZE);
+        return Palette.generate(cover);
+    }
+
+    static Palette restore(byte[] compressed, byte[] stored) {
+        assertThat(BitmapDecoderBenchmark.inflate(compressed)).isEqualTo(BitmapDecoderBenchmark.COVER_SIZE);
+        return PaletteCodec.read(stored);
+    }
+
+    static void assertSameSwatches(Palette restored, Palette generated) {
+        assertThat(restored).isNotNull();
+        final List<Palette.Swatch> expected = generated.getSwatches();
+        final List<Palette.Swatch> actual = restored.getSwatches();
+        assertThat(actual).hasSize(expected.size());
+        for (int ii=0; ii<expected.size(); ii++) {
+            assertThat(actual.get(ii).getRgb()).isEqualTo(expected.get(ii).getRgb());
+            assertThat(actual.get(ii).getPopulation()).isEqualTo(expected.get(ii).getPopulation());
+        }
+    }
+
+    static Bitmap makeCover() {
+        final int[] colors = new int[DIMEN * DIMEN];
+        final Random r = new Random(42);
+        // a few color bands with noise, enough distinct colors to make the quantizer work
+        for (int ii=0; ii<colors.length; ii++) {
+            final int band = (ii / DIMEN) / 20;
+            final int red = (band * 50 + r.nextInt(32)) & 0xff;
+            final int green = (255 - band * 40 + r.nextInt(32)) & 0xff;
+            final int blue = (band * 90 + r.nextInt(32)) & 0xff;
+            colors[ii] = 0xff000000 | (red << 16) | (green << 8) | blue;
+        }
+        return Bitmap.createBitmap(colors, DIMEN, DIMEN, Bitmap.Config.ARGB_8888);
+    }
+
+}
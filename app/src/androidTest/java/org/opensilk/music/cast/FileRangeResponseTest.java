@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensilk.music.cast;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Range parsing, body correctness, and a loopback throughput comparison
+ * against the FileInputStream response serveFile used to build.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class FileRangeResponseTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testParseRange() {
+        assertThat(CastWebServer.parseRange(null, 100)).isNull();
+        assertThat(CastWebServer.parseRange("items=0-1", 100)).isNull();
+        assertThat(CastWebServer.parseRange("bytes=10-19", 100)).isEqualTo(new long[]{10, 19});
+        assertThat(CastWebServer.parseRange("bytes=10-", 100)).isEqualTo(new long[]{10, 99});
+        assertThat(CastWebServer.parseRange("bytes=90-200", 100)).isEqualTo(new long[]{90, 99});
+        assertThat(CastWebServer.parseRange("bytes=-10", 100)).isEqualTo(new long[]{90, 99});
+        assertThat(CastWebServer.parseRange("bytes=-500", 100)).isEqualTo(new long[]{0, 99});
+        assertThat(CastWebServer.parseRange("bytes=0-0,50-60", 100)).isEqualTo(new long[]{0, 0});
+        assertThat(CastWebServer.parseRange("bytes=20-10", 100)).isNull();
+        assertThat(CastWebServer.parseRange("bytes=abc-", 100)).isNull();
+        assertThat(CastWebServer.parseRange("bytes=100-", 100)).isSameAs(CastWebServer.RANGE_NOT_SATISFIABLE);
+        assertThat(CastWebServer.parseRange("bytes=-0", 100)).isSameAs(CastWebServer.RANGE_NOT_SATISFIABLE);
+        // past 2G
+        long big = 5L * 1024 * 1024 * 1024;
+        assertThat(CastWebServer.parseRange("bytes=4294967296-", big)).isEqualTo(new long[]{4294967296L, big - 1});
+    }
+
+    @Test
+    public void testSendsExactRange() throws Exception {
+        File file = makeFile(10000);
+        byte[] content = readAll(new FileInputStream(file));
+        FileRangeResponse res = new FileRangeResponse(NanoHTTPD.Response.Status.PARTIAL_CONTENT,
+                "audio/*", file, 1234, 5000);
+        res.addHeader("Content-Range", "bytes 1234-6233/10000");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        res.send(out);
+        byte[] raw = out.toByteArray();
+        int split = indexOf(raw, "\r\n\r\n".getBytes("US-ASCII")) + 4;
+        String head = new String(raw, 0, split, "US-ASCII");
+        assertThat(head).startsWith("HTTP/1.1 206");
+        assertThat(head).contains("Content-Length: 5000\r\n");
+        assertThat(head).contains("Content-Range: bytes 1234-6233/10000\r\n");
+        assertThat(head).contains("Connection: keep-alive\r\n");
+        assertThat(Arrays.copyOfRange(raw, split, raw.length))
+                .isEqualTo(Arrays.copyOfRange(content, 1234, 6234));
+    }
+
+    @Test
+    public void benchmarkLoopback() throws Exception {
+        BenchmarkReport.assumeEnabled();
+        final int size = 32 * 1024 * 1024;
+        File file = makeFile(size);
+        // warm up the jit
+        sendLoopback(legacyResponse(file, 0, size), size);
+        sendLoopback(new FileRangeResponse(NanoHTTPD.Response.Status.OK, "audio/*", file, 0, size), size);
+        long legacy = sendLoopback(legacyResponse(file, 0, size), size);
+        long channel = sendLoopback(new FileRangeResponse(NanoHTTPD.Response.Status.OK, "audio/*", file, 0, size), size);
+        // sendLoopback checks the whole body arrived, the speeds are only reported
+        BenchmarkReport.report(FileRangeResponseTest.class,
+                "CastWebServer loopback size=%dMB legacy=%.1fMB/s filechannel=%.1fMB/s",
+                size / (1024 * 1024), mbPerSecond(size, legacy), mbPerSecond(size, channel));
+    }
+
+    static double mbPerSecond(long bytes, long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+
+    /**
+     * Sends the response over a loopback socket
+     * @return nanos until the reader saw the whole body
+     */
+    static long sendLoopback(final NanoHTTPD.Response res, final long bodyLen) throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        final AtomicLong received = new AtomicLong();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket s = server.accept();
+                    InputStream in = s.getInputStream();
+                    byte[] buf = new byte[64 * 1024];
+                    long total = 0;
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        total += n;
+                    }
+                    received.set(total);
+                    s.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        reader.start();
+        Socket client = new Socket("127.0.0.1", server.getLocalPort());
+        long start = System.nanoTime();
+        OutputStream out = client.getOutputStream();
+        send(res, out);
+        client.shutdownOutput();
+        reader.join();
+        long elapsed = System.nanoTime() - start;
+        client.close();
+        server.close();
+        assertThat(received.get()).isGreaterThan(bodyLen);
+        return elapsed;
+    }
+
+    static void send(NanoHTTPD.Response res, OutputStream out) {
+        if (res instanceof FileRangeResponse) {
+            ((FileRangeResponse) res).send(out);
+        } else {
+            ((LegacyResponse) res).sendTo(out);
+        }
+    }
+
+    /** What serveFile used to build for a range */
+    static NanoHTTPD.Response legacyResponse(File file, long startFrom, final long dataLen) throws IOException {
+        FileInputStream fis = new FileInputStream(file) {
+            @Override
+            public int available() throws IOException {
+                return (int) dataLen;
+            }
+        };
+        fis.skip(startFrom);
+        LegacyResponse res = new LegacyResponse(fis);
+        res.addHeader("Content-Length", "" + dataLen);
+        return res;
+    }
+
+    static class LegacyResponse extends NanoHTTPD.Response {
+        LegacyResponse(InputStream data) {
+            super(Status.OK, "audio/*", data);
+        }
+
+        void sendTo(OutputStream out) {
+            send(out);
+        }
+    }
+
+    File makeFile(int size) throws IOException {
+        File file = mFolder.newFile();
+        byte[] buf = new byte[64 * 1024];
+        Random r = new Random(size);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            int written = 0;
+            while (written < size) {
+                r.nextBytes(buf);
+                int n = Math.min(buf.length, size - written);
+                out.write(buf, 0, n);
+                written += n;
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int ii=0; ii<=haystack.length - needle.length; ii++) {
+            for (int jj=0; jj<needle.length; jj++) {
+                if (haystack[ii + jj] != needle[jj]) continue outer;
+            }
+            return ii;
+        }
+        return -1;
+    }
+
+}
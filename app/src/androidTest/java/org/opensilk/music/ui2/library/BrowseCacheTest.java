@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.library;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.api.meta.LibraryInfo;
+import org.opensilk.music.api.model.Folder;
+import org.opensilk.music.api.model.spi.Bundleable;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks pages chain by token, the cache stays under its item budget
+ * and stale pages are dropped.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class BrowseCacheTest {
+
+    static final LibraryInfo FOLDER = new LibraryInfo("lib", "Library", "folder", "Folder");
+
+    @Test
+    public void testPagesChain() {
+        BrowseCache cache = new BrowseCache(100, 60000);
+        cache.put(FOLDER, null, page(0, 4, token(4)));
+        cache.put(FOLDER, token(4), page(4, 4, token(8)));
+        // page 8 is missing so 12 is unreachable
+        cache.put(FOLDER, token(12), page(12, 4, null));
+        List<LibraryConnection.Result> pages = cache.getPages(FOLDER);
+        assertThat(pages).hasSize(2);
+        assertThat(pages.get(1).items.get(0).getIdentity()).isEqualTo("4");
+        // a fresh but equal token finds the same page without copying
+        assertThat(cache.get(FOLDER, token(4))).isSameAs(pages.get(1));
+        assertThat(cache.getPages(FOLDER.buildUpon("other", "Other"))).isEmpty();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPagesImmutable() {
+        BrowseCache cache = new BrowseCache(100, 60000);
+        cache.put(FOLDER, null, page(0, 4, null));
+        cache.get(FOLDER, null).items.clear();
+    }
+
+    @Test
+    public void testBoundedByItems() {
+        BrowseCache cache = new BrowseCache(20, 60000);
+        for (int ii=0; ii<10; ii++) {
+            cache.put(FOLDER, token(ii * 4), page(ii * 4, 4, token(ii * 4 + 4)));
+        }
+        // each page costs 5 so only the last 4 fit
+        assertThat(cache.cache.size()).isLessThanOrEqualTo(20);
+        assertThat(cache.get(FOLDER, token(0))).isNull();
+        assertThat(cache.get(FOLDER, token(36))).isNotNull();
+    }
+
+    @Test
+    public void testStaleIsMissing() {
+        BrowseCache cache = new BrowseCache(100, -1);
+        cache.put(FOLDER, null, page(0, 4, null));
+        assertThat(cache.get(FOLDER, null)).isNull();
+        assertThat(cache.cache.size()).isEqualTo(0);
+    }
+
+    static Bundle token(int offset) {
+        Bundle b = new Bundle();
+        b.putInt("offset", offset);
+        b.putString("cursor", "c" + offset);
+        return b;
+    }
+
+    static LibraryConnection.Result page(int start, int count, Bundle token) {
+        List<Bundleable> items = new ArrayList<>(count);
+        for (int ii=start; ii<start+count; ii++) {
+            items.add(new Folder.Builder().setIdentity(String.valueOf(ii)).setName("f" + ii).build());
+        }
+        return new LibraryConnection.Result(items, token);
+    }
+
+}
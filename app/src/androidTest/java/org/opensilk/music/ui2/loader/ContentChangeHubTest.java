@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.loader;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks bursts of notifications turn into one reload per uri and that
+ * reloads wait while no activity is started.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ContentChangeHubTest {
+
+    static final Uri URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+
+    ContentChangeHub mHub;
+    CountingListener mListener1;
+    CountingListener mListener2;
+
+    @Before
+    public void setup() {
+        mHub = new ContentChangeHub(Robolectric.application, new Handler(Looper.getMainLooper()));
+        mHub.setWindow(100, 1000);
+        mListener1 = new CountingListener();
+        mListener2 = new CountingListener();
+        mHub.register(URI, mListener1);
+        mHub.register(URI, mListener2);
+        mHub.onActivityStart();
+    }
+
+    @Test
+    public void testBurstCoalesces() {
+        ContentChangeHub.Channel channel = mHub.mChannels.get(URI);
+        for (int ii=0; ii<200; ii++) {
+            channel.onChange(false);
+        }
+        Robolectric.getUiThreadScheduler().advanceBy(2000);
+        assertThat(mListener1.count).isEqualTo(1);
+        assertThat(mListener2.count).isEqualTo(1);
+        assertThat(mHub.getReceivedCount()).isEqualTo(200);
+        assertThat(mHub.getCoalescedCount()).isEqualTo(199);
+        assertThat(mHub.getExecutedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDeferredWhileStopped() {
+        ContentChangeHub.Channel channel = mHub.mChannels.get(URI);
+        mHub.onActivityStop();
+        channel.onChange(false);
+        Robolectric.getUiThreadScheduler().advanceBy(2000);
+        channel.onChange(false);
+        Robolectric.getUiThreadScheduler().advanceBy(2000);
+        assertThat(mListener1.count).isEqualTo(0);
+        assertThat(mHub.getDeferredCount()).isEqualTo(1);
+        mHub.onActivityStart();
+        assertThat(mListener1.count).isEqualTo(1);
+        assertThat(mHub.getExecutedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnregisterReleasesChannel() {
+        mHub.unregister(URI, mListener1);
+        assertThat(mHub.mChannels).containsKey(URI);
+        mHub.unregister(URI, mListener2);
+        assertThat(mHub.mChannels).isEmpty();
+    }
+
+    static class CountingListener implements ContentChangeHub.Listener {
+        int count;
+
+        @Override
+        public void onContentChanged(Uri uri) {
+            count++;
+        }
+    }
+
+}
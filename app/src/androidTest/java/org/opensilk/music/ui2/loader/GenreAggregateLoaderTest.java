@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.loader;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+import com.andrew.apollo.model.Genre;
+import com.andrew.apollo.model.LocalSong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensilk.music.BenchmarkReport;
+import org.opensilk.music.util.CursorHelpers;
+import org.opensilk.music.util.Projections;
+import org.opensilk.music.util.SelectionArgs;
+import org.opensilk.music.util.Selections;
+import org.opensilk.music.util.SortOrder;
+import org.opensilk.music.util.Uris;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks the aggregate genre loader against the nested per genre loader
+ * it replaced and compares their timings.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class GenreAggregateLoaderTest {
+
+    static final int GENRES = 400;
+    static final int SONGS = 20000;
+    static final int ALBUMS = 1500;
+
+    FakeMediaProvider mProvider;
+
+    @Before
+    public void setup() {
+        mProvider = new FakeMediaProvider();
+        ShadowContentResolver.registerProvider(MediaStore.AUTHORITY, mProvider);
+    }
+
+    @Test
+    public void testMatchesLegacy() {
+        List<Genre> legacy = new LegacyGenresLoader(Robolectric.application).getObservable().toList().toBlocking().first();
+        List<Genre> single = new TestGenresLoader(Robolectric.application, true).getObservable().toList().toBlocking().first();
+        List<Genre> perGroup = new TestGenresLoader(Robolectric.application, false).getObservable().toList().toBlocking().first();
+        assertThat(single).hasSize(GENRES);
+        for (int ii=0; ii<GENRES; ii++) {
+            Genre l = legacy.get(ii);
+            for (Genre g : new Genre[]{single.get(ii), perGroup.get(ii)}) {
+                assertThat(g.mGenreId).isEqualTo(l.mGenreId);
+                assertThat(g.mGenreName).isEqualTo(l.mGenreName);
+                assertThat(g.mSongNumber).isEqualTo(l.mSongNumber);
+                assertThat(g.mAlbumNumber).isEqualTo(l.mAlbumNumber);
+                assertThat(g.mSongIds).isEqualTo(l.mSongIds);
+                assertThat(g.mAlbumIds).isEqualTo(l.mAlbumIds);
+            }
+        }
+        // one genre query and one member query
+        mProvider.queries = 0;
+        new TestGenresLoader(Robolectric.application, true).getObservable().toList().toBlocking().first();
+        assertThat(mProvider.queries).isEqualTo(2);
+    }
+
+    @Test
+    public void benchmarkLoad() {
+        BenchmarkReport.assumeEnabled();
+        Context context = Robolectric.application;
+        // warm up the jit
+        time(new LegacyGenresLoader(context));
+        time(new TestGenresLoader(context, false));
+        time(new TestGenresLoader(context, true));
+        mProvider.queries = 0;
+        long legacy = time(new LegacyGenresLoader(context));
+        int legacyQueries = mProvider.queries;
+        mProvider.queries = 0;
+        long perGroup = time(new TestGenresLoader(context, false));
+        int perGroupQueries = mProvider.queries;
+        mProvider.queries = 0;
+        long single = time(new TestGenresLoader(context, true));
+        int singleQueries = mProvider.queries;
+        // the query counts are what the loaders are judged on, the times are only reported
+        assertThat(perGroupQueries).isEqualTo(1 + GENRES);
+        assertThat(singleQueries).isEqualTo(2);
+        BenchmarkReport.report(GenreAggregateLoaderTest.class,
+                "Genres genres=%d songs=%d legacy=%.1fms (%d queries) per-genre=%.1fms (%d queries) single-pass=%.1fms (%d queries)",
+                GENRES, SONGS, legacy / 1e6, legacyQueries, perGroup / 1e6, perGroupQueries, single / 1e6, singleQueries);
+    }
+
+    static long time(RxLoader<Genre> loader) {
+        long start = System.nanoTime();
+        loader.getObservable().toList().toBlocking().first();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * LocalGenresLoader without the main thread hop
+     */
+    static class TestGenresLoader extends AbsGenrePlaylistLoader<Genre> {
+        final boolean singlePass;
+
+        TestGenresLoader(Context context, boolean singlePass) {
+            super(context);
+            this.singlePass = singlePass;
+            setUri(Uris.EXTERNAL_MEDIASTORE_GENRES);
+            setProjection(Projections.GENRE);
+            setSelection(Selections.GENRE);
+            setSelectionArgs(SelectionArgs.GENRE);
+            setProjection2(Projections.GENRE_MEMBER);
+            setSelection2(Selections.GENRE_MEMBER);
+            setSelectionArgs2(SelectionArgs.GENRE_MEMBER);
+            setSortOrder2(SortOrder.GENRE_MEMBERS);
+        }
+
+        @Override
+        protected Uri getAllMembersUri() {
+            return singlePass ? Uris.EXTERNAL_MEDIASTORE_GENRES_ALL_MEMBERS : null;
+        }
+
+        @Override
+        protected String getGroupIdColumn() {
+            return MediaStore.Audio.Genres.Members.GENRE_ID;
+        }
+
+        @Override
+        protected int getIdColumnIdx(Cursor c) {
+            return c.getColumnIndexOrThrow(BaseColumns._ID);
+        }
+
+        @Override
+        protected int getNameColumnIdx(Cursor c) {
+            return c.getColumnIndexOrThrow(MediaStore.Audio.Genres.NAME);
+        }
+
+        @Override
+        protected Uri getUriForId(long id) {
+            return Uris.GENRE(id);
+        }
+
+        @Override
+        protected Genre createItem(long id, String name, int songCount, int albumCount, long[] songIds, long[] albumIds) {
+            return new Genre(id, name, songCount, albumCount, songIds, albumIds);
+        }
+
+        @Override
+        public Observable<List<Genre>> getListObservable() {
+            return getObservable().toList();
+        }
+    }
+
+    /**
+     * What AbsGenrePlaylistLoader did before, a nested loader per genre
+     * blocked on while it collects the member songs
+     */
+    static class LegacyGenresLoader implements RxLoader<Genre> {
+        final Context context;
+
+        LegacyGenresLoader(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public Observable<Genre> getObservable() {
+            RxCursorLoader<Genre> collectionLoader = new RxCursorLoader<Genre>(context,
+                    Uris.EXTERNAL_MEDIASTORE_GENRES, Projections.GENRE, Selections.GENRE, SelectionArgs.GENRE, null) {
+                @Override
+                protected Genre makeFromCursor(Cursor c) {
+                    long id = c.getInt(c.getColumnIndexOrThrow(BaseColumns._ID));
+                    String name = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Genres.NAME));
+                    RxCursorLoader<LocalSong> songsLoader = new RxCursorLoader<LocalSong>(context,
+                            Uris.GENRE(id), Projections.GENRE_SONGS, Selections.GENRE_SONGS,
+                            SelectionArgs.GENRE_SONGS, SortOrder.GENRE_MEMBERS) {
+                        @Override
+                        protected LocalSong makeFromCursor(Cursor c) {
+                            return CursorHelpers.makeLocalSongFromCursor(c);
+                        }
+                    };
+                    return performSomeMagick(songsLoader.createObservable(), id, name).toBlocking().first();
+                }
+            };
+            return collectionLoader.createObservable().subscribeOn(Schedulers.io());
+        }
+
+        Observable<Genre> performSomeMagick(Observable<LocalSong> observable, final long itemId, final String itemName) {
+            Observable<LocalSong> o = observable.subscribeOn(Schedulers.io()).replay().refCount();
+            Observable<List<Long>> songs = o.map(new Func1<LocalSong, Long>() {
+                @Override
+                public Long call(LocalSong localSong) {
+                    return localSong.songId;
+                }
+            }).toList();
+            Observable<List<Long>> albums = o.map(new Func1<LocalSong, Long>() {
+                @Override
+                public Long call(LocalSong localSong) {
+                    return localSong.albumId;
+                }
+            }).distinct().toList();
+            return Observable.zip(songs, albums, new Func2<List<Long>, List<Long>, Genre>() {
+                @Override
+                public Genre call(List<Long> songs, List<Long> albums) {
+                    Collections.sort(albums);
+                    return new Genre(itemId, itemName, songs.size(), albums.size(),
+                            AbsGenrePlaylistLoader.toArray(songs), AbsGenrePlaylistLoader.toArray(albums));
+                }
+            });
+        }
+
+        @Override
+        public Observable<List<Genre>> getListObservable() {
+            return getObservable().toList();
+        }
+
+        @Override public void addContentChangedListener(ContentChangedListener l) { }
+        @Override public void removeContentChangedListener(ContentChangedListener l) { }
+        @Override public void setSortOrder(String sortOrder) { }
+        @Override public void reset() { }
+    }
+
+    /**
+     * Genres, per genre members and the all members join, every song
+     * belongs to one genre
+     */
+    static class FakeMediaProvider extends ContentProvider {
+        int queries;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        static long genreOf(long song) {
+            return 1 + (song * 7919) % GENRES;
+        }
+
+        static long albumOf(long song) {
+            return 1 + (song * 31) % ALBUMS;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            queries++;
+            List<String> path = uri.getPathSegments();
+            String[] cols = new String[projection.length];
+            for (int ii=0; ii<projection.length; ii++) {
+                String col = projection[ii].trim();
+                int as = col.indexOf(" AS ");
+                cols[ii] = as >= 0 ? col.substring(as + 4).trim() : col;
+            }
+            MatrixCursor c = new MatrixCursor(cols);
+            if (path.size() == 3) {
+                // external/audio/genres
+                for (long genre=1; genre<=GENRES; genre++) {
+                    Object[] row = new Object[cols.length];
+                    for (int ii=0; ii<cols.length; ii++) {
+                        row[ii] = BaseColumns._ID.equals(cols[ii]) ? (Object) genre : "Genre " + genre;
+                    }
+                    c.addRow(row);
+                }
+            } else {
+                // external/audio/genres/{id|all}/members
+                String which = path.get(3);
+                long genre = "all".equals(which) ? -1 : Long.parseLong(which);
+                for (long song=1; song<=SONGS; song++) {
+                    if (genre != -1 && genreOf(song) != genre) continue;
+                    c.addRow(makeRow(cols, song));
+                }
+            }
+            return c;
+        }
+
+        static Object[] makeRow(String[] cols, long song) {
+            Object[] row = new Object[cols.length];
+            for (int ii=0; ii<cols.length; ii++) {
+                String col = cols[ii];
+                if (BaseColumns._ID.equals(col) || MediaStore.Audio.Genres.Members.AUDIO_ID.equals(col)) {
+                    row[ii] = song;
+                } else if (MediaStore.Audio.Genres.Members.GENRE_ID.equals(col)) {
+                    row[ii] = genreOf(song);
+                } else if (MediaStore.Audio.AudioColumns.ALBUM_ID.equals(col)) {
+                    row[ii] = albumOf(song);
+                } else if (MediaStore.Audio.AudioColumns.DURATION.equals(col)) {
+                    row[ii] = 180000;
+                } else {
+                    row[ii] = col + song;
+                }
+            }
+            return row;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.loader;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import rx.schedulers.Schedulers;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Created by drew on 1/12/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class OrderPreservingCursorTest {
+
+    static final String AUTHORITY = "org.opensilk.music.test.songs";
+    static final Uri URI = Uri.parse("content://" + AUTHORITY + "/songs");
+    static final String[] PROJECTION = new String[] { BaseColumns._ID, "name" };
+
+    FakeProvider mProvider;
+
+    @Before
+    public void setup() {
+        mProvider = new FakeProvider();
+        ShadowContentResolver.registerProvider(AUTHORITY, mProvider);
+    }
+
+    @Test
+    public void testIteratesInGivenOrderAcrossPages() {
+        final int size = OrderPreservingCursor.PAGE_SIZE * 10 + 7;
+        final long[] ids = shuffledIds(size);
+        OrderPreservingCursor c = newCursor(ids);
+        assertThat(c.getCount()).isEqualTo(size);
+        int ii = 0;
+        assertThat(c.moveToFirst()).isTrue();
+        do {
+            assertThat(c.getLong(0)).isEqualTo(ids[ii]);
+            assertThat(c.getString(1)).isEqualTo("song" + ids[ii]);
+            ii++;
+        } while (c.moveToNext());
+        assertThat(ii).isEqualTo(size);
+        // one query per page, none larger than a page
+        assertThat(mProvider.queries).isEqualTo(11);
+        assertThat(mProvider.maxIdsPerQuery).isLessThanOrEqualTo(OrderPreservingCursor.PAGE_SIZE);
+        c.close();
+        assertThat(mProvider.openCursors()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRandomAccessKeepsWindowBounded() {
+        final int size = 50000;
+        final long[] ids = shuffledIds(size);
+        OrderPreservingCursor c = newCursor(ids);
+        Random r = new Random(7);
+        for (int ii=0; ii<200; ii++) {
+            int pos = r.nextInt(size);
+            assertThat(c.moveToPosition(pos)).isTrue();
+            assertThat(c.getLong(0)).isEqualTo(ids[pos]);
+            assertThat(mProvider.openCursors()).isLessThanOrEqualTo(OrderPreservingCursor.MAX_PAGES);
+        }
+        // moving within the window does not query again
+        c.moveToPosition(0);
+        int queries = mProvider.queries;
+        for (int ii=0; ii<OrderPreservingCursor.PAGE_SIZE; ii++) {
+            c.moveToPosition(ii);
+        }
+        assertThat(mProvider.queries).isEqualTo(queries);
+        c.close();
+    }
+
+    @Test
+    public void testMissingIdsReadEmpty() {
+        OrderPreservingCursor c = newCursor(new long[]{1, -5, 2});
+        assertThat(c.getCount()).isEqualTo(3);
+        c.moveToPosition(1);
+        assertThat(c.getString(1)).isEqualTo("");
+        c.moveToPosition(2);
+        assertThat(c.getString(1)).isEqualTo("song2");
+        c.close();
+    }
+
+    @Test
+    public void testNeighbourPagesArePrefetched() {
+        final long[] ids = shuffledIds(OrderPreservingCursor.PAGE_SIZE * 5);
+        OrderPreservingCursor c = newCursor(ids);
+        c.moveToFirst();
+        // first page and the one after it
+        assertThat(mProvider.queries).isEqualTo(2);
+        // entering the prefetched page only prefetches the next one
+        c.moveToPosition(OrderPreservingCursor.PAGE_SIZE);
+        assertThat(c.getLong(0)).isEqualTo(ids[OrderPreservingCursor.PAGE_SIZE]);
+        assertThat(mProvider.queries).isEqualTo(3);
+        // jumping back, the pages around it are still open
+        c.moveToPosition(0);
+        assertThat(mProvider.queries).isEqualTo(3);
+        c.close();
+        assertThat(mProvider.openCursors()).isEqualTo(0);
+    }
+
+    OrderPreservingCursor newCursor(long[] ids) {
+        // prefetch inline so the provider is only touched from the test thread
+        return new OrderPreservingCursor(Robolectric.application, ids, URI, PROJECTION, null, null,
+                Schedulers.immediate());
+    }
+
+    static long[] shuffledIds(int size) {
+        final Random r = new Random(42);
+        final long[] ids = new long[size];
+        for (int ii=0; ii<size; ii++) {
+            ids[ii] = ii + 1;
+        }
+        for (int ii=size-1; ii>0; ii--) {
+            int jj = r.nextInt(ii + 1);
+            long t = ids[ii];
+            ids[ii] = ids[jj];
+            ids[jj] = t;
+        }
+        return ids;
+    }
+
+    /**
+     * Answers _id IN (...) selections with a row for every positive id
+     */
+    static class FakeProvider extends ContentProvider {
+        final List<Cursor> cursors = new ArrayList<>();
+        int queries;
+        int maxIdsPerQuery;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            queries++;
+            String list = selection.substring(selection.indexOf('(') + 1, selection.lastIndexOf(')'));
+            String[] parts = list.split(",");
+            maxIdsPerQuery = Math.max(maxIdsPerQuery, parts.length);
+            long[] ids = new long[parts.length];
+            for (int ii=0; ii<parts.length; ii++) {
+                ids[ii] = Long.parseLong(parts[ii].trim());
+            }
+            Arrays.sort(ids);
+            MatrixCursor c = new MatrixCursor(projection);
+            for (long id : ids) {
+                if (id > 0) {
+                    c.addRow(new Object[]{id, "song" + id});
+                }
+            }
+            cursors.add(c);
+            return c;
+        }
+
+        int openCursors() {
+            int open = 0;
+            for (Cursor c : cursors) {
+                if (!c.isClosed()) open++;
+            }
+            return open;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+
+}
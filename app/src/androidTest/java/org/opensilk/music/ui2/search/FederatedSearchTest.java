@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.search;
+
+import com.andrew.apollo.model.LocalArtist;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Checks results are ranked by how well their name matches and
+ * that latency percentiles come from the recent samples.
+ *
+ * Created by drew on 1/13/15.
+ */
+@Config(manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class FederatedSearchTest {
+
+    @Test
+    public void testRank() {
+        List<Object> items = new ArrayList<>();
+        items.add(new LocalArtist(1, "The Black Keys", 0, 0));
+        items.add(new LocalArtist(2, "Blackalicious", 0, 0));
+        items.add(new LocalArtist(3, "Deep Purple", 0, 0));
+        items.add(new LocalArtist(4, "black", 0, 0));
+        items.add(new LocalArtist(5, "Jack Black", 0, 0));
+        List<Object> ranked = FederatedSearch.rank(items, "Black");
+        assertThat(names(ranked)).containsExactly("black", "Blackalicious", "The Black Keys", "Jack Black", "Deep Purple");
+        // unchanged when there is nothing to rank by
+        assertThat(FederatedSearch.rank(items, " ")).isSameAs(items);
+    }
+
+    @Test
+    public void testPercentiles() {
+        FederatedSearch.LatencyStats stats = new FederatedSearch.LatencyStats();
+        assertThat(stats.percentile(50)).isEqualTo(-1);
+        for (int ii=1; ii<=100; ii++) {
+            stats.add(ii);
+        }
+        // only the last 64 samples count: 37..100
+        assertThat(stats.percentile(0)).isEqualTo(37);
+        assertThat(stats.percentile(50)).isEqualTo(68);
+        assertThat(stats.percentile(100)).isEqualTo(100);
+    }
+
+    static List<String> names(List<Object> items) {
+        List<String> names = new ArrayList<>(items.size());
+        for (Object o : items) {
+            names.add(FederatedSearch.nameOf(o));
+        }
+        return names;
+    }
+
+}
@@ -111,12 +111,16 @@ public final class ApolloServiceBinder extends IApolloService.Stub {
 
     @Override
     public long duration() throws RemoteException {
-        return acquireService().duration();
+        final MusicPlaybackService s = acquireService();
+        s.mProgressQueries.incrementAndGet();
+        return s.duration();
     }
 
     @Override
     public long position() throws RemoteException {
-        return acquireService().position();
+        final MusicPlaybackService s = acquireService();
+        s.mProgressQueries.incrementAndGet();
+        return s.position();
     }
 
     @Override
@@ -214,4 +218,9 @@ public final class ApolloServiceBinder extends IApolloService.Stub {
         return acquireService().isFromSDCard();
     }
 
+    @Override
+    public NowPlayingInfo getNowPlaying() throws RemoteException {
+        return acquireService().getNowPlaying();
+    }
+
 }
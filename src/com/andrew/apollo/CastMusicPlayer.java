@@ -16,11 +16,11 @@
 
 package com.andrew.apollo;
 
-import android.database.Cursor;
 import android.media.AudioManager;
 import android.os.Handler;
 import android.util.Log;
 
+import com.andrew.apollo.model.RecentSong;
 import com.google.android.gms.cast.MediaInfo;
 import com.google.android.gms.cast.MediaStatus;
 import com.google.android.gms.cast.RemoteMediaPlayer;
@@ -169,12 +169,12 @@ public class CastMusicPlayer implements IMusicPlayer {
 
     @Override
     public void setNextDataSource(long songId) {
-        mNextMediaInfo = CastUtils.buildMediaInfo(mService, songId);
+        mNextMediaInfo = CastUtils.buildMediaInfo(mService, mService.getSongMetadata(songId));
     }
 
     @Override
-    public void setDataSource(Cursor cursor) {
-        mCurrentMediaInfo = CastUtils.buildMediaInfo(mService, cursor);
+    public void setDataSource(RecentSong song) {
+        mCurrentMediaInfo = CastUtils.buildMediaInfo(mService, song);
         mMarkforLoad = true;
     }
 
@@ -286,9 +286,9 @@ public class CastMusicPlayer implements IMusicPlayer {
                             if (!result.getStatus().isSuccess()) {
                                 mCastManager.onFailed(R.string.failed_load, result.getStatus().getStatusCode());
                                 mCurrentMediaInfo = null;
-                            } else {
-
                             }
+                            // Position and duration are only known once the load finishes
+                            sendProgressChanged(false);
                         }
                     });
         } catch (TransientNetworkDisconnectionException e) {
@@ -302,6 +302,12 @@ public class CastMusicPlayer implements IMusicPlayer {
         mCastManager.removeCastConsumer(mCastConsumer);
     }
 
+    private void sendProgressChanged(boolean buffering) {
+        if (mHandler != null) {
+            mHandler.obtainMessage(MusicPlayerHandler.PROGRESS_CHANGED, buffering ? 1 : 0, 0).sendToTarget();
+        }
+    }
+
     /**
      * Handles CastError or NoConnectionException
      * only called if the service thinks its still connected but isn't
@@ -322,6 +328,8 @@ public class CastMusicPlayer implements IMusicPlayer {
             MediaStatus status = mCastManager.getRemoteMediaPlayer().getMediaStatus();
             int mState = status.getPlayerState();
             int mIdleReason = status.getIdleReason();
+            // Clients only extrapolate from our snapshots so push one on every update
+            sendProgressChanged(mState == MediaStatus.PLAYER_STATE_BUFFERING);
             switch (mState) {
                 case MediaStatus.PLAYER_STATE_IDLE:
                     if (mIdleReason == MediaStatus.IDLE_REASON_FINISHED) {
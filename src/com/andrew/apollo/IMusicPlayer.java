@@ -16,9 +16,10 @@
 
 package com.andrew.apollo;
 
-import android.database.Cursor;
 import android.os.Handler;
 
+import com.andrew.apollo.model.RecentSong;
+
 /**
  * Created by drew on 7/4/14.
  */
@@ -33,7 +34,7 @@ public interface IMusicPlayer {
     public boolean isInitialized();
     public void stop(boolean goToIdle);
     public void setNextDataSource(long songId);
-    public void setDataSource(Cursor cursor);
+    public void setDataSource(RecentSong song);
     // note make isInitialized() return false if cant open
     public void setDataSource(String path);
     public long seekAndPlay(long position);
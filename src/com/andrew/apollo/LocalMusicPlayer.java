@@ -16,14 +16,11 @@
 
 package com.andrew.apollo;
 
-import android.database.Cursor;
 import android.media.AudioManager;
-import android.net.Uri;
 import android.os.Handler;
 import android.util.Log;
 
-import com.andrew.apollo.provider.MusicProviderUtil;
-import com.andrew.apollo.provider.MusicStore;
+import com.andrew.apollo.model.RecentSong;
 
 import org.opensilk.cast.exceptions.NoConnectionException;
 import org.opensilk.cast.exceptions.TransientNetworkDisconnectionException;
@@ -83,13 +80,13 @@ public class LocalMusicPlayer implements IMusicPlayer {
 
     @Override
     public void setNextDataSource(long songId) {
-        Uri uri = MusicProviderUtil.getDataUri(mService, songId);
-        mPlayer.setNextDataSource(uri != null ? uri.toString() : null);
+        RecentSong song = mService.getSongMetadata(songId);
+        mPlayer.setNextDataSource(song != null ? song.dataUri.toString() : null);
     }
 
     @Override
-    public void setDataSource(Cursor cursor) {
-        mPlayer.setDataSource(cursor.getString(cursor.getColumnIndexOrThrow(MusicStore.Cols.DATA_URI)));
+    public void setDataSource(RecentSong song) {
+        mPlayer.setDataSource(song.dataUri.toString());
     }
 
     @Override
@@ -23,7 +23,8 @@ import timber.log.Timber;
 public class MultiPlayer implements
         MediaPlayer.OnErrorListener,
         MediaPlayer.OnCompletionListener,
-        MediaPlayer.OnPreparedListener {
+        MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnInfoListener {
 
     private final WeakReference<MusicPlaybackService> mService;
     private CompatMediaPlayer mCurrentMediaPlayer = new CompatMediaPlayer();
@@ -44,6 +45,8 @@ public class MultiPlayer implements
         mIsInitialized = setDataSourceImpl(mCurrentMediaPlayer, path);
         if (mIsInitialized) {
             setNextDataSource(null);
+            // Duration is known now
+            sendProgressChanged(false);
         }
     }
 
@@ -75,6 +78,7 @@ public class MultiPlayer implements
         }
         player.setOnCompletionListener(this);
         player.setOnErrorListener(this);
+        player.setOnInfoListener(this);
         final Intent intent = new Intent(AudioEffect.ACTION_OPEN_AUDIO_EFFECT_CONTROL_SESSION);
         intent.putExtra(AudioEffect.EXTRA_AUDIO_SESSION, getAudioSessionId());
         intent.putExtra(AudioEffect.EXTRA_PACKAGE_NAME, service.getPackageName());
@@ -259,6 +263,8 @@ public class MultiPlayer implements
                 mCurrentMediaPlayer.release();
                 mCurrentMediaPlayer = new CompatMediaPlayer();
                 mCurrentMediaPlayer.setWakeMode(service, PowerManager.PARTIAL_WAKE_LOCK);
+                // Hold the position until we recover
+                sendProgressChanged(true);
                 mHandler.sendMessageDelayed(mHandler.obtainMessage(MusicPlayerHandler.SERVER_DIED), 2000);
                 return true;
             default:
@@ -287,7 +293,32 @@ public class MultiPlayer implements
 
     @Override
     public void onPrepared(MediaPlayer mp) {
+        if (mp == mCurrentMediaPlayer) {
+            sendProgressChanged(false);
+        }
+    }
 
+    @Override
+    public boolean onInfo(MediaPlayer mp, int what, int extra) {
+        if (mp != mCurrentMediaPlayer) {
+            return false;
+        }
+        switch (what) {
+            case MediaPlayer.MEDIA_INFO_BUFFERING_START:
+                sendProgressChanged(true);
+                return true;
+            case MediaPlayer.MEDIA_INFO_BUFFERING_END:
+                sendProgressChanged(false);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void sendProgressChanged(boolean buffering) {
+        if (mHandler != null) {
+            mHandler.obtainMessage(MusicPlayerHandler.PROGRESS_CHANGED, buffering ? 1 : 0, 0).sendToTarget();
+        }
     }
 
     private static final class CompatMediaPlayer extends MediaPlayer implements MediaPlayer.OnCompletionListener {
@@ -40,14 +40,12 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.SystemClock;
-import android.provider.BaseColumns;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.andrew.apollo.provider.MusicProvider;
+import com.andrew.apollo.model.RecentSong;
 import com.andrew.apollo.provider.MusicProviderUtil;
-import com.andrew.apollo.provider.MusicStore;
 import com.andrew.apollo.utils.Lists;
 import com.andrew.apollo.utils.MusicUtils;
 
@@ -68,11 +66,16 @@ import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.R;
 
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.net.UnknownHostException;
 import java.util.LinkedList;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import rx.Observable;
 import rx.Scheduler;
@@ -103,6 +106,12 @@ public class MusicPlaybackService extends Service {
      */
     public static final String POSITION_CHANGED = APOLLO_PACKAGE_NAME+".positionchanged";
 
+    /**
+     * Sticky broadcast carrying a {@link ProgressSnapshot}, sent when
+     * playback starts, stops, seeks or changes track
+     */
+    public static final String PROGRESS_CHANGED = APOLLO_PACKAGE_NAME+".progresschanged";
+
     /**
      * Indicates the meta data has changed in some way, like a track change
      */
@@ -211,8 +220,6 @@ public class MusicPlaybackService extends Service {
 
     public static final String CMDNOTIF = "buttonId";
 
-    private static final int IDCOLIDX = 0;
-
     /**
      * Moves a list to the front of the queue
      */
@@ -277,24 +284,27 @@ public class MusicPlaybackService extends Service {
     static final int MAX_HISTORY_SIZE = 100;
 
     /**
-     * Keeps a mapping of the track history
+     * Number of upcoming tracks we keep metadata in memory for
+     */
+    private static final int METADATA_WARM_AHEAD = 5;
+
+    /**
+     * Keeps a mapping of the party shuffle history
      */
-    private final LinkedList<Integer> mHistory = Lists.newLinkedList();
     private final LinkedList<Integer> mAutoHistory = Lists.newLinkedList();
     /**
      * Used to shuffle the tracks
      */
-    private final Shuffler mShuffler = new Shuffler();
+    private final Random mRandom = new Random();
+    /**
+     * Shuffled play order and history of the queue
+     */
+    private final ShuffleOrder mShuffleOrder = new ShuffleOrder(mRandom);
 
     /**
-     * Used to save the queue as reverse hexadecimal numbers, which we can
-     * generate faster than normal decimal or hexadecimal numbers, which in
-     * turn allows us to save the playlist more often without worrying too
-     * much about performance
+     * Persists the queue and history, see {@link QueueJournal}
      */
-    private static final char HEX_DIGITS[] = new char[] {
-        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
-    };
+    private QueueJournal mQueueJournal;
 
     /**
      * Service stub
@@ -325,10 +335,20 @@ public class MusicPlaybackService extends Service {
     private boolean mShutdownScheduled;
 
     /**
-     * The cursor used to retrieve info on the current track and run the
-     * necessary queries to play audio files
+     * Metadata of the current track
      */
-    private Cursor mCursor;
+    private RecentSong mCurrentSong;
+
+    /**
+     * Metadata of the current track handed to clients, rebuilt on track change
+     */
+    private volatile NowPlayingInfo mNowPlaying;
+    private final AtomicLong mNowPlayingVersion = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Metadata of the tracks around the play position
+     */
+    private SongMetadataCache mMetadataCache;
 
     /**
      * Monitors the audio state
@@ -350,6 +370,11 @@ public class MusicPlaybackService extends Service {
      */
     private boolean mIsSupposedToBePlaying = false;
 
+    /**
+     * Set while the player is waiting on data, position doesn't advance
+     */
+    private volatile boolean mIsBuffering = false;
+
     /**
      * Used to indicate if the queue can be saved
      */
@@ -413,6 +438,14 @@ public class MusicPlaybackService extends Service {
      */
     private boolean isCastingEnabled;
 
+    /**
+     * Counters for dump(), position and duration calls over the binder
+     * against progress snapshots pushed
+     */
+    final AtomicLong mProgressQueries = new AtomicLong();
+    final AtomicLong mProgressPublished = new AtomicLong();
+    private long mCreatedAt;
+
     /**
      * Token for SilkCastService
      */
@@ -503,6 +536,7 @@ public class MusicPlaybackService extends Service {
     public void onCreate() {
         if (D) Log.d(TAG, "Creating service");
         super.onCreate();
+        mCreatedAt = SystemClock.elapsedRealtime();
 
         // Initialize the notification helper
         mNotificationHelper = new NotificationHelper(this);
@@ -532,6 +566,9 @@ public class MusicPlaybackService extends Service {
 
         // Initialize the preferences
         mPreferences = getSharedPreferences("Service", 0);
+        mQueueJournal = new QueueJournal(new File(getFilesDir(), "queue.journal"));
+        mMetadataCache = new SongMetadataCache(this);
+        mMetadataCache.register();
         mCardId = getCardId();
 
         registerExternalStorageListener();
@@ -611,8 +648,12 @@ public class MusicPlaybackService extends Service {
         //release the worker
         mHandleIntentWorker.unsubscribe();
 
-        // Close the cursor
-        closeCursor();
+        // Drop the metadata
+        clearCurrentSong();
+        mMetadataCache.unregister();
+
+        // Finish writing the queue
+        mQueueJournal.close();
 
         // Unregister the mount listener
         unregisterReceiver(mIntentReceiver);
@@ -1038,7 +1079,7 @@ public class MusicPlaybackService extends Service {
             player.stop(goToIdle);
         }
         synchronized (this) {
-            closeCursor();
+            clearCurrentSong();
             if (goToIdle) {
                 scheduleDelayedShutdown();
                 mIsSupposedToBePlaying = false;
@@ -1046,6 +1087,8 @@ public class MusicPlaybackService extends Service {
                 stopForeground(false);
             }
         }
+        mIsBuffering = false;
+        publishProgress();
     }
 
     /**
@@ -1075,12 +1118,14 @@ public class MusicPlaybackService extends Service {
                 mPlayList[first + i] = mPlayList[last + 1 + i];
             }
             mPlayListLen -= last - first + 1;
+            mQueueJournal.remove(first, last);
+            mShuffleOrder.remove(first, last);
 
             if (gotonext) {
                 if (mPlayListLen == 0) {
                     stop(true);
                     mPlayPos = -1;
-                    closeCursor();
+                    clearCurrentSong();
                 } else {
                     if (mShuffleMode != SHUFFLE_NONE) {
                         mPlayPos = getNextPosition(true);
@@ -1116,6 +1161,8 @@ public class MusicPlaybackService extends Service {
         if (position < 0) {
             mPlayListLen = 0;
             position = 0;
+            mQueueJournal.clear();
+            mShuffleOrder.clear();
         }
         ensurePlayListCapacity(mPlayListLen + addlen);
         if (position > mPlayListLen) {
@@ -1131,16 +1178,19 @@ public class MusicPlaybackService extends Service {
             mPlayList[position + i] = list[i];
         }
         mPlayListLen += addlen;
+        mQueueJournal.insert(list, 0, addlen, position);
+        mShuffleOrder.insert(position, addlen);
         if (mPlayListLen == 0) {
-            closeCursor();
+            clearCurrentSong();
             notifyChange(META_CHANGED);
         }
     }
 
-    private void ensureCursor() {
-        if (mCursor == null || mCursor.isClosed()) {
-            if (getAudioId() >= 0) {
-                updateCursor(getAudioId());
+    private void ensureCurrentSong() {
+        if (mCurrentSong == null) {
+            final long id = getAudioId();
+            if (id >= 0) {
+                updateCurrentSong(id);
             }
         }
     }
@@ -1148,27 +1198,53 @@ public class MusicPlaybackService extends Service {
     /**
      * @param trackId The track ID
      */
-    private void updateCursor(final long trackId) {
-        updateCursor(MusicProvider.RECENTS_URI, BaseColumns._ID + "=?", new String[] {String .valueOf(trackId)});
+    private void updateCurrentSong(final long trackId) {
+        synchronized (this) {
+            mCurrentSong = mMetadataCache.get(trackId);
+        }
     }
 
-    private void updateCursor(final Uri uri, final String selection, final String[] selectionArgs) {
-        if (MusicProvider.RECENTS_URI.equals(uri)) {
-            synchronized (this) {
-                closeCursor();
-                mCursor = openCursorAndGoToFirst(uri, Projections.RECENT_SONGS, selection, selectionArgs);
+    /**
+     * Adds the MediaStore song matching the selection to the recents and makes it current
+     */
+    private void updateCurrentSongFromMediaStore(final Uri uri, final String selection, final String[] selectionArgs) {
+        Cursor c = openCursorAndGoToFirst(uri, Projections.LOCAL_SONG, selection, selectionArgs);
+        if (c != null) {
+            try {
+                long id = MusicProviderUtil.insertSong(this, CursorHelpers.makeLocalSongFromCursor(c));
+                updateCurrentSong(id);
+            } finally {
+                 c.close();
             }
-        } else {
-            Cursor c = openCursorAndGoToFirst(uri, Projections.LOCAL_SONG, selection, selectionArgs);
-            if (c != null) {
-                try {
-                    long id = MusicProviderUtil.insertSong(this, CursorHelpers.makeLocalSongFromCursor(c));
-                    updateCursor(id);
-                } finally {
-                     c.close();
-                }
+        }
+    }
+
+    /**
+     * @return metadata for the recents id, from memory when it is near the play position
+     */
+    RecentSong getSongMetadata(final long id) {
+        return mMetadataCache.get(id);
+    }
+
+    /**
+     * Loads the metadata of the tracks around the play position in the background
+     * so track changes find it in memory
+     */
+    private void warmMetadataCache() {
+        final long[] ids;
+        synchronized (this) {
+            if (mPlayListLen <= 0) {
+                return;
             }
+            final int start = Math.max(0, mPlayPos - 1);
+            final int end = Math.min(mPlayListLen, Math.max(0, mPlayPos) + METADATA_WARM_AHEAD + 1);
+            ids = new long[end - start + 1];
+            System.arraycopy(mPlayList, start, ids, 0, end - start);
+            // when shuffling the next track isn't in the window
+            ids[ids.length - 1] = (mNextPlayPos >= 0 && mNextPlayPos < mPlayListLen)
+                    ? mPlayList[mNextPlayPos] : -1;
         }
+        mMetadataCache.warm(ids);
     }
 
     private Cursor openCursorAndGoToFirst(Uri uri, String[] projection,
@@ -1185,11 +1261,8 @@ public class MusicPlaybackService extends Service {
         return c;
      }
 
-    private void closeCursor() {
-        if (mCursor != null) {
-            mCursor.close();
-            mCursor = null;
-        }
+    private void clearCurrentSong() {
+        mCurrentSong = null;
     }
 
     /**
@@ -1209,22 +1282,22 @@ public class MusicPlaybackService extends Service {
      */
     void openCurrentAndMaybeNext(final boolean openNext) {
         synchronized (this) {
-            closeCursor();
+            clearCurrentSong();
 
             if (mPlayListLen == 0) {
                 return;
             }
             stop(false);
 
-            updateCursor(mPlayList[mPlayPos]);
+            updateCurrentSong(mPlayList[mPlayPos]);
             while (true) {
-                if (mCursor != null && openFile(getDataUri().toString())) { //TODO use Uri
+                if (mCurrentSong != null && openFile(mCurrentSong.dataUri.toString())) { //TODO use Uri
                     break;
                 }
                 // if we get here then opening the file failed. We can close the
                 // cursor now, because
                 // we're either going to create a new one next, or stop trying
-                closeCursor();
+                clearCurrentSong();
                 if (mOpenFailedCounter++ < 10 && mPlayListLen > 1) {
                     final int pos = getNextPosition(false);
                     if (pos < 0) {
@@ -1238,7 +1311,7 @@ public class MusicPlaybackService extends Service {
                     mPlayPos = pos;
                     stop(false);
                     mPlayPos = pos;
-                    updateCursor(mPlayList[mPlayPos]);
+                    updateCurrentSong(mPlayList[mPlayPos]);
                 } else {
                     mOpenFailedCounter = 0;
                     Log.w(TAG, "Failed to open file for playback");
@@ -1268,49 +1341,12 @@ public class MusicPlaybackService extends Service {
             }
             return mPlayPos;
         } else if (mShuffleMode == SHUFFLE_NORMAL) {
-            if (mPlayPos >= 0) {
-                mHistory.add(mPlayPos);
+            if (mShuffleOrder.size() != mPlayListLen) {
+                mShuffleOrder.reset(mPlayListLen);
             }
-            if (mHistory.size() > MAX_HISTORY_SIZE) {
-                mHistory.remove(0);
-            }
-            final int numTracks = mPlayListLen;
-            final int[] tracks = new int[numTracks];
-            for (int i = 0; i < numTracks; i++) {
-                tracks[i] = i;
-            }
-
-            final int numHistory = mHistory.size();
-            int numUnplayed = numTracks;
-            for (int i = 0; i < numHistory; i++) {
-                final int idx = mHistory.get(i);
-                if (idx < numTracks && tracks[idx] >= 0) {
-                    numUnplayed--;
-                    tracks[idx] = -1;
-                }
-            }
-            if (numUnplayed <= 0) {
-                if (mRepeatMode == REPEAT_ALL || force) {
-                    numUnplayed = numTracks;
-                    for (int i = 0; i < numTracks; i++) {
-                        tracks[i] = i;
-                    }
-                } else {
-                    return -1;
-                }
-            }
-            int skip = mShuffler.nextInt(numUnplayed);
-            int cnt = -1;
-            while (true) {
-                while (tracks[++cnt] < 0) {
-                    ;
-                }
-                skip--;
-                if (skip < 0) {
-                    break;
-                }
-            }
-            return cnt;
+            // marks the current track played, O(1) when it was the one we picked last
+            mShuffleOrder.setCurrent(mPlayPos);
+            return mShuffleOrder.peekNext(mRepeatMode == REPEAT_ALL || force);
         } else if (mShuffleMode == SHUFFLE_AUTO) {
             doAutoShuffleUpdate();
             return mPlayPos + 1;
@@ -1351,9 +1387,9 @@ public class MusicPlaybackService extends Service {
     void wentToNext() {
         synchronized (this) {
             mPlayPos = mNextPlayPos;
-            closeCursor();
+            clearCurrentSong();
             if (mPlayPos >= 0 && mPlayPos < mPlayList.length) {
-                updateCursor(mPlayList[mPlayPos]);
+                updateCurrentSong(mPlayList[mPlayPos]);
             }
             notifyChange(META_CHANGED);
             updateNotification();
@@ -1405,7 +1441,7 @@ public class MusicPlaybackService extends Service {
                 int lookback = mAutoHistory.size();
                 int idx = -1;
                 while (true) {
-                    idx = mShuffler.nextInt(mAutoShuffleList.length);
+                    idx = mRandom.nextInt(mAutoShuffleList.length);
                     if (!wasRecentlyUsed(idx, lookback)) {
                         break;
                     }
@@ -1419,10 +1455,12 @@ public class MusicPlaybackService extends Service {
             }
             ensurePlayListCapacity(mPlayListLen + list.length);
             Song[] songs = CursorHelpers.getSongsFromId(this, list);
-            for (Song s : songs) {
-                long id = MusicProviderUtil.insertSong(this, s);
-                mPlayList[mPlayListLen++] = id;
-            }
+            final int start = mPlayListLen;
+            final long[] ids = MusicProviderUtil.insertSongs(this, songs);
+            System.arraycopy(ids, 0, mPlayList, start, ids.length);
+            mPlayListLen += ids.length;
+            mQueueJournal.insert(mPlayList, start, mPlayListLen - start, start);
+            mShuffleOrder.insert(start, mPlayListLen - start);
             notify = true;
         }
 
@@ -1480,17 +1518,31 @@ public class MusicPlaybackService extends Service {
         // Update the lockscreen controls
         mMediaSessionHelper.updateMeta(what);
 
+        if (what.equals(POSITION_CHANGED) || what.equals(PLAYSTATE_CHANGED) || what.equals(META_CHANGED)) {
+            publishProgress();
+        }
+
         if (what.equals(POSITION_CHANGED)) {
             return;
         }
 
+        if (what.equals(META_CHANGED) || what.equals(QUEUE_CHANGED)) {
+            warmMetadataCache();
+        }
+
+        if (what.equals(META_CHANGED) || what.equals(QUEUE_CHANGED) || what.equals(REFRESH)) {
+            updateNowPlaying();
+        }
+        final NowPlayingInfo nowPlaying = getNowPlaying();
+
         //For activities
         final Intent intent = new Intent(what);
-        intent.putExtra("id", getAudioId());
-        intent.putExtra("artist", getArtistName());
-        intent.putExtra("album", getAlbumName());
-        intent.putExtra("track", getTrackName());
+        intent.putExtra("id", nowPlaying.audioId);
+        intent.putExtra("artist", nowPlaying.artistName);
+        intent.putExtra("album", nowPlaying.albumName);
+        intent.putExtra("track", nowPlaying.trackName);
         intent.putExtra("playing", isPlaying());
+        intent.putExtra(NowPlayingInfo.EXTRA_VERSION, nowPlaying.version);
         sendStickyBroadcast(intent);
 
         //For SimpleLastFmScrobbler
@@ -1508,7 +1560,7 @@ public class MusicPlaybackService extends Service {
 
         if (what.equals(META_CHANGED)) {
             // Add the track to the recently played list.
-            MusicProviderUtil.updatePlaycount(this, getAudioId());
+            mMetadataCache.recordPlayed(getAudioId());
         } else if (what.equals(QUEUE_CHANGED)) {
             saveQueue(true);
         } else {
@@ -1520,6 +1572,38 @@ public class MusicPlaybackService extends Service {
         }
     }
 
+    /**
+     * Called by the players when they start or stop waiting on data, and on anything else
+     * that moves the position without a state change (loads finishing, errors).
+     */
+    void setBuffering(boolean buffering) {
+        mIsBuffering = buffering;
+        publishProgress();
+    }
+
+    /**
+     * Pushes the current position so clients don't have to poll for it
+     */
+    void publishProgress() {
+        final boolean playing = isPlaying();
+        final ProgressSnapshot snapshot = new ProgressSnapshot(
+                playing ? ProgressSnapshot.STATE_PLAYING : ProgressSnapshot.STATE_PAUSED,
+                position(), duration(), SystemClock.elapsedRealtime(),
+                // Position holds still while the player waits on data
+                playing && !mIsBuffering ? 1.0f : 0.0f);
+        mProgressPublished.incrementAndGet();
+        sendStickyBroadcast(snapshot.toIntent(PROGRESS_CHANGED));
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        final long minutes = Math.max(1, (SystemClock.elapsedRealtime() - mCreatedAt) / 60000);
+        writer.println("Progress queries: " + mProgressQueries.get()
+                + " (" + (mProgressQueries.get() / minutes) + "/min)");
+        writer.println("Progress snapshots: " + mProgressPublished.get()
+                + " (" + (mProgressPublished.get() / minutes) + "/min)");
+    }
+
     /**
      * Saves the queue
      *
@@ -1530,70 +1614,12 @@ public class MusicPlaybackService extends Service {
             return;
         }
 
-        final SharedPreferences.Editor editor = mPreferences.edit();
         if (full) {
-            final StringBuilder q = new StringBuilder();
-            int len = mPlayListLen;
-            for (int i = 0; i < len; i++) {
-                long n = mPlayList[i];
-                if (n < 0) {
-                    continue;
-                } else if (n == 0) {
-                    q.append("0;");
-                } else {
-                    while (n != 0) {
-                        final int digit = (int)(n & 0xf);
-                        n >>>= 4;
-                        q.append(HEX_DIGITS[digit]);
-                    }
-                    q.append(";");
-                }
-            }
-            editor.putString("queue", q.toString());
-            editor.putInt("cardid", mCardId);
-            // save shuffle history
-            len = mHistory.size();
-            if (len > 0) {
-                q.setLength(0);
-                for (int i = 0; i < len; i++) {
-                    int n = mHistory.get(i);
-                    if (n == 0) {
-                        q.append("0;");
-                    } else {
-                        while (n != 0) {
-                            final int digit = n & 0xf;
-                            n >>>= 4;
-                            q.append(HEX_DIGITS[digit]);
-                        }
-                        q.append(";");
-                    }
-                }
-                editor.putString("history", q.toString());
-            } else {
-                editor.remove("history");
-            }
-            // save autoshuffle history
-            len = mAutoHistory.size();
-            if (len > 0) {
-                q.setLength(0);
-                for (int i = 0; i < len; i++) {
-                    int n = mAutoHistory.get(i);
-                    if (n == 0) {
-                        q.append("0;");
-                    } else {
-                        while (n != 0) {
-                            final int digit = n & 0xf;
-                            n >>>= 4;
-                            q.append(HEX_DIGITS[digit]);
-                        }
-                        q.append(";");
-                    }
-                }
-                editor.putString("autohistory", q.toString());
-            } else {
-                editor.remove("autohistory");
-            }
+            mQueueJournal.setHistory(mShuffleOrder.getHistory(MAX_HISTORY_SIZE));
+            mQueueJournal.setAutoHistory(mAutoHistory);
+            mQueueJournal.commit(mPlayList, mPlayListLen, mCardId);
         }
+        final SharedPreferences.Editor editor = mPreferences.edit();
         editor.putInt("curpos", mPlayPos);
         final IMusicPlayer player = getPlayer();
         if (player != null && player.isInitialized()) {
@@ -1608,7 +1634,7 @@ public class MusicPlaybackService extends Service {
     /**
      * Increment value when pref schema changes
      */
-    private static final int PREF_VERSION = 2;
+    private static final int PREF_VERSION = 3;
 
     /**
      * Reloads the queue as the user left it the last time they stopped using
@@ -1616,147 +1642,147 @@ public class MusicPlaybackService extends Service {
      */
     private void reloadQueue() {
         int ver = mPreferences.getInt("schemaversion", 0);
-        if (ver < PREF_VERSION) {
+        if (ver < 2) {
             return;
         }
-        String q = null;
-        int id = mCardId;
-        if (mPreferences.contains("cardid")) {
-            id = mPreferences.getInt("cardid", ~mCardId);
-        }
-        if (id == mCardId) {
-            q = mPreferences.getString("queue", "");
-        }
-        int qlen = q != null ? q.length() : 0;
-        if (qlen > 1) {
-            int plen = 0;
-            int n = 0;
-            int shift = 0;
-            for (int i = 0; i < qlen; i++) {
-                final char c = q.charAt(i);
-                if (c == ';') {
-                    ensurePlayListCapacity(plen + 1);
-                    mPlayList[plen] = n;
-                    plen++;
-                    n = 0;
-                    shift = 0;
-                } else {
-                    if (c >= '0' && c <= '9') {
-                        n += c - '0' << shift;
-                    } else if (c >= 'a' && c <= 'f') {
-                        n += 10 + c - 'a' << shift;
-                    } else {
-                        plen = 0;
-                        break;
-                    }
-                    shift += 4;
-                }
-            }
-            mPlayListLen = plen;
-            final int pos = mPreferences.getInt("curpos", 0);
-            if (pos < 0 || pos >= mPlayListLen) {
-                mPlayListLen = 0;
-                return;
-            }
-            mPlayPos = pos;
+        QueueJournal.Snapshot saved = mQueueJournal.load();
+        if (saved == null && ver == 2) {
+            saved = migrateLegacyQueue();
+        }
+        if (saved == null || saved.cardId != mCardId || saved.length == 0) {
+            return;
+        }
+        ensurePlayListCapacity(saved.length);
+        System.arraycopy(saved.queue, 0, mPlayList, 0, saved.length);
+        mPlayListLen = saved.length;
+        final int pos = mPreferences.getInt("curpos", 0);
+        if (pos < 0 || pos >= mPlayListLen) {
+            mPlayListLen = 0;
+            return;
+        }
+        mPlayPos = pos;
+        // restore shuffle history
+        mShuffleOrder.restore(mPlayListLen, saved.history, mPlayPos);
 
-            closeCursor();
-            mOpenFailedCounter = 20;
-            openCurrentAndNext();
-            final IMusicPlayer player = getPlayer();
-            if (player != null && !player.isInitialized()) {
-                mPlayListLen = 0;
-                return;
-            }
+        clearCurrentSong();
+        mOpenFailedCounter = 20;
+        openCurrentAndNext();
+        final IMusicPlayer player = getPlayer();
+        if (player != null && !player.isInitialized()) {
+            mPlayListLen = 0;
+            return;
+        }
 
-            final long seekpos = mPreferences.getLong("seekpos", 0);
-            seek(seekpos >= 0 && seekpos < duration() ? seekpos : 0);
+        final long seekpos = mPreferences.getLong("seekpos", 0);
+        seek(seekpos >= 0 && seekpos < duration() ? seekpos : 0);
 
-            if (D) {
-                Log.d(TAG, "restored queue, currently at position "
-                        + position() + "/" + duration()
-                        + " (requested " + seekpos + ")");
-            }
+        if (D) {
+            Log.d(TAG, "restored queue, currently at position "
+                    + position() + "/" + duration()
+                    + " (requested " + seekpos + ")");
+        }
 
-            int repmode = mPreferences.getInt("repeatmode", REPEAT_NONE);
-            if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
-                repmode = REPEAT_NONE;
-            }
-            mRepeatMode = repmode;
+        int repmode = mPreferences.getInt("repeatmode", REPEAT_NONE);
+        if (repmode != REPEAT_ALL && repmode != REPEAT_CURRENT) {
+            repmode = REPEAT_NONE;
+        }
+        mRepeatMode = repmode;
 
-            int shufmode = mPreferences.getInt("shufflemode", SHUFFLE_NONE);
-            if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL) {
+        int shufmode = mPreferences.getInt("shufflemode", SHUFFLE_NONE);
+        if (shufmode != SHUFFLE_AUTO && shufmode != SHUFFLE_NORMAL) {
+            shufmode = SHUFFLE_NONE;
+        }
+        // restore auto shuffle history
+        restoreHistory(mAutoHistory, saved.autoHistory);
+        if (shufmode == SHUFFLE_AUTO) {
+            if (!makeAutoShuffleList()) {
                 shufmode = SHUFFLE_NONE;
             }
-            // restore shuffle history
-            q = mPreferences.getString("history", "");
-            qlen = q != null ? q.length() : 0;
-            if (qlen > 1) {
-                plen = 0;
-                n = 0;
-                shift = 0;
-                mHistory.clear();
-                for (int i = 0; i < qlen; i++) {
-                    final char c = q.charAt(i);
-                    if (c == ';') {
-                        if (n >= mPlayListLen) {
-                            mHistory.clear();
-                            break;
-                        }
-                        mHistory.add(n);
-                        n = 0;
-                        shift = 0;
-                    } else {
-                        if (c >= '0' && c <= '9') {
-                            n += c - '0' << shift;
-                        } else if (c >= 'a' && c <= 'f') {
-                            n += 10 + c - 'a' << shift;
-                        } else {
-                            mHistory.clear();
-                            break;
-                        }
-                        shift += 4;
-                    }
-                }
+        }
+        mShuffleMode = shufmode;
+    }
+
+    private void restoreHistory(final LinkedList<Integer> history, final int[] saved) {
+        history.clear();
+        for (int n : saved) {
+            if (n < 0 || n >= mPlayListLen) {
+                history.clear();
+                return;
             }
-            // restore auto shuffle history
-            q = mPreferences.getString("autohistory", "");
-            qlen = q != null ? q.length() : 0;
-            if (qlen > 1) {
-                plen = 0;
+            history.add(n);
+        }
+    }
+
+    /**
+     * Reads the queue saved as reverse hex strings by schema version 2
+     * and removes it from the preferences, the next save writes the journal.
+     */
+    private QueueJournal.Snapshot migrateLegacyQueue() {
+        final int cardId = mPreferences.getInt("cardid", mCardId);
+        final long[] queue = parseLegacyList(mPreferences.getString("queue", ""));
+        final long[] history = parseLegacyList(mPreferences.getString("history", ""));
+        final long[] autoHistory = parseLegacyList(mPreferences.getString("autohistory", ""));
+        mPreferences.edit()
+                .remove("queue")
+                .remove("history")
+                .remove("autohistory")
+                .remove("cardid")
+                .apply();
+        if (queue == null) {
+            return null;
+        }
+        return new QueueJournal.Snapshot(cardId, queue, queue.length,
+                toIntArray(history), toIntArray(autoHistory));
+    }
+
+    /**
+     * @return the ids in a ';' separated reverse hex string or null if it is malformed
+     */
+    private static long[] parseLegacyList(final String q) {
+        final int qlen = q != null ? q.length() : 0;
+        if (qlen <= 1) {
+            return null;
+        }
+        long[] list = new long[16];
+        int plen = 0;
+        long n = 0;
+        int shift = 0;
+        for (int i = 0; i < qlen; i++) {
+            final char c = q.charAt(i);
+            if (c == ';') {
+                if (plen == list.length) {
+                    final long[] grown = new long[plen * 2];
+                    System.arraycopy(list, 0, grown, 0, plen);
+                    list = grown;
+                }
+                list[plen++] = n;
                 n = 0;
                 shift = 0;
-                mAutoHistory.clear();
-                for (int i = 0; i < qlen; i++) {
-                    final char c = q.charAt(i);
-                    if (c == ';') {
-                        if (n >= mPlayListLen) {
-                            mAutoHistory.clear();
-                            break;
-                        }
-                        mAutoHistory.add(n);
-                        n = 0;
-                        shift = 0;
-                    } else {
-                        if (c >= '0' && c <= '9') {
-                            n += c - '0' << shift;
-                        } else if (c >= 'a' && c <= 'f') {
-                            n += 10 + c - 'a' << shift;
-                        } else {
-                            mAutoHistory.clear();
-                            break;
-                        }
-                        shift += 4;
-                    }
-                }
-            }
-            if (shufmode == SHUFFLE_AUTO) {
-                if (!makeAutoShuffleList()) {
-                    shufmode = SHUFFLE_NONE;
+            } else {
+                if (c >= '0' && c <= '9') {
+                    n += (long) (c - '0') << shift;
+                } else if (c >= 'a' && c <= 'f') {
+                    n += (long) (10 + c - 'a') << shift;
+                } else {
+                    return null;
                 }
+                shift += 4;
             }
-            mShuffleMode = shufmode;
         }
+        final long[] out = new long[plen];
+        System.arraycopy(list, 0, out, 0, plen);
+        return out;
+    }
+
+    private static int[] toIntArray(final long[] list) {
+        if (list == null) {
+            return new int[0];
+        }
+        final int[] out = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            out[i] = (int) list[i];
+        }
+        return out;
     }
 
     /**
@@ -1771,8 +1797,8 @@ public class MusicPlaybackService extends Service {
                 return false;
             }
 
-            // If mCursor is null, try to associate path with a database cursor
-            if (mCursor == null || mCursor.isClosed()) {
+            // If we have no current song, try to associate path with a MediaStore song
+            if (mCurrentSong == null) {
                 Uri uri;
                 String where;
                 String selectionArgs[];
@@ -1788,23 +1814,22 @@ public class MusicPlaybackService extends Service {
                     };
                 }
                 try {
-                    updateCursor(uri, where, selectionArgs);
-                    if (mCursor != null) {
-                        if (mCursor.getCount() == 0) {
-                            closeCursor();
-                        } else {
-                            ensurePlayListCapacity(1);
-                            mPlayListLen = 1;
-                            mPlayList[0] = mCursor.getLong(IDCOLIDX);
-                            mPlayPos = 0;
-                        }
+                    updateCurrentSongFromMediaStore(uri, where, selectionArgs);
+                    if (mCurrentSong != null) {
+                        ensurePlayListCapacity(1);
+                        mPlayListLen = 1;
+                        mPlayList[0] = mCurrentSong.recentId;
+                        mPlayPos = 0;
+                        mQueueJournal.clear();
+                        mQueueJournal.insert(mPlayList, 0, 1, 0);
+                        mShuffleOrder.reset(1);
                     }
                 } catch (final UnsupportedOperationException ex) {
                 }
             }
             final IMusicPlayer player = getPlayer();
-            if (mCursor != null) {
-                if (player != null) player.setDataSource(mCursor);
+            if (mCurrentSong != null) {
+                if (player != null) player.setDataSource(mCurrentSong);
             } else {
                 if (player != null) player.setDataSource(path);
             }
@@ -1912,12 +1937,11 @@ public class MusicPlaybackService extends Service {
      */
     public Uri getDataUri() {
         synchronized (this) {
-            ensureCursor();
-            final String uri = CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.DATA_URI);
-            if (TextUtils.isEmpty(uri)) {
+            ensureCurrentSong();
+            if (mCurrentSong == null || TextUtils.isEmpty(mCurrentSong.dataUri.toString())) {
                 return null;
             } else {
-                return Uri.parse(uri);
+                return mCurrentSong.dataUri;
             }
         }
     }
@@ -1929,8 +1953,8 @@ public class MusicPlaybackService extends Service {
      */
     public String getAlbumName() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.ALBUM_NAME);
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.albumName : null;
         }
     }
 
@@ -1941,8 +1965,8 @@ public class MusicPlaybackService extends Service {
      */
     public String getTrackName() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.NAME);
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.name : null;
         }
     }
 
@@ -1953,8 +1977,8 @@ public class MusicPlaybackService extends Service {
      */
     public String getArtistName() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.ARTIST_NAME);
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.artistName : null;
         }
     }
 
@@ -1965,8 +1989,8 @@ public class MusicPlaybackService extends Service {
      */
     public String getAlbumArtistName() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.ALBUM_ARTIST_NAME);
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.albumArtistName : null;
         }
     }
 
@@ -1977,8 +2001,19 @@ public class MusicPlaybackService extends Service {
      */
     public long getAlbumId() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getLongOrZero(mCursor, MusicStore.Cols.ALBUM_IDENTITY);
+            ensureCurrentSong();
+            return mCurrentSong != null ? decodeAlbumId(mCurrentSong.albumIdentity) : 0;
+        }
+    }
+
+    private static long decodeAlbumId(String albumIdentity) {
+        if (albumIdentity == null) {
+            return 0;
+        }
+        try {
+            return Long.decode(albumIdentity);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
@@ -2001,8 +2036,8 @@ public class MusicPlaybackService extends Service {
             return -1;
         }
         synchronized (this) {
-            ensureCursor();
-            String id = CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.IDENTITY);
+            ensureCurrentSong();
+            String id = mCurrentSong != null ? mCurrentSong.identity : null;
             try {
                 return Long.decode(id);
             } catch (NumberFormatException|NullPointerException e) {
@@ -2018,8 +2053,8 @@ public class MusicPlaybackService extends Service {
      */
     public String getMimeType() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.MIME_TYPE);
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.mimeType : null;
         }
     }
 
@@ -2029,13 +2064,8 @@ public class MusicPlaybackService extends Service {
      */
     public Uri getArtworkUri() {
         synchronized (this) {
-            ensureCursor();
-            final String uri = CursorHelpers.getStringOrNull(mCursor, MusicStore.Cols.ARTWORK_URI);
-            if (TextUtils.isEmpty(uri)) {
-                return null;
-            } else {
-                return Uri.parse(uri);
-            }
+            ensureCurrentSong();
+            return mCurrentSong != null ? mCurrentSong.artworkUri : null;
         }
     }
 
@@ -2051,13 +2081,49 @@ public class MusicPlaybackService extends Service {
         return new ArtInfo(albumartist, getAlbumName(), getArtworkUri());
     }
 
+    /**
+     * @return metadata of the current track in one piece, built once per track change
+     */
+    public NowPlayingInfo getNowPlaying() {
+        final NowPlayingInfo nowPlaying = mNowPlaying;
+        return nowPlaying != null ? nowPlaying : updateNowPlaying();
+    }
+
+    /**
+     * Takes a new snapshot of the current track
+     */
+    private NowPlayingInfo updateNowPlaying() {
+        final NowPlayingInfo.Builder b = new NowPlayingInfo.Builder()
+                .setVersion(mNowPlayingVersion.incrementAndGet());
+        synchronized (this) {
+            ensureCurrentSong();
+            b.setAudioId(getAudioId());
+            final RecentSong song = mCurrentSong;
+            if (song != null) {
+                b.setTrackName(song.name)
+                        .setArtistName(song.artistName)
+                        .setAlbumName(song.albumName)
+                        .setAlbumArtistName(song.albumArtistName)
+                        .setAlbumId(decodeAlbumId(song.albumIdentity))
+                        .setDataUri(song.dataUri == null || TextUtils.isEmpty(song.dataUri.toString())
+                                ? null : song.dataUri)
+                        .setArtworkUri(song.artworkUri)
+                        .setMimeType(song.mimeType)
+                        .setFromSDCard(song.isLocal);
+            }
+        }
+        final NowPlayingInfo nowPlaying = b.build();
+        mNowPlaying = nowPlaying;
+        return nowPlaying;
+    }
+
     /**
      *
      */
     public boolean isFromSDCard() {
         synchronized (this) {
-            ensureCursor();
-            return CursorHelpers.getIntOrZero(mCursor, MusicStore.Cols.ISLOCAL) == 1;
+            ensureCurrentSong();
+            return mCurrentSong != null && mCurrentSong.isLocal;
         }
     }
 
@@ -2177,12 +2243,12 @@ public class MusicPlaybackService extends Service {
                 addToPlayList(list, -1);
                 notifyChange(QUEUE_CHANGED);
             }
+            mShuffleOrder.reset(mPlayListLen);
             if (position >= 0) {
                 mPlayPos = position;
             } else {
-                mPlayPos = mShuffler.nextInt(mPlayListLen);
+                mPlayPos = mShuffleOrder.next(true);
             }
-            mHistory.clear();
             openCurrentAndNext();
             if (oldId != getAudioId()) {
                 notifyChange(META_CHANGED);
@@ -2315,12 +2381,13 @@ public class MusicPlaybackService extends Service {
                 return; //Ignore request
             }
             if (mShuffleMode == SHUFFLE_NORMAL) {
-                // Go to previously-played track and remove it from the history
-                final int histsize = mHistory.size();
-                if (histsize == 0) {
+                // Go to previously-played track
+                mShuffleOrder.setCurrent(mPlayPos);
+                final int pos = mShuffleOrder.previous();
+                if (pos < 0) {
                     return;
                 }
-                mPlayPos = mHistory.remove(histsize - 1);
+                mPlayPos = pos;
             } else {
                 if (mPlayPos > 0) {
                     mPlayPos--;
@@ -2388,6 +2455,8 @@ public class MusicPlaybackService extends Service {
                     mPlayPos++;
                 }
             }
+            mQueueJournal.move(index1, index2);
+            mShuffleOrder.move(index1, index2);
             notifyChange(QUEUE_CHANGED);
             setNextTrack();
         }
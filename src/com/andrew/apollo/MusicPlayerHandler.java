@@ -68,6 +68,12 @@ public final class MusicPlayerHandler extends Handler {
      */
     public static final int FADEUP = 7;
 
+    /**
+     * Indicates the position may have jumped without a state change,
+     * arg1 is 1 while the player is buffering
+     */
+    public static final int PROGRESS_CHANGED = 8;
+
     private final WeakReference<MusicPlaybackService> mService;
     private float mCurrentVolume = 1.0f;
 
@@ -135,6 +141,9 @@ public final class MusicPlayerHandler extends Handler {
             case RELEASE_WAKELOCK:
                 service.releaseWakeLock();
                 break;
+            case PROGRESS_CHANGED:
+                service.setBuffering(msg.arg1 == 1);
+                break;
             case FOCUSCHANGE:
                 if (D) Log.d(TAG, "Received audio focus change event " + msg.arg1);
                 switch (msg.arg1) {
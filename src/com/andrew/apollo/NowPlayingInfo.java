@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.text.TextUtils;
+
+import org.opensilk.music.api.meta.ArtInfo;
+
+/**
+ * Immutable metadata of the current track. The service builds one per track change
+ * and hands the same instance to every caller. Each snapshot gets a new version,
+ * which is also sent with the meta broadcasts so clients can tell whether the copy
+ * they hold is current without asking.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class NowPlayingInfo implements Parcelable {
+
+    /** Broadcast extra holding the version of the current snapshot */
+    public static final String EXTRA_VERSION = "nowplaying_version";
+
+    public static final NowPlayingInfo EMPTY = new Builder().build();
+
+    public final long version;
+    public final long audioId;
+    public final long albumId;
+    public final String trackName;
+    public final String artistName;
+    public final String albumName;
+    public final String albumArtistName;
+    public final Uri dataUri;
+    public final Uri artworkUri;
+    public final String mimeType;
+    public final boolean fromSDCard;
+
+    NowPlayingInfo(long version, long audioId, long albumId, String trackName, String artistName,
+                   String albumName, String albumArtistName, Uri dataUri, Uri artworkUri,
+                   String mimeType, boolean fromSDCard) {
+        this.version = version;
+        this.audioId = audioId;
+        this.albumId = albumId;
+        this.trackName = trackName;
+        this.artistName = artistName;
+        this.albumName = albumName;
+        this.albumArtistName = albumArtistName;
+        this.dataUri = dataUri;
+        this.artworkUri = artworkUri;
+        this.mimeType = mimeType;
+        this.fromSDCard = fromSDCard;
+    }
+
+    /**
+     * @return same as {@link MusicPlaybackService#getCurrentArtInfo()}
+     */
+    public ArtInfo getArtInfo() {
+        final String artist = TextUtils.isEmpty(albumArtistName) ? artistName : albumArtistName;
+        return new ArtInfo(artist, albumName, artworkUri);
+    }
+
+    @Override
+    public String toString() {
+        return "NowPlayingInfo{version=" + version + ", audioId=" + audioId
+                + ", track=" + trackName + ", artist=" + artistName + "}";
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(version);
+        dest.writeLong(audioId);
+        dest.writeLong(albumId);
+        dest.writeString(trackName);
+        dest.writeString(artistName);
+        dest.writeString(albumName);
+        dest.writeString(albumArtistName);
+        dest.writeString(dataUri != null ? dataUri.toString() : null);
+        dest.writeString(artworkUri != null ? artworkUri.toString() : null);
+        dest.writeString(mimeType);
+        dest.writeInt(fromSDCard ? 1 : 0);
+    }
+
+    public static final Creator<NowPlayingInfo> CREATOR = new Creator<NowPlayingInfo>() {
+        @Override
+        public NowPlayingInfo createFromParcel(Parcel source) {
+            return new Builder()
+                    .setVersion(source.readLong())
+                    .setAudioId(source.readLong())
+                    .setAlbumId(source.readLong())
+                    .setTrackName(source.readString())
+                    .setArtistName(source.readString())
+                    .setAlbumName(source.readString())
+                    .setAlbumArtistName(source.readString())
+                    .setDataUri(parseUri(source.readString()))
+                    .setArtworkUri(parseUri(source.readString()))
+                    .setMimeType(source.readString())
+                    .setFromSDCard(source.readInt() == 1)
+                    .build();
+        }
+
+        @Override
+        public NowPlayingInfo[] newArray(int size) {
+            return new NowPlayingInfo[size];
+        }
+    };
+
+    static Uri parseUri(String s) {
+        return s != null ? Uri.parse(s) : null;
+    }
+
+    public static final class Builder {
+        private long version;
+        private long audioId = -1;
+        private long albumId;
+        private String trackName;
+        private String artistName;
+        private String albumName;
+        private String albumArtistName;
+        private Uri dataUri;
+        private Uri artworkUri;
+        private String mimeType;
+        private boolean fromSDCard;
+
+        public Builder setVersion(long version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder setAudioId(long audioId) {
+            this.audioId = audioId;
+            return this;
+        }
+
+        public Builder setAlbumId(long albumId) {
+            this.albumId = albumId;
+            return this;
+        }
+
+        public Builder setTrackName(String trackName) {
+            this.trackName = trackName;
+            return this;
+        }
+
+        public Builder setArtistName(String artistName) {
+            this.artistName = artistName;
+            return this;
+        }
+
+        public Builder setAlbumName(String albumName) {
+            this.albumName = albumName;
+            return this;
+        }
+
+        public Builder setAlbumArtistName(String albumArtistName) {
+            this.albumArtistName = albumArtistName;
+            return this;
+        }
+
+        public Builder setDataUri(Uri dataUri) {
+            this.dataUri = dataUri;
+            return this;
+        }
+
+        public Builder setArtworkUri(Uri artworkUri) {
+            this.artworkUri = artworkUri;
+            return this;
+        }
+
+        public Builder setMimeType(String mimeType) {
+            this.mimeType = mimeType;
+            return this;
+        }
+
+        public Builder setFromSDCard(boolean fromSDCard) {
+            this.fromSDCard = fromSDCard;
+            return this;
+        }
+
+        public NowPlayingInfo build() {
+            return new NowPlayingInfo(version, audioId, albumId, trackName, artistName, albumName,
+                    albumArtistName, dataUri, artworkUri, mimeType, fromSDCard);
+        }
+    }
+}
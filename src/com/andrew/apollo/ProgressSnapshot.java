@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo;
+
+import android.content.Intent;
+import android.os.SystemClock;
+
+/**
+ * Playback position at a point in time, published by the service with
+ * {@link MusicPlaybackService#PROGRESS_CHANGED} whenever playback jumps
+ * (play, pause, seek, track change, buffering, errors). Between those,
+ * clients extrapolate the position themselves instead of asking the service.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class ProgressSnapshot {
+
+    public static final int STATE_NONE = 0;
+    public static final int STATE_PAUSED = 1;
+    public static final int STATE_PLAYING = 2;
+
+    static final String EXTRA_STATE = "progress_state";
+    static final String EXTRA_POSITION = "progress_position";
+    static final String EXTRA_DURATION = "progress_duration";
+    static final String EXTRA_TIMESTAMP = "progress_timestamp";
+    static final String EXTRA_SPEED = "progress_speed";
+
+    public static final ProgressSnapshot EMPTY = new ProgressSnapshot(STATE_NONE, -1, -1, 0, 0);
+
+    public final int state;
+    /** Position in millis when the snapshot was taken, -1 if unknown */
+    public final long position;
+    /** Duration in millis, -1 if unknown */
+    public final long duration;
+    /** {@link SystemClock#elapsedRealtime()} when the snapshot was taken */
+    public final long timestamp;
+    /** Millis of playback per millis of real time */
+    public final float speed;
+
+    public ProgressSnapshot(int state, long position, long duration, long timestamp, float speed) {
+        this.state = state;
+        this.position = position;
+        this.duration = duration;
+        this.timestamp = timestamp;
+        this.speed = speed;
+    }
+
+    public boolean isPlaying() {
+        return state == STATE_PLAYING;
+    }
+
+    /**
+     * @return position extrapolated to now
+     */
+    public long getPosition() {
+        return getPosition(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @param now time in {@link SystemClock#elapsedRealtime()} base
+     * @return position extrapolated to now, never past the duration, -1 if unknown
+     */
+    public long getPosition(long now) {
+        if (position < 0) {
+            return -1;
+        }
+        long pos = position;
+        if (isPlaying() && now > timestamp) {
+            pos += (long) ((now - timestamp) * speed);
+        }
+        if (duration > 0 && pos > duration) {
+            pos = duration;
+        }
+        return pos;
+    }
+
+    /**
+     * @return position in thousandths of the duration, or 1000 if unknown
+     */
+    public int getProgress(long now) {
+        final long pos = getPosition(now);
+        if (pos > 0 && duration > 0) {
+            return (int) (1000 * pos / duration);
+        }
+        return 1000;
+    }
+
+    public Intent toIntent(String action) {
+        return new Intent(action)
+                .putExtra(EXTRA_STATE, state)
+                .putExtra(EXTRA_POSITION, position)
+                .putExtra(EXTRA_DURATION, duration)
+                .putExtra(EXTRA_TIMESTAMP, timestamp)
+                .putExtra(EXTRA_SPEED, speed);
+    }
+
+    public static ProgressSnapshot fromIntent(Intent intent) {
+        if (intent == null || !intent.hasExtra(EXTRA_STATE)) {
+            return EMPTY;
+        }
+        return new ProgressSnapshot(
+                intent.getIntExtra(EXTRA_STATE, STATE_NONE),
+                intent.getLongExtra(EXTRA_POSITION, -1),
+                intent.getLongExtra(EXTRA_DURATION, -1),
+                intent.getLongExtra(EXTRA_TIMESTAMP, 0),
+                intent.getFloatExtra(EXTRA_SPEED, 0));
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressSnapshot{state=" + state + ", position=" + position + ", duration=" + duration
+                + ", timestamp=" + timestamp + ", speed=" + speed + "}";
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Append only binary store for the play queue. Edits to the queue are written
+ * as small insert/remove/move records instead of rewriting the whole queue, and
+ * the file is compacted into a single snapshot once the records outgrow it.
+ *
+ * File layout, big endian:
+ * <pre>
+ *   header:   int magic, int version, int cardId
+ *   records:  byte op, payload
+ * </pre>
+ * All disk io happens on a private thread, the public methods only queue work
+ * so they are safe to call while holding the service lock.
+ *
+ * Created by drew on 1/12/15.
+ */
+public class QueueJournal {
+
+    static final int MAGIC = 0x4f51554a; // OQUJ
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+
+    static final byte OP_SNAPSHOT = 1;
+    static final byte OP_CLEAR = 2;
+    static final byte OP_INSERT = 3;
+    static final byte OP_REMOVE = 4;
+    static final byte OP_MOVE = 5;
+    static final byte OP_HISTORY = 6;
+    static final byte OP_AUTO_HISTORY = 7;
+
+    /** Compact after this many records regardless of size */
+    static final int COMPACT_MAX_RECORDS = 1024;
+    /** Records may grow to this or the size of the snapshot before we compact */
+    static final long COMPACT_MIN_BYTES = 64 * 1024;
+
+    static final int[] EMPTY_HISTORY = new int[0];
+
+    /**
+     * Queue state as read from disk
+     */
+    public static class Snapshot {
+        public final int cardId;
+        public final long[] queue;
+        public final int length;
+        public final int[] history;
+        public final int[] autoHistory;
+
+        Snapshot(int cardId, long[] queue, int length, int[] history, int[] autoHistory) {
+            this.cardId = cardId;
+            this.queue = queue;
+            this.length = length;
+            this.history = history;
+            this.autoHistory = autoHistory;
+        }
+    }
+
+    final File mFile;
+    final File mTempFile;
+    final ExecutorService mExecutor;
+
+    // Guarded by this, mirrors what the file will contain once the executor catches up
+    boolean mNeedsSnapshot = true;
+    int mLength;
+    int mCardId;
+    int[] mHistory = EMPTY_HISTORY;
+    int[] mAutoHistory = EMPTY_HISTORY;
+    int mRecords;
+    long mRecordBytes;
+    long mSnapshotBytes;
+
+    // Set by the executor when a write fails so the next commit rewrites the file
+    volatile boolean mWriteFailed;
+    // Only touched on the executor
+    DataOutputStream mOut;
+
+    public QueueJournal(File file) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "QueueJournal");
+                t.setPriority(Thread.MIN_PRIORITY);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Reads the journal, blocking until any pending writes have finished.
+     * @return the stored queue or null if there is none or it is unreadable
+     */
+    public synchronized Snapshot load() {
+        final Future<byte[]> f = mExecutor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                closeOutput();
+                if (!mFile.exists()) {
+                    return null;
+                }
+                return readFully(mFile);
+            }
+        });
+        byte[] data;
+        try {
+            data = f.get();
+        } catch (InterruptedException|ExecutionException e) {
+            Timber.w(e, "Unable to read queue journal");
+            data = null;
+        }
+        final Parser p = new Parser();
+        final Snapshot s = p.parse(data);
+        if (s == null) {
+            mNeedsSnapshot = true;
+            mLength = 0;
+            return null;
+        }
+        mCardId = s.cardId;
+        mLength = s.length;
+        mHistory = s.history;
+        mAutoHistory = s.autoHistory;
+        mRecords = p.records;
+        mRecordBytes = p.validEnd - p.snapshotEnd;
+        mSnapshotBytes = p.snapshotEnd;
+        // A torn tail must not have records appended after it
+        mNeedsSnapshot = p.validEnd != data.length || needsCompaction();
+        return s;
+    }
+
+    /**
+     * Records the queue was emptied
+     */
+    public synchronized void clear() {
+        mLength = 0;
+        if (mNeedsSnapshot) return;
+        append(new byte[]{OP_CLEAR});
+    }
+
+    /**
+     * Records count ids from list starting at offset were inserted at position
+     */
+    public synchronized void insert(long[] list, int offset, int count, int position) {
+        if (count <= 0) return;
+        position = Math.max(0, Math.min(position, mLength));
+        mLength += count;
+        if (mNeedsSnapshot) return;
+        ByteBuffer b = ByteBuffer.allocate(9 + count * 8);
+        b.put(OP_INSERT).putInt(position).putInt(count);
+        b.asLongBuffer().put(list, offset, count);
+        append(b.array());
+    }
+
+    /**
+     * Records the inclusive range first to last was removed
+     */
+    public synchronized void remove(int first, int last) {
+        if (first < 0) first = 0;
+        if (last >= mLength) last = mLength - 1;
+        if (last < first) return;
+        mLength -= last - first + 1;
+        if (mNeedsSnapshot) return;
+        append(ByteBuffer.allocate(9).put(OP_REMOVE).putInt(first).putInt(last).array());
+    }
+
+    /**
+     * Records the item at from was moved to to
+     */
+    public synchronized void move(int from, int to) {
+        if (from == to || mNeedsSnapshot) return;
+        append(ByteBuffer.allocate(9).put(OP_MOVE).putInt(from).putInt(to).array());
+    }
+
+    public synchronized void setHistory(int[] h) {
+        if (Arrays.equals(h, mHistory)) return;
+        mHistory = h;
+        if (mNeedsSnapshot) return;
+        append(encodeHistory(OP_HISTORY, h));
+    }
+
+    public synchronized void setAutoHistory(List<Integer> history) {
+        final int[] h = toArray(history);
+        if (Arrays.equals(h, mAutoHistory)) return;
+        mAutoHistory = h;
+        if (mNeedsSnapshot) return;
+        append(encodeHistory(OP_AUTO_HISTORY, h));
+    }
+
+    /**
+     * Makes all recorded edits durable. If the journal has drifted from the
+     * queue, the card changed, or it has grown too large a new snapshot
+     * replaces it.
+     */
+    public synchronized void commit(long[] queue, int length, int cardId) {
+        if (mWriteFailed) {
+            mWriteFailed = false;
+            mNeedsSnapshot = true;
+        }
+        if (mNeedsSnapshot || length != mLength || cardId != mCardId || needsCompaction()) {
+            if (!mNeedsSnapshot && length != mLength) {
+                Timber.w("Queue journal out of sync (%d != %d), rewriting", mLength, length);
+            }
+            final long[] ids = new long[length];
+            if (length > 0) System.arraycopy(queue, 0, ids, 0, length);
+            final byte[] data = encodeSnapshot(cardId, ids, mHistory, mAutoHistory);
+            mNeedsSnapshot = false;
+            mLength = length;
+            mCardId = cardId;
+            mRecords = 0;
+            mRecordBytes = 0;
+            mSnapshotBytes = data.length;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeSnapshot(data);
+                }
+            });
+        } else {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (mOut != null) mOut.flush();
+                    } catch (IOException e) {
+                        Timber.w(e, "Unable to flush queue journal");
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Flushes any pending writes and stops the writer, the journal
+     * cannot be used afterwards.
+     */
+    public synchronized void close() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+            }
+        });
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean needsCompaction() {
+        return mRecords >= COMPACT_MAX_RECORDS
+                || mRecordBytes > Math.max(COMPACT_MIN_BYTES, mSnapshotBytes);
+    }
+
+    void append(final byte[] record) {
+        mRecords++;
+        mRecordBytes += record.length;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (mOut == null) {
+                        mOut = new DataOutputStream(new BufferedOutputStream(
+                                new FileOutputStream(mFile, true)));
+                    }
+                    mOut.write(record);
+                } catch (IOException e) {
+                    Timber.w(e, "Unable to append to queue journal");
+                    closeOutput();
+                    mWriteFailed = true;
+                }
+            }
+        });
+    }
+
+    /*
+     * Executor methods
+     */
+
+    void writeSnapshot(byte[] data) {
+        closeOutput();
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(mTempFile);
+            fos.write(data);
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            if (!mTempFile.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + mTempFile + " to " + mFile);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to write queue snapshot");
+            mWriteFailed = true;
+        } finally {
+            if (fos != null) {
+                try { fos.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    void closeOutput() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                Timber.w(e, "Unable to close queue journal");
+            }
+            mOut = null;
+        }
+    }
+
+    /*
+     * Encoding
+     */
+
+    static byte[] encodeSnapshot(int cardId, long[] ids, int[] history, int[] autoHistory) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE + 5 + ids.length * 8
+                + 5 + history.length * 4 + 5 + autoHistory.length * 4);
+        b.putInt(MAGIC).putInt(VERSION).putInt(cardId);
+        b.put(OP_SNAPSHOT).putInt(ids.length);
+        b.asLongBuffer().put(ids);
+        b.position(b.position() + ids.length * 8);
+        putHistory(b, OP_HISTORY, history);
+        putHistory(b, OP_AUTO_HISTORY, autoHistory);
+        return b.array();
+    }
+
+    static byte[] encodeHistory(byte op, int[] history) {
+        ByteBuffer b = ByteBuffer.allocate(5 + history.length * 4);
+        putHistory(b, op, history);
+        return b.array();
+    }
+
+    static void putHistory(ByteBuffer b, byte op, int[] history) {
+        b.put(op).putInt(history.length);
+        b.asIntBuffer().put(history);
+        b.position(b.position() + history.length * 4);
+    }
+
+    static int[] toArray(List<Integer> list) {
+        if (list == null || list.isEmpty()) {
+            return EMPTY_HISTORY;
+        }
+        final int[] a = new int[list.size()];
+        int ii = 0;
+        for (Integer i : list) {
+            a[ii++] = i;
+        }
+        return a;
+    }
+
+    static byte[] readFully(File file) throws IOException {
+        final long len = file.length();
+        if (len > Integer.MAX_VALUE) {
+            throw new IOException("Queue journal too large " + len);
+        }
+        final byte[] data = new byte[(int) len];
+        InputStream in = new FileInputStream(file);
+        try {
+            int off = 0;
+            while (off < data.length) {
+                int n = in.read(data, off, data.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            if (off < data.length) {
+                final byte[] shorter = new byte[off];
+                System.arraycopy(data, 0, shorter, 0, off);
+                return shorter;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replays the journal into a queue. Reading stops at the first incomplete
+     * or unknown record so a crash mid write loses at most the last edit.
+     */
+    static class Parser {
+        int records;
+        int validEnd;
+        int snapshotEnd;
+
+        long[] queue = new long[16];
+        int length;
+        int[] history = EMPTY_HISTORY;
+        int[] autoHistory = EMPTY_HISTORY;
+
+        Snapshot parse(byte[] data) {
+            if (data == null || data.length < HEADER_SIZE) {
+                return null;
+            }
+            final ByteBuffer b = ByteBuffer.wrap(data);
+            if (b.getInt() != MAGIC || b.getInt() != VERSION) {
+                return null;
+            }
+            final int cardId = b.getInt();
+            validEnd = snapshotEnd = b.position();
+            try {
+                while (b.hasRemaining()) {
+                    if (!apply(b)) break;
+                    validEnd = b.position();
+                }
+            } catch (BufferUnderflowException|IllegalArgumentException e) {
+                // torn or corrupt tail, keep what we have
+            }
+            return new Snapshot(cardId, queue, length, history, autoHistory);
+        }
+
+        boolean apply(ByteBuffer b) {
+            final byte op = b.get();
+            switch (op) {
+                case OP_SNAPSHOT: {
+                    final int n = readCount(b, 8);
+                    queue = new long[Math.max(16, n)];
+                    b.asLongBuffer().get(queue, 0, n);
+                    b.position(b.position() + n * 8);
+                    length = n;
+                    records = 0;
+                    snapshotEnd = b.position();
+                    return true;
+                }
+                case OP_CLEAR: {
+                    length = 0;
+                    break;
+                }
+                case OP_INSERT: {
+                    int pos = b.getInt();
+                    final int n = readCount(b, 8);
+                    pos = Math.max(0, Math.min(pos, length));
+                    ensureCapacity(length + n);
+                    System.arraycopy(queue, pos, queue, pos + n, length - pos);
+                    b.asLongBuffer().get(queue, pos, n);
+                    b.position(b.position() + n * 8);
+                    length += n;
+                    break;
+                }
+                case OP_REMOVE: {
+                    int first = b.getInt();
+                    int last = b.getInt();
+                    if (first < 0) first = 0;
+                    if (last >= length) last = length - 1;
+                    if (last >= first) {
+                        System.arraycopy(queue, last + 1, queue, first, length - last - 1);
+                        length -= last - first + 1;
+                    }
+                    break;
+                }
+                case OP_MOVE: {
+                    final int from = b.getInt();
+                    final int to = b.getInt();
+                    if (from >= 0 && from < length && to >= 0 && to < length) {
+                        final long tmp = queue[from];
+                        if (from < to) {
+                            System.arraycopy(queue, from + 1, queue, from, to - from);
+                        } else {
+                            System.arraycopy(queue, to, queue, to + 1, from - to);
+                        }
+                        queue[to] = tmp;
+                    }
+                    break;
+                }
+                case OP_HISTORY:
+                case OP_AUTO_HISTORY: {
+                    final int n = readCount(b, 4);
+                    final int[] h = new int[n];
+                    b.asIntBuffer().get(h);
+                    b.position(b.position() + n * 4);
+                    if (op == OP_HISTORY) {
+                        history = h;
+                    } else {
+                        autoHistory = h;
+                    }
+                    break;
+                }
+                default:
+                    return false;
+            }
+            records++;
+            return true;
+        }
+
+        static int readCount(ByteBuffer b, int width) {
+            final int n = b.getInt();
+            if (n < 0 || (long) n * width > b.remaining()) {
+                throw new IllegalArgumentException("Bad count " + n);
+            }
+            return n;
+        }
+
+        void ensureCapacity(int size) {
+            if (size > queue.length) {
+                final long[] grown = new long[size * 2];
+                System.arraycopy(queue, 0, grown, 0, length);
+                queue = grown;
+            }
+        }
+    }
+
+}
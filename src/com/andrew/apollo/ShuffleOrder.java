@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import java.util.Random;
+
+/**
+ * Shuffled play order over the queue positions, drawn lazily with Fisher-Yates.
+ *
+ * The order array is split in three: positions already played (up to and
+ * including the cursor), positions whose turn has been decided but not played
+ * yet, and an undrawn pool. Drawing the next position swaps a random pool
+ * entry into place so advancing and going back are O(1). The slot array is
+ * the inverse of order so we can find any position without a scan.
+ *
+ * Appends go straight into the pool, other queue edits renumber in a single
+ * pass over the primitive arrays.
+ *
+ * Created by drew on 1/12/15.
+ */
+public class ShuffleOrder {
+
+    final Random mRandom;
+
+    /** Queue positions in play order */
+    int[] mOrder = new int[16];
+    /** Index into mOrder for each queue position */
+    int[] mSlot = new int[16];
+    int mLength;
+    /** Index in mOrder of the current position, -1 if nothing played this cycle */
+    int mCursor = -1;
+    /** Entries below this index are decided, the rest is the undrawn pool */
+    int mDrawn;
+
+    public ShuffleOrder(Random random) {
+        mRandom = random;
+    }
+
+    public int size() {
+        return mLength;
+    }
+
+    /**
+     * @return the current queue position or -1
+     */
+    public int current() {
+        return mCursor >= 0 ? mOrder[mCursor] : -1;
+    }
+
+    /**
+     * Starts a new cycle over a queue of the given length, O(n)
+     */
+    public void reset(int length) {
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            mOrder[i] = i;
+            mSlot[i] = i;
+        }
+        mLength = length;
+        mCursor = -1;
+        mDrawn = 0;
+    }
+
+    /**
+     * Starts a new cycle and restores the played positions, oldest first,
+     * followed by the current position.
+     */
+    public void restore(int length, int[] history, int current) {
+        reset(length);
+        if (history != null) {
+            for (int pos : history) {
+                if (pos >= 0 && pos < mLength && mSlot[pos] > mCursor) {
+                    setCurrent(pos);
+                }
+            }
+        }
+        if (current >= 0 && current < mLength) {
+            setCurrent(current);
+        }
+    }
+
+    /**
+     * @return up to max positions played before the current one, oldest first
+     */
+    public int[] getHistory(int max) {
+        final int start = Math.max(0, mCursor - max);
+        final int len = Math.max(0, mCursor - start);
+        final int[] history = new int[len];
+        System.arraycopy(mOrder, start, history, 0, len);
+        return history;
+    }
+
+    /**
+     * Makes pos the current position. If it was already played this cycle
+     * a new cycle is started from it.
+     */
+    public void setCurrent(int pos) {
+        if (pos < 0 || pos >= mLength) {
+            return;
+        }
+        final int s = mSlot[pos];
+        if (s == mCursor) {
+            return;
+        }
+        if (s > mCursor) {
+            swap(s, mCursor + 1);
+            mCursor++;
+            if (mDrawn <= mCursor) {
+                mDrawn = mCursor + 1;
+            }
+        } else {
+            reset(mLength);
+            swap(mSlot[pos], 0);
+            mCursor = 0;
+            mDrawn = 1;
+        }
+    }
+
+    /**
+     * Decides the position after the current one without moving to it,
+     * repeated calls return the same position.
+     *
+     * @param wrap true to start a new cycle when every position has been played
+     * @return the next position or -1 if the cycle is over and wrap is false
+     */
+    public int peekNext(boolean wrap) {
+        if (mLength == 0) {
+            return -1;
+        }
+        if (mCursor + 1 >= mLength) {
+            if (!wrap) {
+                return -1;
+            }
+            final int current = current();
+            if (mLength == 1) {
+                return current;
+            }
+            reset(mLength);
+            if (current >= 0) {
+                swap(mSlot[current], 0);
+                mCursor = 0;
+                mDrawn = 1;
+            }
+        }
+        draw(mCursor + 1);
+        return mOrder[mCursor + 1];
+    }
+
+    /**
+     * Moves to the next position
+     * @return the new current position or -1
+     */
+    public int next(boolean wrap) {
+        final int pos = peekNext(wrap);
+        if (pos >= 0) {
+            setCurrent(pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Moves back to the previously played position
+     * @return the new current position or -1 if there is no history
+     */
+    public int previous() {
+        if (mCursor <= 0) {
+            return -1;
+        }
+        mCursor--;
+        return mOrder[mCursor];
+    }
+
+    /**
+     * Removes all positions
+     */
+    public void clear() {
+        mLength = 0;
+        mCursor = -1;
+        mDrawn = 0;
+    }
+
+    /**
+     * Count positions were inserted into the queue at position, the new
+     * positions join the undrawn pool. O(count) when appending.
+     */
+    public void insert(int position, int count) {
+        if (count <= 0) {
+            return;
+        }
+        position = Math.max(0, Math.min(position, mLength));
+        ensureCapacity(mLength + count);
+        if (position < mLength) {
+            for (int i = 0; i < mLength; i++) {
+                if (mOrder[i] >= position) {
+                    mOrder[i] += count;
+                    mSlot[mOrder[i]] = i;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mOrder[mLength + i] = position + i;
+            mSlot[position + i] = mLength + i;
+        }
+        mLength += count;
+    }
+
+    /**
+     * The inclusive range of positions first to last was removed from the queue
+     */
+    public void remove(int first, int last) {
+        if (first < 0) first = 0;
+        if (last >= mLength) last = mLength - 1;
+        if (last < first) {
+            return;
+        }
+        final int count = last - first + 1;
+        int cursor = mCursor;
+        int drawn = mDrawn;
+        int w = 0;
+        for (int i = 0; i < mLength; i++) {
+            int pos = mOrder[i];
+            if (pos >= first && pos <= last) {
+                if (i <= mCursor) cursor--;
+                if (i < mDrawn) drawn--;
+                continue;
+            }
+            if (pos > last) {
+                pos -= count;
+            }
+            mOrder[w] = pos;
+            mSlot[pos] = w;
+            w++;
+        }
+        mLength = w;
+        mCursor = cursor;
+        mDrawn = drawn;
+    }
+
+    /**
+     * The position from was moved to to, shifting the ones between. O(|to - from|)
+     */
+    public void move(int from, int to) {
+        if (from == to || from < 0 || to < 0 || from >= mLength || to >= mLength) {
+            return;
+        }
+        final int s = mSlot[from];
+        if (from < to) {
+            for (int pos = from; pos < to; pos++) {
+                mSlot[pos] = mSlot[pos + 1];
+                mOrder[mSlot[pos]] = pos;
+            }
+        } else {
+            for (int pos = from; pos > to; pos--) {
+                mSlot[pos] = mSlot[pos - 1];
+                mOrder[mSlot[pos]] = pos;
+            }
+        }
+        mSlot[to] = s;
+        mOrder[s] = to;
+    }
+
+    /**
+     * Fixes the entry at index i, picking it from the pool if needed
+     */
+    void draw(int i) {
+        while (mDrawn <= i) {
+            swap(mDrawn + mRandom.nextInt(mLength - mDrawn), mDrawn);
+            mDrawn++;
+        }
+    }
+
+    /**
+     * Swaps the order entries at the two indexes
+     */
+    void swap(int i, int j) {
+        if (i == j) return;
+        final int a = mOrder[i];
+        final int b = mOrder[j];
+        mOrder[i] = b;
+        mOrder[j] = a;
+        mSlot[b] = i;
+        mSlot[a] = j;
+    }
+
+    void ensureCapacity(int size) {
+        if (size > mOrder.length) {
+            final int cap = Math.max(size, mOrder.length * 2);
+            final int[] order = new int[cap];
+            final int[] slot = new int[cap];
+            System.arraycopy(mOrder, 0, order, 0, mLength);
+            System.arraycopy(mSlot, 0, slot, 0, mLength);
+            mOrder = order;
+            mSlot = slot;
+        }
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.andrew.apollo;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import com.andrew.apollo.model.RecentSong;
+import com.andrew.apollo.provider.MusicProvider;
+import com.andrew.apollo.provider.MusicProviderUtil;
+import com.andrew.apollo.provider.MusicStore;
+
+import org.opensilk.music.util.CursorHelpers;
+import org.opensilk.music.util.Projections;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Keeps the recents rows for the tracks around the play position in memory
+ * so track changes and metadata updates don't have to query the provider.
+ * The cache is warmed in the background. Changes to a single row evict
+ * that row, anything broader marks the whole cache stale so rows are
+ * reloaded one at a time as they are asked for. Play counts bumped through
+ * {@link #recordPlayed(long)} are written into the cached row and the
+ * notification for our own write is ignored.
+ *
+ * Created by drew on 1/12/15.
+ */
+public class SongMetadataCache {
+
+    static final int MAX_SIZE = 128;
+    /** Max ids per query so the IN clause stays a sane size */
+    static final int QUERY_BATCH = 200;
+
+    final Context mContext;
+    final LruCache<Long, Entry> mCache = new LruCache<>(MAX_SIZE);
+    final Scheduler.Worker mWorker = Schedulers.io().createWorker();
+    /** Bumped on every broad change, entries loaded before it are stale */
+    final AtomicInteger mGeneration = new AtomicInteger();
+    /** Rows we updated ourselves, their next notification is already reflected in the cache */
+    final Set<Long> mSelfWrites = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    static class Entry {
+        final RecentSong song;
+        final int generation;
+
+        Entry(RecentSong song, int generation) {
+            this.song = song;
+            this.generation = generation;
+        }
+    }
+
+    final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Pre jb or no uri, we dont know what changed, if we are
+            // waiting on our own write assume this is it
+            if (!consumeAnySelfWrite()) {
+                invalidateAll();
+            }
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            final long id = parseId(uri);
+            if (id >= 0) {
+                if (!mSelfWrites.remove(id)) {
+                    invalidate(id);
+                }
+            } else {
+                invalidateAll();
+            }
+        }
+    };
+
+    public SongMetadataCache(Context context) {
+        mContext = context;
+    }
+
+    public void register() {
+        mContext.getContentResolver().registerContentObserver(MusicProvider.RECENTS_URI, true, mObserver);
+    }
+
+    public void unregister() {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mWorker.unsubscribe();
+        mCache.evictAll();
+    }
+
+    /**
+     * @return the song, querying the provider if it isn't cached, or null if it doesn't exist
+     */
+    public RecentSong get(long id) {
+        if (id < 0) {
+            return null;
+        }
+        Entry entry = mCache.get(id);
+        if (!isFresh(entry)) {
+            Timber.v("Metadata cache miss for %d", id);
+            load(new long[]{id});
+            entry = mCache.get(id);
+        }
+        return entry != null ? entry.song : null;
+    }
+
+    /**
+     * @return the song if cached, possibly stale, never touches the provider
+     */
+    public RecentSong peek(long id) {
+        final Entry entry = mCache.get(id);
+        return entry != null ? entry.song : null;
+    }
+
+    /**
+     * Loads the ids not yet cached in the background
+     */
+    public void warm(long[] ids) {
+        final long[] missing = new long[ids.length];
+        int count = 0;
+        for (long id : ids) {
+            if (id >= 0 && !isFresh(mCache.get(id))) {
+                missing[count++] = id;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        final long[] toLoad = new long[count];
+        System.arraycopy(missing, 0, toLoad, 0, count);
+        mWorker.schedule(new Action0() {
+            @Override
+            public void call() {
+                load(toLoad);
+            }
+        });
+    }
+
+    /**
+     * Bumps the play count and last played time of the row in the provider,
+     * when the row is cached the new values are written into it so the
+     * change doesn't cost a reload.
+     */
+    public void recordPlayed(long id) {
+        if (id < 0) {
+            return;
+        }
+        final Entry entry = mCache.get(id);
+        if (!isFresh(entry)) {
+            // We dont know the current count, let the provider work it out
+            MusicProviderUtil.updatePlaycount(mContext, id);
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final RecentSong played = withPlayed(entry.song, entry.song.playCount + 1, now);
+        mCache.put(id, new Entry(played, entry.generation));
+        // Before the write, the notification can arrive before update returns
+        mSelfWrites.add(id);
+        if (!MusicProviderUtil.setPlaycount(mContext, id, played.playCount, now)) {
+            // No notification is coming
+            mSelfWrites.remove(id);
+            invalidate(id);
+        }
+    }
+
+    /**
+     * Drops the row so the next get reloads it
+     */
+    public void invalidate(long id) {
+        mCache.remove(id);
+    }
+
+    /**
+     * Marks everything stale without touching the provider, rows are
+     * reloaded when next asked for or warmed.
+     */
+    public void invalidateAll() {
+        mGeneration.incrementAndGet();
+    }
+
+    boolean isFresh(Entry entry) {
+        return entry != null && entry.generation == mGeneration.get();
+    }
+
+    boolean consumeAnySelfWrite() {
+        final Iterator<Long> ii = mSelfWrites.iterator();
+        if (ii.hasNext()) {
+            ii.next();
+            ii.remove();
+            return true;
+        }
+        return false;
+    }
+
+    static RecentSong withPlayed(RecentSong s, int playCount, long lastPlayed) {
+        return new RecentSong(s.identity, s.name, s.albumName, s.artistName, s.albumArtistName,
+                s.albumIdentity, s.duration, s.dataUri, s.artworkUri, s.mimeType, s.recentId,
+                s.isLocal, playCount, lastPlayed);
+    }
+
+    static long parseId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException|UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Queries the provider for the ids and updates the cache,
+     * ids no longer in the provider are removed.
+     */
+    void load(long[] ids) {
+        // Read before querying so a change that lands mid query leaves the rows stale
+        final int generation = mGeneration.get();
+        for (int start=0; start<ids.length; start+=QUERY_BATCH) {
+            final int end = Math.min(ids.length, start + QUERY_BATCH);
+            final StringBuilder selection = new StringBuilder(MusicStore.Cols._ID).append(" IN (");
+            for (int ii=start; ii<end; ii++) {
+                if (ii > start) selection.append(',');
+                selection.append(ids[ii]);
+            }
+            selection.append(')');
+            final Set<Long> found = new HashSet<>(end - start);
+            Cursor c = null;
+            try {
+                c = mContext.getContentResolver().query(MusicProvider.RECENTS_URI,
+                        Projections.RECENT_SONGS, selection.toString(), null, null);
+                if (c != null && c.moveToFirst()) {
+                    do {
+                        final RecentSong song = CursorHelpers.makeRecentSongFromRecentCursor(c);
+                        mCache.put(song.recentId, new Entry(song, generation));
+                        found.add(song.recentId);
+                    } while (c.moveToNext());
+                }
+            } catch (RuntimeException e) {
+                Timber.w(e, "Unable to load song metadata");
+                return;
+            } finally {
+                if (c != null) c.close();
+            }
+            for (int ii=start; ii<end; ii++) {
+                if (!found.contains(ids[ii])) {
+                    mCache.remove(ids[ii]);
+                }
+            }
+        }
+    }
+
+}
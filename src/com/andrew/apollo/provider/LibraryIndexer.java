@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+import org.opensilk.music.util.SelectionArgs;
+import org.opensilk.music.util.Selections;
+import org.opensilk.music.util.Uris;
+
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * Keeps the library tables in {@link MusicStore} in sync with MediaStore.
+ *
+ * A sync only reads the ids and modification dates from MediaStore and diffs
+ * them against the index, full rows are fetched for new and changed songs only.
+ * Albums and artists are recomputed for the ids touched by the diff, genres are
+ * small enough to be rebuilt whenever anything changed. The search tables follow
+ * the rows they index.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class LibraryIndexer {
+
+    /** Max ids per query so the IN clause stays a sane size */
+    static final int QUERY_BATCH = 500;
+
+    static final String[] SONG_COLUMNS = new String[] {
+            BaseColumns._ID,
+            MediaStore.Audio.AudioColumns.TITLE,
+            MediaStore.Audio.AudioColumns.TITLE_KEY,
+            MediaStore.Audio.AudioColumns.ARTIST,
+            MediaStore.Audio.AudioColumns.ARTIST_ID,
+            MediaStore.Audio.AudioColumns.ARTIST_KEY,
+            MediaStore.Audio.AudioColumns.ALBUM,
+            MediaStore.Audio.AudioColumns.ALBUM_ID,
+            MediaStore.Audio.AudioColumns.ALBUM_KEY,
+            MediaStore.Audio.AudioColumns.DURATION,
+            MediaStore.Audio.AudioColumns.MIME_TYPE,
+            MediaStore.Audio.AudioColumns.TRACK,
+            MediaStore.Audio.AudioColumns.YEAR,
+            MediaStore.Audio.AudioColumns.DATE_ADDED,
+            MediaStore.Audio.AudioColumns.DATE_MODIFIED,
+            MediaStore.Audio.AudioColumns.DATA,
+            MediaStore.Audio.AudioColumns.IS_MUSIC,
+    };
+
+    static final String[] DIFF_COLUMNS = new String[] {
+            BaseColumns._ID,
+            MediaStore.Audio.AudioColumns.DATE_MODIFIED,
+    };
+
+    final Context mContext;
+    final MusicStore mStore;
+    boolean mSynced;
+
+    public LibraryIndexer(Context context, MusicStore store) {
+        mContext = context;
+        mStore = store;
+    }
+
+    /**
+     * Syncs the index if it hasn't been since the process started
+     * @return true if the index changed
+     */
+    public synchronized boolean ensureSynced() {
+        if (mSynced) {
+            return false;
+        }
+        return sync();
+    }
+
+    /**
+     * Diffs MediaStore against the index and applies the changes
+     * @return true if the index changed
+     */
+    public synchronized boolean sync() {
+        final long start = System.currentTimeMillis();
+        final long[][] media = queryIdsAndDates(mContext, Uris.EXTERNAL_MEDIASTORE_MEDIA,
+                Selections.LOCAL_SONG, SelectionArgs.LOCAL_SONG);
+        if (media == null) {
+            // MediaStore unavailable, keep serving what we have
+            return false;
+        }
+        final SQLiteDatabase db;
+        try {
+            db = mStore.getWritableDatabase();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Unable to open library index");
+            return false;
+        }
+        final long[][] indexed = queryIndexIdsAndDates(db);
+
+        // Both sides are sorted by id, walk them together
+        final long[] mediaIds = media[0], mediaDates = media[1];
+        final long[] indexIds = indexed[0], indexDates = indexed[1];
+        final long[] changed = new long[mediaIds.length];
+        final long[] removed = new long[indexIds.length];
+        int numChanged = 0, numRemoved = 0;
+        int m = 0, i = 0;
+        while (m < mediaIds.length || i < indexIds.length) {
+            if (i >= indexIds.length || (m < mediaIds.length && mediaIds[m] < indexIds[i])) {
+                changed[numChanged++] = mediaIds[m++];
+            } else if (m >= mediaIds.length || indexIds[i] < mediaIds[m]) {
+                removed[numRemoved++] = indexIds[i++];
+            } else {
+                if (mediaDates[m] != indexDates[i]) {
+                    changed[numChanged++] = mediaIds[m];
+                }
+                m++; i++;
+            }
+        }
+        mSynced = true;
+        if (numChanged == 0 && numRemoved == 0) {
+            Timber.d("Library index up to date (%d songs) in %dms",
+                    mediaIds.length, System.currentTimeMillis() - start);
+            return false;
+        }
+
+        final boolean rebuild = indexIds.length == 0;
+        final long[] stale = new long[numChanged + numRemoved];
+        System.arraycopy(changed, 0, stale, 0, numChanged);
+        System.arraycopy(removed, 0, stale, numChanged, numRemoved);
+        Arrays.sort(stale);
+
+        db.beginTransaction();
+        try {
+            // Albums and artists the old rows belonged to
+            final IdSet albums = new IdSet();
+            final IdSet artists = new IdSet();
+            if (!rebuild) {
+                collectGroups(db, stale, albums, artists);
+            }
+            deleteSongs(db, removed, numRemoved);
+            upsertSongs(db, changed, numChanged, albums, artists);
+            updateAlbums(db, rebuild ? null : albums.toArray());
+            updateArtists(db, rebuild ? null : artists.toArray());
+            rebuildGenres(db);
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Library index sync failed");
+            mSynced = false;
+            return false;
+        } finally {
+            db.endTransaction();
+        }
+        Timber.d("Library index synced %d changed %d removed of %d in %dms", numChanged, numRemoved,
+                mediaIds.length, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /**
+     * @return {ids, date_modified} sorted by id or null if the query failed
+     */
+    static long[][] queryIdsAndDates(Context context, Uri uri, String selection, String[] args) {
+        Cursor c = null;
+        try {
+            c = context.getContentResolver().query(uri, DIFF_COLUMNS, selection, args, BaseColumns._ID);
+            if (c == null) {
+                return null;
+            }
+            return readIdsAndDates(c);
+        } catch (RuntimeException e) {
+            Timber.w(e, "Unable to query MediaStore");
+            return null;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    static long[][] queryIndexIdsAndDates(SQLiteDatabase db) {
+        Cursor c = db.query(MusicStore.LIBRARY_SONGS_TABLE, DIFF_COLUMNS,
+                null, null, null, null, BaseColumns._ID);
+        try {
+            return readIdsAndDates(c);
+        } finally {
+            c.close();
+        }
+    }
+
+    static long[][] readIdsAndDates(Cursor c) {
+        final long[] ids = new long[c.getCount()];
+        final long[] dates = new long[ids.length];
+        int ii = 0;
+        while (c.moveToNext() && ii < ids.length) {
+            ids[ii] = c.getLong(0);
+            dates[ii] = c.getLong(1);
+            ii++;
+        }
+        return new long[][]{ids, dates};
+    }
+
+    static void collectGroups(SQLiteDatabase db, long[] ids, IdSet albums, IdSet artists) {
+        for (int start=0; start<ids.length; start+=QUERY_BATCH) {
+            final int end = Math.min(ids.length, start + QUERY_BATCH);
+            Cursor c = db.query(MusicStore.LIBRARY_SONGS_TABLE,
+                    new String[]{MediaStore.Audio.AudioColumns.ALBUM_ID, MediaStore.Audio.AudioColumns.ARTIST_ID},
+                    makeInSelection(BaseColumns._ID, ids, start, end), null, null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    albums.add(c.getLong(0));
+                    artists.add(c.getLong(1));
+                }
+            } finally {
+                c.close();
+            }
+        }
+    }
+
+    static void deleteSongs(SQLiteDatabase db, long[] ids, int count) {
+        for (int start=0; start<count; start+=QUERY_BATCH) {
+            final int end = Math.min(count, start + QUERY_BATCH);
+            final String inIds = makeInSelection(BaseColumns._ID, ids, start, end);
+            db.delete(MusicStore.LIBRARY_SONGS_TABLE, inIds, null);
+            db.delete(MusicStore.LIBRARY_SONGS_SEARCH, makeInSelection("docid", ids, start, end), null);
+            db.delete(MusicStore.LIBRARY_GENRE_MEMBERS_TABLE,
+                    makeInSelection(MediaStore.Audio.Genres.Members.AUDIO_ID, ids, start, end), null);
+        }
+    }
+
+    void upsertSongs(SQLiteDatabase db, long[] ids, int count, IdSet albums, IdSet artists) {
+        final StringBuilder sql = new StringBuilder("INSERT OR REPLACE INTO ")
+                .append(MusicStore.LIBRARY_SONGS_TABLE).append(" (");
+        for (int ii=0; ii<SONG_COLUMNS.length; ii++) {
+            if (ii > 0) sql.append(',');
+            sql.append(SONG_COLUMNS[ii]);
+        }
+        sql.append(") VALUES (");
+        for (int ii=0; ii<SONG_COLUMNS.length; ii++) {
+            sql.append(ii > 0 ? ",?" : "?");
+        }
+        sql.append(')');
+        final SQLiteStatement insert = db.compileStatement(sql.toString());
+        final int albumIdx = Arrays.asList(SONG_COLUMNS).indexOf(MediaStore.Audio.AudioColumns.ALBUM_ID);
+        final int artistIdx = Arrays.asList(SONG_COLUMNS).indexOf(MediaStore.Audio.AudioColumns.ARTIST_ID);
+        try {
+            for (int start=0; start<count; start+=QUERY_BATCH) {
+                final int end = Math.min(count, start + QUERY_BATCH);
+                final Cursor c = mContext.getContentResolver().query(Uris.EXTERNAL_MEDIASTORE_MEDIA,
+                        SONG_COLUMNS, makeInSelection(BaseColumns._ID, ids, start, end), null, null);
+                if (c == null) {
+                    throw new IllegalStateException("MediaStore went away");
+                }
+                try {
+                    while (c.moveToNext()) {
+                        insert.clearBindings();
+                        for (int ii=0; ii<SONG_COLUMNS.length; ii++) {
+                            bindColumn(insert, ii + 1, c, ii);
+                        }
+                        insert.executeInsert();
+                        albums.add(c.getLong(albumIdx));
+                        artists.add(c.getLong(artistIdx));
+                    }
+                } finally {
+                    c.close();
+                }
+                final String docIds = makeInSelection("docid", ids, start, end);
+                db.delete(MusicStore.LIBRARY_SONGS_SEARCH, docIds, null);
+                db.execSQL("INSERT INTO " + MusicStore.LIBRARY_SONGS_SEARCH + " (docid,"
+                        + MediaStore.Audio.AudioColumns.TITLE + ","
+                        + MediaStore.Audio.AudioColumns.ARTIST + ","
+                        + MediaStore.Audio.AudioColumns.ALBUM + ") SELECT "
+                        + BaseColumns._ID + ","
+                        + MediaStore.Audio.AudioColumns.TITLE + ","
+                        + MediaStore.Audio.AudioColumns.ARTIST + ","
+                        + MediaStore.Audio.AudioColumns.ALBUM
+                        + " FROM " + MusicStore.LIBRARY_SONGS_TABLE
+                        + " WHERE " + makeInSelection(BaseColumns._ID, ids, start, end));
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Recomputes the given albums from the songs table, null for all of them
+     */
+    static void updateAlbums(SQLiteDatabase db, long[] albumIds) {
+        final String where = albumIds != null
+                ? makeInSelection(MediaStore.Audio.AudioColumns.ALBUM_ID, albumIds, 0, albumIds.length) : null;
+        db.delete(MusicStore.LIBRARY_ALBUMS_TABLE, albumIds != null
+                ? makeInSelection(BaseColumns._ID, albumIds, 0, albumIds.length) : null, null);
+        db.execSQL("INSERT INTO " + MusicStore.LIBRARY_ALBUMS_TABLE + " ("
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ALBUM_KEY + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST + ","
+                + MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS + ","
+                + MediaStore.Audio.AlbumColumns.FIRST_YEAR + ","
+                + MediaStore.Audio.AlbumColumns.LAST_YEAR + ") SELECT "
+                + MediaStore.Audio.AudioColumns.ALBUM_ID + ","
+                + MediaStore.Audio.AudioColumns.ALBUM + ","
+                + MediaStore.Audio.AudioColumns.ALBUM_KEY + ","
+                + MediaStore.Audio.AudioColumns.ARTIST + ","
+                + "COUNT(*),"
+                + "MIN(NULLIF(" + MediaStore.Audio.AudioColumns.YEAR + ",0)),"
+                + "MAX(" + MediaStore.Audio.AudioColumns.YEAR + ")"
+                + " FROM " + MusicStore.LIBRARY_SONGS_TABLE
+                + (where != null ? " WHERE " + where : "")
+                + " GROUP BY " + MediaStore.Audio.AudioColumns.ALBUM_ID);
+        db.delete(MusicStore.LIBRARY_ALBUMS_SEARCH, albumIds != null
+                ? makeInSelection("docid", albumIds, 0, albumIds.length) : null, null);
+        db.execSQL("INSERT INTO " + MusicStore.LIBRARY_ALBUMS_SEARCH + " (docid,"
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST + ") SELECT "
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST
+                + " FROM " + MusicStore.LIBRARY_ALBUMS_TABLE
+                + (albumIds != null ? " WHERE " + makeInSelection(BaseColumns._ID, albumIds, 0, albumIds.length) : ""));
+    }
+
+    /**
+     * Recomputes the given artists from the songs table, null for all of them
+     */
+    static void updateArtists(SQLiteDatabase db, long[] artistIds) {
+        final String where = artistIds != null
+                ? makeInSelection(MediaStore.Audio.AudioColumns.ARTIST_ID, artistIds, 0, artistIds.length) : null;
+        db.delete(MusicStore.LIBRARY_ARTISTS_TABLE, artistIds != null
+                ? makeInSelection(BaseColumns._ID, artistIds, 0, artistIds.length) : null, null);
+        db.execSQL("INSERT INTO " + MusicStore.LIBRARY_ARTISTS_TABLE + " ("
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.ArtistColumns.ARTIST + ","
+                + MediaStore.Audio.ArtistColumns.ARTIST_KEY + ","
+                + MediaStore.Audio.ArtistColumns.NUMBER_OF_ALBUMS + ","
+                + MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS + ") SELECT "
+                + MediaStore.Audio.AudioColumns.ARTIST_ID + ","
+                + MediaStore.Audio.AudioColumns.ARTIST + ","
+                + MediaStore.Audio.AudioColumns.ARTIST_KEY + ","
+                + "COUNT(DISTINCT " + MediaStore.Audio.AudioColumns.ALBUM_ID + "),"
+                + "COUNT(*)"
+                + " FROM " + MusicStore.LIBRARY_SONGS_TABLE
+                + (where != null ? " WHERE " + where : "")
+                + " GROUP BY " + MediaStore.Audio.AudioColumns.ARTIST_ID);
+        db.delete(MusicStore.LIBRARY_ARTISTS_SEARCH, artistIds != null
+                ? makeInSelection("docid", artistIds, 0, artistIds.length) : null, null);
+        db.execSQL("INSERT INTO " + MusicStore.LIBRARY_ARTISTS_SEARCH + " (docid,"
+                + MediaStore.Audio.ArtistColumns.ARTIST + ") SELECT "
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.ArtistColumns.ARTIST
+                + " FROM " + MusicStore.LIBRARY_ARTISTS_TABLE
+                + (artistIds != null ? " WHERE " + makeInSelection(BaseColumns._ID, artistIds, 0, artistIds.length) : ""));
+    }
+
+    /**
+     * Replaces the genres and their members with what MediaStore has,
+     * two queries no matter how many genres there are.
+     */
+    void rebuildGenres(SQLiteDatabase db) {
+        final Cursor genres = mContext.getContentResolver().query(Uris.EXTERNAL_MEDIASTORE_GENRES,
+                new String[]{BaseColumns._ID, MediaStore.Audio.GenresColumns.NAME}, null, null, null);
+        if (genres == null) {
+            Timber.w("Unable to query genres, keeping the old ones");
+            return;
+        }
+        db.delete(MusicStore.LIBRARY_GENRES_TABLE, null, null);
+        db.delete(MusicStore.LIBRARY_GENRE_MEMBERS_TABLE, null, null);
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO "
+                + MusicStore.LIBRARY_GENRES_TABLE + " VALUES (?,?)");
+        try {
+            while (genres.moveToNext()) {
+                insert.clearBindings();
+                bindColumn(insert, 1, genres, 0);
+                bindColumn(insert, 2, genres, 1);
+                insert.executeInsert();
+            }
+        } finally {
+            genres.close();
+            insert.close();
+        }
+        final Cursor members = mContext.getContentResolver().query(Uris.EXTERNAL_MEDIASTORE_GENRES_ALL_MEMBERS,
+                new String[]{MediaStore.Audio.Genres.Members.GENRE_ID, MediaStore.Audio.Genres.Members.AUDIO_ID},
+                null, null, null);
+        if (members == null) {
+            return;
+        }
+        insert = db.compileStatement("INSERT OR IGNORE INTO "
+                + MusicStore.LIBRARY_GENRE_MEMBERS_TABLE + " VALUES (?,?)");
+        try {
+            while (members.moveToNext()) {
+                insert.bindLong(1, members.getLong(0));
+                insert.bindLong(2, members.getLong(1));
+                insert.executeInsert();
+            }
+        } finally {
+            members.close();
+            insert.close();
+        }
+    }
+
+    static void bindColumn(SQLiteStatement statement, int index, Cursor c, int column) {
+        switch (c.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                statement.bindNull(index);
+                break;
+            case Cursor.FIELD_TYPE_INTEGER:
+                statement.bindLong(index, c.getLong(column));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                statement.bindDouble(index, c.getDouble(column));
+                break;
+            default:
+                statement.bindString(index, c.getString(column));
+                break;
+        }
+    }
+
+    static String makeInSelection(String column, long[] ids, int start, int end) {
+        final StringBuilder sb = new StringBuilder(column).append(" IN (");
+        for (int ii=start; ii<end; ii++) {
+            if (ii > start) sb.append(',');
+            sb.append(ids[ii]);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Minimal growable set of ids, sorted and deduped on read
+     */
+    static final class IdSet {
+        long[] ids = new long[16];
+        int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toArray() {
+            final long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            int w = 0;
+            for (int ii=0; ii<sorted.length; ii++) {
+                if (ii == 0 || sorted[ii] != sorted[ii - 1]) {
+                    sorted[w++] = sorted[ii];
+                }
+            }
+            return Arrays.copyOf(sorted, w);
+        }
+    }
+
+}
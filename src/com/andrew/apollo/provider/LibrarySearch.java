@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andrew.apollo.provider;
+
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+
+/**
+ * Search over the library index. Artists, albums and songs matching every
+ * word of the filter, as a prefix, come back in one cursor with the columns
+ * each needs to be built without another query.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class LibrarySearch {
+
+    /** Which of {@link #KIND_ARTIST}, {@link #KIND_ALBUM} or {@link #KIND_SONG} the row is */
+    public static final String KIND = "kind";
+    public static final String KIND_ARTIST = "artist";
+    public static final String KIND_ALBUM = "album";
+    public static final String KIND_SONG = "song";
+
+    static final String SORT_KEY = "sort_key";
+
+    public static final String[] COLUMNS = new String[] {
+            BaseColumns._ID,
+            KIND,
+            MediaStore.Audio.AudioColumns.TITLE,
+            MediaStore.Audio.AudioColumns.ARTIST,
+            MediaStore.Audio.AudioColumns.ALBUM,
+            MediaStore.Audio.AudioColumns.ALBUM_ID,
+            MediaStore.Audio.AudioColumns.DURATION,
+            MediaStore.Audio.AudioColumns.MIME_TYPE,
+            MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS,
+            MediaStore.Audio.AlbumColumns.FIRST_YEAR,
+            MediaStore.Audio.AlbumColumns.LAST_YEAR,
+            MediaStore.Audio.ArtistColumns.NUMBER_OF_ALBUMS,
+            MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS,
+    };
+
+    /** Takes the match expression three times, once per kind */
+    static final String SQL = "SELECT "
+            + BaseColumns._ID + ","
+            + "'" + KIND_ARTIST + "' AS " + KIND + ","
+            + "NULL AS " + MediaStore.Audio.AudioColumns.TITLE + ","
+            + MediaStore.Audio.ArtistColumns.ARTIST + ","
+            + "NULL AS " + MediaStore.Audio.AudioColumns.ALBUM + ","
+            + "NULL AS " + MediaStore.Audio.AudioColumns.ALBUM_ID + ","
+            + "NULL AS " + MediaStore.Audio.AudioColumns.DURATION + ","
+            + "NULL AS " + MediaStore.Audio.AudioColumns.MIME_TYPE + ","
+            + "NULL AS " + MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS + ","
+            + "NULL AS " + MediaStore.Audio.AlbumColumns.FIRST_YEAR + ","
+            + "NULL AS " + MediaStore.Audio.AlbumColumns.LAST_YEAR + ","
+            + MediaStore.Audio.ArtistColumns.NUMBER_OF_ALBUMS + ","
+            + MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS + ","
+            + "0 AS grp,"
+            + MediaStore.Audio.ArtistColumns.ARTIST_KEY + " AS " + SORT_KEY
+            + " FROM " + MusicStore.LIBRARY_ARTISTS_TABLE + " WHERE " + BaseColumns._ID + " IN ("
+            + "SELECT docid FROM " + MusicStore.LIBRARY_ARTISTS_SEARCH + " WHERE "
+            + MusicStore.LIBRARY_ARTISTS_SEARCH + " MATCH ?)"
+            + " UNION ALL SELECT "
+            + BaseColumns._ID + ","
+            + "'" + KIND_ALBUM + "',"
+            + "NULL,"
+            + MediaStore.Audio.AlbumColumns.ARTIST + ","
+            + MediaStore.Audio.AlbumColumns.ALBUM + ","
+            + "NULL,"
+            + "NULL,"
+            + "NULL,"
+            + MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS + ","
+            + MediaStore.Audio.AlbumColumns.FIRST_YEAR + ","
+            + MediaStore.Audio.AlbumColumns.LAST_YEAR + ","
+            + "NULL,"
+            + "NULL,"
+            + "1,"
+            + MediaStore.Audio.AlbumColumns.ALBUM_KEY
+            + " FROM " + MusicStore.LIBRARY_ALBUMS_TABLE + " WHERE " + BaseColumns._ID + " IN ("
+            + "SELECT docid FROM " + MusicStore.LIBRARY_ALBUMS_SEARCH + " WHERE "
+            + MusicStore.LIBRARY_ALBUMS_SEARCH + " MATCH ?)"
+            + " UNION ALL SELECT "
+            + BaseColumns._ID + ","
+            + "'" + KIND_SONG + "',"
+            + MediaStore.Audio.AudioColumns.TITLE + ","
+            + MediaStore.Audio.AudioColumns.ARTIST + ","
+            + MediaStore.Audio.AudioColumns.ALBUM + ","
+            + MediaStore.Audio.AudioColumns.ALBUM_ID + ","
+            + MediaStore.Audio.AudioColumns.DURATION + ","
+            + MediaStore.Audio.AudioColumns.MIME_TYPE + ","
+            + "NULL,"
+            + "NULL,"
+            + "NULL,"
+            + "NULL,"
+            + "NULL,"
+            + "2,"
+            + MediaStore.Audio.AudioColumns.TITLE_KEY
+            + " FROM " + MusicStore.LIBRARY_SONGS_TABLE + " WHERE " + BaseColumns._ID + " IN ("
+            + "SELECT docid FROM " + MusicStore.LIBRARY_SONGS_SEARCH + " WHERE "
+            + MusicStore.LIBRARY_SONGS_SEARCH + " MATCH ?)"
+            + " ORDER BY grp," + SORT_KEY;
+
+    private LibrarySearch() {
+        //static
+    }
+
+    /**
+     * Turns what the user typed into a match expression where every word
+     * is a prefix that must appear in one of the columns.
+     *
+     * @return the expression or null if there is nothing to search for
+     */
+    public static String makeMatchExpression(String filter) {
+        if (filter == null) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder(filter.length() + 8);
+        boolean inWord = false;
+        for (int ii=0; ii<filter.length(); ii++) {
+            char c = filter.charAt(ii);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                // Lower case ascii so words like OR aren't taken as operators,
+                // the simple tokenizer doesn't fold anything else.
+                sb.append(c < 128 ? Character.toLowerCase(c) : c);
+                inWord = true;
+            } else if (inWord) {
+                sb.append('*');
+                inWord = false;
+            }
+        }
+        if (inWord) {
+            sb.append('*');
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+}
@@ -16,17 +16,41 @@
 
 package com.andrew.apollo.provider;
 
+import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Parcelable;
+import android.provider.MediaStore;
 
 import org.opensilk.music.BuildConfig;
+import org.opensilk.music.util.Uris;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 /**
@@ -39,24 +63,93 @@ public class MusicProvider extends ContentProvider {
 
     /** Uri for recents store */
     public static final Uri RECENTS_URI;
+    /** Base uri of the library index, notified whenever the index changes */
+    public static final Uri LIBRARY_URI;
+    public static final Uri LIBRARY_SONGS_URI;
+    public static final Uri LIBRARY_ALBUMS_URI;
+    public static final Uri LIBRARY_ARTISTS_URI;
+    public static final Uri LIBRARY_GENRES_URI;
+    public static final Uri LIBRARY_GENRES_ALL_MEMBERS_URI;
+    public static final Uri LIBRARY_SEARCH_URI;
 
     static {
         sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
         RECENTS_URI = new Uri.Builder().scheme("content").authority(AUTHORITY).appendPath("recents").build();
         sUriMatcher.addURI(AUTHORITY, "recents", 1);
+        sUriMatcher.addURI(AUTHORITY, "recents/#", 9);
+
+        LIBRARY_URI = new Uri.Builder().scheme("content").authority(AUTHORITY).appendPath("library").build();
+        LIBRARY_SONGS_URI = LIBRARY_URI.buildUpon().appendPath("songs").build();
+        sUriMatcher.addURI(AUTHORITY, "library/songs", 2);
+        LIBRARY_ALBUMS_URI = LIBRARY_URI.buildUpon().appendPath("albums").build();
+        sUriMatcher.addURI(AUTHORITY, "library/albums", 3);
+        LIBRARY_ARTISTS_URI = LIBRARY_URI.buildUpon().appendPath("artists").build();
+        sUriMatcher.addURI(AUTHORITY, "library/artists", 4);
+        LIBRARY_GENRES_URI = LIBRARY_URI.buildUpon().appendPath("genres").build();
+        sUriMatcher.addURI(AUTHORITY, "library/genres", 5);
+        LIBRARY_GENRES_ALL_MEMBERS_URI = LIBRARY_GENRES_URI.buildUpon().appendPath("all").appendPath("members").build();
+        sUriMatcher.addURI(AUTHORITY, "library/genres/all/members", 6);
+        sUriMatcher.addURI(AUTHORITY, "library/genres/#/members", 7);
+        LIBRARY_SEARCH_URI = LIBRARY_URI.buildUpon().appendPath("search").build();
+        sUriMatcher.addURI(AUTHORITY, "library/search", 8);
+        sUriMatcher.addURI(AUTHORITY, "library/search/*", 8);
+    }
+
+    public static Uri libraryGenreMembersUri(long genreId) {
+        return LIBRARY_GENRES_URI.buildUpon().appendPath(String.valueOf(genreId)).appendPath("members").build();
     }
 
+    /**
+     * @return uri of the artists, albums and songs matching filter, see {@link LibrarySearch}
+     */
+    public static Uri librarySearchUri(String filter) {
+        return LIBRARY_SEARCH_URI.buildUpon().appendPath(filter != null ? filter : "").build();
+    }
+
+    /** How long MediaStore has to be quiet before we resync, the scanner notifies per file */
+    static final long LIBRARY_SYNC_DELAY_MS = 2000;
+
+    /** {@link #call} method, inserts the songs in extras that don't exist yet, returns all their ids */
+    static final String METHOD_UPSERT_SONGS = "upsert_songs";
+    /** {@link #call} method, returns the ids of the songs in extras or -1 for missing ones */
+    static final String METHOD_RESOLVE_SONGS = "resolve_songs";
+    /** ContentValues[] argument of the batch methods */
+    static final String EXTRA_VALUES = "values";
+    /** long[] result of the batch methods */
+    static final String EXTRA_IDS = "ids";
+
+    private static final String SELECT_SONG_ID = "SELECT " + MusicStore.Cols._ID
+            + " FROM " + MusicStore.RECENT_TABLE + " WHERE "
+            // These are the only mandatory fields
+            + MusicStore.Cols.IDENTITY + "=? AND " + MusicStore.Cols.NAME + "=? AND "
+            + MusicStore.Cols.DATA_URI + "=? LIMIT 1";
+
     MusicStore mStore;
+    LibraryIndexer mLibraryIndexer;
+    /** Set while applying a batch so we notify once at the end */
+    final ThreadLocal<Boolean> mInBatch = new ThreadLocal<>();
+    final Scheduler.Worker mLibraryWorker = Schedulers.io().createWorker();
+    final AtomicBoolean mLibraryObserverRegistered = new AtomicBoolean();
+    volatile long mLibrarySyncDeadline;
+    final AtomicBoolean mLibrarySyncPending = new AtomicBoolean();
+
+    final ContentObserver mMediaStoreObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            scheduleLibrarySync();
+        }
+    };
 
     @Override
     public boolean onCreate() {
         mStore = new MusicStore(getContext());
+        mLibraryIndexer = new LibraryIndexer(getContext(), mStore);
         return true;
     }
 
     @Override
-    public synchronized Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         Cursor c = null;
         SQLiteDatabase db;
         switch (sUriMatcher.match(uri)) {
@@ -68,6 +161,31 @@ public class MusicProvider extends ContentProvider {
 //                    db.close();
                 }
                 break;
+            case 2: // Library songs
+                c = queryLibrary(MusicStore.LIBRARY_SONGS_TABLE, projection, selection, selectionArgs, sortOrder);
+                break;
+            case 3: // Library albums
+                c = queryLibrary(MusicStore.LIBRARY_ALBUMS_TABLE, projection, selection, selectionArgs, sortOrder);
+                break;
+            case 4: // Library artists
+                c = queryLibrary(MusicStore.LIBRARY_ARTISTS_TABLE, projection, selection, selectionArgs, sortOrder);
+                break;
+            case 5: // Library genres
+                c = queryLibrary(MusicStore.LIBRARY_GENRES_TABLE, projection, selection, selectionArgs, sortOrder);
+                break;
+            case 6: // Library genre members
+                c = queryLibrary(MusicStore.LIBRARY_GENRE_MEMBERS_VIEW, projection, selection, selectionArgs, sortOrder);
+                break;
+            case 7: // Library genre members for one genre
+                final String genre = MediaStore.Audio.Genres.Members.GENRE_ID
+                        + "=" + Long.parseLong(uri.getPathSegments().get(2));
+                c = queryLibrary(MusicStore.LIBRARY_GENRE_MEMBERS_VIEW, projection,
+                        selection != null ? genre + " AND (" + selection + ")" : genre,
+                        selectionArgs, sortOrder);
+                break;
+            case 8: // Library search
+                c = searchLibrary(getSearchFilter(uri), null);
+                break;
         }
         if (c != null) {
             c.setNotificationUri(getContext().getContentResolver(), uri);
@@ -75,6 +193,95 @@ public class MusicProvider extends ContentProvider {
         return c;
     }
 
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        if (sUriMatcher.match(uri) != 8) {
+            return query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        Cursor c = searchLibrary(getSearchFilter(uri), cancellationSignal);
+        if (c != null) {
+            c.setNotificationUri(getContext().getContentResolver(), uri);
+        }
+        return c;
+    }
+
+    static String getSearchFilter(Uri uri) {
+        final List<String> segments = uri.getPathSegments();
+        return segments.size() > 2 ? segments.get(2) : null;
+    }
+
+    /**
+     * Runs a {@link LibrarySearch} against the library index
+     * @param cancellationSignal only non null on api 16+
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    Cursor searchLibrary(String filter, CancellationSignal cancellationSignal) {
+        final String match = LibrarySearch.makeMatchExpression(filter);
+        if (match == null) {
+            return new MatrixCursor(LibrarySearch.COLUMNS, 0);
+        }
+        ensureLibrarySynced();
+        SQLiteDatabase db = getMusicStoreDatabase(true);
+        if (db == null) {
+            return null;
+        }
+        final String[] args = new String[] { match, match, match };
+        if (cancellationSignal != null) {
+            return db.rawQuery(LibrarySearch.SQL, args, cancellationSignal);
+        }
+        return db.rawQuery(LibrarySearch.SQL, args);
+    }
+
+    /**
+     * Queries the library index, syncing it first if this process hasn't yet
+     */
+    Cursor queryLibrary(String table, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        ensureLibrarySynced();
+        SQLiteDatabase db = getMusicStoreDatabase(true);
+        if (db == null) {
+            return null;
+        }
+        return db.query(table, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    /**
+     * Syncs the library index if this process hasn't yet and starts watching MediaStore
+     */
+    void ensureLibrarySynced() {
+        if (mLibraryObserverRegistered.compareAndSet(false, true)) {
+            getContext().getContentResolver().registerContentObserver(
+                    Uris.EXTERNAL_MEDIASTORE_MEDIA, true, mMediaStoreObserver);
+        }
+        mLibraryIndexer.ensureSynced();
+    }
+
+    /**
+     * Resyncs the library index once MediaStore has been quiet for {@link #LIBRARY_SYNC_DELAY_MS},
+     * notifications arriving before then push the sync back.
+     */
+    void scheduleLibrarySync() {
+        mLibrarySyncDeadline = System.currentTimeMillis() + LIBRARY_SYNC_DELAY_MS;
+        if (!mLibrarySyncPending.compareAndSet(false, true)) {
+            return;
+        }
+        mLibraryWorker.schedule(new Action0() {
+            @Override
+            public void call() {
+                final long wait = mLibrarySyncDeadline - System.currentTimeMillis();
+                if (wait > 0) {
+                    mLibraryWorker.schedule(this, wait, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                mLibrarySyncPending.set(false);
+                if (mLibraryIndexer.sync()) {
+                    getContext().getContentResolver().notifyChange(LIBRARY_URI, null);
+                }
+            }
+        }, LIBRARY_SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public String getType(Uri uri) {
         return null;
@@ -99,7 +306,7 @@ public class MusicProvider extends ContentProvider {
                 break;
         }
         if (ret != null) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return ret;
     }
@@ -117,7 +324,7 @@ public class MusicProvider extends ContentProvider {
                 break;
         }
         if (ret != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return ret;
     }
@@ -133,13 +340,172 @@ public class MusicProvider extends ContentProvider {
 //                    db.close();
                 }
                 break;
+            case 9:
+                // Single row, the notification carries the id so observers
+                // caching rows can refresh just this one
+                db = getMusicStoreDatabase(false);
+                if (db != null) {
+                    ret = db.update(MusicStore.RECENT_TABLE, values,
+                            DatabaseUtils.concatenateWhere(MusicStore.Cols._ID + "=" + ContentUris.parseId(uri), selection),
+                            selectionArgs);
+                }
+                break;
         }
         if (ret != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized int bulkInsert(Uri uri, ContentValues[] values) {
+        if (uri == null || values == null || values.length == 0) {
+            return 0;
+        }
+        int ret = 0;
+        switch (sUriMatcher.match(uri)) {
+            case 1:
+                SQLiteDatabase db = getMusicStoreDatabase(false);
+                if (db != null) {
+                    db.beginTransaction();
+                    try {
+                        for (ContentValues v : values) {
+                            if (db.insert(MusicStore.RECENT_TABLE, null, v) >= 0) {
+                                ret++;
+                            }
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+                break;
+        }
+        if (ret != 0) {
+            notifyChange(uri);
         }
         return ret;
     }
 
+    @Override
+    public synchronized ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = getMusicStoreDatabase(false);
+        if (db == null) {
+            throw new OperationApplicationException("Unable to open MusicStore database");
+        }
+        ContentProviderResult[] results;
+        mInBatch.set(Boolean.TRUE);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mInBatch.set(null);
+        }
+        getContext().getContentResolver().notifyChange(RECENTS_URI, null);
+        return results;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (METHOD_UPSERT_SONGS.equals(method)) {
+            return makeIdsBundle(upsertSongs(getValues(extras), true));
+        } else if (METHOD_RESOLVE_SONGS.equals(method)) {
+            return makeIdsBundle(upsertSongs(getValues(extras), false));
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Looks up each song and optionally inserts the missing ones, all in one transaction.
+     * @return the ids in the same order as values, -1 for songs not found or not inserted
+     */
+    synchronized long[] upsertSongs(ContentValues[] values, boolean insert) {
+        final long[] ids = new long[values.length];
+        SQLiteDatabase db = getMusicStoreDatabase(!insert);
+        if (db == null) {
+            Arrays.fill(ids, -1);
+            return ids;
+        }
+        boolean inserted = false;
+        SQLiteStatement lookup = db.compileStatement(SELECT_SONG_ID);
+        if (insert) {
+            db.beginTransaction();
+        }
+        try {
+            for (int ii=0; ii<values.length; ii++) {
+                final ContentValues v = values[ii];
+                lookup.clearBindings();
+                bindStringOrNull(lookup, 1, v.getAsString(MusicStore.Cols.IDENTITY));
+                bindStringOrNull(lookup, 2, v.getAsString(MusicStore.Cols.NAME));
+                bindStringOrNull(lookup, 3, v.getAsString(MusicStore.Cols.DATA_URI));
+                long id;
+                try {
+                    id = lookup.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    id = -1;
+                }
+                if (id < 0 && insert) {
+                    id = db.insert(MusicStore.RECENT_TABLE, null, v);
+                    if (id >= 0) {
+                        inserted = true;
+                    }
+                }
+                ids[ii] = id;
+            }
+            if (insert) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (insert) {
+                db.endTransaction();
+            }
+            lookup.close();
+        }
+        if (inserted) {
+            notifyChange(RECENTS_URI);
+        }
+        return ids;
+    }
+
+    void notifyChange(Uri uri) {
+        if (mInBatch.get() == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    static ContentValues[] getValues(Bundle extras) {
+        if (extras == null) {
+            return new ContentValues[0];
+        }
+        extras.setClassLoader(ContentValues.class.getClassLoader());
+        Parcelable[] p = extras.getParcelableArray(EXTRA_VALUES);
+        if (p == null) {
+            return new ContentValues[0];
+        }
+        ContentValues[] values = new ContentValues[p.length];
+        for (int ii=0; ii<p.length; ii++) {
+            values[ii] = (ContentValues) p[ii];
+        }
+        return values;
+    }
+
+    static Bundle makeIdsBundle(long[] ids) {
+        Bundle b = new Bundle(1);
+        b.putLongArray(EXTRA_IDS, ids);
+        return b;
+    }
+
+    static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
     protected SQLiteDatabase getMusicStoreDatabase(boolean tryReadonly) {
         SQLiteDatabase db = null;
         try {
@@ -17,6 +17,7 @@
 package com.andrew.apollo.provider;
 
 import android.annotation.TargetApi;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -24,6 +25,7 @@ import android.media.MediaDescription;
 import android.media.session.MediaSession;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 
 import com.andrew.apollo.model.LocalSong;
@@ -35,7 +37,10 @@ import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import hugo.weaving.DebugLog;
 import timber.log.Timber;
@@ -45,34 +50,79 @@ import timber.log.Timber;
  */
 public class MusicProviderUtil {
 
+    /**
+     * Max songs sent in one provider call, keeps us well under the binder transaction limit
+     */
+    static final int BATCH_SIZE = 500;
+
     public static long insertSong(Context context, Song song) {
         //TODO compare and update if needed
-        final Cursor c = context.getContentResolver().query(MusicProvider.RECENTS_URI,
-                new String[]{ BaseColumns._ID },
-                // These are the only mandatory fields
-                MusicStore.Cols.IDENTITY  + "=? AND " + MusicStore.Cols.NAME + "=? AND " + MusicStore.Cols.DATA_URI + "=?",
-                new String[]{ song.identity, song.name, song.dataUri.toString() },
-                null);
-        if (c != null) {
-            try {
-                if (c.getCount() > 0 && c.moveToFirst()) {
-                    return c.getLong(0);
+        return insertSongs(context, new Song[]{ song })[0];
+    }
+
+    /**
+     * Adds the songs not yet in the recents store, one transaction per batch
+     * @return the recents ids in the same order as songs, -1 for failures
+     */
+    public static long[] insertSongs(Context context, Song[] songs) {
+        final long[] ids = new long[songs.length];
+        // only look up each album once, enqueuing an album would otherwise query it per song
+        final Map<Long, String> albumArtists = new HashMap<>();
+        for (int start=0; start<songs.length; start+=BATCH_SIZE) {
+            final int count = Math.min(BATCH_SIZE, songs.length - start);
+            final ContentValues[] values = new ContentValues[count];
+            for (int ii=0; ii<count; ii++) {
+                final Song song = songs[start + ii];
+                values[ii] = makeSongContentValues(song);
+                if (song instanceof LocalSong) {
+                    final long albumId = ((LocalSong) song).albumId;
+                    if (!albumArtists.containsKey(albumId)) {
+                        albumArtists.put(albumId, CursorHelpers.getAlbumArtist(context, albumId));
+                    }
+                    values[ii].put(MusicStore.Cols.ALBUM_ARTIST_NAME, albumArtists.get(albumId));
                 }
-            } finally {
-                c.close();
             }
+            System.arraycopy(callBatch(context, MusicProvider.METHOD_UPSERT_SONGS, values), 0, ids, start, count);
         }
-        ContentValues values = makeSongContentValues(song);
-        if (song instanceof LocalSong) {
-            values.put(MusicStore.Cols.ALBUM_ARTIST_NAME, CursorHelpers.getAlbumArtist(context, ((LocalSong) song).albumId));
+        return ids;
+    }
+
+    /**
+     * Resolves the recents ids without inserting anything
+     * @return the recents ids in the same order as songs, -1 for songs not in the store
+     */
+    public static long[] getIdsForSongs(Context context, Song[] songs) {
+        final long[] ids = new long[songs.length];
+        for (int start=0; start<songs.length; start+=BATCH_SIZE) {
+            final int count = Math.min(BATCH_SIZE, songs.length - start);
+            final ContentValues[] values = new ContentValues[count];
+            for (int ii=0; ii<count; ii++) {
+                final Song song = songs[start + ii];
+                values[ii] = new ContentValues(3);
+                values[ii].put(MusicStore.Cols.IDENTITY, song.identity);
+                values[ii].put(MusicStore.Cols.NAME, song.name);
+                values[ii].put(MusicStore.Cols.DATA_URI, song.dataUri.toString());
+            }
+            System.arraycopy(callBatch(context, MusicProvider.METHOD_RESOLVE_SONGS, values), 0, ids, start, count);
         }
-        Uri uri = context.getContentResolver().insert(MusicProvider.RECENTS_URI, values);
-        if (uri != null) {
-            try {
-                return Long.decode(uri.getLastPathSegment());
-            } catch (NumberFormatException ignored) { }
+        return ids;
+    }
+
+    static long[] callBatch(Context context, String method, ContentValues[] values) {
+        Bundle extras = new Bundle(1);
+        extras.putParcelableArray(MusicProvider.EXTRA_VALUES, values);
+        Bundle result = null;
+        try {
+            result = context.getContentResolver().call(MusicProvider.RECENTS_URI, method, null, extras);
+        } catch (Exception e) {
+            Timber.w(e, "%s failed", method);
         }
-        return -1;
+        long[] ids = result != null ? result.getLongArray(MusicProvider.EXTRA_IDS) : null;
+        if (ids == null || ids.length != values.length) {
+            ids = new long[values.length];
+            Arrays.fill(ids, -1);
+        }
+        return ids;
     }
 
     public static void updatePlaycount(Context context, long id) {
@@ -90,15 +140,23 @@ public class MusicProviderUtil {
             } finally {
                 c.close();
             }
-            ContentValues values = new ContentValues();
-            values.put(MusicStore.Cols.PLAYCOUNT, ++playcount);
-            values.put(MusicStore.Cols.LAST_PLAYED, System.currentTimeMillis());
-            try {
-                int count = context.getContentResolver().update(MusicProvider.RECENTS_URI,
-                        values,
-                        BaseColumns._ID + "=?",
-                        new String[]{ String.valueOf(id) });
-            } catch (Exception ignored) {} // This isnt that important so just dont crash
+            setPlaycount(context, id, ++playcount, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return true if the row was updated
+     */
+    public static boolean setPlaycount(Context context, long id, int playcount, long lastPlayed) {
+        ContentValues values = new ContentValues();
+        values.put(MusicStore.Cols.PLAYCOUNT, playcount);
+        values.put(MusicStore.Cols.LAST_PLAYED, lastPlayed);
+        try {
+            return context.getContentResolver().update(
+                    ContentUris.withAppendedId(MusicProvider.RECENTS_URI, id),
+                    values, null, null) > 0;
+        } catch (Exception ignored) { // This isnt that important so just dont crash
+            return false;
         }
     }
 
@@ -125,22 +183,7 @@ public class MusicProviderUtil {
     }
 
     public static long getIdForSong(Context context, Song song) {
-        final Cursor c = context.getContentResolver().query(MusicProvider.RECENTS_URI,
-                new String[]{ BaseColumns._ID },
-                // These are the only mandatory fields
-                MusicStore.Cols.IDENTITY  + "=?" + MusicStore.Cols.NAME + "=?" + MusicStore.Cols.DATA_URI + "=?",
-                new String[]{ song.identity, song.name, song.dataUri.toString() },
-                null);
-        if (c != null) {
-            try {
-                if (c.getCount() > 0 && c.moveToFirst()) {
-                    return c.getLong(0);
-                }
-            } finally {
-                c.close();
-            }
-        }
-        return -1;
+        return getIdsForSongs(context, new Song[]{ song })[0];
     }
 
     public static long getIdForPath(Context context, String path) {
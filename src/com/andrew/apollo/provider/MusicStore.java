@@ -20,17 +20,31 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.provider.BaseColumns;
+import android.provider.MediaStore;
 
 /**
  * Created by drew on 6/26/14.
  */
 public class MusicStore extends SQLiteOpenHelper {
 
-    public static final int VERSION = 3;
+    public static final int VERSION = 6;
     public static final String FILENAME = "music.db";
 
     public static final String RECENT_TABLE = "recent";
 
+    // Library index, columns are named after their MediaStore counterparts
+    public static final String LIBRARY_SONGS_TABLE = "library_songs";
+    public static final String LIBRARY_ALBUMS_TABLE = "library_albums";
+    public static final String LIBRARY_ARTISTS_TABLE = "library_artists";
+    public static final String LIBRARY_GENRES_TABLE = "library_genres";
+    public static final String LIBRARY_GENRE_MEMBERS_TABLE = "library_genre_members";
+    /** Genre members joined with their songs, what MediaStore returns for genre members */
+    public static final String LIBRARY_GENRE_MEMBERS_VIEW = "library_genre_members_view";
+    // Full text search over the library, docid is the id of the row in the library table
+    public static final String LIBRARY_SONGS_SEARCH = "library_songs_search";
+    public static final String LIBRARY_ALBUMS_SEARCH = "library_albums_search";
+    public static final String LIBRARY_ARTISTS_SEARCH = "library_artists_search";
+
     public MusicStore(Context context) {
         super(context, FILENAME, null, VERSION);
     }
@@ -53,17 +67,153 @@ public class MusicStore extends SQLiteOpenHelper {
                 + Cols.PLAYCOUNT + " INTEGER NOT NULL,"
                 + Cols.LAST_PLAYED + " INTEGER NOT NULL);"
         );
+        createIndexes(db);
+        createLibraryTables(db);
+        createSearchTables(db);
+    }
+
+    /**
+     * Songs are looked up by identity when enqueued and by datauri when opening
+     * files, without these every lookup is a full table scan
+     */
+    private static void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + RECENT_TABLE + "_" + Cols.IDENTITY + "_idx ON "
+                + RECENT_TABLE + " (" + Cols.IDENTITY + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + RECENT_TABLE + "_" + Cols.DATA_URI + "_idx ON "
+                + RECENT_TABLE + " (" + Cols.DATA_URI + ");");
+    }
+
+    private static void createLibraryTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LIBRARY_SONGS_TABLE + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Audio.AudioColumns.TITLE + " TEXT,"
+                + MediaStore.Audio.AudioColumns.TITLE_KEY + " TEXT,"
+                + MediaStore.Audio.AudioColumns.ARTIST + " TEXT,"
+                + MediaStore.Audio.AudioColumns.ARTIST_ID + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.ARTIST_KEY + " TEXT,"
+                + MediaStore.Audio.AudioColumns.ALBUM + " TEXT,"
+                + MediaStore.Audio.AudioColumns.ALBUM_ID + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.ALBUM_KEY + " TEXT,"
+                + MediaStore.Audio.AudioColumns.DURATION + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.MIME_TYPE + " TEXT,"
+                + MediaStore.Audio.AudioColumns.TRACK + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.YEAR + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.DATE_ADDED + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.DATE_MODIFIED + " INTEGER,"
+                + MediaStore.Audio.AudioColumns.DATA + " TEXT,"
+                + MediaStore.Audio.AudioColumns.IS_MUSIC + " INTEGER);"
+        );
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + LIBRARY_SONGS_TABLE + "_album_idx ON "
+                + LIBRARY_SONGS_TABLE + " (" + MediaStore.Audio.AudioColumns.ALBUM_ID + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + LIBRARY_SONGS_TABLE + "_artist_idx ON "
+                + LIBRARY_SONGS_TABLE + " (" + MediaStore.Audio.AudioColumns.ARTIST_ID + ");");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LIBRARY_ALBUMS_TABLE + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Audio.AlbumColumns.ALBUM + " TEXT,"
+                + MediaStore.Audio.AlbumColumns.ALBUM_KEY + " TEXT,"
+                + MediaStore.Audio.AlbumColumns.ARTIST + " TEXT,"
+                + MediaStore.Audio.AlbumColumns.NUMBER_OF_SONGS + " INTEGER,"
+                + MediaStore.Audio.AlbumColumns.FIRST_YEAR + " INTEGER,"
+                + MediaStore.Audio.AlbumColumns.LAST_YEAR + " INTEGER);"
+        );
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LIBRARY_ARTISTS_TABLE + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Audio.ArtistColumns.ARTIST + " TEXT,"
+                + MediaStore.Audio.ArtistColumns.ARTIST_KEY + " TEXT,"
+                + MediaStore.Audio.ArtistColumns.NUMBER_OF_ALBUMS + " INTEGER,"
+                + MediaStore.Audio.ArtistColumns.NUMBER_OF_TRACKS + " INTEGER);"
+        );
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LIBRARY_GENRES_TABLE + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                + MediaStore.Audio.GenresColumns.NAME + " TEXT);"
+        );
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + LIBRARY_GENRE_MEMBERS_TABLE + " ("
+                + MediaStore.Audio.Genres.Members.GENRE_ID + " INTEGER NOT NULL, "
+                + MediaStore.Audio.Genres.Members.AUDIO_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + MediaStore.Audio.Genres.Members.GENRE_ID + ", "
+                + MediaStore.Audio.Genres.Members.AUDIO_ID + "));"
+        );
+        db.execSQL("CREATE VIEW IF NOT EXISTS " + LIBRARY_GENRE_MEMBERS_VIEW + " AS SELECT "
+                + "m." + MediaStore.Audio.Genres.Members.GENRE_ID + " AS " + MediaStore.Audio.Genres.Members.GENRE_ID + ", "
+                + "m." + MediaStore.Audio.Genres.Members.AUDIO_ID + " AS " + MediaStore.Audio.Genres.Members.AUDIO_ID + ", "
+                + "s." + MediaStore.Audio.AudioColumns.ALBUM_ID + " AS " + MediaStore.Audio.AudioColumns.ALBUM_ID + ", "
+                + "s." + MediaStore.Audio.AudioColumns.TITLE + " AS " + MediaStore.Audio.AudioColumns.TITLE + ", "
+                + "s." + MediaStore.Audio.AudioColumns.TITLE_KEY + " AS " + MediaStore.Audio.AudioColumns.TITLE_KEY + ", "
+                + "s." + MediaStore.Audio.AudioColumns.IS_MUSIC + " AS " + MediaStore.Audio.AudioColumns.IS_MUSIC
+                + " FROM " + LIBRARY_GENRE_MEMBERS_TABLE + " m JOIN " + LIBRARY_SONGS_TABLE + " s ON s."
+                + BaseColumns._ID + "=m." + MediaStore.Audio.Genres.Members.AUDIO_ID + ";"
+        );
+    }
+
+    private static void createSearchTables(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + LIBRARY_SONGS_SEARCH + " USING fts4("
+                + MediaStore.Audio.AudioColumns.TITLE + ","
+                + MediaStore.Audio.AudioColumns.ARTIST + ","
+                + MediaStore.Audio.AudioColumns.ALBUM + ");"
+        );
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + LIBRARY_ALBUMS_SEARCH + " USING fts4("
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST + ");"
+        );
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + LIBRARY_ARTISTS_SEARCH + " USING fts4("
+                + MediaStore.Audio.ArtistColumns.ARTIST + ");"
+        );
+    }
+
+    /**
+     * Fills the search tables from the library tables, they must be empty
+     */
+    private static void populateSearchTables(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + LIBRARY_SONGS_SEARCH + " (docid,"
+                + MediaStore.Audio.AudioColumns.TITLE + ","
+                + MediaStore.Audio.AudioColumns.ARTIST + ","
+                + MediaStore.Audio.AudioColumns.ALBUM + ") SELECT "
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.AudioColumns.TITLE + ","
+                + MediaStore.Audio.AudioColumns.ARTIST + ","
+                + MediaStore.Audio.AudioColumns.ALBUM + " FROM " + LIBRARY_SONGS_TABLE);
+        db.execSQL("INSERT INTO " + LIBRARY_ALBUMS_SEARCH + " (docid,"
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST + ") SELECT "
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.AlbumColumns.ALBUM + ","
+                + MediaStore.Audio.AlbumColumns.ARTIST + " FROM " + LIBRARY_ALBUMS_TABLE);
+        db.execSQL("INSERT INTO " + LIBRARY_ARTISTS_SEARCH + " (docid,"
+                + MediaStore.Audio.ArtistColumns.ARTIST + ") SELECT "
+                + BaseColumns._ID + ","
+                + MediaStore.Audio.ArtistColumns.ARTIST + " FROM " + LIBRARY_ARTISTS_TABLE);
+    }
+
+    private static void dropLibraryTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_ARTISTS_SEARCH);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_ALBUMS_SEARCH);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_SONGS_SEARCH);
+        db.execSQL("DROP VIEW IF EXISTS " + LIBRARY_GENRE_MEMBERS_VIEW);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_GENRE_MEMBERS_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_GENRES_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_ARTISTS_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_ALBUMS_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + LIBRARY_SONGS_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion == 2 && newVersion == 3) {
-            db.execSQL("DROP TABLE IF EXISTS genres");
-            db.execSQL("DROP TABLE IF EXISTS playlists");
+        if (oldVersion >= 2 && oldVersion < VERSION && newVersion == VERSION) {
+            if (oldVersion == 2) {
+                db.execSQL("DROP TABLE IF EXISTS genres");
+                db.execSQL("DROP TABLE IF EXISTS playlists");
+            }
+            if (oldVersion < 4) {
+                createIndexes(db);
+            }
+            createLibraryTables(db);
+            createSearchTables(db);
+            populateSearchTables(db);
         } else {
             db.execSQL("DROP TABLE IF EXISTS genres");
             db.execSQL("DROP TABLE IF EXISTS playlists");
             db.execSQL("DROP TABLE IF EXISTS " + RECENT_TABLE);
+            dropLibraryTables(db);
             onCreate(db);
         }
     }
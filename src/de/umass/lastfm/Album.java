@@ -62,7 +62,7 @@ public class Album extends MusicEntry {
         this.artist = artist;
     }
 
-    private Album(String name, String url, String mbid, String artist) {
+    Album(String name, String url, String mbid, String artist) {
         super(name, url, mbid);
         this.artist = artist;
     }
@@ -29,6 +29,7 @@ package de.umass.lastfm;
 import android.content.Context;
 import android.util.Log;
 
+import org.apache.commons.io.IOUtils;
 import org.opensilk.music.BuildConfig;
 import com.andrew.apollo.Config;
 
@@ -38,6 +39,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -59,7 +61,7 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import de.umass.lastfm.Result.Status;
 import de.umass.lastfm.cache.Cache;
-import de.umass.lastfm.cache.FileSystemCache;
+import de.umass.lastfm.cache.DiskLruResponseCache;
 
 import static de.umass.util.StringUtilities.encode;
 import static de.umass.util.StringUtilities.map;
@@ -96,7 +98,7 @@ public class Caller {
      * @param context The {@link android.content.Context} to use
      */
     private Caller(final Context context) {
-        cache = new FileSystemCache(context);
+        cache = new DiskLruResponseCache(context);
     }
 
     /**
@@ -223,10 +225,7 @@ public class Caller {
                             expires = cache.findExpirationDate(method, params);
                         }
                         if (expires != -1) {
-                            cache.store(cacheEntryName, inputStream, expires); // if data wasn't cached store new result
-                            inputStream = cache.load(cacheEntryName);
-                            if (inputStream == null)
-                                throw new CallException("Caching/Reloading failed");
+                            inputStream = storeResponse(cache, cacheEntryName, inputStream, expires); // if data wasn't cached store new result
                         }
                     }
                 }
@@ -252,6 +251,23 @@ public class Caller {
         }
     }
 
+    /**
+     * Stores the response and hands back its body. It isn't read back from the cache,
+     * which may not have kept it (not opened, another call writing the same entry or
+     * the write failed).
+     */
+    static InputStream storeResponse(Cache cache, String cacheEntryName, InputStream inputStream,
+                                     long expires) throws IOException {
+        final byte[] body;
+        try {
+            body = IOUtils.toByteArray(inputStream);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        cache.store(cacheEntryName, new ByteArrayInputStream(body), expires);
+        return new ByteArrayInputStream(body);
+    }
+
     private InputStream getStreamFromCache(String cacheEntryName) {
         if (cache != null && cache.contains(cacheEntryName) && !cache.isExpired(cacheEntryName)) {
             return cache.load(cacheEntryName);
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm;
+
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming parser for album.getInfo and artist.getInfo responses.
+ * <p>
+ * Only reads the fields we use for artwork (name, mbid, url, artist and the images)
+ * off the top level entry, everything else (tracks, similar artists, tags, wiki)
+ * is skipped without being built.
+ *
+ * Created by drew on 1/13/15.
+ */
+public final class EntryPullParser {
+
+    private EntryPullParser() {
+        //static
+    }
+
+    /**
+     * @throws StatusException if the status isn't ok
+     * @throws IOException if the stream can't be read
+     */
+    public static Album parseAlbum(InputStream in) throws XmlPullParserException, IOException {
+        final Fields f = parseEntry(in, "album");
+        final Album album = new Album(f.name, f.url, f.mbid, f.artist);
+        album.imageUrls.putAll(f.images);
+        return album;
+    }
+
+    /**
+     * @throws StatusException if the status isn't ok
+     * @throws IOException if the stream can't be read
+     */
+    public static Artist parseArtist(InputStream in) throws XmlPullParserException, IOException {
+        final Fields f = parseEntry(in, "artist");
+        final Artist artist = new Artist(f.name, f.url, f.mbid);
+        artist.imageUrls.putAll(f.images);
+        return artist;
+    }
+
+    static final class Fields {
+        String name;
+        String url;
+        String mbid;
+        String artist;
+        final Map<ImageSize, String> images = new EnumMap<>(ImageSize.class);
+    }
+
+    static Fields parseEntry(InputStream in, String entryTag) throws XmlPullParserException, IOException {
+        final XmlPullParser p = Xml.newPullParser();
+        p.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        p.setInput(in, "UTF-8");
+        p.nextTag();
+        p.require(XmlPullParser.START_TAG, null, "lfm");
+        if (!"ok".equals(p.getAttributeValue(null, "status"))) {
+            throw readError(p);
+        }
+        p.nextTag();
+        p.require(XmlPullParser.START_TAG, null, entryTag);
+        final Fields f = new Fields();
+        final int depth = p.getDepth();
+        int type;
+        while ((type = p.next()) != XmlPullParser.END_DOCUMENT
+                && (type != XmlPullParser.END_TAG || p.getDepth() > depth)) {
+            if (type != XmlPullParser.START_TAG) {
+                continue;
+            }
+            switch (p.getName()) {
+                case "name":
+                    f.name = p.nextText();
+                    break;
+                case "url":
+                    f.url = p.nextText();
+                    break;
+                case "mbid":
+                    f.mbid = p.nextText();
+                    break;
+                case "artist":
+                    // album.getInfo gives the artist as plain text
+                    f.artist = p.nextText();
+                    break;
+                case "image":
+                    readImage(p, f.images);
+                    break;
+                default:
+                    skip(p);
+                    break;
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Reads the error element following a failed status, as much of it as is there
+     */
+    static StatusException readError(XmlPullParser p) {
+        int code = StatusException.UNKNOWN;
+        String message = null;
+        try {
+            if (p.nextTag() == XmlPullParser.START_TAG && "error".equals(p.getName())) {
+                code = Integer.parseInt(p.getAttributeValue(null, "code"));
+                message = p.nextText();
+            }
+        } catch (XmlPullParserException|IOException|NumberFormatException ignored) {
+            // fall
+        }
+        return new StatusException(code, message);
+    }
+
+    static void readImage(XmlPullParser p, Map<ImageSize, String> images) throws XmlPullParserException, IOException {
+        final String attribute = p.getAttributeValue(null, "size");
+        final String url = p.nextText();
+        ImageSize size = null;
+        if (attribute == null) {
+            size = ImageSize.UNKNOWN; // same workaround as ImageHolder.loadImages
+        } else {
+            try {
+                size = ImageSize.valueOf(attribute.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                // unknown size
+            }
+        }
+        if (size != null) {
+            images.put(size, url);
+        }
+    }
+
+    /**
+     * Skips the current element and all its children
+     */
+    static void skip(XmlPullParser p) throws XmlPullParserException, IOException {
+        int depth = 1;
+        while (depth != 0) {
+            switch (p.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new XmlPullParserException("Unexpected end of document");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm;
+
+import java.io.IOException;
+
+/**
+ * The api answered but with status="failed", carries the error code from the
+ * response so callers can tell "we don't know that" from "try again later".
+ *
+ * Created by drew on 1/13/15.
+ */
+public class StatusException extends IOException {
+
+    /** The response didn't say */
+    public static final int UNKNOWN = -1;
+    /** Invalid parameters, also what lastfm answers for artists and albums it doesn't know */
+    public static final int ERROR_INVALID_PARAMETERS = 6;
+
+    public final int errorCode;
+
+    public StatusException(int errorCode, String message) {
+        super("Status=FAILED error=" + errorCode + (message != null ? " " + message : ""));
+        this.errorCode = errorCode;
+    }
+}
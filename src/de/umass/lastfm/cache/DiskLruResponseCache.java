@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.umass.lastfm.cache;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import de.umass.util.StringUtilities;
+
+/**
+ * {@link Cache} backed by a {@link DiskLruCache}, replaces {@link FileSystemCache}.
+ * <p>
+ * Responses live in the DiskLruCache, which keeps its own journal and evicts the least
+ * recently used once over its size. Expiration dates are stored beside each response
+ * and mirrored in an in memory index, so {@link #contains} and {@link #isExpired} only
+ * touch the disk the first time a key is seen by this process. Expired entries are
+ * dropped by a sweep on a background thread.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class DiskLruResponseCache extends Cache {
+    private static final String TAG = DiskLruResponseCache.class.getSimpleName();
+
+    static final String CACHE_DIR = "LastFMResponses";
+    static final long DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+    static final long SWEEP_INTERVAL_MS = 10 * 60 * 1000;
+
+    private static final int APP_VERSION = 1;
+    private static final int VALUE_COUNT = 2;
+    /** Index of the response in an entry */
+    private static final int RESPONSE_INDEX = 0;
+    /** Index of the expiration date in an entry */
+    private static final int EXPIRATION_INDEX = 1;
+    /** Keys DiskLruCache accepts */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,64}");
+
+    private final File cacheDir;
+    private final long maxSize;
+    final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final ExecutorService sweeper = new ThreadPoolExecutor(0, 1,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    volatile DiskLruCache diskCache;
+    private volatile long lastSweep;
+
+    public DiskLruResponseCache(Context context) {
+        this(new File(context.getExternalCacheDir(), CACHE_DIR), DEFAULT_MAX_SIZE);
+        // clean up after FileSystemCache
+        final File oldDir = new File(context.getExternalCacheDir(), "LastFMCache");
+        if (oldDir.isDirectory()) {
+            sweeper.execute(new Runnable() {
+                @Override
+                public void run() {
+                    File[] files = oldDir.listFiles();
+                    if (files != null) {
+                        for (File f : files) {
+                            f.delete();
+                        }
+                    }
+                    oldDir.delete();
+                }
+            });
+        }
+    }
+
+    public DiskLruResponseCache(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        this.diskCache = open(cacheDir, maxSize);
+        this.lastSweep = SystemClock.elapsedRealtime();
+    }
+
+    private static DiskLruCache open(File cacheDir, long maxSize) {
+        try {
+            return DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, maxSize);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open cache in " + cacheDir, e);
+            return null;
+        }
+    }
+
+    public boolean contains(String cacheEntryName) {
+        return getExpiration(toKey(cacheEntryName)) != null;
+    }
+
+    public boolean isExpired(String cacheEntryName) {
+        final Long expiration = getExpiration(toKey(cacheEntryName));
+        return expiration != null && expiration < System.currentTimeMillis();
+    }
+
+    public InputStream load(String cacheEntryName) {
+        final String key = toKey(cacheEntryName);
+        final DiskLruCache cache = diskCache;
+        if (cache == null) {
+            return null;
+        }
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = cache.get(key);
+            if (snapshot == null) {
+                // evicted since we indexed it
+                index.remove(key);
+                return null;
+            }
+            index.put(key, readExpiration(snapshot));
+            // responses are small, copy out so the snapshot is released right away
+            return new ByteArrayInputStream(IOUtils.toByteArray(
+                    snapshot.getInputStream(RESPONSE_INDEX), snapshot.getLength(RESPONSE_INDEX)));
+        } catch (IOException|IllegalStateException e) {
+            // IllegalStateException if cleared underneath us
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    public void remove(String cacheEntryName) {
+        final String key = toKey(cacheEntryName);
+        index.remove(key);
+        final DiskLruCache cache = diskCache;
+        if (cache != null) {
+            try {
+                cache.remove(key);
+            } catch (IOException|IllegalStateException ignored) {
+            }
+        }
+    }
+
+    public void store(String cacheEntryName, InputStream inputStream, long expirationDate) {
+        final String key = toKey(cacheEntryName);
+        final DiskLruCache cache = diskCache;
+        if (cache == null) {
+            IOUtils.closeQuietly(inputStream);
+            return;
+        }
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = cache.edit(key);
+            if (editor == null) {
+                // another thread is writing the same response
+                IOUtils.closeQuietly(inputStream);
+                return;
+            }
+            OutputStream out = null;
+            try {
+                out = editor.newOutputStream(RESPONSE_INDEX);
+                IOUtils.copy(inputStream, out);
+            } finally {
+                IOUtils.closeQuietly(out);
+                IOUtils.closeQuietly(inputStream);
+            }
+            editor.set(EXPIRATION_INDEX, Long.toString(expirationDate));
+            editor.commit();
+            index.put(key, expirationDate);
+        } catch (IOException|IllegalStateException e) {
+            // if something went wrong we just don't cache it.
+            try {
+                if (editor != null) {
+                    editor.abort();
+                }
+            } catch (IOException|IllegalStateException ignored) {
+            }
+        }
+        maybeSweep();
+    }
+
+    public void clear() {
+        index.clear();
+        final DiskLruCache cache = diskCache;
+        if (cache != null) {
+            try {
+                cache.delete();
+            } catch (IOException ignored) {
+            }
+        }
+        diskCache = open(cacheDir, maxSize);
+    }
+
+    /**
+     * Removes the expired entries this process knows about, blocks on io.
+     */
+    public void sweep() {
+        final DiskLruCache cache = diskCache;
+        final long now = System.currentTimeMillis();
+        lastSweep = SystemClock.elapsedRealtime();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getValue() < now) {
+                it.remove();
+                if (cache != null) {
+                    try {
+                        cache.remove(e.getKey());
+                    } catch (IOException|IllegalStateException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    private void maybeSweep() {
+        if (SystemClock.elapsedRealtime() - lastSweep > SWEEP_INTERVAL_MS) {
+            lastSweep = SystemClock.elapsedRealtime();
+            sweeper.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sweep();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return expiration date of the entry or null if not cached
+     */
+    private Long getExpiration(String key) {
+        final Long expiration = index.get(key);
+        if (expiration != null) {
+            return expiration;
+        }
+        // first time we've seen this key, check the disk once
+        final DiskLruCache cache = diskCache;
+        if (cache == null) {
+            return null;
+        }
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = cache.get(key);
+            if (snapshot == null) {
+                return null;
+            }
+            final long fromDisk = readExpiration(snapshot);
+            index.put(key, fromDisk);
+            return fromDisk;
+        } catch (IOException|IllegalStateException e) {
+            // IllegalStateException if cleared underneath us
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    private static long readExpiration(DiskLruCache.Snapshot snapshot) throws IOException {
+        try {
+            return Long.parseLong(snapshot.getString(EXPIRATION_INDEX));
+        } catch (NumberFormatException e) {
+            // treat as expired
+            return 0;
+        }
+    }
+
+    static String toKey(String cacheEntryName) {
+        if (KEY_PATTERN.matcher(cacheEntryName).matches()) {
+            return cacheEntryName;
+        }
+        return StringUtilities.md5(cacheEntryName);
+    }
+
+}
@@ -39,8 +39,8 @@ import java.io.InputStream;
 import java.util.Properties;
 
 /**
- * Standard {@link Cache} implementation which is used by default by the {@link de.umass.lastfm.Caller} class.
- * This implementation caches all responses in the file system. In addition to the raw responses it stores a
+ * File based {@link Cache} implementation, the {@link de.umass.lastfm.Caller} class now defaults to
+ * {@link DiskLruResponseCache}. This implementation caches all responses in the file system. In addition to the raw responses it stores a
  * .meta file which contains the expiration date for the specified request.
  *
  * @author Janni Kovacs
@@ -16,9 +16,13 @@
 
 package de.umass.lastfm.opensilk;
 
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
 import de.umass.lastfm.Album;
-import de.umass.lastfm.ResponseBuilder;
-import de.umass.lastfm.Result;
+import de.umass.lastfm.EntryPullParser;
 
 /**
  * Lastfm album request
@@ -32,7 +36,7 @@ public class AlbumRequest extends MusicEntryRequest<Album> {
     }
 
     @Override
-    protected Album buildEntry(Result result) {
-        return ResponseBuilder.buildItem(result, Album.class);
+    protected Album parseEntry(InputStream inputStream) throws XmlPullParserException, IOException {
+        return EntryPullParser.parseAlbum(inputStream);
     }
 }
@@ -16,9 +16,13 @@
 
 package de.umass.lastfm.opensilk;
 
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
 import de.umass.lastfm.Artist;
-import de.umass.lastfm.ResponseBuilder;
-import de.umass.lastfm.Result;
+import de.umass.lastfm.EntryPullParser;
 
 /**
  * Lastfm artist request
@@ -32,8 +36,8 @@ public class ArtistRequest extends MusicEntryRequest<Artist> {
     }
 
     @Override
-    protected Artist buildEntry(Result result) {
-        return ResponseBuilder.buildItem(result, Artist.class);
+    protected Artist parseEntry(InputStream inputStream) throws XmlPullParserException, IOException {
+        return EntryPullParser.parseArtist(inputStream);
     }
 
 }
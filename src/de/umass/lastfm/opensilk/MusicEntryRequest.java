@@ -22,22 +22,13 @@ import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.toolbox.HttpHeaderParser;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import de.umass.lastfm.CallException;
-import de.umass.lastfm.Result;
 import hugo.weaving.DebugLog;
 
 /**
@@ -65,12 +56,12 @@ public abstract class MusicEntryRequest<T> extends Request<T> {
     protected Response<T> parseNetworkResponse(NetworkResponse response) {
         try {
             return Response.success(
-                    buildEntry(createResultFromInputStream(new ByteArrayInputStream(response.data))),
+                    parseEntry(new ByteArrayInputStream(response.data)),
                     HttpHeaderParser.parseCacheHeaders(response));
-        } catch (SAXException|IOException ignored) {
-            // fall
+        } catch (XmlPullParserException|IOException e) {
+            // keep the cause, a failed status isn't the same as a garbled response
+            return Response.error(new ParseError(new CallException(e)));
         }
-        return Response.error(new ParseError(new CallException()));
     }
 
     /**
@@ -97,41 +88,9 @@ public abstract class MusicEntryRequest<T> extends Request<T> {
     }
 
     /**
-     * Creates object T from Result
+     * Creates object T from the response body
+     * @throws IOException if the response status isn't ok
      */
-    protected abstract T buildEntry(Result result);
-
-    /**
-     * Builds LastFM result
-     * @param inputStream
-     * @return
-     * @throws SAXException
-     * @throws IOException
-     */
-    private Result createResultFromInputStream(InputStream inputStream) throws SAXException, IOException {
-        Document document = newDocumentBuilder().parse(new InputSource(new InputStreamReader(inputStream, "UTF-8")));
-        Element root = document.getDocumentElement(); // lfm element
-        String statusString = root.getAttribute("status");
-        Result.Status status = "ok".equals(statusString) ? Result.Status.OK : Result.Status.FAILED;
-        if (status == Result.Status.FAILED) {
-            throw new IOException("Status=FAILED");
-//            Element errorElement = (Element) root.getElementsByTagName("error").item(0);
-//            int errorCode = Integer.parseInt(errorElement.getAttribute("code"));
-//            String message = errorElement.getTextContent();
-//            return Result.createRestErrorResult(errorCode, message);
-        } else {
-            return Result.createOkResult(document);
-        }
-    }
-
-    private DocumentBuilder newDocumentBuilder() {
-        try {
-            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-            return builderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            // better never happens
-            throw new RuntimeException(e);
-        }
-    }
+    protected abstract T parseEntry(InputStream inputStream) throws XmlPullParserException, IOException;
 
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.common.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Change set turning one list into another, matched up by key.
+ *
+ * The ops are meant to be applied in order: removals from the end of the old
+ * list first, then moves and inserts front to back, then changes at their
+ * final positions. Items that keep their relative order (the longest increasing
+ * run) never move, so a single edit costs a single op.
+ *
+ * Computing is O(n log n) plus O(n) per moved item, when too many items move
+ * (a sort order change) the diff gives up and asks for a full replace.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class ListDiff<T> {
+
+    public interface Keyer<T> {
+        /**
+         * @return identity of the item, equal keys are the same row
+         */
+        Object keyOf(T item);
+    }
+
+    public static final int INSERT = 1;
+    public static final int REMOVE = 2;
+    public static final int MOVE = 3;
+    public static final int CHANGE = 4;
+
+    /** Past this many moves a full replace is cheaper and looks better */
+    static final int MAX_MOVES = 64;
+
+    public static final class Op {
+        public final int type;
+        /** position in the list as it is when the op is applied */
+        public final int position;
+        public int count;
+        /** MOVE destination, for INSERT where the items start in the new list */
+        public final int toPosition;
+
+        Op(int type, int position, int count, int toPosition) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+            this.toPosition = toPosition;
+        }
+
+        @Override
+        public String toString() {
+            return "Op{" + type + " " + position + "," + count + "," + toPosition + "}";
+        }
+    }
+
+    public final int oldSize;
+    public final List<T> newList;
+    public final List<Op> ops;
+    /** True if the lists are too different for the ops to be worth it */
+    public final boolean replace;
+
+    ListDiff(int oldSize, List<T> newList, List<Op> ops, boolean replace) {
+        this.oldSize = oldSize;
+        this.newList = newList;
+        this.ops = ops;
+        this.replace = replace;
+    }
+
+    public boolean isEmpty() {
+        return !replace && ops.isEmpty();
+    }
+
+    /**
+     * Diffs the lists, safe to call off the main thread as long as neither list is mutated.
+     * Keys must be unique within each list, duplicates force a replace.
+     */
+    public static <T> ListDiff<T> compute(List<? extends T> oldList, List<? extends T> newList, Keyer<? super T> keyer) {
+        final List<T> target = Collections.unmodifiableList(new ArrayList<T>(newList));
+        final int newSize = target.size();
+        final Map<Object, Integer> newIndex = new HashMap<>(newSize * 2);
+        for (int ii=0; ii<newSize; ii++) {
+            if (newIndex.put(keyer.keyOf(target.get(ii)), ii) != null) {
+                return replace(oldList.size(), target);
+            }
+        }
+        final Map<Object, T> oldItems = new HashMap<>(oldList.size() * 2);
+        for (T item : oldList) {
+            if (oldItems.put(keyer.keyOf(item), item) != null) {
+                return replace(oldList.size(), target);
+            }
+        }
+        final List<Op> ops = new ArrayList<>();
+
+        // Removals, back to front so positions stay valid
+        final List<Object> working = new ArrayList<>(Math.max(oldList.size(), newSize));
+        for (T item : oldList) {
+            working.add(keyer.keyOf(item));
+        }
+        Op run = null;
+        for (int ii=working.size()-1; ii>=0; ii--) {
+            if (newIndex.containsKey(working.get(ii))) {
+                continue;
+            }
+            working.remove(ii);
+            if (run != null && run.position == ii + 1) {
+                // extend downwards
+                Op extended = new Op(REMOVE, ii, run.count + 1, -1);
+                ops.set(ops.size() - 1, extended);
+                run = extended;
+            } else {
+                run = new Op(REMOVE, ii, 1, -1);
+                ops.add(run);
+            }
+        }
+
+        // Survivors in the longest increasing run of new positions stay put
+        final int[] seq = new int[working.size()];
+        for (int ii=0; ii<seq.length; ii++) {
+            seq[ii] = newIndex.get(working.get(ii));
+        }
+        final boolean[] stable = new boolean[newSize];
+        final int kept = markIncreasingRun(seq, stable);
+        if (seq.length - kept > MAX_MOVES) {
+            return replace(oldList.size(), target);
+        }
+
+        // Place everything else right after its predecessor in the new list
+        int lastPos = -1;
+        run = null;
+        for (int ii=0; ii<newSize; ii++) {
+            final Object key = keyer.keyOf(target.get(ii));
+            if (stable[ii]) {
+                // anything skipped is a survivor yet to be moved
+                int pos = lastPos + 1;
+                while (!key.equals(working.get(pos))) {
+                    pos++;
+                }
+                lastPos = pos;
+                run = null;
+            } else if (oldItems.containsKey(key)) {
+                final int from = working.indexOf(key);
+                working.remove(from);
+                final int to = from <= lastPos ? lastPos : lastPos + 1;
+                working.add(to, key);
+                if (from != to) {
+                    ops.add(new Op(MOVE, from, 1, to));
+                }
+                lastPos = to;
+                run = null;
+            } else {
+                final int to = lastPos + 1;
+                working.add(to, key);
+                if (run != null && run.position + run.count == to) {
+                    run.count++;
+                } else {
+                    run = new Op(INSERT, to, 1, ii);
+                    ops.add(run);
+                }
+                lastPos = to;
+            }
+        }
+
+        // Content changes at their final positions
+        run = null;
+        for (int ii=0; ii<newSize; ii++) {
+            final T item = target.get(ii);
+            final T old = oldItems.get(keyer.keyOf(item));
+            if (old != null && !old.equals(item)) {
+                if (run != null && run.position + run.count == ii) {
+                    run.count++;
+                } else {
+                    run = new Op(CHANGE, ii, 1, -1);
+                    ops.add(run);
+                }
+            }
+        }
+        return new ListDiff<>(oldList.size(), target, ops, false);
+    }
+
+    static <T> ListDiff<T> replace(int oldSize, List<T> target) {
+        return new ListDiff<>(oldSize, target, Collections.<Op>emptyList(), true);
+    }
+
+    /**
+     * Marks stable[seq[i]] for the members of a longest strictly increasing subsequence
+     * @return its length
+     */
+    static int markIncreasingRun(int[] seq, boolean[] stable) {
+        final int n = seq.length;
+        if (n == 0) {
+            return 0;
+        }
+        // tails[k] is the index in seq ending the best run of length k+1
+        final int[] tails = new int[n];
+        final int[] prev = new int[n];
+        int len = 0;
+        for (int ii=0; ii<n; ii++) {
+            int lo = 0, hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (seq[tails[mid]] < seq[ii]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[ii] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = ii;
+            if (lo == len) {
+                len++;
+            }
+        }
+        for (int ii=tails[len - 1]; ii>=0; ii=prev[ii]) {
+            stable[seq[ii]] = true;
+        }
+        return len;
+    }
+
+}
@@ -60,6 +60,14 @@ public abstract class RecyclerListAdapter<T, VH extends RecyclerView.ViewHolder>
         return false;
     }
 
+    public boolean addAll(int pos, Collection<? extends T> collection) {
+        if (items.addAll(pos, collection)) {
+            notifyItemRangeInserted(pos, collection.size());
+            return true;
+        }
+        return false;
+    }
+
     public boolean replaceAll(Collection<? extends T> collection) {
         items.clear();
         if (items.addAll(collection)) {
@@ -99,6 +107,39 @@ public abstract class RecyclerListAdapter<T, VH extends RecyclerView.ViewHolder>
         return item;
     }
 
+    /**
+     * Brings the items in line with the diff using fine grained notifications,
+     * falls back to {@link #replaceAll} if the diff wasn't made against our items.
+     */
+    public void applyDiff(ListDiff<? extends T> diff) {
+        if (diff.replace || diff.oldSize != items.size()) {
+            replaceAll(diff.newList);
+            return;
+        }
+        for (ListDiff.Op op : diff.ops) {
+            switch (op.type) {
+                case ListDiff.REMOVE:
+                    items.subList(op.position, op.position + op.count).clear();
+                    notifyItemRangeRemoved(op.position, op.count);
+                    break;
+                case ListDiff.INSERT:
+                    items.addAll(op.position, diff.newList.subList(op.toPosition, op.toPosition + op.count));
+                    notifyItemRangeInserted(op.position, op.count);
+                    break;
+                case ListDiff.MOVE:
+                    items.add(op.toPosition, items.remove(op.position));
+                    notifyItemMoved(op.position, op.toPosition);
+                    break;
+                case ListDiff.CHANGE:
+                    for (int ii=op.position; ii<op.position+op.count; ii++) {
+                        items.set(ii, diff.newList.get(ii));
+                    }
+                    notifyItemRangeChanged(op.position, op.count);
+                    break;
+            }
+        }
+    }
+
     public void clear() {
         items.clear();
         notifyDataSetChanged();
@@ -27,6 +27,7 @@ import android.os.RemoteException;
 
 import com.andrew.apollo.IApolloService;
 import com.andrew.apollo.MusicPlaybackService;
+import com.andrew.apollo.NowPlayingInfo;
 import com.andrew.apollo.provider.MusicProviderUtil;
 
 import org.opensilk.common.rx.SimpleObserver;
@@ -88,6 +89,8 @@ public class MusicServiceConnection {
     private final EventBus eventBus;
     // protected by synchronized methods
     private Token serviceToken;
+    // last snapshot fetched, shared by everyone reacting to the same meta change
+    private volatile NowPlayingInfo nowPlaying;
 
     @Inject
     public MusicServiceConnection(@ForApplication Context context, @Named("activity") EventBus eventBus) {
@@ -111,6 +114,7 @@ public class MusicServiceConnection {
         Timber.d("unbinding MusicService");
         context.unbindService(serviceToken);
         serviceToken = null;
+        nowPlaying = null;
     }
 
     void onError(Exception e) {
@@ -640,6 +644,34 @@ public class MusicServiceConnection {
         });
     }
 
+    public Observable<NowPlayingInfo> getNowPlaying() {
+        return getObservable().map(new Func1<IApolloService, NowPlayingInfo>() {
+            @Override
+            public NowPlayingInfo call(IApolloService iApolloService) {
+                try {
+                    final NowPlayingInfo info = iApolloService.getNowPlaying();
+                    nowPlaying = info;
+                    return info;
+                } catch (RemoteException e) {
+                    onRemoteException(e);
+                    throw rethrow(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param version from the {@link NowPlayingInfo#EXTRA_VERSION} broadcast extra
+     * @return the cached snapshot if it is that version, else a fresh one
+     */
+    public Observable<NowPlayingInfo> getNowPlaying(long version) {
+        final NowPlayingInfo cached = nowPlaying;
+        if (cached != null && cached.version == version) {
+            return Observable.just(cached);
+        }
+        return getNowPlaying();
+    }
+
     public Observable<Integer> getAudioSessionId() {
         return getObservable().map(new Func1<IApolloService, Integer>() {
             @Override
@@ -673,11 +705,7 @@ public class MusicServiceConnection {
      */
 
     public long[] addSongsToMusicProvider(Song[] songs) {
-        long[] providerids = new long[songs.length];
-        for (int ii=0; ii<songs.length; ii++) {
-            providerids[ii] = MusicProviderUtil.insertSong(context, songs[ii]);
-        }
-        return providerids;
+        return MusicProviderUtil.insertSongs(context, songs);
     }
 
     public void playAllSongs(final Func0<Song[]> func, final int startPos, final boolean shuffle) {
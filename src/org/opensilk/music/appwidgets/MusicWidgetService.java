@@ -36,6 +36,7 @@ import android.view.WindowManager;
 import android.widget.RemoteViews;
 
 import com.andrew.apollo.MusicPlaybackService;
+import com.andrew.apollo.NowPlayingInfo;
 
 import org.opensilk.common.dagger.DaggerInjector;
 import org.opensilk.common.util.ThemeUtils;
@@ -59,7 +60,7 @@ import de.greenrobot.event.EventBus;
 import rx.Observable;
 import rx.Scheduler;
 import rx.functions.Action0;
-import rx.functions.Func6;
+import rx.functions.Func4;
 import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
@@ -151,20 +152,18 @@ public class MusicWidgetService extends Service {
         Meta meta;
         try {
             meta = Observable.zip(
-                    mMusicService.getCurrentArtInfo(),
-                    mMusicService.getArtistName(),
-                    mMusicService.getTrackName(),
+                    mMusicService.getNowPlaying(),
                     mMusicService.getShuffleMode(),
                     mMusicService.getRepeatMode(),
                     mMusicService.isPlaying(),
-                    new Func6<ArtInfo, String, String, Integer, Integer, Boolean, Meta>() {
+                    new Func4<NowPlayingInfo, Integer, Integer, Boolean, Meta>() {
                         @Override
-                        public Meta call(ArtInfo artInfo, String s, String s2,
+                        public Meta call(NowPlayingInfo nowPlaying,
                                          Integer integer, Integer integer2, Boolean aBoolean) {
                             Meta meta = new Meta();
-                            meta.artInfo = artInfo;
-                            meta.artistName = s;
-                            meta.trackName = s2;
+                            meta.artInfo = nowPlaying.getArtInfo();
+                            meta.artistName = nowPlaying.artistName;
+                            meta.trackName = nowPlaying.trackName;
                             meta.shuffleMode = integer;
                             meta.repeatMode = integer2;
                             meta.isplaying = aBoolean;
@@ -32,9 +32,12 @@ import org.opensilk.music.R;
 import org.opensilk.music.artwork.cache.ArtworkCache;
 import org.opensilk.music.artwork.cache.ArtworkLruCache;
 import org.opensilk.music.artwork.cache.BitmapCache;
+import org.opensilk.music.artwork.cache.BitmapDecoder;
 import org.opensilk.music.artwork.cache.BitmapDiskCache;
 import org.opensilk.music.artwork.cache.BitmapDiskLruCache;
+import org.opensilk.music.artwork.cache.BitmapPool;
 import org.opensilk.music.artwork.cache.CacheUtil;
+import org.opensilk.music.artwork.cache.NegativeArtworkCache;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -61,6 +64,10 @@ public class ArtworkModule {
     private static final int VOLLEY_POOL_SIZE_SMALL = 2;
 
     static final float THUMB_MEM_CACHE_DIVIDER = 0.15f;
+    static final float DECODE_MEM_DIVIDER = 0.10f;
+    static final float BITMAP_POOL_DIVIDER = 0.05f;
+    /** A resized decode holds the sampled, scaled and cropped bitmaps at once */
+    static final int BITMAPS_PER_DECODE = 3;
     public static final String DISK_CACHE_DIRECTORY = "artworkcache";
 
     @Provides @Singleton
@@ -86,17 +93,45 @@ public class ArtworkModule {
     }
 
     @Provides @Singleton @Named("L2Cache") //TODO when/how to close this?
-    public BitmapDiskCache provideBitmapDiskLruCache(@ForApplication Context context, AppPreferences preferences) {
+    public BitmapDiskCache provideBitmapDiskLruCache(@ForApplication Context context, AppPreferences preferences,
+                                                     BitmapDecoder decoder) {
         final int size = Integer.decode(preferences.getString(AppPreferences.IMAGE_DISK_CACHE_SIZE, "60")) * 1024 * 1024;
         return BitmapDiskLruCache.open(
                 CacheUtil.getCacheDir(context, DISK_CACHE_DIRECTORY),
-                size, Bitmap.CompressFormat.PNG, 100
+                size, Bitmap.CompressFormat.PNG, 100, decoder
         );
     }
 
+    @Provides @Singleton
+    public NegativeArtworkCache provideNegativeArtworkCache(@ForApplication Context context) {
+        return new NegativeArtworkCache(context);
+    }
+
+    @Provides @Singleton
+    public BitmapDecoder provideBitmapDecoder(@ForApplication Context context) {
+        final int memClass = getMemoryClass(context, false);
+        final long budget = Math.round(DECODE_MEM_DIVIDER * memClass * 1024 * 1024);
+        final long largest = (long) MusicApp.sDefaultMaxImageWidthPx * MusicApp.sDefaultMaxImageWidthPx * 4;
+        final int maxConcurrent = BitmapDecoder.calculateMaxConcurrent(
+                Runtime.getRuntime().availableProcessors(), budget, largest * BITMAPS_PER_DECODE);
+        Timber.i("BitmapDecoder maxConcurrent=%d", maxConcurrent);
+        final BitmapPool pool = new BitmapPool(Math.round(BITMAP_POOL_DIVIDER * memClass * 1024 * 1024));
+        return new BitmapDecoder(maxConcurrent, pool);
+    }
+
+    @Provides @Singleton
+    public ArtworkScheduler provideArtworkScheduler(BitmapDecoder decoder) {
+        // Keep the pool small so queued work is actually ordered by priority
+        return new ArtworkScheduler(Math.max(2, decoder.getMaxConcurrent()));
+    }
+
     public static int calculateL1CacheSize(Context context, boolean forceLarge) {
-        final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        final int memClass = (forceLarge || !MusicApp.isLowEndHardware(context)) ? am.getLargeMemoryClass() : am.getMemoryClass();
+        final int memClass = getMemoryClass(context, forceLarge);
         return Math.round(THUMB_MEM_CACHE_DIVIDER * memClass * 1024 * 1024);
     }
+
+    static int getMemoryClass(Context context, boolean forceLarge) {
+        final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return (forceLarge || !MusicApp.isLowEndHardware(context)) ? am.getLargeMemoryClass() : am.getMemoryClass();
+    }
 }
@@ -29,6 +29,8 @@ import com.android.volley.Response;
 import com.android.volley.VolleyLog;
 import com.android.volley.toolbox.HttpHeaderParser;
 
+import org.opensilk.music.artwork.cache.BitmapDecoder;
+
 import hugo.weaving.DebugLog;
 import timber.log.Timber;
 
@@ -58,9 +60,7 @@ public class ArtworkRequest2 extends Request<Artwork> {
     private final Config mDecodeConfig;
     private final int mMaxWidth;
     private final int mMaxHeight;
-
-    /** Decoding lock so that we don't decode more than one image at a time (to avoid OOM's) */
-    private static final Object sDecodeLock = new Object();
+    private final BitmapDecoder mDecoder;
 
     /**
      * Creates a new image request, decoding to a maximum specified width and
@@ -78,9 +78,11 @@ public class ArtworkRequest2 extends Request<Artwork> {
      *            none
      * @param decodeConfig Format to decode the bitmap to
      * @param errorListener Error listener, or null to ignore errors
+     * @param decoder Decoder bounding concurrent decodes, and providing reusable bitmaps
      */
-    public ArtworkRequest2(String url, ArtworkType imageType, Listener listener) {
+    public ArtworkRequest2(String url, ArtworkType imageType, Listener listener, BitmapDecoder decoder) {
         super(Method.GET, url, listener);
+        mDecoder = decoder;
         setRetryPolicy(new DefaultRetryPolicy(IMAGE_TIMEOUT_MS, IMAGE_MAX_RETRIES, IMAGE_BACKOFF_MULT));
         mListener = listener;
         mDecodeConfig = BITMAP_CONFIG;
@@ -131,20 +133,21 @@ public class ArtworkRequest2 extends Request<Artwork> {
 
     @Override
     protected Response<Artwork> parseNetworkResponse(NetworkResponse response) {
-        // Serialize all decode on a global lock to reduce concurrent heap usage.
-        synchronized (sDecodeLock) {
-            try {
-                Bitmap bitmap = doParse(response);
-                if (bitmap == null) {
-                    return Response.error(new ParseError(response));
-                } else {
-                    Palette palette = Palette.generate(bitmap);
-                    return Response.success(new Artwork(bitmap, palette), HttpHeaderParser.parseCacheHeaders(response));
-                }
-            } catch (OutOfMemoryError e) {
-                VolleyLog.e("Caught OOM for %d byte image, url=%s", response.data.length, getUrl());
-                return Response.error(new ParseError(e));
+        // Bound concurrent decodes to reduce heap usage without serializing everything.
+        mDecoder.acquire();
+        try {
+            Bitmap bitmap = doParse(response);
+            if (bitmap == null) {
+                return Response.error(new ParseError(response));
+            } else {
+                Palette palette = Palette.generate(bitmap);
+                return Response.success(new Artwork(bitmap, palette), HttpHeaderParser.parseCacheHeaders(response));
             }
+        } catch (OutOfMemoryError e) {
+            VolleyLog.e("Caught OOM for %d byte image, url=%s", response.data.length, getUrl());
+            return Response.error(new ParseError(e));
+        } finally {
+            mDecoder.release();
         }
     }
 
@@ -158,7 +161,7 @@ public class ArtworkRequest2 extends Request<Artwork> {
         Bitmap bitmap = null;
         if (mMaxWidth == 0 && mMaxHeight == 0) {
             decodeOptions.inPreferredConfig = mDecodeConfig;
-            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            bitmap = mDecoder.decodeByteArray(data, decodeOptions);
         } else {
             // If we have to resize this image, first get the natural bounds.
             decodeOptions.inJustDecodeBounds = true;
@@ -177,8 +180,10 @@ public class ArtworkRequest2 extends Request<Artwork> {
             decodeOptions.inPreferQualityOverSpeed = true;
             decodeOptions.inSampleSize =
                     findBestSampleSize(actualWidth, actualHeight, desiredWidth, desiredHeight);
-            Bitmap tempBitmap =
-                    BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions);
+            // The sampled bitmap is scratch, so decode into a pooled buffer
+            // and hand it back to the pool once we are done with it
+            mDecoder.addInBitmapOptions(decodeOptions);
+            Bitmap tempBitmap = mDecoder.decodeByteArray(data, decodeOptions);
 
             Bitmap tempBitmap2;
 
@@ -187,7 +192,7 @@ public class ArtworkRequest2 extends Request<Artwork> {
                     tempBitmap.getHeight() > desiredHeight)) {
                 tempBitmap2 = Bitmap.createScaledBitmap(tempBitmap,
                         desiredWidth, desiredHeight, true);
-                tempBitmap.recycle();
+                mDecoder.recycle(tempBitmap);
             } else if (tempBitmap == null) {
                 return null;
             } else {
@@ -201,12 +206,12 @@ public class ArtworkRequest2 extends Request<Artwork> {
 //                Timber.d("Center cropping %d %d %s", w, h, getUrl());
                 //center crop
                 bitmap = Bitmap.createBitmap(tempBitmap2, w/2 - h/2, 0, h, h);
-                tempBitmap2.recycle();
+                mDecoder.recycle(tempBitmap2);
             } else if (h > w) {
 //                Timber.d("Top cropping %d %d %s", w, h, getUrl());
                 // top crop
                 bitmap = Bitmap.createBitmap(tempBitmap2, 0, 0, w, w);
-                tempBitmap2.recycle();
+                mDecoder.recycle(tempBitmap2);
             } else {
 //                Timber.d("No cropping %d %d %s", w, h, getUrl());
                 bitmap = tempBitmap2;
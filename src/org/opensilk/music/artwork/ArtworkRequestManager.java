@@ -33,9 +33,25 @@ public interface ArtworkRequestManager {
     Subscription newAlbumRequest(AnimatedImageView imageView, PaletteObserver paletteObserver, long albumId, ArtworkType artworkType);
     Subscription newArtistRequest(AnimatedImageView imageView, PaletteObserver paletteObserver, ArtInfo artInfo, ArtworkType artworkType);
 
+    /**
+     * Warms the caches at low priority for items about to scroll into view,
+     * unsubscribe when the item is no longer ahead of the scroll.
+     */
+    Subscription prefetchAlbum(ArtInfo artInfo, ArtworkType artworkType);
+    Subscription prefetchArtist(ArtInfo artInfo, ArtworkType artworkType);
+
+    ArtworkScheduler.Stats getStats();
+    ArtworkRequestRegistry.Stats getRequestStats();
+
     ParcelFileDescriptor getArtwork(String artistName, String albumName);
     ParcelFileDescriptor getArtworkThumbnail(String artistName, String albumName);
 
+    /**
+     * Forgets that no artwork could be found for artInfo, so the next request
+     * goes looking again. Call after the user picks artwork for it.
+     */
+    void invalidateMissingArtwork(ArtInfo artInfo);
+
     boolean clearCaches();
     void evictL1();
     void onDeathImminent();
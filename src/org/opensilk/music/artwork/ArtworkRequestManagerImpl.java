@@ -23,16 +23,17 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.support.v7.graphics.Palette;
 import android.text.TextUtils;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.google.gson.Gson;
-import com.jakewharton.disklrucache.DiskLruCache;
 
 import org.apache.commons.io.IOUtils;
 import org.opensilk.common.dagger.qualifier.ForApplication;
@@ -42,20 +43,20 @@ import org.opensilk.music.api.meta.ArtInfo;
 import org.opensilk.music.artwork.cache.ArtworkCache;
 import org.opensilk.music.artwork.cache.ArtworkLruCache;
 import org.opensilk.music.artwork.cache.BitmapCache;
+import org.opensilk.music.artwork.cache.BitmapDecoder;
 import org.opensilk.music.artwork.cache.BitmapDiskCache;
 import org.opensilk.music.artwork.cache.BitmapDiskLruCache;
+import org.opensilk.music.artwork.cache.NegativeArtworkCache;
+import org.opensilk.music.artwork.cache.PaletteCodec;
 import org.opensilk.music.ui2.loader.AlbumArtInfoLoader;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 
@@ -94,8 +95,11 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     final BitmapDiskCache mL2Cache;
     final RequestQueue mVolleyQueue;
     final Gson mGson;
+    final BitmapDecoder mDecoder;
+    final ArtworkScheduler mScheduler;
+    final NegativeArtworkCache mNegativeCache;
 
-    final Map<RequestKey, IArtworkRequest> mActiveRequests = new LinkedHashMap<>(10);
+    final ArtworkRequestRegistry mRequests = new ArtworkRequestRegistry();
 
     @Inject
     public ArtworkRequestManagerImpl(@ForApplication Context mContext,
@@ -103,13 +107,19 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                                      @Named("L1Cache") ArtworkCache mL1Cache,
                                      @Named("L2Cache") BitmapDiskCache mL2Cache,
                                      RequestQueue mVolleyQueue,
-                                     Gson mGson) {
+                                     Gson mGson,
+                                     BitmapDecoder mDecoder,
+                                     ArtworkScheduler mScheduler,
+                                     NegativeArtworkCache mNegativeCache) {
         this.mContext = mContext;
         this.mPreferences = mPreferences;
         this.mL1Cache = mL1Cache;
         this.mL2Cache = mL2Cache;
         this.mVolleyQueue = mVolleyQueue;
         this.mGson = mGson;
+        this.mDecoder = mDecoder;
+        this.mScheduler = mScheduler;
+        this.mNegativeCache = mNegativeCache;
     }
 
     static class CrumbTrail {
@@ -145,24 +155,31 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     }
 
     interface IArtworkRequest {
-        void addRecipient(ImageContainer c);
+        /**
+         * @return false if the request already completed, caller must make a new one
+         */
+        boolean addRecipient(ImageContainer c);
+        void onRecipientUnsubscribed(ImageContainer c);
     }
 
     /**
-     * TODO hook ImageContainer to unsubscribe request when all containers
-     * TODO have unsubscribed, and find way to cancel volley requests when unsubscribed
+     * TODO find way to cancel volley requests when all recipients have unsubscribed
      */
-    abstract class BaseArtworkRequest implements Subscription, IArtworkRequest {
+    abstract class BaseArtworkRequest implements Subscription, IArtworkRequest, ArtworkScheduler.Prioritized {
         final RequestKey key;
         final ArtInfo artInfo;
         final ArtworkType artworkType;
 
-        final List<ImageContainer> recipients = new LinkedList<>();
+        // read from the scheduler threads
+        final List<ImageContainer> recipients = new CopyOnWriteArrayList<>();
 
         Subscription subscription;
-        boolean unsubscribed = false;
+        volatile boolean unsubscribed = false;
+        // guarded by this, recipients can be added from any thread
         boolean inflight = false;
-        boolean complete = false;
+        volatile boolean complete = false;
+        Artwork delivered;
+        boolean deliveredAnimate;
 
         BaseArtworkRequest(RequestKey key) {
             this.key = key;
@@ -191,20 +208,71 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
         }
 
         @Override
-        public void addRecipient(ImageContainer c) {
-            if (complete) {
-                mActiveRequests.remove(key);
-                throw new IllegalStateException("Tried to add recipient after complete");
+        public synchronized boolean addRecipient(ImageContainer c) {
+            if (complete || unsubscribed) {
+                return false;
             }
+            c.setRequest(this);
+            if (delivered != null) {
+                // Response already went out to the others, we just haven't
+                // been removed yet, hand it over directly
+                c.setImageBitmap(delivered.bitmap, deliveredAnimate);
+                c.notifyPaletteObserver(delivered.palette, deliveredAnimate);
+                return true;
+            }
+            final int oldPriority = getPriority();
             recipients.add(c);
             if (!inflight) {
                 inflight = true;
                 start();
             } else {
                 c.setDefaultImage();
+                if (getPriority() != oldPriority) {
+                    mScheduler.reprioritize(this);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized void onRecipientUnsubscribed(ImageContainer c) {
+            if (complete || unsubscribed) return;
+            if (isCancelled()) {
+                // Nobody is waiting on us anymore, stop whatever we are doing.
+                // Volley requests are left alone since they are shared with
+                // other requests for the same art and will still fill the cache
+                addBreadcrumb("cancel");
+                unsubscribed = true;
+                if (subscription != null) {
+                    subscription.unsubscribe();
+                    subscription = null;
+                }
+                onComplete();
+            } else {
+                mScheduler.reprioritize(this);
             }
         }
 
+        @Override
+        public int getPriority() {
+            int priority = ArtworkScheduler.PRIORITY_PREFETCH;
+            for (ImageContainer c : recipients) {
+                if (!c.isUnsubscribed() && c.priority < priority) {
+                    priority = c.priority;
+                }
+            }
+            return priority;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (unsubscribed) return true;
+            for (ImageContainer c : recipients) {
+                if (!c.isUnsubscribed()) return false;
+            }
+            return true;
+        }
+
         void start() {
             addBreadcrumb("start");
             tryForCache();
@@ -212,8 +280,10 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
 
         void onComplete() {
             addBreadcrumb("complete");
-            complete = true;
-            mActiveRequests.remove(key);
+            synchronized (this) {
+                complete = true;
+            }
+            mRequests.remove(key, this);
             printTrail();
         }
 
@@ -229,6 +299,11 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
         void onResponse(Artwork artwork, boolean fromCache, boolean shouldAnimate) {
             addBreadcrumb("onResponse("+fromCache+")");
             if (unsubscribed) return;
+            synchronized (this) {
+                delivered = artwork;
+                deliveredAnimate = shouldAnimate;
+            }
+            // anyone attaching from here on is handed the artwork in addRecipient
             for (ImageContainer c : recipients) {
                 if (c.isUnsubscribed()) continue;
                 c.setImageBitmap(artwork.bitmap, shouldAnimate);
@@ -244,11 +319,12 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                 onComplete();
                 return;
             }
-            subscription = createCacheObservable(artInfo, artworkType)
+            subscription = createCacheObservable(artInfo, artworkType, mScheduler.forRequest(this))
                     .subscribe(new Action1<CacheResponse>() {
                         @Override
                         public void call(CacheResponse cr) {
                             addBreadcrumb("tryForCache hit");
+                            mRequests.recordHit();
                             onResponse(cr.artwork, true, !cr.fromL1);
                             onComplete();
                         }
@@ -257,6 +333,15 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         public void call(Throwable throwable) {
                             addBreadcrumb("tryForCache miss");
                             if (throwable instanceof CacheMissException) {
+                                if (((CacheMissException) throwable).suppressed) {
+                                    // Looked before and found nothing, dont bother again yet
+                                    addBreadcrumb("suppressed");
+                                    mRequests.recordSuppressed();
+                                    setDefaultImage();
+                                    onComplete();
+                                    return;
+                                }
+                                mRequests.recordMiss();
                                 onCacheMiss();
                             } else {
                                 setDefaultImage();
@@ -269,6 +354,15 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
         abstract boolean validateArtInfo();
         abstract void onCacheMiss();
 
+        /**
+         * Every source we tried came up empty, remember it for next time
+         */
+        void onLookupFailed(Throwable throwable) {
+            addBreadcrumb("onLookupFailed");
+            mNegativeCache.putFailure(getCacheKey(artInfo, artworkType), throwable);
+            onComplete();
+        }
+
         CrumbTrail crumbTrail;
         void addBreadcrumb(String crumb) {
             if (!DROP_CRUMBS) return;
@@ -322,7 +416,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         public void call(Throwable throwable) {
                             addBreadcrumb("tryForNetwork miss");
 //                            Timber.w(throwable, "Unable to obtain image for %s", artInfo);
-                            onComplete();
+                            onLookupFailed(throwable);
                         }
                     });
         }
@@ -426,12 +520,12 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         @Override
                         public void call(Throwable throwable) {
                             addBreadcrumb("tryForNetwork miss");
-                            onNetworkMiss(tryFallbackOnFail);
+                            onNetworkMiss(tryFallbackOnFail, throwable);
                         }
                     });
         }
 
-        void onNetworkMiss(final boolean tryFallback) {
+        void onNetworkMiss(final boolean tryFallback, Throwable throwable) {
             addBreadcrumb("onNetworkMiss");
             boolean isLocalArt = isLocalArtwork(artInfo.artworkUri);
             if (tryFallback) {
@@ -443,12 +537,12 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                     tryForUrl();
                 }
             } else {
-                onComplete();
+                onLookupFailed(throwable);
             }
         }
 
         void tryForMediaStore(final boolean tryNetworkOnFailure) {
-            subscription = createMediaStoreRequestObservable(artInfo, artworkType)
+            subscription = createMediaStoreRequestObservable(artInfo, artworkType, mScheduler.forRequest(this))
                     .subscribe(new Action1<Artwork>() {
                         @Override
                         public void call(Artwork artwork) {
@@ -460,18 +554,18 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         @Override
                         public void call(Throwable throwable) {
                             addBreadcrumb("tryForMediaStore miss");
-                            onMediaStoreMiss(tryNetworkOnFailure);
+                            onMediaStoreMiss(tryNetworkOnFailure, throwable);
                         }
                     });
         }
 
-        void onMediaStoreMiss(boolean tryNetwork) {
+        void onMediaStoreMiss(boolean tryNetwork, Throwable throwable) {
             addBreadcrumb("onMediaStoreMiss");
             if (tryNetwork) {
                 addBreadcrumb("goingForNetwork");
                 tryForNetwork(false);
             } else {
-                onComplete();
+                onLookupFailed(throwable);
             }
         }
 
@@ -489,7 +583,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         public void call(Throwable throwable) {
                             addBreadcrumb("tryForUrl miss");
 //                            Timber.w(throwable, "tryForUrl %s", artInfo);
-                            onComplete();
+                            onLookupFailed(throwable);
                         }
                     });
         }
@@ -528,7 +622,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                     .subscribe(new Action1<ArtInfo>() {
                         @Override
                         public void call(ArtInfo artInfo) {
-                            RequestKey k = new RequestKey(artInfo, artworkType);
+                            RequestKey k = new RequestKey(artInfo, resolveArtworkType(container, artworkType));
                             queueRequest(container, k, true);
                         }
                     }, new Action1<Throwable>() {
@@ -548,7 +642,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     public Subscription newAlbumRequest(AnimatedImageView imageView, PaletteObserver paletteObserver,
                                         ArtInfo artInfo, ArtworkType artworkType) {
         ImageContainer c = new ImageContainer(imageView, paletteObserver);
-        RequestKey k = new RequestKey(artInfo, artworkType);
+        RequestKey k = new RequestKey(artInfo, resolveArtworkType(c, artworkType));
         queueRequest(c, k, true);
         return c;
     }
@@ -563,18 +657,43 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     public Subscription newArtistRequest(AnimatedImageView imageView, PaletteObserver paletteObserver,
                                          ArtInfo artInfo, ArtworkType artworkType) {
         ImageContainer c = new ImageContainer(imageView, paletteObserver);
-        RequestKey k = new RequestKey(artInfo, artworkType);
+        RequestKey k = new RequestKey(artInfo, resolveArtworkType(c, artworkType));
         queueRequest(c, k, false);
         return c;
     }
 
+    @Override
+    public Subscription prefetchAlbum(ArtInfo artInfo, ArtworkType artworkType) {
+        ImageContainer c = new ImageContainer(null, null, ArtworkScheduler.PRIORITY_PREFETCH);
+        queueRequest(c, new RequestKey(artInfo, artworkType), true);
+        return c;
+    }
+
+    @Override
+    public Subscription prefetchArtist(ArtInfo artInfo, ArtworkType artworkType) {
+        ImageContainer c = new ImageContainer(null, null, ArtworkScheduler.PRIORITY_PREFETCH);
+        queueRequest(c, new RequestKey(artInfo, artworkType), false);
+        return c;
+    }
+
+    @Override
+    public ArtworkScheduler.Stats getStats() {
+        return mScheduler.getStats();
+    }
+
+    @Override
+    public ArtworkRequestRegistry.Stats getRequestStats() {
+        return mRequests.getStats();
+    }
+
     @Override
     public ParcelFileDescriptor getArtwork(String artistName, String albumName) {
         final ArtInfo artInfo = new ArtInfo(artistName, albumName, null);
         final String cacheKey = getCacheKey(artInfo, ArtworkType.LARGE);
-        ParcelFileDescriptor pfd = pullSnapshot(cacheKey);
+        ParcelFileDescriptor pfd = openL2Descriptor(cacheKey);
         // Create request so it will be there next time
         if (pfd == null) newAlbumRequest(null, null, artInfo, ArtworkType.LARGE);
+        else mRequests.recordHit();
         return pfd;
     }
 
@@ -582,16 +701,24 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     public ParcelFileDescriptor getArtworkThumbnail(String artistName, String albumName) {
         final ArtInfo artInfo = new ArtInfo(artistName, albumName, null);
         final String cacheKey = getCacheKey(artInfo, ArtworkType.THUMBNAIL);
-        ParcelFileDescriptor pfd = pullSnapshot(cacheKey);
+        ParcelFileDescriptor pfd = openL2Descriptor(cacheKey);
         // Create request so it will be there next time
         if (pfd == null) newAlbumRequest(null, null, artInfo, ArtworkType.THUMBNAIL);
+        else mRequests.recordHit();
         return pfd;
     }
 
+    @Override
+    public void invalidateMissingArtwork(ArtInfo artInfo) {
+        mNegativeCache.invalidate(getCacheKey(artInfo, ArtworkType.THUMBNAIL));
+        mNegativeCache.invalidate(getCacheKey(artInfo, ArtworkType.LARGE));
+    }
+
     @Override
     public boolean clearCaches() {
         boolean success;
         clearVolleyQueue();
+        mNegativeCache.clear();
         mVolleyQueue.getCache().clear();
         evictL1();
         success = mL2Cache.clearCache();
@@ -608,6 +735,9 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     @DebugLog
     public void onDeathImminent() {
 //        diskCacheQueue.clear();
+        Timber.d("%s", mScheduler.getStats());
+        Timber.d("%s", mRequests.getStats());
+        mNegativeCache.trim();
         clearVolleyQueue();
     }
 
@@ -615,17 +745,59 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
      * End IMPL
      */
 
-    void queueRequest(ImageContainer c, RequestKey k, boolean isAlbum) {
-        IArtworkRequest r = mActiveRequests.get(k);
-        if (r == null) {
-            r = isAlbum ? new AlbumArtworkRequest(k) : new ArtistArtworkRequest(k);
-            mActiveRequests.put(k, r);
-        } else {
-            Timber.d("Attaching recipient to running request %s", k.artInfo);
+    /**
+     * Downgrades large requests to thumbnails when the view wont be any bigger
+     * than a thumbnail, saving us the large decode.
+     */
+    static ArtworkType resolveArtworkType(ImageContainer c, ArtworkType artworkType) {
+        if (artworkType == ArtworkType.LARGE) {
+            int viewSize = c.getViewSize();
+            if (viewSize > 0 && viewSize <= ArtworkType.getWidth(ArtworkType.THUMBNAIL)) {
+                return ArtworkType.THUMBNAIL;
+            }
         }
-        r.addRecipient(c);
+        return artworkType;
     }
 
+    /**
+     * Progressive loading, if we are about to go looking for a large image and
+     * already have the thumbnail in memory show it until the large one is ready
+     */
+    void setPreviewFromL1(ImageContainer c, RequestKey k) {
+        if (k.artworkType != ArtworkType.LARGE) return;
+        final ArtInfo artInfo = k.artInfo;
+        if (artInfo == null || (artInfo.artistName == null
+                && artInfo.albumName == null && artInfo.artworkUri == null)) {
+            return;
+        }
+        if (mL1Cache.containsKey(getCacheKey(artInfo, ArtworkType.LARGE))) {
+            return;
+        }
+        Artwork thumbnail = mL1Cache.getArtwork(getCacheKey(artInfo, ArtworkType.THUMBNAIL));
+        if (thumbnail != null) {
+            c.setPreviewBitmap(thumbnail.bitmap);
+        }
+    }
+
+    void queueRequest(ImageContainer c, RequestKey k, boolean isAlbum) {
+        setPreviewFromL1(c, k);
+        mRequests.attach(k, c, isAlbum ? mAlbumRequestFactory : mArtistRequestFactory);
+    }
+
+    final ArtworkRequestRegistry.Factory mAlbumRequestFactory = new ArtworkRequestRegistry.Factory() {
+        @Override
+        public IArtworkRequest create(RequestKey key) {
+            return new AlbumArtworkRequest(key);
+        }
+    };
+
+    final ArtworkRequestRegistry.Factory mArtistRequestFactory = new ArtworkRequestRegistry.Factory() {
+        @Override
+        public IArtworkRequest create(RequestKey key) {
+            return new ArtistArtworkRequest(key);
+        }
+    };
+
     void clearVolleyQueue() {
         mVolleyQueue.cancelAll(new RequestQueue.RequestFilter() {
             @Override public boolean apply(Request<?> request) {
@@ -635,6 +807,11 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
     }
 
     public Observable<CacheResponse> createCacheObservable(final ArtInfo artInfo, final ArtworkType artworkType) {
+        return createCacheObservable(artInfo, artworkType, Schedulers.io());
+    }
+
+    public Observable<CacheResponse> createCacheObservable(final ArtInfo artInfo, final ArtworkType artworkType,
+                                                           final Scheduler scheduler) {
         final String cacheKey = getCacheKey(artInfo, artworkType);
         return Observable.create(new Observable.OnSubscribe<CacheResponse>() {
                 @Override
@@ -660,21 +837,35 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                             @Override
                             public void call(Subscriber<? super CacheResponse> subscriber) {
 //                                Timber.v("Trying L2 for %s, from %s", cacheKey, Thread.currentThread().getName());
-                                Bitmap bitmap = mL2Cache.getBitmap(cacheKey);
-                                if (bitmap != null) {
+                                final long start = SystemClock.elapsedRealtime();
+                                Artwork artwork = mL2Cache.getArtwork(cacheKey);
+                                if (artwork != null) {
+                                    final boolean hadPalette = artwork.palette != null;
+                                    if (!hadPalette) {
+                                        artwork = new Artwork(artwork.bitmap, Palette.generate(artwork.bitmap));
+                                        // Entry predates stored palettes, save it for next time,
+                                        // unless we cant read them back in which case we'd rewrite it every hit
+                                        if (PaletteCodec.isSupported()) {
+                                            mL2Cache.putPalette(cacheKey, artwork.palette);
+                                        }
+                                    }
+                                    if (DROP_CRUMBS) {
+                                        Timber.v("L2 hit for %s in %dms (stored palette=%s)", cacheKey,
+                                                SystemClock.elapsedRealtime() - start, hadPalette);
+                                    }
                                     //Always add to cache
-                                    Palette palette = Palette.generate(bitmap);
-                                    Artwork artwork = new Artwork(bitmap, palette);
                                     mL1Cache.putArtwork(cacheKey, artwork);
                                     if (subscriber.isUnsubscribed()) return;
                                     subscriber.onNext(new CacheResponse(artwork, false));
                                     subscriber.onCompleted();
                                 } else {
+                                    // Check here, its a disk read and we are off the main thread
+                                    final boolean suppressed = mNegativeCache.isSuppressed(cacheKey);
                                     if (subscriber.isUnsubscribed()) return;
-                                    subscriber.onError(new CacheMissException());
+                                    subscriber.onError(new CacheMissException(suppressed));
                                 }
                             }
-                        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+                        }).subscribeOn(scheduler).observeOn(AndroidSchedulers.mainThread());
                     } else {
                         return Observable.error(throwable);
                     }
@@ -703,7 +894,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                                             if (!TextUtils.isEmpty(url)) {
                                                 return Observable.just(url);
                                             } else {
-                                                return Observable.error(new NullPointerException("No image urls for " + album.getName()));
+                                                return Observable.error(new ArtworkNotFoundException("No image urls for " + album.getName()));
                                             }
                                         }
                                     });
@@ -712,7 +903,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                             if (!TextUtils.isEmpty(url)) {
                                 return Observable.just(url);
                             } else {
-                                return Observable.error(new NullPointerException("No url for " + album.getName()));
+                                return Observable.error(new ArtworkNotFoundException("No url for " + album.getName()));
                             }
                         }
                     }
@@ -736,7 +927,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                             return url;
                         }
                         Timber.v("ArtistApiRequest: No image urls for %s", artist.getName());
-                        throw new NullPointerException("No image urls for " + artist.getName());
+                        throw new ArtworkNotFoundException("No image urls for " + artist.getName());
                     }
                 })
                 .flatMap(new Func1<String, Observable<Artwork>>() {
@@ -765,7 +956,8 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                             subscriber.onCompleted();
                         } else {
                             Timber.w("Api response does not contain mbid for %s", album.getName());
-                            onErrorResponse(new VolleyError("Unknown mbid"));
+                            // lastfm answered, it just doesnt know the album
+                            onErrorResponse(new ParseError(new ArtworkNotFoundException("Unknown mbid")));
                         }
                     }
                 };
@@ -836,13 +1028,13 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                         // always add to cache
                         String cacheKey = getCacheKey(artInfo, artworkType);
                         mL1Cache.putArtwork(cacheKey, artwork);
-                        putInDiskCache(cacheKey, artwork.bitmap);
+                        putInDiskCache(cacheKey, artwork);
                         if (subscriber.isUnsubscribed()) return;
                         subscriber.onNext(artwork);
                         subscriber.onCompleted();
                     }
                 };
-                mVolleyQueue.add(new ArtworkRequest2(url, artworkType, listener).setTag(artInfo));
+                mVolleyQueue.add(new ArtworkRequest2(url, artworkType, listener, mDecoder).setTag(artInfo));
                 // Here we take advantage of volleys coolest feature,
                 // We have 2 types of images, a thumbnail and a larger image suitable for
                 // fullscreen use. these are almost never required at the same time so we create
@@ -863,13 +1055,18 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
             }
             @Override
             public void onResponse(Artwork artwork) {
-                putInDiskCache(getCacheKey(artInfo, artworkType), artwork.bitmap);
+                putInDiskCache(getCacheKey(artInfo, artworkType), artwork);
             }
         };
-        mVolleyQueue.add(new ArtworkRequest2(url, artworkType, listener).setTag(artInfo));
+        mVolleyQueue.add(new ArtworkRequest2(url, artworkType, listener, mDecoder).setTag(artInfo));
     }
 
     public Observable<Artwork> createMediaStoreRequestObservable(final ArtInfo artInfo, final ArtworkType artworkType) {
+        return createMediaStoreRequestObservable(artInfo, artworkType, Schedulers.io());
+    }
+
+    public Observable<Artwork> createMediaStoreRequestObservable(final ArtInfo artInfo, final ArtworkType artworkType,
+                                                                 final Scheduler scheduler) {
         return Observable.create(new Observable.OnSubscribe<Artwork>() {
             @Override
             public void call(final Subscriber<? super Artwork> subscriber) {
@@ -881,23 +1078,21 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                     final NetworkResponse response = new NetworkResponse(IOUtils.toByteArray(in));
                     // We create a faux ImageRequest so we can cheat and use it
                     // to processs the bitmap like a real network request
-                    // this is not only easier but safer since all bitmap processing is serial.
-                    ArtworkRequest2 request = new ArtworkRequest2("fauxrequest", artworkType, null);
+                    // this is not only easier but safer since all bitmap processing is bounded.
+                    ArtworkRequest2 request = new ArtworkRequest2("fauxrequest", artworkType, null, mDecoder);
                     Response<Artwork> result = request.parseNetworkResponse(response);
-                    // make the opposite as well
-                    ArtworkType artworkType2 = ArtworkType.opposite(artworkType);
-                    ArtworkRequest2 request2 = new ArtworkRequest2("fauxrequest2", artworkType2, null);
-                    Response<Artwork> result2 = request2.parseNetworkResponse(response);
-                    // add to cache first so we dont return before its added
-                    if (result2.isSuccess()) {
-                        String cacheKey = getCacheKey(artInfo, artworkType2);
-                        putInDiskCache(cacheKey, result2.result.bitmap);
-                    }
                     if (result.isSuccess()) {
+                        // Only decode once, when we were asked for the large image we
+                        // derive the thumbnail from it. Thumbnail requests dont make
+                        // the large image, it is only decoded if someone asks for it.
+                        if (artworkType == ArtworkType.LARGE) {
+                            Artwork thumbnail = createThumbnail(result.result);
+                            putInDiskCache(getCacheKey(artInfo, ArtworkType.THUMBNAIL), thumbnail);
+                        }
                         //always add to cache
                         String cacheKey = getCacheKey(artInfo, artworkType);
                         mL1Cache.putArtwork(cacheKey, result.result);
-                        putInDiskCache(cacheKey, result.result.bitmap);
+                        putInDiskCache(cacheKey, result.result);
                         if (subscriber.isUnsubscribed()) return;
                         subscriber.onNext(result.result);
                         subscriber.onCompleted();
@@ -912,15 +1107,28 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                     IOUtils.closeQuietly(in);
                 }
             }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        }).subscribeOn(scheduler).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Scales a large artwork down to thumbnail size, reusing its palette
+     */
+    static Artwork createThumbnail(Artwork large) {
+        final int size = ArtworkType.getWidth(ArtworkType.THUMBNAIL);
+        final Bitmap bitmap = large.bitmap;
+        if (bitmap.getWidth() <= size && bitmap.getHeight() <= size) {
+            return large;
+        }
+        // large images are always cropped square
+        return new Artwork(Bitmap.createScaledBitmap(bitmap, size, size, true), large.palette);
     }
 
-    final BlockingDeque<Map.Entry<String, Bitmap>> diskCacheQueue = new LinkedBlockingDeque<>();
+    final BlockingDeque<Map.Entry<String, Artwork>> diskCacheQueue = new LinkedBlockingDeque<>();
     Scheduler.Worker diskCacheWorker;
 
-    public void putInDiskCache(final String key, final Bitmap bitmap) {
+    public void putInDiskCache(final String key, final Artwork artwork) {
         Timber.v("putInDiskCache(%s)", key);
-        diskCacheQueue.addLast(new AbstractMap.SimpleEntry<>(key, bitmap));
+        diskCacheQueue.addLast(new AbstractMap.SimpleEntry<>(key, artwork));
         if (diskCacheWorker == null || diskCacheWorker.isUnsubscribed()) {
             diskCacheWorker = Schedulers.io().createWorker();
             diskCacheWorker.schedule(new Action0() {
@@ -928,7 +1136,7 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
                 public void call() {
                     while (true) {
                         try {
-                            Map.Entry<String, Bitmap> entry = diskCacheQueue.pollFirst(60, TimeUnit.SECONDS);
+                            Map.Entry<String, Artwork> entry = diskCacheQueue.pollFirst(60, TimeUnit.SECONDS);
                             if (entry != null) {
                                 writeToL2(entry.getKey(), entry.getValue());
                                 continue;
@@ -947,45 +1155,21 @@ public class ArtworkRequestManagerImpl implements ArtworkRequestManager {
         }
     }
 
-    void writeToL2(final String key, final Bitmap bitmap) {
+    void writeToL2(final String key, final Artwork artwork) {
         Timber.v("writeToL2(%s)", key);
-        mL2Cache.putBitmap(key, bitmap);
+        mL2Cache.putArtwork(key, artwork);
     }
 
-    private ParcelFileDescriptor pullSnapshot(String cacheKey) {
-        Timber.d("Checking DiskCache for " + cacheKey);
-        try {
-            if (mL2Cache == null) {
-                throw new IOException("Unable to obtain cache instance");
-            }
-            final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
-            final OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
-            final DiskLruCache.Snapshot snapshot = mL2Cache.getSnapshot(cacheKey);
-            if (snapshot != null && snapshot.getInputStream(0) != null) {
-                final Scheduler.Worker worker = Schedulers.io().createWorker();
-                worker.schedule(new Action0() {
-                    @Override
-                    public void call() {
-                        try {
-                            IOUtils.copy(snapshot.getInputStream(0), out);
-                        } catch (IOException e) {
-//                            e.printStackTrace();
-                        } finally {
-                            snapshot.close();
-                            IOUtils.closeQuietly(out);
-                            worker.unsubscribe();
-                        }
-                    }
-                });
-                return pipe[0];
-            } else {
-                pipe[0].close();
-                out.close();
-            }
-        } catch (IOException e) {
-            Timber.w(e, "pullSnapshot");
+    /**
+     * Hands out the L2 entry itself, every consumer gets its own descriptor
+     * onto the same file, no pipes or copier threads.
+     */
+    private ParcelFileDescriptor openL2Descriptor(String cacheKey) {
+        if (mL2Cache == null) {
+            Timber.w("openL2Descriptor: Unable to obtain cache instance");
+            return null;
         }
-        return null;
+        return mL2Cache.openBitmapDescriptor(cacheKey);
     }
 
     /**
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork;
+
+import org.opensilk.music.artwork.ArtworkRequestManagerImpl.IArtworkRequest;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In flight artwork requests keyed by {@link RequestKey}. Safe to use from the
+ * ui thread and the provider binder threads at the same time, all recipients
+ * asking for the same key while a request is running are attached to it and
+ * completed from its single fetch.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class ArtworkRequestRegistry {
+
+    interface Factory {
+        IArtworkRequest create(RequestKey key);
+    }
+
+    final ConcurrentMap<RequestKey, IArtworkRequest> inflight = new ConcurrentHashMap<>(16, 0.75f, 4);
+
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong coalesced = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Attaches the container to the running request for key, or registers and
+     * starts a new one from the factory if nothing is running.
+     *
+     * @return the request the container was attached to
+     */
+    IArtworkRequest attach(RequestKey key, ImageContainer c, Factory factory) {
+        while (true) {
+            IArtworkRequest r = inflight.get(key);
+            if (r == null) {
+                final IArtworkRequest created = factory.create(key);
+                r = inflight.putIfAbsent(key, created);
+                if (r == null) {
+                    // Nothing has started it yet so it cant have completed
+                    created.addRecipient(c);
+                    return created;
+                }
+                // Lost the race, fall through and join the winner
+            }
+            if (r.addRecipient(c)) {
+                coalesced.incrementAndGet();
+                return r;
+            }
+            // Completed between lookup and attach, clear it out and try again
+            inflight.remove(key, r);
+        }
+    }
+
+    /**
+     * Unregisters the request, only if it is still the one registered for key.
+     */
+    void remove(RequestKey key, IArtworkRequest request) {
+        inflight.remove(key, request);
+    }
+
+    /**
+     * A lookup was satisfied by one of the caches
+     */
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * A lookup missed the caches and had to go to the network
+     */
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * A lookup missed the caches but failed recently, so we didnt go looking
+     */
+    void recordSuppressed() {
+        suppressed.incrementAndGet();
+    }
+
+    Stats getStats() {
+        return new Stats(hits.get(), coalesced.get(), misses.get(), suppressed.get(), inflight.size());
+    }
+
+    public static class Stats {
+        /** Lookups answered from L1 or L2 */
+        public final long hits;
+        /** Recipients attached to a request already in flight */
+        public final long coalesced;
+        /** Lookups that went to the network */
+        public final long misses;
+        /** Lookups skipped because they failed recently */
+        public final long suppressed;
+        /** Requests currently in flight */
+        public final int inflight;
+
+        Stats(long hits, long coalesced, long misses, long suppressed, int inflight) {
+            this.hits = hits;
+            this.coalesced = coalesced;
+            this.misses = misses;
+            this.suppressed = suppressed;
+            this.inflight = inflight;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "ArtworkRequestRegistry[hits=%d, coalesced=%d, misses=%d, suppressed=%d, inflight=%d]",
+                    hits, coalesced, misses, suppressed, inflight);
+        }
+    }
+}
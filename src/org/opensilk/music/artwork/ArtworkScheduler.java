@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.internal.util.RxThreadFactory;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Runs artwork cache and decode work on a small pool ordered by priority.
+ * Visible requests run before prefetches, newest first so during a fling
+ * whatever was bound last is served first, and work for requests
+ * nobody is waiting on anymore is dropped before it runs.
+ *
+ * Created by drew on 1/11/15.
+ */
+public class ArtworkScheduler {
+    private static final String THREAD_NAME_PREFIX = "ArtworkScheduler-";
+    private static final RxThreadFactory THREAD_FACTORY = new RxThreadFactory(THREAD_NAME_PREFIX);
+
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Owner of scheduled work
+     */
+    public interface Prioritized {
+        int getPriority();
+        /**
+         * @return true if nobody wants the result anymore
+         */
+        boolean isCancelled();
+    }
+
+    final ThreadPoolExecutor mExecutor;
+    final AtomicLong mSequence = new AtomicLong();
+
+    final AtomicInteger mScheduled = new AtomicInteger();
+    final AtomicInteger mDropped = new AtomicInteger();
+    final AtomicInteger mWasted = new AtomicInteger();
+
+    public ArtworkScheduler(int numThreads) {
+        numThreads = Math.max(1, numThreads);
+        mExecutor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), THREAD_FACTORY);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return a Scheduler whose work is ordered by the owners current priority
+     */
+    public Scheduler forRequest(Prioritized owner) {
+        return new PriorityScheduler(owner);
+    }
+
+    /**
+     * Re-sorts any queued work for the owner, call when its priority changes
+     */
+    public void reprioritize(Prioritized owner) {
+        List<Task> tasks = new ArrayList<>();
+        for (Runnable r : mExecutor.getQueue()) {
+            if (r instanceof Task && ((Task) r).owner == owner) {
+                tasks.add((Task) r);
+            }
+        }
+        for (Task t : tasks) {
+            if (mExecutor.remove(t)) {
+                t.priority = owner.getPriority();
+                mExecutor.execute(t);
+            }
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(mScheduled.get(), mDropped.get(), mWasted.get(), mExecutor.getQueue().size());
+    }
+
+    public static class Stats {
+        /** Total units of work scheduled */
+        public final int scheduled;
+        /** Work skipped because its views were recycled before it ran */
+        public final int dropped;
+        /** Work that ran, but its views were gone by the time it finished */
+        public final int wasted;
+        /** Work currently waiting to run */
+        public final int pending;
+
+        Stats(int scheduled, int dropped, int wasted, int pending) {
+            this.scheduled = scheduled;
+            this.dropped = dropped;
+            this.wasted = wasted;
+            this.pending = pending;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "ArtworkScheduler[scheduled=%d, dropped=%d, wasted=%d, pending=%d]",
+                    scheduled, dropped, wasted, pending);
+        }
+    }
+
+    class Task implements Runnable, Comparable<Task> {
+        final Prioritized owner;
+        final Action0 action;
+        final long sequence;
+        final CompositeSubscription parent;
+        volatile int priority;
+
+        Task(Prioritized owner, Action0 action, CompositeSubscription parent) {
+            this.owner = owner;
+            this.action = action;
+            this.parent = parent;
+            this.priority = owner.getPriority();
+            this.sequence = mSequence.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            if (parent.isUnsubscribed()) {
+                return;
+            }
+            if (owner.isCancelled()) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            action.call();
+            if (owner.isCancelled()) {
+                mWasted.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(Task another) {
+            if (priority != another.priority) {
+                return priority < another.priority ? -1 : 1;
+            }
+            // newest first
+            return sequence > another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+    }
+
+    class PriorityScheduler extends Scheduler {
+        final Prioritized owner;
+
+        PriorityScheduler(Prioritized owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public Worker createWorker() {
+            return new PriorityWorker(owner);
+        }
+    }
+
+    class PriorityWorker extends Scheduler.Worker {
+        private final CompositeSubscription innerSubscription = new CompositeSubscription();
+        private final Prioritized owner;
+
+        PriorityWorker(Prioritized owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void unsubscribe() {
+            innerSubscription.unsubscribe();
+        }
+
+        @Override
+        public boolean isUnsubscribed() {
+            return innerSubscription.isUnsubscribed();
+        }
+
+        @Override
+        public Subscription schedule(Action0 action) {
+            if (innerSubscription.isUnsubscribed()) {
+                // don't schedule, we are unsubscribed
+                return Subscriptions.empty();
+            }
+            final Task t = new Task(owner, action, innerSubscription);
+            Subscription s = Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    mExecutor.remove(t);
+                }
+            });
+            innerSubscription.add(s);
+            mScheduled.incrementAndGet();
+            mExecutor.execute(t);
+            return s;
+        }
+
+        @Override
+        public Subscription schedule(final Action0 action, long delayTime, TimeUnit unit) {
+            if (delayTime <= 0) {
+                return schedule(action);
+            }
+            // we never delay artwork work, but honor the contract
+            final Scheduler.Worker w = Schedulers.computation().createWorker();
+            innerSubscription.add(w);
+            return w.schedule(new Action0() {
+                @Override
+                public void call() {
+                    schedule(action);
+                }
+            }, delayTime, unit);
+        }
+    }
+
+}
@@ -21,7 +21,14 @@ package org.opensilk.music.artwork;
  * Created by drew on 10/21/14.
  */
 class CacheMissException extends Exception {
+    /** Missed the caches but failed recently, dont go looking */
+    final boolean suppressed;
+
     CacheMissException() {
+        this(false);
+    }
 
+    CacheMissException(boolean suppressed) {
+        this.suppressed = suppressed;
     }
 }
@@ -33,20 +33,34 @@ public class ImageContainer implements Subscription {
     final WeakReference<AnimatedImageView> imageViewWeakReference;
     final WeakReference<PaletteObserver> palleteObserverWeakReference;
 
-    private boolean unsubscribed = false;
+    final int priority;
+
+    private volatile boolean unsubscribed = false;
+    private boolean previewSet = false;
+    private ArtworkRequestManagerImpl.IArtworkRequest request;
 
     ImageContainer(AnimatedImageView imageView, PaletteObserver paletteObserver) {
+        this(imageView, paletteObserver, ArtworkScheduler.PRIORITY_VISIBLE);
+    }
+
+    ImageContainer(AnimatedImageView imageView, PaletteObserver paletteObserver, int priority) {
         this.imageViewWeakReference = new WeakReference<>(imageView);
         this.palleteObserverWeakReference = new WeakReference<>(paletteObserver);
+        this.priority = priority;
         registerWithImageView();
     }
 
     @Override
     public void unsubscribe() {
+        if (unsubscribed) return;
         unsubscribed = true;
         unregisterWithImageView();
         imageViewWeakReference.clear();
         palleteObserverWeakReference.clear();
+        if (request != null) {
+            request.onRecipientUnsubscribed(this);
+            request = null;
+        }
     }
 
     @Override
@@ -54,6 +68,10 @@ public class ImageContainer implements Subscription {
         return unsubscribed;
     }
 
+    void setRequest(ArtworkRequestManagerImpl.IArtworkRequest request) {
+        this.request = request;
+    }
+
     void registerWithImageView() {
         AnimatedImageView imageView = imageViewWeakReference.get();
         if (imageView != null) {
@@ -70,6 +88,8 @@ public class ImageContainer implements Subscription {
 
     void setDefaultImage() {
         if (unsubscribed) return;
+        // dont clobber the thumbnail while we wait for the large image
+        if (previewSet) return;
         AnimatedImageView imageView = imageViewWeakReference.get();
         if (imageView == null) return;
         imageView.setDefaultImage();
@@ -82,6 +102,33 @@ public class ImageContainer implements Subscription {
         imageView.setImageBitmap(bitmap, shouldAnimate);
     }
 
+    /**
+     * Sets a lower resolution bitmap to show while the requested one loads
+     */
+    void setPreviewBitmap(final Bitmap bitmap) {
+        if (unsubscribed) return;
+        AnimatedImageView imageView = imageViewWeakReference.get();
+        if (imageView == null) return;
+        previewSet = true;
+        imageView.setImageBitmap(bitmap, false);
+    }
+
+    /**
+     * @return the size the image view is or will be laid out to, or 0 if unknown
+     */
+    int getViewSize() {
+        AnimatedImageView imageView = imageViewWeakReference.get();
+        if (imageView == null) return 0;
+        int w = imageView.getWidth();
+        int h = imageView.getHeight();
+        if ((w <= 0 || h <= 0) && imageView.getLayoutParams() != null) {
+            w = imageView.getLayoutParams().width;
+            h = imageView.getLayoutParams().height;
+        }
+        if (w <= 0 || h <= 0) return 0;
+        return Math.max(w, h);
+    }
+
     void notifyPaletteObserver(Palette palette, boolean shouldAnimate) {
         if (unsubscribed) return;
         PaletteObserver po = palleteObserverWeakReference.get();
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import org.opensilk.common.util.VersionUtils;
+
+import java.util.concurrent.Semaphore;
+
+import timber.log.Timber;
+
+/**
+ * Bounds the number of concurrent bitmap decodes and feeds them
+ * reusable buffers from a {@link BitmapPool}. Replaces the old global
+ * decode locks so decodes can run in parallel up to a limit derived
+ * from the core count and the memory budget.
+ *
+ * Created by drew on 1/10/15.
+ */
+public class BitmapDecoder {
+
+    final Semaphore mPermits;
+    final int mMaxConcurrent;
+    final BitmapPool mPool;
+
+    public BitmapDecoder(int maxConcurrent, BitmapPool pool) {
+        mMaxConcurrent = Math.max(1, maxConcurrent);
+        mPermits = new Semaphore(mMaxConcurrent, true);
+        mPool = pool;
+    }
+
+    /**
+     * @param cores number of available processors
+     * @param memoryBudget bytes we are willing to have in flight for decoding
+     * @param bytesPerDecode worst case bytes a single decode holds
+     * @return number of decodes allowed to run at once, never less than 1
+     */
+    public static int calculateMaxConcurrent(int cores, long memoryBudget, long bytesPerDecode) {
+        if (bytesPerDecode <= 0) {
+            return Math.max(1, cores);
+        }
+        long byMemory = memoryBudget / bytesPerDecode;
+        return (int) Math.max(1, Math.min(cores, byMemory));
+    }
+
+    public int getMaxConcurrent() {
+        return mMaxConcurrent;
+    }
+
+    /**
+     * Blocks until a decode slot is available, callers must call {@link #release()}
+     * in a finally block.
+     */
+    public void acquire() {
+        mPermits.acquireUninterruptibly();
+    }
+
+    public void release() {
+        mPermits.release();
+    }
+
+    /**
+     * Returns a scratch bitmap to the pool so a later decode can reuse its memory.
+     * The bitmap must not be referenced anywhere else.
+     */
+    public void recycle(Bitmap bitmap) {
+        if (mPool != null) {
+            mPool.put(bitmap);
+        } else if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Sets inBitmap on the options if we have a suitable pooled bitmap,
+     * options must contain the out dimensions from a bounds decode.
+     */
+    public void addInBitmapOptions(BitmapFactory.Options options) {
+        options.inMutable = true;
+        if (mPool == null) {
+            return;
+        }
+        final int sample = Math.max(1, options.inSampleSize);
+        if (sample > 1 && !VersionUtils.hasKitkat()) {
+            // Before kitkat inBitmap only works for unsampled decodes
+            return;
+        }
+        final int width = (options.outWidth + sample - 1) / sample;
+        final int height = (options.outHeight + sample - 1) / sample;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        final Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap reusable = mPool.get(width, height, config);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+        }
+    }
+
+    /**
+     * Decodes a byte array, the caller should already hold a permit.
+     * If the pooled bitmap is rejected the decode is retried without it.
+     */
+    public Bitmap decodeByteArray(byte[] data, BitmapFactory.Options options) {
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) throw e;
+            Timber.w("Unable to reuse bitmap for decode");
+            recycle(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Decodes the full image acquiring a permit for the duration,
+     * reusing a pooled bitmap if one fits.
+     * @return the decoded bitmap or null on failure
+     */
+    public Bitmap decode(byte[] data) {
+        acquire();
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            options.inJustDecodeBounds = false;
+            addInBitmapOptions(options);
+            return decodeByteArray(data, options);
+        } catch (OutOfMemoryError e) {
+            return null;
+        } finally {
+            release();
+        }
+    }
+
+}
@@ -17,11 +17,35 @@
 
 package org.opensilk.music.artwork.cache;
 
+import android.os.ParcelFileDescriptor;
+import android.support.v7.graphics.Palette;
+
 import com.jakewharton.disklrucache.DiskLruCache;
 
+import org.opensilk.music.artwork.Artwork;
+
 /**
  * Created by drew on 12/23/14.
  */
 public interface BitmapDiskCache extends BitmapCache {
     DiskLruCache.Snapshot getSnapshot(String key);
+
+    /**
+     * @return read only descriptor onto the stored bitmap file, without copying it,
+     *         or null if there is no entry for key
+     */
+    ParcelFileDescriptor openBitmapDescriptor(String key);
+
+    /**
+     * @return the bitmap and its palette, palette will be null
+     *         if it was not stored with the bitmap
+     */
+    Artwork getArtwork(String key);
+
+    void putArtwork(String key, Artwork artwork);
+
+    /**
+     * Stores the palette for an existing entry
+     */
+    void putPalette(String key, Palette palette);
 }
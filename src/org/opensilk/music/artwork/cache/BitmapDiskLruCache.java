@@ -2,13 +2,17 @@
 package org.opensilk.music.artwork.cache;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.os.ParcelFileDescriptor;
+import android.support.v7.graphics.Palette;
 
 import com.jakewharton.disklrucache.DiskLruCache;
 
-import java.io.BufferedInputStream;
+import org.apache.commons.io.IOUtils;
+import org.opensilk.music.artwork.Artwork;
+
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -25,12 +29,18 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
     private Bitmap.CompressFormat mCompressFormat = Bitmap.CompressFormat.JPEG;
     private static int IO_BUFFER_SIZE = 8*1024;
     private int mCompressQuality = 70;
-    private static final int APP_VERSION = 1;
-    private static final int VALUE_COUNT = 1;
+    private static final int APP_VERSION = 2;
+    private static final int VALUE_COUNT = 2;
+    /** Index of the compressed bitmap in an entry */
+    private static final int BITMAP_INDEX = 0;
+    /** Index of the palette swatches in an entry, may be empty */
+    private static final int PALETTE_INDEX = 1;
 
-    public static final Object sDecodeLock = new Object();
+    private final BitmapDecoder mDecoder;
 
-    private BitmapDiskLruCache(File diskCacheDir, int diskCacheSize, Bitmap.CompressFormat compressFormat, int quality) throws IOException {
+    private BitmapDiskLruCache(File diskCacheDir, int diskCacheSize, Bitmap.CompressFormat compressFormat,
+                               int quality, BitmapDecoder decoder) throws IOException {
+        mDecoder = decoder;
         mDiskCacheDir = diskCacheDir;
         mDiskCacheSize = diskCacheSize;
         mCompressFormat = compressFormat;
@@ -38,9 +48,10 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         mDiskCache = DiskLruCache.open(diskCacheDir, APP_VERSION, VALUE_COUNT, diskCacheSize);
     }
 
-    public static BitmapDiskLruCache open(File diskCacheDir, int diskCacheSize, Bitmap.CompressFormat compressFormat, int quality) {
+    public static BitmapDiskLruCache open(File diskCacheDir, int diskCacheSize, Bitmap.CompressFormat compressFormat,
+                                          int quality, BitmapDecoder decoder) {
         try {
-            return new BitmapDiskLruCache(diskCacheDir, diskCacheSize, compressFormat, quality);
+            return new BitmapDiskLruCache(diskCacheDir, diskCacheSize, compressFormat, quality, decoder);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -61,7 +72,7 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
     private boolean writeBitmapToFile(Bitmap bitmap, DiskLruCache.Editor editor) throws IOException {
         OutputStream out = null;
         try {
-            out = new BufferedOutputStream(editor.newOutputStream(0), IO_BUFFER_SIZE);
+            out = new BufferedOutputStream(editor.newOutputStream(BITMAP_INDEX), IO_BUFFER_SIZE);
             return bitmap.compress(mCompressFormat, mCompressQuality, out);
         } finally {
             if (out != null) {
@@ -70,6 +81,20 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         }
     }
 
+    private void writePaletteToFile(Palette palette, DiskLruCache.Editor editor) throws IOException {
+        OutputStream out = null;
+        try {
+            out = editor.newOutputStream(PALETTE_INDEX);
+            if (palette != null) {
+                PaletteCodec.write(palette, out);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
     public File getCacheFolder() {
         return mDiskCache.getDirectory();
     }
@@ -87,7 +112,43 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         }
     }
 
+    /**
+     * The snapshot is only held long enough to dup its descriptor, the dup keeps
+     * the clean file readable even if the entry is evicted or replaced afterwards
+     */
+    public ParcelFileDescriptor openBitmapDescriptor(String url) {
+        DiskLruCache.Snapshot snapshot = null;
+        try {
+            snapshot = mDiskCache.get(CacheUtil.md5(url));
+            if (snapshot == null || snapshot.getLength(BITMAP_INDEX) <= 0) {
+                return null;
+            }
+            final InputStream in = snapshot.getInputStream(BITMAP_INDEX);
+            if (in instanceof FileInputStream) {
+                return ParcelFileDescriptor.dup(((FileInputStream) in).getFD());
+            }
+            // Clean files are named <key>.<index>
+            return ParcelFileDescriptor.open(new File(mDiskCache.getDirectory(),
+                    CacheUtil.md5(url) + "." + BITMAP_INDEX), ParcelFileDescriptor.MODE_READ_ONLY);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
     public void putBitmap(String url, Bitmap data) {
+        putArtwork(url, data, null);
+    }
+
+    public void putArtwork(String url, Artwork artwork) {
+        putArtwork(url, artwork.bitmap, artwork.palette);
+    }
+
+    private void putArtwork(String url, Bitmap bitmap, Palette palette) {
         DiskLruCache.Editor editor = null;
         try {
             editor = mDiskCache.edit(CacheUtil.md5(url));
@@ -95,7 +156,9 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
                 return;
             }
 
-            if(writeBitmapToFile(data, editor)) {
+            if(writeBitmapToFile(bitmap, editor)) {
+                // new entries must have every value, so always write the palette
+                writePaletteToFile(palette, editor);
                 mDiskCache.flush();
                 editor.commit();
             } else {
@@ -111,27 +174,52 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
         }
     }
 
+    public void putPalette(String url, Palette palette) {
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = mDiskCache.edit(CacheUtil.md5(url));
+            if (editor == null) {
+                return;
+            }
+            writePaletteToFile(palette, editor);
+            editor.commit();
+        } catch (IOException|IllegalStateException e) {
+            try {
+                if (editor != null) {
+                    editor.abort();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
     public Bitmap getBitmap(String url) {
-        Bitmap bitmap = null;
+        Artwork artwork = getArtwork(url, false);
+        return artwork != null ? artwork.bitmap : null;
+    }
+
+    public Artwork getArtwork(String url) {
+        return getArtwork(url, true);
+    }
+
+    private Artwork getArtwork(String url, boolean wantPalette) {
+        byte[] data = null;
+        byte[] paletteData = null;
         DiskLruCache.Snapshot snapshot = null;
         try {
-
             snapshot = mDiskCache.get(CacheUtil.md5(url));
             if ( snapshot == null ) {
                 return null;
             }
-            final InputStream in = snapshot.getInputStream(0);
+            // Read the entry up front so the snapshot is released before we
+            // wait on a decode slot and the decoder can peek at the bounds
+            final InputStream in = snapshot.getInputStream(BITMAP_INDEX);
             if (in != null) {
-                synchronized (sDecodeLock) {
-                    try {
-                        final BufferedInputStream buffIn =
-                                new BufferedInputStream(in, IO_BUFFER_SIZE);
-                        bitmap = BitmapFactory.decodeStream(buffIn);
-                    } catch (OutOfMemoryError e) {
-                        bitmap = null;
-                    }
-                }
-
+                data = IOUtils.toByteArray(in, snapshot.getLength(BITMAP_INDEX));
+            }
+            if (wantPalette && snapshot.getLength(PALETTE_INDEX) > 0) {
+                paletteData = IOUtils.toByteArray(snapshot.getInputStream(PALETTE_INDEX),
+                        snapshot.getLength(PALETTE_INDEX));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -140,7 +228,14 @@ public class BitmapDiskLruCache implements BitmapDiskCache {
                 snapshot.close();
             }
         }
-        return bitmap;
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        Bitmap bitmap = mDecoder.decode(data);
+        if (bitmap == null) {
+            return null;
+        }
+        return new Artwork(bitmap, PaletteCodec.read(paletteData));
     }
 
     public boolean containsKey(String key) {
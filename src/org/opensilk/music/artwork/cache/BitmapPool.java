@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import org.opensilk.common.util.VersionUtils;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps that are no longer referenced anywhere and can
+ * be handed to BitmapFactory as inBitmap. Only scratch bitmaps that would
+ * otherwise be recycled should be put here, never anything that may still
+ * be attached to a view or held in the L1 cache.
+ *
+ * Created by drew on 1/10/15.
+ */
+public class BitmapPool {
+
+    final int mMaxSize;
+    final LinkedList<Bitmap> mPool = new LinkedList<>();
+    int mSize;
+
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return a pooled bitmap able to hold a decode of the given dimensions
+     *         or null if none available, the bitmap is removed from the pool.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final int needed = width * height * getBytesPerPixel(config);
+        Iterator<Bitmap> ii = mPool.iterator();
+        while (ii.hasNext()) {
+            Bitmap b = ii.next();
+            if (b.isRecycled()) {
+                ii.remove();
+                continue;
+            }
+            if (canReuse(b, width, height, needed)) {
+                ii.remove();
+                mSize -= sizeOf(b);
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Offers the bitmap to the pool, if it cant be reused it is recycled.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        final int size = sizeOf(bitmap);
+        if (!bitmap.isMutable() || size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        mPool.addLast(bitmap);
+        mSize += size;
+        while (mSize > mMaxSize && !mPool.isEmpty()) {
+            Bitmap eldest = mPool.removeFirst();
+            mSize -= sizeOf(eldest);
+            eldest.recycle();
+        }
+    }
+
+    public synchronized void clear() {
+        for (Bitmap b : mPool) {
+            b.recycle();
+        }
+        mPool.clear();
+        mSize = 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static boolean canReuse(Bitmap candidate, int width, int height, int needed) {
+        if (VersionUtils.hasKitkat()) {
+            return needed <= candidate.getAllocationByteCount();
+        }
+        // Before kitkat dimensions must match exactly and inSampleSize must be 1
+        return candidate.getWidth() == width && candidate.getHeight() == height;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int sizeOf(Bitmap bitmap) {
+        if (VersionUtils.hasKitkat()) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) {
+            return 4;
+        } else if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        } else if (config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
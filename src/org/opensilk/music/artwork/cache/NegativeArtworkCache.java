@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.VolleyError;
+
+import org.opensilk.music.artwork.ArtworkNotFoundException;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.umass.lastfm.StatusException;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
+
+/**
+ * Remembers artwork lookups that came up empty so we dont hit the MediaStore
+ * and the network again every time the item is bound. Keyed by the same cache
+ * keys as L1 and L2, rows hold the expiration time in millis.
+ *
+ * Has its own database, MusicStore belongs to the service process and we live
+ * in the ui process. Writes are queued on a single worker so callers on the
+ * main thread never touch the disk, {@link #isSuppressed(String)} does and
+ * must be called from a background thread.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class NegativeArtworkCache {
+
+    public static final String FILENAME = "artwork_negative.db";
+
+    /** The source answered and had nothing for us */
+    public static final long TTL_NOT_FOUND = TimeUnit.DAYS.toMillis(7);
+    /** We couldnt reach the source or it choked, try again soon */
+    public static final long TTL_ERROR = TimeUnit.MINUTES.toMillis(15);
+    /** Most entries we keep, the ones closest to expiring go first */
+    public static final int MAX_ENTRIES = 2000;
+    /** Puts between trims so the table can't grow without bound between low memory calls */
+    static final int TRIM_INTERVAL = 100;
+
+    final Store mStore;
+    final Scheduler.Worker mWriter;
+    /** Puts the writer hasn't gotten to yet, so lookups see them right away */
+    final ConcurrentMap<String, Long> mPending = new ConcurrentHashMap<>();
+    final AtomicInteger mPutsSinceTrim = new AtomicInteger();
+
+    public NegativeArtworkCache(Context context) {
+        this(context, FILENAME, Schedulers.io());
+    }
+
+    /**
+     * @param name database file, null for an in memory database
+     * @param writeScheduler where writes happen, they are run one at a time in order
+     */
+    public NegativeArtworkCache(Context context, String name, Scheduler writeScheduler) {
+        mStore = new Store(context, name);
+        mWriter = writeScheduler.createWorker();
+    }
+
+    /**
+     * @return true if a lookup for key failed recently and shouldn't be retried yet
+     */
+    public boolean isSuppressed(String key) {
+        final Long pending = mPending.get(key);
+        if (pending != null) {
+            return pending > now();
+        }
+        Cursor c = null;
+        try {
+            c = mStore.getReadableDatabase().query(Store.TABLE, new String[]{Store.EXPIRES},
+                    Store.KEY + "=?", new String[]{key}, null, null, null);
+            // Expired rows are left for trim()
+            return c.moveToFirst() && c.getLong(0) > now();
+        } catch (SQLiteException e) {
+            Timber.w(e, "isSuppressed");
+            return false;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    /**
+     * Records a failed lookup for key, how long it sticks depends on the failure
+     */
+    public void putFailure(String key, Throwable error) {
+        put(key, isNotFound(error) ? TTL_NOT_FOUND : TTL_ERROR);
+    }
+
+    public void put(final String key, long ttl) {
+        final Long expires = now() + ttl;
+        mPending.put(key, expires);
+        mWriter.schedule(new Action0() {
+            @Override
+            public void call() {
+                final ContentValues values = new ContentValues(2);
+                values.put(Store.KEY, key);
+                values.put(Store.EXPIRES, expires);
+                try {
+                    mStore.getWritableDatabase().insertWithOnConflict(Store.TABLE, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                } catch (SQLiteException e) {
+                    Timber.w(e, "put");
+                }
+                mPending.remove(key, expires);
+                if (mPutsSinceTrim.incrementAndGet() >= TRIM_INTERVAL) {
+                    trimNow();
+                }
+            }
+        });
+    }
+
+    /**
+     * Forgets the failure for key, eg when the user picks artwork for it
+     */
+    public void invalidate(final String key) {
+        mPending.remove(key);
+        mWriter.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    mStore.getWritableDatabase().delete(Store.TABLE, Store.KEY + "=?", new String[]{key});
+                } catch (SQLiteException e) {
+                    Timber.w(e, "invalidate");
+                }
+            }
+        });
+    }
+
+    public void clear() {
+        mPending.clear();
+        mWriter.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    mStore.getWritableDatabase().delete(Store.TABLE, null, null);
+                } catch (SQLiteException e) {
+                    Timber.w(e, "clear");
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops expired entries, and the ones closest to expiring if we are over {@link #MAX_ENTRIES}
+     */
+    public void trim() {
+        mWriter.schedule(new Action0() {
+            @Override
+            public void call() {
+                trimNow();
+            }
+        });
+    }
+
+    void trimNow() {
+        mPutsSinceTrim.set(0);
+        try {
+            final SQLiteDatabase db = mStore.getWritableDatabase();
+            db.delete(Store.TABLE, Store.EXPIRES + "<=?", new String[]{String.valueOf(now())});
+            db.execSQL("DELETE FROM " + Store.TABLE + " WHERE " + Store.KEY + " IN (SELECT "
+                    + Store.KEY + " FROM " + Store.TABLE + " ORDER BY " + Store.EXPIRES
+                    + " DESC LIMIT -1 OFFSET " + MAX_ENTRIES + ")");
+        } catch (SQLiteException e) {
+            Timber.w(e, "trim");
+        }
+    }
+
+    /**
+     * @return number of stored entries, expired or not
+     */
+    int size() {
+        try {
+            return (int) DatabaseUtils.queryNumEntries(mStore.getReadableDatabase(), Store.TABLE);
+        } catch (SQLiteException e) {
+            Timber.w(e, "size");
+            return 0;
+        }
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    static final class Store extends SQLiteOpenHelper {
+        static final int VERSION = 1;
+        static final String TABLE = "negative_artwork";
+        static final String KEY = "cache_key";
+        static final String EXPIRES = "expires";
+
+        Store(Context context, String name) {
+            super(context, name, null, VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + KEY + " TEXT PRIMARY KEY NOT NULL, "
+                    + EXPIRES + " INTEGER NOT NULL);"
+            );
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_" + EXPIRES + "_idx ON "
+                    + TABLE + " (" + EXPIRES + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Its only a cache
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+            onCreate(db);
+        }
+    }
+
+    /**
+     * @return true if the source answered that it has no artwork, false for
+     *         anything that might go away on its own, eg a truncated or
+     *         garbled response, a failed call or a decode that ran out of memory
+     */
+    static boolean isNotFound(Throwable error) {
+        if (error instanceof VolleyError) {
+            final NetworkResponse response = ((VolleyError) error).networkResponse;
+            if (response != null && (response.statusCode == 404 || response.statusCode == 410)) {
+                return true;
+            }
+        }
+        // MediaStore has no art for the album
+        if (error instanceof FileNotFoundException) {
+            return true;
+        }
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ArtworkNotFoundException) {
+                return true;
+            }
+            if (t instanceof StatusException) {
+                return ((StatusException) t).errorCode == StatusException.ERROR_INVALID_PARAMETERS;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.artwork.cache;
+
+import android.support.v7.graphics.Palette;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Reads and writes the swatches of a {@link Palette} so they can be stored
+ * next to the bitmap in the disk cache and we dont have to regenerate them.
+ *
+ * The palette library does not expose a way to build a Palette from swatches
+ * so we use reflection, if that fails reading returns null and callers
+ * should fall back to {@link Palette#generate}.
+ *
+ * Created by drew on 1/11/15.
+ */
+public class PaletteCodec {
+
+    static final int VERSION = 1;
+
+    private static Constructor<Palette> sPaletteConstructor;
+    private static Constructor<Palette.Swatch> sSwatchConstructor;
+    private static boolean sReflectionFailed;
+
+    private PaletteCodec() {
+        /*static*/
+    }
+
+    public static void write(Palette palette, OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        List<Palette.Swatch> swatches = palette.getSwatches();
+        dos.writeInt(VERSION);
+        dos.writeInt(swatches.size());
+        for (Palette.Swatch s : swatches) {
+            dos.writeInt(s.getRgb());
+            dos.writeInt(s.getPopulation());
+        }
+        dos.flush();
+    }
+
+    /**
+     * @return the palette or null if the stream is empty or unreadable
+     */
+    public static Palette read(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        int version;
+        try {
+            version = dis.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (version != VERSION) {
+            return null;
+        }
+        int count = dis.readInt();
+        if (count < 0 || count > 256) {
+            return null;
+        }
+        int[] rgb = new int[count];
+        int[] population = new int[count];
+        for (int ii=0; ii<count; ii++) {
+            rgb[ii] = dis.readInt();
+            population[ii] = dis.readInt();
+        }
+        return create(rgb, population);
+    }
+
+    public static Palette read(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            return read(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false if stored palettes can't be read back on this device,
+     *         so there is no point writing them
+     */
+    public static synchronized boolean isSupported() {
+        return resolveConstructors();
+    }
+
+    private static boolean resolveConstructors() {
+        if (sReflectionFailed) {
+            return false;
+        }
+        if (sPaletteConstructor == null) {
+            try {
+                sSwatchConstructor = Palette.Swatch.class.getDeclaredConstructor(int.class, int.class);
+                sSwatchConstructor.setAccessible(true);
+                sPaletteConstructor = Palette.class.getDeclaredConstructor(List.class);
+                sPaletteConstructor.setAccessible(true);
+            } catch (Exception e) {
+                Timber.w(e, "Unable to find palette constructors, falling back to generate");
+                sReflectionFailed = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static synchronized Palette create(int[] rgb, int[] population) {
+        if (!resolveConstructors()) {
+            return null;
+        }
+        try {
+            List<Palette.Swatch> swatches = new ArrayList<>(rgb.length);
+            for (int ii=0; ii<rgb.length; ii++) {
+                swatches.add(sSwatchConstructor.newInstance(rgb[ii], population[ii]));
+            }
+            return sPaletteConstructor.newInstance(swatches);
+        } catch (Exception e) {
+            Timber.w(e, "Unable to recreate palette, falling back to generate");
+            sReflectionFailed = true;
+            return null;
+        }
+    }
+
+}
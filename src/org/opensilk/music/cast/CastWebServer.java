@@ -35,7 +35,6 @@ import org.opensilk.music.artwork.ArtworkProvider;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.UnknownHostException;
@@ -256,72 +255,100 @@ public class CastWebServer extends NanoHTTPD {
     //@DebugLog
     private Response serveFile(File file, String mime, Map<String, String> headers) {
         Response res;
-        try {
-            // Calculate etag
-            String etag = Integer.toHexString((file.getAbsolutePath() + file.lastModified() + "" + file.length()).hashCode());
-
-            // Support (simple) skipping:
-            long startFrom = 0;
-            long endAt = -1;
-            String range = headers.get("range");
-            if (range != null) {
-                if (range.startsWith("bytes=")) {
-                    range = range.substring("bytes=".length());
-                    int minus = range.indexOf('-');
-                    try {
-                        if (minus > 0) {
-                            startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
-                        }
-                    } catch (NumberFormatException ignored) {
-                    }
-                }
+        if (!file.canRead()) {
+            return createResponse(Response.Status.FORBIDDEN, NanoHTTPD.MIME_PLAINTEXT, "FORBIDDEN: Reading file failed.");
+        }
+
+        // Calculate etag
+        String etag = Integer.toHexString((file.getAbsolutePath() + file.lastModified() + "" + file.length()).hashCode());
+
+        long fileLen = file.length();
+        long[] range = parseRange(headers.get("range"), fileLen);
+
+        // Change return code and add Content-Range header when skipping is requested
+        if (range == RANGE_NOT_SATISFIABLE) {
+            res = createResponse(Response.Status.RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
+            res.addHeader("Content-Range", "bytes */" + fileLen);
+            res.addHeader("ETag", etag);
+        } else if (range != null) {
+            final long startFrom = range[0];
+            final long endAt = range[1];
+            res = new FileRangeResponse(Response.Status.PARTIAL_CONTENT, mime, file, startFrom, endAt - startFrom + 1);
+            res.addHeader("Accept-Ranges", "bytes");
+            res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
+            res.addHeader("ETag", etag);
+        } else {
+            if (etag.equals(headers.get("if-none-match")))
+                res = createResponse(Response.Status.NOT_MODIFIED, mime, "");
+            else {
+                res = new FileRangeResponse(Response.Status.OK, mime, file, 0, fileLen);
+                res.addHeader("Accept-Ranges", "bytes");
+                res.addHeader("ETag", etag);
             }
+        }
+
+        return res;
+    }
 
-            // Change return code and add Content-Range header when skipping is requested
-            long fileLen = file.length();
-            if (range != null && startFrom >= 0) {
-                if (startFrom >= fileLen) {
-                    res = createResponse(Response.Status.RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
-                    res.addHeader("Content-Range", "bytes 0-0/" + fileLen);
-                    res.addHeader("ETag", etag);
-                } else {
-                    if (endAt < 0) {
-                        endAt = fileLen - 1;
-                    }
-                    long newLen = endAt - startFrom + 1;
-                    if (newLen < 0) {
-                        newLen = 0;
-                    }
-
-                    final long dataLen = newLen;
-                    FileInputStream fis = new FileInputStream(file) {
-                        @Override
-                        public int available() throws IOException {
-                            return (int) dataLen;
-                        }
-                    };
-                    fis.skip(startFrom);
-
-                    res = createResponse(Response.Status.PARTIAL_CONTENT, mime, fis);
-                    res.addHeader("Content-Length", "" + dataLen);
-                    res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
-                    res.addHeader("ETag", etag);
+    /** Returned by {@link #parseRange} when the range lies outside the file */
+    static final long[] RANGE_NOT_SATISFIABLE = new long[0];
+
+    /**
+     * Parses the first range of a bytes Range header, supporting open ended
+     * (bytes=N-) and suffix (bytes=-N) ranges.
+     *
+     * @return inclusive {start, end} clamped to the file, {@link #RANGE_NOT_SATISFIABLE}
+     *         or null if there is no usable range and the whole file should be sent
+     */
+    static long[] parseRange(String range, long fileLen) {
+        if (range == null) {
+            return null;
+        }
+        range = range.trim();
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        range = range.substring("bytes=".length());
+        // we only serve the first of multiple ranges
+        int comma = range.indexOf(',');
+        if (comma >= 0) {
+            range = range.substring(0, comma);
+        }
+        range = range.trim();
+        int minus = range.indexOf('-');
+        if (minus < 0) {
+            return null;
+        }
+        long startFrom;
+        long endAt;
+        try {
+            if (minus == 0) {
+                // suffix range, the last N bytes
+                long suffix = Long.parseLong(range.substring(1).trim());
+                if (suffix <= 0 || fileLen == 0) {
+                    return RANGE_NOT_SATISFIABLE;
                 }
+                startFrom = Math.max(0, fileLen - suffix);
+                endAt = fileLen - 1;
             } else {
-                if (etag.equals(headers.get("if-none-match")))
-                    res = createResponse(Response.Status.NOT_MODIFIED, mime, "");
-                else {
-                    res = createResponse(Response.Status.OK, mime, new FileInputStream(file));
-                    res.addHeader("Content-Length", "" + fileLen);
-                    res.addHeader("ETag", etag);
+                startFrom = Long.parseLong(range.substring(0, minus).trim());
+                String end = range.substring(minus + 1).trim();
+                endAt = end.isEmpty() ? fileLen - 1 : Long.parseLong(end);
+                if (endAt < startFrom) {
+                    // invalid per the spec, ignore it
+                    return null;
                 }
             }
-        } catch (IOException ioe) {
-            res = createResponse(Response.Status.FORBIDDEN, NanoHTTPD.MIME_PLAINTEXT, "FORBIDDEN: Reading file failed.");
+        } catch (NumberFormatException e) {
+            return null;
         }
-
-        return res;
+        if (startFrom >= fileLen) {
+            return RANGE_NOT_SATISFIABLE;
+        }
+        if (endAt >= fileLen) {
+            endAt = fileLen - 1;
+        }
+        return new long[] {startFrom, endAt};
     }
 
     /**
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 OpenSilk Productions LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opensilk.music.cast;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Serves a byte range of a file straight from its FileChannel instead of
+ * pumping a FileInputStream through NanoHTTPDs buffers. Offsets and lengths
+ * are longs so files over 2G are served whole, and the body is always
+ * exactly Content-Length bytes so the receiver can keep the connection
+ * alive between range requests.
+ *
+ * Created by drew on 1/13/15.
+ */
+class FileRangeResponse extends NanoHTTPD.Response {
+
+    /** Max bytes handed to a single transferTo, Android maps the region it transfers */
+    static final long MAX_TRANSFER = 1024 * 1024;
+
+    final File file;
+    final long start;
+    final long length;
+    final Map<String, String> headers = new LinkedHashMap<>();
+
+    /**
+     * @param start first byte to send
+     * @param length number of bytes to send
+     */
+    FileRangeResponse(Status status, String mimeType, File file, long start, long length) {
+        super(status, mimeType, (InputStream) null);
+        this.file = file;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        super.addHeader(name, value);
+        headers.put(name, value);
+    }
+
+    @Override
+    protected void send(OutputStream outputStream) {
+        FileInputStream fis = null;
+        try {
+            final SimpleDateFormat gmtFrmt = new SimpleDateFormat("E, d MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+            gmtFrmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+            final StringBuilder sb = new StringBuilder(256);
+            sb.append("HTTP/1.1 ").append(getStatus().getDescription()).append(" \r\n");
+            if (getMimeType() != null) {
+                sb.append("Content-Type: ").append(getMimeType()).append("\r\n");
+            }
+            sb.append("Date: ").append(gmtFrmt.format(new Date())).append("\r\n");
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                if (!"content-length".equalsIgnoreCase(e.getKey())
+                        && !"connection".equalsIgnoreCase(e.getKey())) {
+                    sb.append(e.getKey()).append(": ").append(e.getValue()).append("\r\n");
+                }
+            }
+            sb.append("Content-Length: ").append(length).append("\r\n");
+            sb.append("Connection: keep-alive\r\n");
+            sb.append("\r\n");
+            outputStream.write(sb.toString().getBytes("UTF-8"));
+
+            if (getRequestMethod() != NanoHTTPD.Method.HEAD && length > 0) {
+                fis = new FileInputStream(file);
+                transfer(fis.getChannel(), start, length, Channels.newChannel(outputStream));
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            // The body is short, close the connection so the client
+            // doesn't read the next response as part of this one
+            try {
+                outputStream.close();
+            } catch (IOException ignored) {
+            }
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes count bytes of the channel starting at position to target
+     */
+    static void transfer(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long n = channel.transferTo(position, Math.min(remaining, MAX_TRANSFER), target);
+            if (n <= 0) {
+                throw new IOException("File ended " + remaining + " bytes early");
+            }
+            position += n;
+            remaining -= n;
+        }
+    }
+
+}
@@ -18,6 +18,7 @@ package org.opensilk.music.muzei;
 
 import android.net.Uri;
 
+import com.andrew.apollo.NowPlayingInfo;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
@@ -34,8 +35,6 @@ import javax.inject.Singleton;
 
 import dagger.Provides;
 import de.greenrobot.event.EventBus;
-import rx.Observable;
-import rx.functions.Func2;
 
 /**
  * Created by drew on 4/16/14.
@@ -93,20 +92,14 @@ public class MuzeiService extends MuzeiArtSource {
     //@DebugLog
     protected void onUpdate(int reason) {
         try {
-            ArtInfo info = mMusicService.getCurrentArtInfo().toBlocking().first();
+            NowPlayingInfo nowPlaying = mMusicService.getNowPlaying().toBlocking().first();
+            ArtInfo info = nowPlaying.getArtInfo();
             if (info != null) {
                 final Uri artworUri = ArtworkProvider.createArtworkUri(info.artistName, info.albumName);
-                String[] meta = Observable.zip(mMusicService.getAlbumName(), mMusicService.getArtistName(),
-                        new Func2<String, String, String[]>() {
-                            @Override
-                            public String[] call(String s, String s2) {
-                                return new String[] {s, s2};
-                            }
-                        }).toBlocking().first();
                 publishArtwork(new Artwork.Builder()
                         .imageUri(artworUri)
-                        .title(meta[0])
-                        .byline(meta[1])
+                        .title(nowPlaying.albumName)
+                        .byline(nowPlaying.artistName)
                         .build());
             }
         } catch (Exception e) {
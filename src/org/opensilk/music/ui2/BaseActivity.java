@@ -45,6 +45,7 @@ import org.opensilk.music.AppPreferences;
 import org.opensilk.music.cast.CastUtils;
 import org.opensilk.music.cast.dialogs.StyledMediaRouteDialogFactory;
 import org.opensilk.music.MusicServiceConnection;
+import org.opensilk.music.ui2.loader.ContentChangeHub;
 
 import java.lang.ref.WeakReference;
 import java.util.Locale;
@@ -141,12 +142,14 @@ public class BaseActivity extends ActionBarActivity {
     protected void onStart() {
         super.onStart();
         MusicUtils.notifyForegroundStateChanged(this, true);
+        ContentChangeHub.get(this).onActivityStart();
     }
 
     @Override
     protected void onStop() {
         super.onStop();
         MusicUtils.notifyForegroundStateChanged(this, false);
+        ContentChangeHub.get(this).onActivityStop();
     }
 
     @Override
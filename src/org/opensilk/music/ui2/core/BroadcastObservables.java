@@ -22,10 +22,14 @@ import android.content.Intent;
 import android.content.IntentFilter;
 
 import com.andrew.apollo.MusicPlaybackService;
+import com.andrew.apollo.NowPlayingInfo;
+import com.andrew.apollo.ProgressSnapshot;
 
 import org.opensilk.music.api.meta.ArtInfo;
 import org.opensilk.music.MusicServiceConnection;
 
+import java.util.concurrent.TimeUnit;
+
 import rx.Observable;
 import rx.android.observables.AndroidObservable;
 import rx.functions.Func1;
@@ -48,6 +52,43 @@ public class BroadcastObservables {
         });
     }
 
+    public static Observable<ProgressSnapshot> progressChanged(Context appContext) {
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(MusicPlaybackService.PROGRESS_CHANGED);
+        Observable<Intent> intentObservable = AndroidObservable.fromBroadcast(appContext, intentFilter);
+        return intentObservable.map(new Func1<Intent, ProgressSnapshot>() {
+            @Override
+            public ProgressSnapshot call(Intent intent) {
+                return ProgressSnapshot.fromIntent(intent);
+            }
+        });
+    }
+
+    /**
+     * Latest progress snapshot, repeated every period while playing (or always if whilePaused)
+     * so the position can be extrapolated locally instead of asking the service.
+     */
+    public static Observable<ProgressSnapshot> progressTicks(Context appContext,
+                                                             final long periodMillis,
+                                                             final boolean whilePaused) {
+        return progressChanged(appContext).switchMap(new Func1<ProgressSnapshot, Observable<ProgressSnapshot>>() {
+            @Override
+            public Observable<ProgressSnapshot> call(final ProgressSnapshot snapshot) {
+                if (!snapshot.isPlaying() && !whilePaused) {
+                    return Observable.just(snapshot);
+                }
+                return Observable.interval(periodMillis, TimeUnit.MILLISECONDS)
+                        .map(new Func1<Long, ProgressSnapshot>() {
+                            @Override
+                            public ProgressSnapshot call(Long tick) {
+                                return snapshot;
+                            }
+                        })
+                        .startWith(snapshot);
+            }
+        });
+    }
+
     public static Observable<Intent> metaChanged(Context appContext) {
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(MusicPlaybackService.META_CHANGED);
@@ -91,12 +132,24 @@ public class BroadcastObservables {
         });
     }
 
+    /**
+     * Current track metadata on each meta change, only asks the service when the
+     * broadcast version differs from the snapshot the connection already holds
+     */
+    public static Observable<NowPlayingInfo> nowPlayingChanged(Context appContext, final MusicServiceConnection connection) {
+        return metaChanged(appContext).observeOn(Schedulers.io()).flatMap(new Func1<Intent, Observable<NowPlayingInfo>>() {
+            @Override
+            public Observable<NowPlayingInfo> call(Intent intent) {
+                return connection.getNowPlaying(intent.getLongExtra(NowPlayingInfo.EXTRA_VERSION, -1));
+            }
+        });
+    }
+
     public static Observable<ArtInfo> artworkChanged(Context appContext, final MusicServiceConnection connection) {
-        //TODO test and see if we really need to push these to io, i think we dont
-        return metaChanged(appContext).observeOn(Schedulers.io()).flatMap(new Func1<Intent, Observable<ArtInfo>>() {
+        return nowPlayingChanged(appContext, connection).map(new Func1<NowPlayingInfo, ArtInfo>() {
             @Override
-            public Observable<ArtInfo> call(Intent intent) {
-                return connection.getCurrentArtInfo();
+            public ArtInfo call(NowPlayingInfo nowPlaying) {
+                return nowPlaying.getArtInfo();
             }
         });
     }
@@ -24,6 +24,7 @@ import com.andrew.apollo.model.LocalAlbum;
 import org.opensilk.music.util.SortOrder;
 
 import org.opensilk.common.flow.AppFlow;
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
 import org.opensilk.common.rx.SimpleObserver;
@@ -38,7 +39,6 @@ import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.loader.RxLoader;
 import org.opensilk.music.ui2.profile.AlbumScreen;
 
-import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -47,6 +47,7 @@ import dagger.Provides;
 import flow.Layout;
 import hugo.weaving.DebugLog;
 import mortar.ViewPresenter;
+import rx.Subscription;
 import rx.functions.Func1;
 import timber.log.Timber;
 
@@ -85,11 +86,11 @@ public class AlbumsScreen extends Screen {
         @DebugLog
         protected void load() {
             loader.setSortOrder(preferences.getString(AppPreferences.ALBUM_SORT_ORDER, SortOrder.AlbumSortOrder.ALBUM_A_Z));
-            subscription = loader.getListObservable().subscribe(new SimpleObserver<List<LocalAlbum>>() {
+            subscription = diffAgainstAdapter(loader.getListObservable()).subscribe(new SimpleObserver<ListDiff<LocalAlbum>>() {
                 @Override
                 @DebugLog
-                public void onNext(List<LocalAlbum> localAlbums) {
-                    addAll(localAlbums);
+                public void onNext(ListDiff<LocalAlbum> diff) {
+                    applyDiff(diff);
                 }
                 @Override
                 public void onCompleted() {
@@ -98,6 +99,11 @@ public class AlbumsScreen extends Screen {
             });
         }
 
+        @Override
+        protected Object getItemKey(LocalAlbum item) {
+            return item.albumId;
+        }
+
         @Override
         protected void onItemClicked(BaseAdapter.ViewHolder holder, LocalAlbum item) {
             AppFlow.get(holder.itemView.getContext()).goTo(new AlbumScreen(item));
@@ -177,6 +183,12 @@ public class AlbumsScreen extends Screen {
                     paletteObserver, artInfo, ArtworkType.THUMBNAIL));
         }
 
+        @Override
+        protected Subscription onPrefetch(LocalAlbum album) {
+            return artworkRequestor.prefetchAlbum(new ArtInfo(album.artistName, album.name, album.artworkUri),
+                    ArtworkType.THUMBNAIL);
+        }
+
     }
 
     public static final Creator<AlbumsScreen> CREATOR = new Creator<AlbumsScreen>() {
@@ -25,6 +25,7 @@ import com.andrew.apollo.utils.MusicUtils;
 import org.opensilk.music.util.SortOrder;
 
 import org.opensilk.common.flow.AppFlow;
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
 import org.opensilk.common.rx.SimpleObserver;
@@ -39,7 +40,6 @@ import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.loader.RxLoader;
 import org.opensilk.music.ui2.profile.ArtistScreen;
 
-import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -47,6 +47,7 @@ import javax.inject.Singleton;
 import dagger.Provides;
 import flow.Layout;
 import mortar.ViewPresenter;
+import rx.Subscription;
 import rx.functions.Func1;
 import timber.log.Timber;
 
@@ -84,10 +85,10 @@ public class ArtistsScreen extends Screen {
         @Override
         protected void load() {
             loader.setSortOrder(preferences.getString(AppPreferences.ARTIST_SORT_ORDER, SortOrder.ArtistSortOrder.ARTIST_A_Z));
-            subscription = loader.getListObservable().subscribe(new SimpleObserver<List<LocalArtist>>() {
+            subscription = diffAgainstAdapter(loader.getListObservable()).subscribe(new SimpleObserver<ListDiff<LocalArtist>>() {
                 @Override
-                public void onNext(List<LocalArtist> localArtists) {
-                    addAll(localArtists);
+                public void onNext(ListDiff<LocalArtist> diff) {
+                    applyDiff(diff);
                 }
                 @Override
                 public void onCompleted() {
@@ -96,6 +97,11 @@ public class ArtistsScreen extends Screen {
             });
         }
 
+        @Override
+        protected Object getItemKey(LocalArtist item) {
+            return item.artistId;
+        }
+
         @Override
         protected void onItemClicked(BaseAdapter.ViewHolder holder, LocalArtist item) {
             AppFlow.get(holder.itemView.getContext()).goTo(new ArtistScreen(item));
@@ -173,6 +179,11 @@ public class ArtistsScreen extends Screen {
             holder.subscriptions.add(artworkRequestor.newArtistRequest(holder.artwork,
                     paletteObserver, artInfo, ArtworkType.THUMBNAIL));
         }
+
+        @Override
+        protected Subscription onPrefetch(LocalArtist artist) {
+            return artworkRequestor.prefetchArtist(new ArtInfo(artist.name, null, null), ArtworkType.THUMBNAIL);
+        }
     }
 
     public static final Creator<ArtistsScreen> CREATOR = new Creator<ArtistsScreen>() {
@@ -18,6 +18,7 @@
 package org.opensilk.music.ui2.gallery;
 
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -26,6 +27,7 @@ import android.widget.ImageButton;
 import android.widget.PopupMenu;
 import android.widget.TextView;
 
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.content.RecyclerListAdapter;
 import org.opensilk.common.widget.AnimatedImageView;
 import org.opensilk.music.R;
@@ -35,11 +37,13 @@ import org.opensilk.music.ui2.common.OverflowAction;
 import org.opensilk.music.widgets.GridTileDescription;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
 import butterknife.Optional;
+import rx.Subscription;
 import rx.subscriptions.CompositeSubscription;
 
 /**
@@ -47,12 +51,18 @@ import rx.subscriptions.CompositeSubscription;
  */
 public abstract class BaseAdapter<T> extends RecyclerListAdapter<T, BaseAdapter.ViewHolder> {
 
+    /** Number of items ahead of the scroll direction to warm artwork for */
+    static final int PREFETCH_DISTANCE = 6;
+
     protected final BasePresenter<T> presenter;
     protected final ArtworkRequestManager artworkRequestor;
 
     private LayoutInflater inflater;
     protected boolean mGridStyle = true;
 
+    private int mLastBoundPosition = -1;
+    private final SparseArray<Subscription> mPrefetches = new SparseArray<>();
+
     public BaseAdapter(BasePresenter<T> presenter, ArtworkRequestManager artworkRequestor) {
         this(new ArrayList<T>(), presenter, artworkRequestor);
     }
@@ -102,10 +112,83 @@ public abstract class BaseAdapter<T> extends RecyclerListAdapter<T, BaseAdapter.
             }
         });
         onBindViewHolder(holder, item);
+        prefetchAhead(i);
     }
 
     protected abstract void onBindViewHolder(ViewHolder holder, T item);
 
+    /**
+     * Start a low priority artwork request for an item about to be shown
+     * @return the request or null if the item has nothing to prefetch
+     */
+    protected Subscription onPrefetch(T item) {
+        return null;
+    }
+
+    /**
+     * Uses the direction of successive binds to guess the scroll direction
+     * and prefetches the next few items, prefetches that fell behind are dropped.
+     */
+    void prefetchAhead(int position) {
+        if (mLastBoundPosition < 0 || position == mLastBoundPosition) {
+            mLastBoundPosition = position;
+            return;
+        }
+        final boolean forward = position > mLastBoundPosition;
+        mLastBoundPosition = position;
+        final int start = forward ? position + 1 : position - PREFETCH_DISTANCE;
+        final int end = forward ? position + PREFETCH_DISTANCE : position - 1;
+        for (int ii=mPrefetches.size()-1; ii>=0; ii--) {
+            int pos = mPrefetches.keyAt(ii);
+            if (pos < start || pos > end) {
+                mPrefetches.valueAt(ii).unsubscribe();
+                mPrefetches.removeAt(ii);
+            }
+        }
+        final int last = Math.min(end, getItemCount() - 1);
+        for (int ii=Math.max(0, start); ii<=last; ii++) {
+            if (mPrefetches.get(ii) == null) {
+                Subscription s = onPrefetch(getItem(ii));
+                if (s != null) mPrefetches.put(ii, s);
+            }
+        }
+    }
+
+    void cancelPrefetches() {
+        for (int ii=0; ii<mPrefetches.size(); ii++) {
+            mPrefetches.valueAt(ii).unsubscribe();
+        }
+        mPrefetches.clear();
+        mLastBoundPosition = -1;
+    }
+
+    @Override
+    public boolean replaceAll(Collection<? extends T> collection) {
+        // positions are meaningless now
+        cancelPrefetches();
+        return super.replaceAll(collection);
+    }
+
+    @Override
+    public void applyDiff(ListDiff<? extends T> diff) {
+        if (!diff.isEmpty()) {
+            cancelPrefetches();
+        }
+        super.applyDiff(diff);
+    }
+
+    @Override
+    public void clear() {
+        cancelPrefetches();
+        super.clear();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        cancelPrefetches();
+    }
+
     @Override
     public void onViewRecycled(ViewHolder holder) {
         super.onViewRecycled(holder);
@@ -114,7 +197,7 @@ public abstract class BaseAdapter<T> extends RecyclerListAdapter<T, BaseAdapter.
 
     @Override
     public long getItemId(int position) {
-        return getItem(position).hashCode();
+        return presenter.getItemKey(getItem(position)).hashCode();
     }
 
     @Override
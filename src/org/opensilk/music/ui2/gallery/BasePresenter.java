@@ -26,6 +26,7 @@ import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.view.View;
 import android.widget.PopupMenu;
 
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.music.AppPreferences;
 import org.opensilk.music.R;
 import org.opensilk.music.artwork.ArtworkRequestManager;
@@ -34,12 +35,19 @@ import org.opensilk.music.ui2.common.OverflowHandler;
 import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.loader.RxLoader;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import hugo.weaving.DebugLog;
 import mortar.MortarScope;
 import mortar.ViewPresenter;
+import rx.Observable;
 import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
 import static org.opensilk.common.rx.RxUtils.isSubscribed;
@@ -58,6 +66,15 @@ public abstract class BasePresenter<T> extends ViewPresenter<GalleryPageView> im
     protected Subscription subscription;
     protected ActionBarOwner.MenuConfig actionBarMenu;
     protected boolean adapterIsDirty = false;
+    // content changed while we had no view
+    protected boolean reloadPending = false;
+
+    protected final ListDiff.Keyer<T> keyer = new ListDiff.Keyer<T>() {
+        @Override
+        public Object keyOf(T item) {
+            return getItemKey(item);
+        }
+    };
 
     public BasePresenter(AppPreferences preferences, ArtworkRequestManager artworkRequestor,
                          RxLoader<T> loader, OverflowHandler<T> popupHandler) {
@@ -78,7 +95,10 @@ public abstract class BasePresenter<T> extends ViewPresenter<GalleryPageView> im
     protected void onLoad(Bundle savedInstanceState) {
         super.onLoad(savedInstanceState);
         setupRecyclerView(false);
-        if (notSubscribed(subscription)) {
+        if (reloadPending) {
+            reloadPending = false;
+            reload();
+        } else if (notSubscribed(subscription)) {
             getView().setLoading(true);
             load();
         }
@@ -146,11 +166,17 @@ public abstract class BasePresenter<T> extends ViewPresenter<GalleryPageView> im
     protected abstract void load();
     // init overflow menu
     protected abstract void ensureMenu();
+    // identity of an item across reloads, for diffing and stable ids
+    protected abstract Object getItemKey(T item);
 
-    // cancels any ongoing load and starts a new one
+    // cancels any ongoing load and starts a new one, waits for the view if we don't have one
     @DebugLog
     public void reload() {
         if (isSubscribed(subscription)) subscription.unsubscribe();
+        if (!viewNotNull()) {
+            reloadPending = true;
+            return;
+        }
         adapterIsDirty = true;
         load();
     }
@@ -167,6 +193,27 @@ public abstract class BasePresenter<T> extends ViewPresenter<GalleryPageView> im
         }
     }
 
+    // diffs the lists against what the adapter shows now, off the main thread
+    protected Observable<ListDiff<T>> diffAgainstAdapter(Observable<List<T>> lists) {
+        final List<T> shown = viewNotNull() ? new ArrayList<>(getAdapter().getItems()) : Collections.<T>emptyList();
+        return lists.observeOn(Schedulers.computation())
+                .map(new Func1<List<T>, ListDiff<T>>() {
+                    @Override
+                    public ListDiff<T> call(List<T> list) {
+                        return ListDiff.compute(shown, list, keyer);
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    protected void applyDiff(ListDiff<T> diff) {
+        if (viewNotNull()) {
+            adapterIsDirty = false;
+            getAdapter().applyDiff(diff);
+            if (!diff.newList.isEmpty()) showRecyclerView();
+        }
+    }
+
     protected void addItem(T item) {
         if (viewNotNull()) {
             if (adapterIsDirty) {
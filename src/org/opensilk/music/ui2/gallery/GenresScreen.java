@@ -23,6 +23,7 @@ import android.os.Parcel;
 import com.andrew.apollo.model.Genre;
 import com.andrew.apollo.utils.MusicUtils;
 
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.flow.AppFlow;
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
@@ -78,6 +79,20 @@ public class GenresScreen extends Screen {
         @Override
         protected void load() {
             loader.setSortOrder(preferences.getString(AppPreferences.GENRE_SORT_ORDER, SortOrder.GenreSortOrder.GENRE_A_Z));
+            if (adapterIsDirty) {
+                // reloading, diff against what we show
+                subscription = diffAgainstAdapter(loader.getListObservable()).subscribe(new SimpleObserver<ListDiff<Genre>>() {
+                    @Override
+                    public void onNext(ListDiff<Genre> diff) {
+                        applyDiff(diff);
+                    }
+                    @Override
+                    public void onCompleted() {
+                        if (viewNotNull() && getAdapter().isEmpty()) showEmptyView();
+                    }
+                });
+                return;
+            }
             subscription = loader.getObservable().subscribe(new SimpleObserver<Genre>() {
                 @Override
                 public void onNext(Genre genre) {
@@ -90,6 +105,11 @@ public class GenresScreen extends Screen {
             });
         }
 
+        @Override
+        protected Object getItemKey(Genre item) {
+            return item.mGenreId;
+        }
+
         @Override
         protected void onItemClicked(BaseAdapter.ViewHolder holder, Genre item) {
             AppFlow.get(holder.itemView.getContext()).goTo(new GenreScreen(item));
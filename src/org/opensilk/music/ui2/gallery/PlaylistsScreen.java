@@ -22,6 +22,7 @@ import android.os.Parcel;
 import com.andrew.apollo.model.Playlist;
 import com.andrew.apollo.utils.MusicUtils;
 
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.flow.AppFlow;
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
@@ -77,6 +78,20 @@ public class PlaylistsScreen extends Screen {
         @Override
         protected void load() {
             loader.setSortOrder(preferences.getString(AppPreferences.PLAYLIST_SORT_ORDER, SortOrder.PlaylistSortOrder.PLAYLIST_A_Z));
+            if (adapterIsDirty) {
+                // reloading, diff against what we show
+                subscription = diffAgainstAdapter(loader.getListObservable()).subscribe(new SimpleObserver<ListDiff<Playlist>>() {
+                    @Override
+                    public void onNext(ListDiff<Playlist> diff) {
+                        applyDiff(diff);
+                    }
+                    @Override
+                    public void onCompleted() {
+                        if (viewNotNull() && getAdapter().isEmpty()) showEmptyView();
+                    }
+                });
+                return;
+            }
             subscription = loader.getObservable().subscribe(new SimpleObserver<Playlist>() {
                 @Override
                 public void onNext(Playlist playlist) {
@@ -89,6 +104,11 @@ public class PlaylistsScreen extends Screen {
             });
         }
 
+        @Override
+        protected Object getItemKey(Playlist item) {
+            return item.mPlaylistId;
+        }
+
         @Override
         protected void onItemClicked(BaseAdapter.ViewHolder holder, Playlist item) {
             AppFlow.get(holder.itemView.getContext()).goTo(new PlaylistScreen(item));
@@ -24,6 +24,7 @@ import com.andrew.apollo.model.LocalSong;
 import org.opensilk.common.rx.SimpleObserver;
 import org.opensilk.music.util.SortOrder;
 
+import org.opensilk.common.content.ListDiff;
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
 import org.opensilk.music.AppPreferences;
@@ -34,7 +35,6 @@ import org.opensilk.music.ui2.common.OverflowHandlers;
 import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.loader.RxLoader;
 
-import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -79,10 +79,10 @@ public class SongsScreen extends Screen {
         @Override
         protected void load() {
             loader.setSortOrder(preferences.getString(AppPreferences.SONG_SORT_ORDER, SortOrder.SongSortOrder.SONG_A_Z));
-            subscription = loader.getListObservable().subscribe(new SimpleObserver<List<LocalSong>>() {
+            subscription = diffAgainstAdapter(loader.getListObservable()).subscribe(new SimpleObserver<ListDiff<LocalSong>>() {
                 @Override
-                public void onNext(List<LocalSong> localSongs) {
-                    addAll(localSongs);
+                public void onNext(ListDiff<LocalSong> diff) {
+                    applyDiff(diff);
                 }
                 @Override
                 public void onCompleted() {
@@ -91,6 +91,11 @@ public class SongsScreen extends Screen {
             });
         }
 
+        @Override
+        protected Object getItemKey(LocalSong item) {
+            return item.songId;
+        }
+
         @Override
         protected void onItemClicked(BaseAdapter.ViewHolder holder, LocalSong item) {
             ((OverflowHandlers.LocalSongs) popupHandler).play(item);
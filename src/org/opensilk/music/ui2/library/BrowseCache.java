@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.library;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import org.opensilk.music.api.meta.LibraryInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Browse pages keyed by library, folder and the token that requested them.
+ * Bounded by the number of items held, entries older than the ttl are
+ * treated as missing. Results are stored immutable so reads don't copy.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class BrowseCache {
+
+    static class Entry {
+        final LibraryConnection.Result result;
+        final long time;
+
+        Entry(LibraryConnection.Result result, long time) {
+            this.result = result;
+            this.time = time;
+        }
+    }
+
+    final LruCache<String, Entry> cache;
+    final long ttl;
+
+    public BrowseCache(int maxItems, long ttlMillis) {
+        this.ttl = ttlMillis;
+        this.cache = new LruCache<String, Entry>(maxItems) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.result.items.size() + 1;
+            }
+        };
+    }
+
+    /**
+     * @return the page token requested or null if missing or stale
+     */
+    public LibraryConnection.Result get(LibraryInfo libraryInfo, Bundle token) {
+        final String key = makeKey(libraryInfo, token);
+        final Entry e = cache.get(key);
+        if (e == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - e.time > ttl) {
+            cache.remove(key);
+            return null;
+        }
+        return e.result;
+    }
+
+    /**
+     * @return the stored copy, which is immutable
+     */
+    public LibraryConnection.Result put(LibraryInfo libraryInfo, Bundle token, LibraryConnection.Result result) {
+        final LibraryConnection.Result frozen = new LibraryConnection.Result(
+                Collections.unmodifiableList(new ArrayList<>(result.items)),
+                result.token != null ? new Bundle(result.token) : null);
+        cache.put(makeKey(libraryInfo, token), new Entry(frozen, SystemClock.elapsedRealtime()));
+        return frozen;
+    }
+
+    /**
+     * @return the pages of the folder still cached, in order, stopping at the first missing one
+     */
+    public List<LibraryConnection.Result> getPages(LibraryInfo libraryInfo) {
+        final List<LibraryConnection.Result> pages = new ArrayList<>();
+        LibraryConnection.Result page = get(libraryInfo, null);
+        while (page != null) {
+            pages.add(page);
+            if (page.token == null) {
+                break;
+            }
+            page = get(libraryInfo, page.token);
+        }
+        return pages;
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    static String makeKey(LibraryInfo libraryInfo, Bundle token) {
+        final StringBuilder sb = new StringBuilder(64)
+                .append(libraryInfo.libraryId).append('\n')
+                .append(libraryInfo.folderId).append('\n');
+        if (token != null) {
+            // Bundle has no equals, build the key from sorted contents
+            final String[] keys = token.keySet().toArray(new String[token.size()]);
+            Arrays.sort(keys);
+            for (String k : keys) {
+                final Object v = token.get(k);
+                sb.append(k).append('=');
+                if (v instanceof Bundle) {
+                    sb.append('{').append(makeKey(libraryInfo, (Bundle) v)).append('}');
+                } else if (v != null && v.getClass().isArray()) {
+                    sb.append(Arrays.deepToString(new Object[]{v}));
+                } else {
+                    sb.append(v);
+                }
+                sb.append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.opensilk.music.ui2.library;
 
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -75,9 +76,12 @@ public class LibraryAdapter extends RecyclerView.Adapter<LibraryAdapter.ViewHold
 
     @Override
     public void onBindViewHolder(ViewHolder viewHolder, int position) {
-        if (!endofResults && position == getItemCount()-1) {
-            if (lastResult != null && lastResult.token != null) {
+        if (!endofResults && lastResult != null && lastResult.token != null) {
+            if (position == getItemCount()-1) {
                 presenter.loadMore(lastResult.token);
+            } else if (position >= getItemCount()-PREFETCH_DISTANCE && prefetchedToken != lastResult.token) {
+                prefetchedToken = lastResult.token;
+                presenter.prefetch(lastResult.token);
             }
         }
         final Bundleable b = getItem(position);
@@ -210,7 +214,11 @@ public class LibraryAdapter extends RecyclerView.Adapter<LibraryAdapter.ViewHold
         }
     }
 
+    /** How close to the end of the list we start fetching the next page */
+    static final int PREFETCH_DISTANCE = 10;
+
     LibraryConnection.Result lastResult;
+    Bundle prefetchedToken;
     boolean endofResults;
 
     public void onNewResult(LibraryConnection.Result result) {
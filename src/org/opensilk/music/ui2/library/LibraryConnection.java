@@ -17,27 +17,34 @@
 
 package org.opensilk.music.ui2.library;
 
+import android.content.ComponentName;
 import android.os.Bundle;
 import android.os.RemoteException;
+import android.os.SystemClock;
 
 import org.opensilk.music.api.PluginConfig;
 import org.opensilk.music.api.OrpheusApi;
 import org.opensilk.music.api.RemoteLibrary;
+import org.opensilk.music.api.callback.BatchResult;
 import org.opensilk.music.api.exception.ParcelableException;
 import org.opensilk.music.api.meta.LibraryInfo;
 import org.opensilk.music.api.meta.PluginInfo;
+import org.opensilk.music.api.model.ItemBatch;
 import org.opensilk.music.api.model.spi.Bundleable;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import rx.Observable;
+import rx.Observer;
 import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
+import timber.log.Timber;
 
 import static org.opensilk.common.rx.RxUtils.observeOnMain;
 import static org.opensilk.common.util.UncheckedThrow.rethrow;
@@ -56,23 +63,14 @@ public class LibraryConnection {
             this.token = token;
         }
 
-        /** Copies result for use in cache */
-        public Result copy() {
-            return new Result(new ArrayList<>(items),
-                    token != null ? new Bundle(token) : null);
-        }
     }
 
     class Callback extends org.opensilk.music.api.callback.Result.Stub {
 
-        final LibraryInfo libraryInfo;
         final Subscriber<? super Result> subscriber;
-        final boolean cacheable;
 
-        public Callback(LibraryInfo libraryInfo, Subscriber<? super Result> subscriber, boolean cacheable) {
-            this.libraryInfo = libraryInfo;
+        public Callback(Subscriber<? super Result> subscriber) {
             this.subscriber = subscriber;
-            this.cacheable = cacheable;
         }
 
         @Override
@@ -86,10 +84,46 @@ public class LibraryConnection {
                     return;
                 }
             }
-            final Result result = new Result(list, paginationBundle);
-            if (cacheable) updateCache(libraryInfo, result);
             if (subscriber.isUnsubscribed()) return;
-            subscriber.onNext(result);
+            subscriber.onNext(new Result(list, paginationBundle));
+            subscriber.onCompleted();
+        }
+
+        @Override
+        public void onError(ParcelableException e) throws RemoteException {
+            if (subscriber.isUnsubscribed()) return;
+            subscriber.onError(e);
+        }
+    }
+
+    class BatchCallback extends BatchResult.Stub {
+
+        final Subscriber<? super Result> subscriber;
+        final List<Bundleable> items = new ArrayList<>();
+        final long start = SystemClock.elapsedRealtime();
+        int batches;
+
+        public BatchCallback(Subscriber<? super Result> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onBatch(ItemBatch batch, boolean last, Bundle paginationBundle) throws RemoteException {
+            batches++;
+            try {
+                items.addAll(batch.getItems());
+            } catch (IllegalArgumentException e) {
+                if (!subscriber.isUnsubscribed()) subscriber.onError(e);
+                return;
+            }
+            if (!last) return;
+            if (D) {
+                long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+                Timber.v("Received %d items in %d batches, %dms (%d items/s)",
+                        items.size(), batches, elapsed, items.size() * 1000 / elapsed);
+            }
+            if (subscriber.isUnsubscribed()) return;
+            subscriber.onNext(new Result(items, paginationBundle));
             subscriber.onCompleted();
         }
 
@@ -102,9 +136,20 @@ public class LibraryConnection {
 
     public static final boolean D = true;
     public static final int STEP = D ? 4 : 30;
+    /** Page size for plugins taking batches, which split large pages across transactions */
+    public static final int BATCH_STEP = D ? STEP : 100;
+    public static final int SEARCH_STEP = 100;
 
-    final Map<LibraryInfo, Result> browseCache = new LinkedHashMap<>();
+    /** Items held by the browse cache across all folders */
+    public static final int CACHE_MAX_ITEMS = 2000;
+    public static final long CACHE_TTL_MS = 10 * 60 * 1000;
+
+    final BrowseCache browseCache = new BrowseCache(CACHE_MAX_ITEMS, CACHE_TTL_MS);
+    /** Browse requests still waiting on the plugin, so a prefetch and a load share one call */
+    final Map<String, Observable<Result>> inflight = new HashMap<>();
     final PluginConnectionManager connectionManager;
+    /** Configs don't change while bound, remembered so we know how to talk to each plugin */
+    final Map<ComponentName, PluginConfig> configs = new HashMap<>();
 
     public LibraryConnection(PluginConnectionManager connectionManager) {
         this.connectionManager = connectionManager;
@@ -121,31 +166,111 @@ public class LibraryConnection {
                 .observeOn(Schedulers.io());
     }
 
-    public synchronized boolean hasCache(LibraryInfo libraryInfo) {
-        return browseCache.containsKey(libraryInfo);
+    /**
+     * @return the pages of the folder still in the cache, in order, they must not be modified.
+     */
+    public List<Result> getCachedPages(LibraryInfo libraryInfo) {
+        return browseCache.getPages(libraryInfo);
+    }
+
+    public void clearCache() {
+        browseCache.clear();
     }
 
-    public synchronized Result getCache(LibraryInfo libraryInfo) {
-        return browseCache.get(libraryInfo).copy();
+    PluginConfig getCachedConfig(PluginInfo pluginInfo, RemoteLibrary remoteLibrary) throws RemoteException {
+        synchronized (configs) {
+            PluginConfig config = configs.get(pluginInfo.componentName);
+            if (config != null) {
+                return config;
+            }
+        }
+        PluginConfig config = PluginConfig.materialize(remoteLibrary.getConfig());
+        synchronized (configs) {
+            configs.put(pluginInfo.componentName, config);
+        }
+        return config;
     }
 
-    synchronized void updateCache(LibraryInfo libraryInfo, Result result) {
-        Result resultCopy = result.copy();
-        Result cacheResult = browseCache.put(libraryInfo, resultCopy);
-        if (cacheResult != null) {
-            resultCopy.items.addAll(0, cacheResult.items);
+    void onRemoteException(PluginInfo pluginInfo) {
+        synchronized (configs) {
+            // might be upgrading
+            configs.remove(pluginInfo.componentName);
         }
+        connectionManager.onException(pluginInfo.componentName);
+    }
+
+    static boolean supportsBatches(PluginConfig config) {
+        return config.apiVersion >= OrpheusApi.API_030;
     }
 
-    public synchronized void clearCache(LibraryInfo libraryInfo) {
-        if (hasCache(libraryInfo)) browseCache.remove(libraryInfo);
+    /**
+     * @return wanted capped by the largest page the plugin accepts
+     */
+    static int pageSize(PluginConfig config, int wanted) {
+        final int max = config.meta != null ? config.meta.getInt(PluginConfig.META_MAX_PAGE_SIZE, 0) : 0;
+        return max > 0 ? Math.min(max, wanted) : wanted;
     }
 
     /*
      * Start API
      */
 
+    /**
+     * Served from the cache when possible, otherwise joins or starts the plugin call.
+     * Results are immutable.
+     */
     public Observable<Result> browse(final PluginInfo pluginInfo, final LibraryInfo libraryInfo, final Bundle previousBundle) {
+        final Result cached = browseCache.get(libraryInfo, previousBundle);
+        if (cached != null) {
+            return Observable.just(cached);
+        }
+        final String key = BrowseCache.makeKey(libraryInfo, previousBundle);
+        Observable<Result> o;
+        synchronized (inflight) {
+            o = inflight.get(key);
+            if (o == null) {
+                o = fetchBrowse(pluginInfo, libraryInfo, previousBundle)
+                        .map(new Func1<Result, Result>() {
+                            @Override
+                            public Result call(Result result) {
+                                return browseCache.put(libraryInfo, previousBundle, result);
+                            }
+                        })
+                        .finallyDo(new Action0() {
+                            @Override
+                            public void call() {
+                                synchronized (inflight) {
+                                    inflight.remove(key);
+                                }
+                            }
+                        })
+                        .cache();
+                inflight.put(key, o);
+            }
+        }
+        // the Result callback will produce on a binder thread
+        // push the results back to main.
+        return o.observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Fetches the page after token into the cache in the background, so it is
+     * ready by the time the list reaches the end.
+     */
+    public void prefetch(PluginInfo pluginInfo, LibraryInfo libraryInfo, Bundle token) {
+        if (token == null || browseCache.get(libraryInfo, token) != null) {
+            return;
+        }
+        browse(pluginInfo, libraryInfo, token).subscribe(new Observer<Result>() {
+            @Override public void onCompleted() { }
+            @Override public void onError(Throwable e) {
+                Timber.w(e, "prefetch failed for %s", libraryInfo);
+            }
+            @Override public void onNext(Result result) { }
+        });
+    }
+
+    Observable<Result> fetchBrowse(final PluginInfo pluginInfo, final LibraryInfo libraryInfo, final Bundle previousBundle) {
         return getObservable(pluginInfo)
                 .flatMap(new Func1<RemoteLibrary, Observable<Result>>() {
                     @Override
@@ -154,20 +279,24 @@ public class LibraryConnection {
                             @Override
                             public void call(final Subscriber<? super Result> subscriber) {
                                 try {
-                                    remoteLibrary.browseFolders(libraryInfo.libraryId,
-                                            libraryInfo.folderId, STEP, previousBundle,
-                                            new Callback(libraryInfo, subscriber, true));
+                                    final PluginConfig config = getCachedConfig(pluginInfo, remoteLibrary);
+                                    if (supportsBatches(config)) {
+                                        remoteLibrary.browseFoldersBatched(libraryInfo.libraryId,
+                                                libraryInfo.folderId, pageSize(config, BATCH_STEP), previousBundle,
+                                                new BatchCallback(subscriber));
+                                    } else {
+                                        remoteLibrary.browseFolders(libraryInfo.libraryId,
+                                                libraryInfo.folderId, STEP, previousBundle,
+                                                new Callback(subscriber));
+                                    }
                                 } catch (RemoteException e) {
-                                    connectionManager.onException(pluginInfo.componentName);
+                                    onRemoteException(pluginInfo);
                                     if (!subscriber.isUnsubscribed()) subscriber.onError(e);
                                 }
                             }
                         });
                     }
-                })
-                // the Result callback will produce on a binder thread
-                // push the results back to main.
-                .observeOn(AndroidSchedulers.mainThread());
+                });
     }
 
     public Observable<Result> listSongsInFolder(final PluginInfo pluginInfo,
@@ -181,11 +310,18 @@ public class LibraryConnection {
                             @Override
                             public void call(final Subscriber<? super Result> subscriber) {
                                 try {
-                                    remoteLibrary.listSongsInFolder(libraryInfo.libraryId,
-                                            libraryInfo.folderId, STEP, previousBundle,
-                                            new Callback(libraryInfo, subscriber, false));
+                                    final PluginConfig config = getCachedConfig(pluginInfo, remoteLibrary);
+                                    if (supportsBatches(config)) {
+                                        remoteLibrary.listSongsInFolderBatched(libraryInfo.libraryId,
+                                                libraryInfo.folderId, pageSize(config, BATCH_STEP), previousBundle,
+                                                new BatchCallback(subscriber));
+                                    } else {
+                                        remoteLibrary.listSongsInFolder(libraryInfo.libraryId,
+                                                libraryInfo.folderId, STEP, previousBundle,
+                                                new Callback(subscriber));
+                                    }
                                 } catch (RemoteException e) {
-                                    connectionManager.onException(pluginInfo.componentName);
+                                    onRemoteException(pluginInfo);
                                     if (!subscriber.isUnsubscribed()) subscriber.onError(e);
                                 }
                             }
@@ -203,14 +339,24 @@ public class LibraryConnection {
                             @Override
                             public void call(Subscriber<? super Result> subscriber) {
                                 try {
-                                    remoteLibrary.search(libraryInfo.libraryId,
-                                            query,
-                                            100,
-                                            null,
-                                            new Callback(libraryInfo, subscriber, false)
-                                    );
+                                    final PluginConfig config = getCachedConfig(pluginInfo, remoteLibrary);
+                                    if (supportsBatches(config)) {
+                                        remoteLibrary.searchBatched(libraryInfo.libraryId,
+                                                query,
+                                                pageSize(config, SEARCH_STEP),
+                                                null,
+                                                new BatchCallback(subscriber)
+                                        );
+                                    } else {
+                                        remoteLibrary.search(libraryInfo.libraryId,
+                                                query,
+                                                SEARCH_STEP,
+                                                null,
+                                                new Callback(subscriber)
+                                        );
+                                    }
                                 } catch (RemoteException e) {
-                                    connectionManager.onException(pluginInfo.componentName);
+                                    onRemoteException(pluginInfo);
                                     if (!subscriber.isUnsubscribed()) subscriber.onError(e);
                                 }
                             }
@@ -224,9 +370,9 @@ public class LibraryConnection {
             @Override
             public PluginConfig call(RemoteLibrary remoteLibrary) {
                 try {
-                    return PluginConfig.materialize(remoteLibrary.getConfig());
+                    return getCachedConfig(pluginInfo, remoteLibrary);
                 } catch (RemoteException e) {
-                    connectionManager.onException(pluginInfo.componentName);
+                    onRemoteException(pluginInfo);
                     throw rethrow(e);
                 }
             }
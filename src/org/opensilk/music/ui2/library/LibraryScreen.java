@@ -48,6 +48,7 @@ import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.event.MakeToast;
 import org.opensilk.music.ui2.event.StartActivityForResult;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -199,12 +200,14 @@ public class LibraryScreen extends Screen {
             if (savedInstanceState != null) {
                 progressShowing = savedInstanceState.getBoolean("progress_showing", false);
             }
-            if (connection.hasCache(libraryInfo)) {
-                Timber.v("cacheHit(%s)", libraryInfo);
-                LibraryConnection.Result cachedResult = connection.getCache(libraryInfo);
-                resultObserver.lastResult = cachedResult;
+            List<LibraryConnection.Result> cachedPages = connection.getCachedPages(libraryInfo);
+            if (!cachedPages.isEmpty()) {
+                Timber.v("cacheHit(%s) %d pages", libraryInfo, cachedPages.size());
                 initialLoad = true;
-                onNewResult(cachedResult);
+                for (LibraryConnection.Result page : cachedPages) {
+                    resultObserver.lastResult = page;
+                    onNewResult(page);
+                }
             } else {
                 Timber.v("freshLoad(%s)", libraryInfo);
                 loadMore(null);
@@ -255,6 +258,13 @@ public class LibraryScreen extends Screen {
                     .subscribe(resultObserver);
         }
 
+        /**
+         * Called as the list nears its end so the next page is likely cached when it gets there
+         */
+        public void prefetch(Bundle token) {
+            connection.prefetch(pluginInfo, libraryInfo, token);
+        }
+
         public void onNewResult(LibraryConnection.Result result) {
             isloading = false;
             LibraryView v = getView();
@@ -18,27 +18,17 @@
 package org.opensilk.music.ui2.loader;
 
 import android.content.Context;
-import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Handler;
-import android.os.Looper;
-
-import com.andrew.apollo.model.LocalSong;
-
-import org.opensilk.music.util.CursorHelpers;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 
 import hugo.weaving.DebugLog;
 import rx.Observable;
-import rx.functions.Action2;
-import rx.functions.Func1;
-import rx.functions.Func2;
+import rx.Subscriber;
 import rx.schedulers.Schedulers;
 import timber.log.Timber;
 
@@ -47,22 +37,15 @@ import timber.log.Timber;
  */
 public abstract class AbsGenrePlaylistLoader<T> implements RxLoader<T> {
 
-    class UriObserver extends ContentObserver {
-        UriObserver(Handler handler) {
-            super(handler);
-        }
+    class UriObserver implements ContentChangeHub.Listener {
         @Override
         @DebugLog
-        public void onChange(boolean selfChange) {
+        public void onContentChanged(Uri uri) {
             reset();
             for (ContentChangedListener l : contentChangedListeners) {
                 l.reload();
             }
         }
-        @Override
-        public void onChange(boolean selfChange, Uri uri) {
-            onChange(selfChange);
-        }
     }
 
     protected final List<ContentChangedListener> contentChangedListeners;
@@ -74,6 +57,7 @@ public abstract class AbsGenrePlaylistLoader<T> implements RxLoader<T> {
     String[] selectionArgs;
     String sortOrder;
 
+    /** Member projection, song id then album id */
     String[] projection2;
     String selection2;
     String[] selectionArgs2;
@@ -93,70 +77,147 @@ public abstract class AbsGenrePlaylistLoader<T> implements RxLoader<T> {
     protected abstract Uri getUriForId(long id);
     protected abstract T createItem(long id, String name, int songCount, int albumCount, long[] songIds, long[] albumIds);
 
+    /**
+     * @return uri returning the members of every group with a group id column,
+     *         or null if members can only be queried per group
+     */
+    protected Uri getAllMembersUri() {
+        return null;
+    }
+
+    /**
+     * @return name of the group id column in {@link #getAllMembersUri()}
+     */
+    protected String getGroupIdColumn() {
+        return null;
+    }
+
     //@DebugLog
     public Observable<T> getObservable() {
         if (uriObserver == null) {
-            uriObserver = new UriObserver(new Handler(Looper.getMainLooper()));
-            context.getContentResolver().registerContentObserver(uri, true, uriObserver);
+            uriObserver = new UriObserver();
+            ContentChangeHub.get(context).register(uri, uriObserver);
         }
-        RxCursorLoader<T> collectionLoader = new RxCursorLoader<T>(context,
-                uri,
-                projection,
-                selection,
-                selectionArgs,
-                sortOrder) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
             @Override
-            protected T makeFromCursor(Cursor c) {
-                long id = c.getInt(getIdColumnIdx(c));
-                String name = c.getString(getNameColumnIdx(c));
-                RxCursorLoader<LocalSong> songsLoader = new RxCursorLoader<LocalSong>(context,
-                        getUriForId(id),
-                        projection2,
-                        selection2,
-                        selectionArgs2,
-                        sortOrder2) {
-                    @Override
-                    protected LocalSong makeFromCursor(Cursor c) {
-                        return CursorHelpers.makeLocalSongFromCursor(c);
+            public void call(Subscriber<? super T> subscriber) {
+                Cursor c = null;
+                try {
+                    c = context.getContentResolver().query(uri, projection, selection, selectionArgs, sortOrder);
+                    if (c == null) {
+                        throw new NullPointerException("Unable to obtain cursor");
+                    }
+                    // all members in one pass when the provider can join them for us
+                    final Map<Long, MemberAggregator.Group> groups = loadAllMembers();
+                    if (c.moveToFirst()) {
+                        final int idIdx = getIdColumnIdx(c);
+                        final int nameIdx = getNameColumnIdx(c);
+                        do {
+                            final long id = c.getLong(idIdx);
+                            final String name = c.getString(nameIdx);
+                            MemberAggregator.Group group = (groups != null)
+                                    ? groups.get(id) : loadMembers(getUriForId(id));
+                            if (group == null) {
+                                group = MemberAggregator.EMPTY;
+                            }
+                            if (subscriber.isUnsubscribed()) return;
+                            subscriber.onNext(createItem(group, id, name));
+                        } while (c.moveToNext());
+                    }
+                    if (!subscriber.isUnsubscribed()) {
+                        subscriber.onCompleted();
                     }
-                };
-                Observable<T> item = performSomeMagick(songsLoader.createObservable(), id, name);
-                return item.toBlocking().first();
+                } catch (Exception e) {
+                    if (!subscriber.isUnsubscribed()) {
+                        subscriber.onError(e);
+                    }
+                } finally {
+                    if (c != null) c.close();
+                }
             }
-        };
-        return collectionLoader.createObservable().subscribeOn(Schedulers.io());
+        }).subscribeOn(Schedulers.io());
     }
 
-    //@DebugLog
-    public Observable<T> performSomeMagick(Observable<LocalSong> observable,
-                                           final long itemId,
-                                           final String itemName) {
-        Observable<LocalSong> o = observable.subscribeOn(Schedulers.io()).replay().refCount();
-        //songs
-        Observable<List<Long>> songs = o.map(new Func1<LocalSong, Long>() {
+    /**
+     * @return an item for the single group of songs returned by the query,
+     *         the projection must contain the song id followed by the album id
+     */
+    public Observable<T> createGroupObservable(final Uri uri,
+                                               final String[] projection,
+                                               final String selection,
+                                               final String[] selectionArgs,
+                                               final String sortOrder,
+                                               final long itemId,
+                                               final String itemName) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
             @Override
-            public Long call(LocalSong localSong) {
-                return localSong.songId;
+            public void call(Subscriber<? super T> subscriber) {
+                Cursor c = null;
+                try {
+                    c = context.getContentResolver().query(uri, projection, selection, selectionArgs, sortOrder);
+                    if (c == null) {
+                        throw new NullPointerException("Unable to obtain cursor");
+                    }
+                    final MemberAggregator.Group group = MemberAggregator.collect(c, 0, 1);
+                    if (subscriber.isUnsubscribed()) return;
+                    subscriber.onNext(createItem(group, itemId, itemName));
+                    subscriber.onCompleted();
+                } catch (Exception e) {
+                    if (!subscriber.isUnsubscribed()) {
+                        subscriber.onError(e);
+                    }
+                } finally {
+                    if (c != null) c.close();
+                }
             }
-            // collect output into list
-        }).toList();
-        //albums
-        Observable<List<Long>> albums = o.map(new Func1<LocalSong, Long>() {
-            @Override
-            public Long call(LocalSong localSong) {
-                return localSong.albumId;
+        }).subscribeOn(Schedulers.io());
+    }
+
+    T createItem(MemberAggregator.Group group, long id, String name) {
+        final long[] albumIds = group.getAlbumIds();
+        return createItem(id, name, group.count, albumIds.length, group.getSongIds(), albumIds);
+    }
+
+    /**
+     * @return members of all groups or null if we have to query them per group
+     */
+    Map<Long, MemberAggregator.Group> loadAllMembers() {
+        final Uri allMembers = getAllMembersUri();
+        if (allMembers == null) {
+            return null;
+        }
+        Cursor c = null;
+        try {
+            c = context.getContentResolver().query(allMembers,
+                    new String[] {getGroupIdColumn(), projection2[0], projection2[1]},
+                    selection2, selectionArgs2, sortOrder2);
+            if (c == null) {
+                return null;
             }
-            //only want unique albums, //collect output into list
-        }).distinct().toList();
-        // zip the songs and albums into a playlist
-        return Observable.zip(songs, albums,
-                new Func2<List<Long>, List<Long>, T>() {
-                    @Override
-                    public T call(List<Long> songs, List<Long> albums) {
-                        Collections.sort(albums);
-                        return createItem(itemId, itemName, songs.size(), albums.size(), toArray(songs), toArray(albums));
-                    }
-                });
+            return MemberAggregator.collectAll(c, 0, 1, 2);
+        } catch (Exception e) {
+            // not every mediastore supports it
+            Timber.w(e, "Unable to query %s", allMembers);
+            return null;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    /**
+     * @return the members of a single group
+     */
+    MemberAggregator.Group loadMembers(Uri membersUri) {
+        Cursor c = context.getContentResolver().query(membersUri,
+                projection2, selection2, selectionArgs2, sortOrder2);
+        if (c == null) {
+            return null;
+        }
+        try {
+            return MemberAggregator.collect(c, 0, 1);
+        } finally {
+            c.close();
+        }
     }
 
     public void reset() {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.loader;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Shares one ContentObserver per uri between all the loaders watching it and
+ * turns bursts of notifications (the media scanner sends one per file) into a
+ * single callback.
+ *
+ * A notification starts a window, every notification inside it pushes the
+ * callback back until the uri has been quiet for the window or the max wait
+ * is reached. While no activity is started callbacks are held back and one
+ * per uri is delivered when an activity starts again.
+ *
+ * Listeners are weakly held, loaders must keep a reference to theirs.
+ * Listeners are called on the main thread.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class ContentChangeHub {
+
+    public interface Listener {
+        void onContentChanged(Uri uri);
+    }
+
+    static final long DEFAULT_WINDOW_MS = 500;
+    static final long DEFAULT_MAX_WAIT_MS = 3000;
+
+    static ContentChangeHub sInstance;
+
+    public static synchronized ContentChangeHub get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContentChangeHub(context.getApplicationContext(),
+                    new Handler(Looper.getMainLooper()));
+        }
+        return sInstance;
+    }
+
+    final Context mContext;
+    final Handler mHandler;
+    final Map<Uri, Channel> mChannels = new HashMap<>();
+
+    long mWindowMs = DEFAULT_WINDOW_MS;
+    long mMaxWaitMs = DEFAULT_MAX_WAIT_MS;
+    int mStartedCount;
+    boolean mPaused;
+
+    long mReceived;
+    long mCoalesced;
+    long mExecuted;
+    long mDeferred;
+
+    ContentChangeHub(Context context, Handler handler) {
+        mContext = context;
+        mHandler = handler;
+    }
+
+    /**
+     * Starts delivering changes to the uri, and its descendants, to the listener
+     */
+    public synchronized void register(Uri uri, Listener listener) {
+        Channel channel = mChannels.get(uri);
+        if (channel == null) {
+            channel = new Channel(uri);
+            mChannels.put(uri, channel);
+            mContext.getContentResolver().registerContentObserver(uri, true, channel);
+        }
+        channel.add(listener);
+    }
+
+    public synchronized void unregister(Uri uri, Listener listener) {
+        Channel channel = mChannels.get(uri);
+        if (channel != null && channel.remove(listener)) {
+            release(channel);
+        }
+    }
+
+    /**
+     * Sets how long a uri must be quiet before its listeners are called
+     * and the longest a burst can hold them back
+     */
+    public synchronized void setWindow(long windowMs, long maxWaitMs) {
+        mWindowMs = windowMs;
+        mMaxWaitMs = Math.max(windowMs, maxWaitMs);
+    }
+
+    /**
+     * An activity became visible, replays the changes held back while we were hidden
+     */
+    public void onActivityStart() {
+        final List<Channel> replay = new ArrayList<>();
+        synchronized (this) {
+            mStartedCount++;
+            if (!mPaused) {
+                return;
+            }
+            mPaused = false;
+            for (Channel channel : mChannels.values()) {
+                if (channel.deferred) {
+                    channel.deferred = false;
+                    replay.add(channel);
+                }
+            }
+        }
+        for (Channel channel : replay) {
+            channel.deliver();
+        }
+    }
+
+    /**
+     * An activity is no longer visible, changes are held back once none are
+     */
+    public synchronized void onActivityStop() {
+        if (mStartedCount > 0 && --mStartedCount == 0) {
+            mPaused = true;
+        }
+    }
+
+    public synchronized long getReceivedCount() {
+        return mReceived;
+    }
+
+    /** Notifications folded into an already pending callback */
+    public synchronized long getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    /** Callbacks delivered to listeners, once per uri regardless of listener count */
+    public synchronized long getExecutedCount() {
+        return mExecuted;
+    }
+
+    /** Callbacks held back while no activity was visible */
+    public synchronized long getDeferredCount() {
+        return mDeferred;
+    }
+
+    void release(Channel channel) {
+        mHandler.removeCallbacks(channel);
+        mContext.getContentResolver().unregisterContentObserver(channel);
+        mChannels.remove(channel.uri);
+    }
+
+    class Channel extends ContentObserver implements Runnable {
+        final Uri uri;
+        final List<WeakReference<Listener>> listeners = new ArrayList<>(2);
+        /** Uptime of the first and last notification of the pending burst, 0 if none */
+        long firstChange;
+        long lastChange;
+        boolean deferred;
+
+        Channel(Uri uri) {
+            super(mHandler);
+            this.uri = uri;
+        }
+
+        void add(Listener listener) {
+            for (WeakReference<Listener> ref : listeners) {
+                if (ref.get() == listener) {
+                    return;
+                }
+            }
+            listeners.add(new WeakReference<>(listener));
+        }
+
+        /**
+         * @return true if no listeners remain
+         */
+        boolean remove(Listener listener) {
+            Iterator<WeakReference<Listener>> ii = listeners.iterator();
+            while (ii.hasNext()) {
+                Listener l = ii.next().get();
+                if (l == null || l == listener) {
+                    ii.remove();
+                }
+            }
+            return listeners.isEmpty();
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (ContentChangeHub.this) {
+                mReceived++;
+                final long now = SystemClock.uptimeMillis();
+                lastChange = now;
+                if (firstChange != 0 || deferred) {
+                    mCoalesced++;
+                    return;
+                }
+                firstChange = now;
+                mHandler.postDelayed(this, mWindowMs);
+            }
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onChange(selfChange);
+        }
+
+        @Override
+        public void run() {
+            synchronized (ContentChangeHub.this) {
+                final long now = SystemClock.uptimeMillis();
+                final long quietAt = lastChange + mWindowMs;
+                final long deadline = firstChange + mMaxWaitMs;
+                if (now < quietAt && now < deadline) {
+                    mHandler.postAtTime(this, Math.min(quietAt, deadline));
+                    return;
+                }
+                firstChange = lastChange = 0;
+                if (mPaused) {
+                    deferred = true;
+                    mDeferred++;
+                    return;
+                }
+            }
+            deliver();
+        }
+
+        void deliver() {
+            final List<Listener> live = new ArrayList<>(listeners.size());
+            synchronized (ContentChangeHub.this) {
+                mExecuted++;
+                Iterator<WeakReference<Listener>> ii = listeners.iterator();
+                while (ii.hasNext()) {
+                    Listener l = ii.next().get();
+                    if (l == null) {
+                        ii.remove();
+                    } else {
+                        live.add(l);
+                    }
+                }
+                if (listeners.isEmpty()) {
+                    Timber.v("No listeners left for %s", uri);
+                    release(this);
+                    return;
+                }
+            }
+            for (Listener l : live) {
+                l.onContentChanged(uri);
+            }
+        }
+    }
+
+}
@@ -21,12 +21,12 @@ import android.content.Context;
 import android.database.Cursor;
 
 import com.andrew.apollo.model.LocalAlbum;
+import com.andrew.apollo.provider.MusicProvider;
 
 import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.SelectionArgs;
 import org.opensilk.music.util.Selections;
-import org.opensilk.music.util.Uris;
 import org.opensilk.common.dagger.qualifier.ForApplication;
 
 import javax.inject.Inject;
@@ -44,7 +44,7 @@ public class LocalAlbumsLoader extends RxCursorLoader<LocalAlbum> {
     public LocalAlbumsLoader(@ForApplication Context context) {
         super(context);
 //        Timber.v("new Albums.Loader()");
-        setUri(Uris.EXTERNAL_MEDIASTORE_ALBUMS);
+        setUri(MusicProvider.LIBRARY_ALBUMS_URI);
         setProjection(Projections.LOCAL_ALBUM);
         setSelection(Selections.LOCAL_ALBUM);
         setSelectionArgs(SelectionArgs.LOCAL_ALBUM);
@@ -21,12 +21,12 @@ import android.content.Context;
 import android.database.Cursor;
 
 import com.andrew.apollo.model.LocalArtist;
+import com.andrew.apollo.provider.MusicProvider;
 
 import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.SelectionArgs;
 import org.opensilk.music.util.Selections;
-import org.opensilk.music.util.Uris;
 import org.opensilk.common.dagger.qualifier.ForApplication;
 
 import javax.inject.Inject;
@@ -40,7 +40,7 @@ public class LocalArtistsLoader extends RxCursorLoader<LocalArtist> {
     @Inject
     public LocalArtistsLoader(@ForApplication Context context) {
         super(context);
-        setUri(Uris.EXTERNAL_MEDIASTORE_ARTISTS);
+        setUri(MusicProvider.LIBRARY_ARTISTS_URI);
         setProjection(Projections.LOCAL_ARTIST);
         setSelection(Selections.LOCAL_ARTIST);
         setSelectionArgs(SelectionArgs.LOCAL_ARTIST);
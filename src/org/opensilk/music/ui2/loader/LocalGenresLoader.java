@@ -24,12 +24,12 @@ import android.provider.BaseColumns;
 import android.provider.MediaStore;
 
 import com.andrew.apollo.model.Genre;
+import com.andrew.apollo.provider.MusicProvider;
 
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.SelectionArgs;
 import org.opensilk.music.util.Selections;
 import org.opensilk.music.util.SortOrder;
-import org.opensilk.music.util.Uris;
 import org.opensilk.common.dagger.qualifier.ForApplication;
 
 import java.util.List;
@@ -51,15 +51,15 @@ public class LocalGenresLoader extends AbsGenrePlaylistLoader<Genre> {
     @Inject
     public LocalGenresLoader(@ForApplication Context context) {
         super(context);
-        setUri(Uris.EXTERNAL_MEDIASTORE_GENRES);
+        setUri(MusicProvider.LIBRARY_GENRES_URI);
         setProjection(Projections.GENRE);
         setSelection(Selections.GENRE);
         setSelectionArgs(SelectionArgs.GENRE);
         // need set sortorder
 
-        setProjection2(Projections.GENRE_SONGS);
-        setSelection2(Selections.GENRE_SONGS);
-        setSelectionArgs2(SelectionArgs.GENRE_SONGS);
+        setProjection2(Projections.GENRE_MEMBER);
+        setSelection2(Selections.GENRE_MEMBER);
+        setSelectionArgs2(SelectionArgs.GENRE_MEMBER);
         setSortOrder2(SortOrder.GENRE_MEMBERS);
     }
 
@@ -75,7 +75,17 @@ public class LocalGenresLoader extends AbsGenrePlaylistLoader<Genre> {
 
     @Override
     protected Uri getUriForId(long id) {
-        return Uris.GENRE(id);
+        return MusicProvider.libraryGenreMembersUri(id);
+    }
+
+    @Override
+    protected Uri getAllMembersUri() {
+        return MusicProvider.LIBRARY_GENRES_ALL_MEMBERS_URI;
+    }
+
+    @Override
+    protected String getGroupIdColumn() {
+        return MediaStore.Audio.Genres.Members.GENRE_ID;
     }
 
     @Override
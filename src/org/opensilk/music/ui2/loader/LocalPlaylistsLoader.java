@@ -23,11 +23,9 @@ import android.net.Uri;
 import android.provider.BaseColumns;
 import android.provider.MediaStore;
 
-import com.andrew.apollo.model.LocalSong;
 import com.andrew.apollo.model.Playlist;
 
 import org.opensilk.music.R;
-import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.SelectionArgs;
 import org.opensilk.music.util.Selections;
@@ -59,9 +57,9 @@ public class LocalPlaylistsLoader extends AbsGenrePlaylistLoader<Playlist> {
         setSelectionArgs(SelectionArgs.PLAYLIST);
         // need set sortorder
 
-        setProjection2(Projections.PLAYLIST_SONGS);
-        setSelection2(Selections.PLAYLIST_SONGS);
-        setSelectionArgs2(SelectionArgs.PLAYLIST_SONGS);
+        setProjection2(Projections.PLAYLIST_MEMBER);
+        setSelection2(Selections.PLAYLIST_MEMBER);
+        setSelectionArgs2(SelectionArgs.PLAYLIST_MEMBER);
         setSortOrder2(SortOrder.PLAYLIST_MEMBERS);
     }
 
@@ -88,21 +86,15 @@ public class LocalPlaylistsLoader extends AbsGenrePlaylistLoader<Playlist> {
     @Override
     public Observable<Playlist> getObservable() {
         if (cachedObservable == null) {
-            RxCursorLoader<LocalSong> lastAddedLoader = new RxCursorLoader<LocalSong>(context,
+            Observable<Playlist> lastAddedObservable = createGroupObservable(
                     Uris.EXTERNAL_MEDIASTORE_MEDIA,
-                    Projections.LOCAL_SONG,
+                    new String[] {
+                            BaseColumns._ID,
+                            MediaStore.Audio.AudioColumns.ALBUM_ID,
+                    },
                     Selections.LAST_ADDED,
                     SelectionArgs.LAST_ADDED(),
-                    SortOrder.LAST_ADDED) {
-                @Override
-                protected LocalSong makeFromCursor(Cursor c) {
-                    return CursorHelpers.makeLocalSongFromCursor(c);
-                }
-            };
-
-            Observable<Playlist> lastAddedObservable = performSomeMagick(
-                    // performSomeMagick subscribes us on io so we dont need to do that here
-                    lastAddedLoader.createObservable(),
+                    SortOrder.LAST_ADDED,
                     -2,
                     context.getResources().getString(R.string.playlist_last_added)
             );
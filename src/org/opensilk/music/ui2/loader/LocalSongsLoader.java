@@ -21,12 +21,12 @@ import android.content.Context;
 import android.database.Cursor;
 
 import com.andrew.apollo.model.LocalSong;
+import com.andrew.apollo.provider.MusicProvider;
 
 import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.SelectionArgs;
 import org.opensilk.music.util.Selections;
-import org.opensilk.music.util.Uris;
 import org.opensilk.common.dagger.qualifier.ForApplication;
 
 import javax.inject.Inject;
@@ -39,7 +39,7 @@ public class LocalSongsLoader extends RxCursorLoader<LocalSong> {
     @Inject
     public LocalSongsLoader(@ForApplication Context context) {
         super(context);
-        setUri(Uris.EXTERNAL_MEDIASTORE_MEDIA);
+        setUri(MusicProvider.LIBRARY_SONGS_URI);
         setProjection(Projections.LOCAL_SONG);
         setSelection(Selections.LOCAL_SONG);
         setSelectionArgs(SelectionArgs.LOCAL_SONG);
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.loader;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the member song ids and distinct album ids of genres and playlists
+ * straight off member cursors into primitive arrays.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class MemberAggregator {
+
+    public static final class Group {
+        long[] songs = new long[16];
+        long[] albums = new long[16];
+        int count;
+
+        void add(long songId, long albumId) {
+            if (count == songs.length) {
+                songs = Arrays.copyOf(songs, count * 2);
+                albums = Arrays.copyOf(albums, count * 2);
+            }
+            songs[count] = songId;
+            albums[count] = albumId;
+            count++;
+        }
+
+        /**
+         * @return song ids in cursor order
+         */
+        public long[] getSongIds() {
+            return Arrays.copyOf(songs, count);
+        }
+
+        /**
+         * @return distinct album ids sorted ascending
+         */
+        public long[] getAlbumIds() {
+            final long[] sorted = Arrays.copyOf(albums, count);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int ii=0; ii<sorted.length; ii++) {
+                if (ii == 0 || sorted[ii] != sorted[ii - 1]) {
+                    sorted[unique++] = sorted[ii];
+                }
+            }
+            return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+        }
+    }
+
+    public static final Group EMPTY = new Group();
+
+    /**
+     * Reads every row of a single group member cursor
+     */
+    public static Group collect(Cursor c, int songIdx, int albumIdx) {
+        final Group group = new Group();
+        if (c.moveToFirst()) {
+            do {
+                group.add(c.getLong(songIdx), c.getLong(albumIdx));
+            } while (c.moveToNext());
+        }
+        return group;
+    }
+
+    /**
+     * Reads a member cursor spanning all groups in one pass
+     * @return groups keyed by group id
+     */
+    public static Map<Long, Group> collectAll(Cursor c, int groupIdx, int songIdx, int albumIdx) {
+        final Map<Long, Group> groups = new HashMap<>();
+        if (c.moveToFirst()) {
+            long lastId = Long.MIN_VALUE;
+            Group group = null;
+            do {
+                final long groupId = c.getLong(groupIdx);
+                // rows tend to arrive grouped, avoid the map lookup for runs
+                if (group == null || groupId != lastId) {
+                    group = groups.get(groupId);
+                    if (group == null) {
+                        group = new Group();
+                        groups.put(groupId, group);
+                    }
+                    lastId = groupId;
+                }
+                group.add(c.getLong(songIdx), c.getLong(albumIdx));
+            } while (c.moveToNext());
+        }
+        return groups;
+    }
+
+}
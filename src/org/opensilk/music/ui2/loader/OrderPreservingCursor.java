@@ -1,11 +1,12 @@
-
 package org.opensilk.music.ui2.loader;
 
 import android.content.Context;
 import android.database.AbstractCursor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
+import android.support.v4.util.LruCache;
 import android.text.TextUtils;
 
 import org.opensilk.music.util.Projections;
@@ -14,23 +15,62 @@ import org.opensilk.music.util.Selections;
 import org.opensilk.music.util.Uris;
 
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import timber.log.Timber;
 
 /**
  * A custom {@link Cursor} stolen from NowPlayingCursor
  * to allow quering mediastore for audio ids and have
  * the cursor iterate in the original order of the ids given
+ *
+ * The ids are split into fixed size pages that are queried on demand
+ * as the cursor moves, only the last few pages are kept open so large
+ * lists cost the same memory as small ones and no query has more than
+ * a page of ids in its selection. Whenever the cursor enters a page the
+ * pages on either side are loaded in the background, so moving through
+ * the list while the adapter binds doesn't query on the calling thread.
  */
 public class OrderPreservingCursor extends AbstractCursor {
 
+    /** Ids per page */
+    static final int PAGE_SIZE = 100;
+    /** Pages kept open */
+    static final int MAX_PAGES = 4;
+
     private final Context mContext;
 
     private long[] mQuery;
 
-    private long[] mCursorIndexes;
-
     private int mSize;
 
-    private int mCurPos;
+    private final LruCache<Integer, Page> mPages = new LruCache<Integer, Page>(MAX_PAGES) {
+        @Override
+        protected void entryRemoved(boolean evicted, Integer key, Page oldValue, Page newValue) {
+            oldValue.close();
+        }
+    };
+
+    /** Pages being loaded in the background */
+    private final ConcurrentMap<Integer, FutureTask<Page>> mPending = new ConcurrentHashMap<>();
+    private final Scheduler.Worker mWorker;
+    /**
+     * Guards publishing background pages against the current page changing,
+     * only neighbours of the current page are published so it can never
+     * be the eldest page and get evicted out from under us
+     */
+    private final Object mPageLock = new Object();
+    /** Bumped when pages are reset so background loads started before are dropped */
+    private volatile int mGeneration;
+    private volatile int mCurrentPage = -1;
 
     private Cursor mDelegateCursor;
 
@@ -41,6 +81,7 @@ public class OrderPreservingCursor extends AbstractCursor {
 
     public OrderPreservingCursor(final Context context, long[] ids) {
         super();
+        mWorker = Schedulers.io().createWorker();
         mContext = context;
         mQuery = ids;
         mUri = Uris.EXTERNAL_MEDIASTORE_MEDIA;
@@ -53,7 +94,15 @@ public class OrderPreservingCursor extends AbstractCursor {
     public OrderPreservingCursor(Context context, long[] ids,
                                  Uri uri, String[] projection,
                                  String selection, String[] selectionArgs) {
+        this(context, ids, uri, projection, selection, selectionArgs, Schedulers.io());
+    }
+
+    OrderPreservingCursor(Context context, long[] ids,
+                          Uri uri, String[] projection,
+                          String selection, String[] selectionArgs,
+                          Scheduler prefetchScheduler) {
         super();
+        mWorker = prefetchScheduler.createWorker();
         mContext = context;
         mQuery = ids;
         mUri = uri;
@@ -70,21 +119,37 @@ public class OrderPreservingCursor extends AbstractCursor {
 
     @Override
     public boolean onMove(final int oldPosition, final int newPosition) {
-        if (oldPosition == newPosition) {
-            return true;
-        }
-
-        if (mQuery == null || mCursorIndexes == null || newPosition >= mQuery.length) {
+        if (mQuery == null || newPosition < 0 || newPosition >= mSize) {
             return false;
         }
 
-        final long id = mQuery[newPosition];
-        final int cursorIndex = Arrays.binarySearch(mCursorIndexes, id);
+        final int pageNum = newPosition / PAGE_SIZE;
+        final boolean pageChanged = pageNum != mCurrentPage;
+        if (pageChanged) {
+            synchronized (mPageLock) {
+                mCurrentPage = pageNum;
+            }
+        }
+        final Page page = getPage(pageNum);
+        if (pageChanged) {
+            // the page in the direction we're moving first
+            final int ahead = pageNum >= oldPosition / PAGE_SIZE ? 1 : -1;
+            prefetch(pageNum + ahead);
+            prefetch(pageNum - ahead);
+        }
+        final int cursorIndex = page.indexOf(mQuery[newPosition]);
+        mDelegateCursor = page.cursor;
         mDelegateCursor.moveToPosition(cursorIndex);
-        mCurPos = newPosition;
         return true;
     }
 
+    /**
+     * @return the id at position, without moving the cursor
+     */
+    public long getId(int position) {
+        return mQuery[position];
+    }
+
     @Override
     public String getString(final int column) {
         try {
@@ -148,9 +213,7 @@ public class OrderPreservingCursor extends AbstractCursor {
     @SuppressWarnings("deprecation")
     @Override
     public void deactivate() {
-        if (mDelegateCursor != null) {
-            mDelegateCursor.deactivate();
-        }
+        resetPages();
     }
 
     @Override
@@ -162,77 +225,157 @@ public class OrderPreservingCursor extends AbstractCursor {
     @Override
     public void close() {
         try {
-            if (mDelegateCursor != null) {
-                mDelegateCursor.close();
-                mDelegateCursor = null;
-            }
+            resetPages();
         } catch (final Exception close) {
         } finally {
+            mWorker.unsubscribe();
             super.close();
         }
     }
 
     private void makeDelegateCursor() {
-        resetDelegateCursor();
+        resetPages();
+        mSize = (mQuery != null && mContext != null) ? mQuery.length : 0;
+    }
+
+    private Page getPage(int pageNum) {
+        Page page = mPages.get(pageNum);
+        if (page == null) {
+            final FutureTask<Page> pending = mPending.get(pageNum);
+            if (pending != null) {
+                // Already on its way, dont query it twice
+                page = awaitPage(pending);
+            }
+            if (page == null) {
+                page = loadPage(pageNum);
+                mPages.put(pageNum, page);
+            }
+        }
+        return page;
+    }
 
-        mSize = mQuery.length;
+    private Page awaitPage(FutureTask<Page> pending) {
+        try {
+            return pending.get();
+        } catch (InterruptedException|ExecutionException|CancellationException e) {
+            Timber.w(e, "Background page load failed");
+            return null;
+        }
+    }
 
-        if (mSize == 0) {
-            resetDelegateCursor();
+    /**
+     * Loads the page in the background if it isn't open or loading already
+     */
+    private void prefetch(final int pageNum) {
+        if (pageNum < 0 || pageNum * PAGE_SIZE >= mSize
+                || mPages.get(pageNum) != null || mPending.containsKey(pageNum)) {
+            return;
+        }
+        final int generation = mGeneration;
+        final FutureTask<Page> task = new FutureTask<>(new Callable<Page>() {
+            @Override
+            public Page call() throws Exception {
+                final Page page = loadPage(pageNum);
+                synchronized (mPageLock) {
+                    if (generation != mGeneration || isClosed()
+                            || Math.abs(pageNum - mCurrentPage) > 1) {
+                        // Reset or scrolled away while we were loading
+                        page.close();
+                        return null;
+                    }
+                    mPages.put(pageNum, page);
+                }
+                return page;
+            }
+        });
+        if (mPending.putIfAbsent(pageNum, task) != null) {
             return;
         }
+        mWorker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    task.run();
+                } finally {
+                    mPending.remove(pageNum, task);
+                }
+            }
+        });
+    }
+
+    private Page loadPage(int pageNum) {
+        final int start = pageNum * PAGE_SIZE;
+        final int end = Math.min(mSize, start + PAGE_SIZE);
 
         final StringBuilder selection = new StringBuilder();
         selection.append(BaseColumns._ID + " IN (");
-        for (int i = 0; i < mSize; i++) {
+        for (int i = start; i < end; i++) {
             selection.append(mQuery[i]);
-            if (i < mSize - 1) {
+            if (i < end - 1) {
                 selection.append(",");
             }
         }
         selection.append(")");
 
-        if (mContext == null) {
-            resetDelegateCursor();
-            return;
-        }
-
-        mDelegateCursor = mContext.getContentResolver().query(
-                mUri,
-                mProjection,
-                mSelection + selection.toString(),
-                mSelectionArgs,
-                BaseColumns._ID);
-
-        if (mDelegateCursor == null) {
-            resetDelegateCursor();
-            return;
-        }
-
+        Cursor c = null;
         try {
-            final int playlistSize = mDelegateCursor.getCount();
-            mCursorIndexes = new long[playlistSize];
-            if (mDelegateCursor.moveToFirst()) {
-                final int columnIndex = mDelegateCursor.getColumnIndexOrThrow(BaseColumns._ID);
-                for (int i = 0; i < playlistSize; i++) {
-                    mCursorIndexes[i] = mDelegateCursor.getLong(columnIndex);
-                    mDelegateCursor.moveToNext();
+            c = mContext.getContentResolver().query(
+                    mUri,
+                    mProjection,
+                    mSelection + selection.toString(),
+                    mSelectionArgs,
+                    BaseColumns._ID);
+            if (c != null) {
+                final int rowCount = c.getCount();
+                final long[] ids = new long[rowCount];
+                if (c.moveToFirst()) {
+                    final int columnIndex = c.getColumnIndexOrThrow(BaseColumns._ID);
+                    for (int i = 0; i < rowCount; i++) {
+                        ids[i] = c.getLong(columnIndex);
+                        c.moveToNext();
+                    }
                 }
+                return new Page(c, ids);
             }
-            mDelegateCursor.moveToFirst();
-            mCurPos = -1;
         } catch (Exception e) {
-            resetDelegateCursor();
+            if (c != null) c.close();
         }
-
+        // rows we can't load read like ids missing from the provider
+        return new Page(new MatrixCursor(mProjection, 0), new long[0]);
     }
 
-    void resetDelegateCursor() {
-        if (mDelegateCursor != null && !mDelegateCursor.isClosed()) {
-            mDelegateCursor.close();
+    void resetPages() {
+        synchronized (mPageLock) {
+            mGeneration++;
+            mCurrentPage = -1;
+        }
+        for (FutureTask<Page> pending : mPending.values()) {
+            pending.cancel(false);
         }
+        mPending.clear();
+        mPages.evictAll();
         mDelegateCursor = null;
-        mSize = 0;
+    }
+
+    static final class Page {
+        final Cursor cursor;
+        /** Ids in cursor order, sorted */
+        final long[] ids;
+
+        Page(Cursor cursor, long[] ids) {
+            this.cursor = cursor;
+            this.ids = ids;
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        void close() {
+            if (!cursor.isClosed()) {
+                cursor.close();
+            }
+        }
     }
 
 }
@@ -18,11 +18,8 @@
 package org.opensilk.music.ui2.loader;
 
 import android.content.Context;
-import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Handler;
-import android.os.Looper;
 
 import org.apache.commons.io.IOUtils;
 
@@ -43,21 +40,14 @@ import timber.log.Timber;
  */
 public abstract class RxCursorLoader<T> implements RxLoader<T> {
 
-    class UriObserver extends ContentObserver {
-        UriObserver(Handler handler) {
-            super(handler);
-        }
+    class UriObserver implements ContentChangeHub.Listener {
         @Override
-        public void onChange(boolean selfChange) {
+        public void onContentChanged(Uri uri) {
             reset();
             for (ContentChangedListener l : contentChangedListeners) {
                 l.reload();
             }
         }
-        @Override
-        public void onChange(boolean selfChange, Uri uri) {
-            onChange(selfChange);
-        }
     }
 
     protected final List<ContentChangedListener> contentChangedListeners;
@@ -136,7 +126,7 @@ public abstract class RxCursorLoader<T> implements RxLoader<T> {
                         emmitError(new NullPointerException("Context and Uri must not be null"), subscriber);
                         return;
                     }
-                    c = getCursor();
+                    c = getCursor(subscriber);
                     if (c == null) {
                         emmitError(new NullPointerException("Unable to obtain cursor"), subscriber);
                         return;
@@ -166,6 +156,13 @@ public abstract class RxCursorLoader<T> implements RxLoader<T> {
         cachedObservable = null;
     }
 
+    /**
+     * Hook for loaders that can tie the query to the subscription
+     */
+    protected Cursor getCursor(Subscriber<? super T> subscriber) {
+        return getCursor();
+    }
+
     protected Cursor getCursor() {
         return context.getContentResolver().query(
                 uri,
@@ -178,8 +175,8 @@ public abstract class RxCursorLoader<T> implements RxLoader<T> {
 
     protected void registerContentObserver() {
         if (uriObserver == null) {
-            uriObserver = new UriObserver(new Handler(Looper.getMainLooper()));
-            context.getContentResolver().registerContentObserver(uri, true, uriObserver);
+            uriObserver = new UriObserver();
+            ContentChangeHub.get(context).register(uri, uriObserver);
         }
     }
 
@@ -17,24 +17,35 @@
 
 package org.opensilk.music.ui2.loader;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
-import android.provider.BaseColumns;
-import android.provider.MediaStore;
+import android.os.Build;
+import android.os.CancellationSignal;
 
-import com.andrew.apollo.model.LocalAlbum;
-import com.andrew.apollo.model.LocalArtist;
-import com.andrew.apollo.model.LocalSong;
+import com.andrew.apollo.provider.LibrarySearch;
+import com.andrew.apollo.provider.MusicProvider;
 
 import org.opensilk.common.dagger.qualifier.ForApplication;
+import org.opensilk.common.util.VersionUtils;
 import org.opensilk.music.util.CursorHelpers;
 
+import java.util.List;
+
 import javax.inject.Inject;
 
-import timber.log.Timber;
+import rx.Observable;
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
 
 /**
+ * Searches the library index, every row comes back complete so
+ * results are built straight from the cursor.
+ *
  * Created by drew on 11/24/14.
  */
 public class SearchLoader extends RxCursorLoader<Object> {
@@ -42,72 +53,68 @@ public class SearchLoader extends RxCursorLoader<Object> {
     @Inject
     public SearchLoader(@ForApplication Context context) {
         super(context);
+        setUri(MusicProvider.librarySearchUri(null));
     }
 
     @Override
     protected Object makeFromCursor(Cursor c) {
-        // Get the MIME type
-        final String mimetype = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Media.MIME_TYPE));
-        if (mimetype.equals("artist")) {
-            // get id
-            final long id = c.getLong(c.getColumnIndexOrThrow(BaseColumns._ID));
-            // Get the artist name
-            final String name = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
-            // Get the album count
-            final int albumCount = c.getInt(c.getColumnIndexOrThrow("data1"));
-            // Get the song count
-            final int songCount = c.getInt(c.getColumnIndexOrThrow("data2"));
-            // Build artist
-            return new LocalArtist(id, name, songCount, albumCount);
-        } else if (mimetype.equals("album")) {
-            // Get the Id of the album
-            final long id = c.getLong(c.getColumnIndexOrThrow(BaseColumns._ID));
-            // Get the album name
-            final String name = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Albums.ALBUM));
-            // Get the artist nam
-            final String artist = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
-            // generate artwork uri
-            final Uri artworkUri = CursorHelpers.generateArtworkUri(id);
-            Cursor c2 = CursorHelpers.getSingleLocalAlbumCursor(context, id);
-            try {
-                if (c2 != null && c2.moveToFirst()) {
-                    return CursorHelpers.makeLocalAlbumFromCursor(c2);
-                } else {
-                    Timber.w("Unable to query for album %d", id);
-                    // Build the album as best we can
-                    return new LocalAlbum(id, name, artist, 0, null, artworkUri);
-                }
-            } finally {
-                if (c2 != null) c2.close();
-            }
-        } else { // audio
-            // get id
-            final long id = c.getLong(c.getColumnIndexOrThrow(BaseColumns._ID));
-            // Get the track name
-            final String name = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE));
-            // Get the album name
-            final String album = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Albums.ALBUM));
-            // get artist name
-            final String artist = c.getString(c.getColumnIndexOrThrow(MediaStore.Audio.Artists.ARTIST));
-            Cursor c2 = CursorHelpers.getSingleLocalSongCursor(context, id);
-            try {
-                if (c2 != null && c2.moveToFirst()) {
-                    return CursorHelpers.makeLocalSongFromCursor(c2);
-                } else {
-                    Timber.w("Unable to query for song %d", id);
-                    // build the song as best we can
-                    return new LocalSong(id, name, album, artist, null, 0, 0, CursorHelpers.generateDataUri(id), null, mimetype);
-                }
-            } finally {
-                if (c2 != null) c2.close();
-            }
+        final String kind = c.getString(c.getColumnIndexOrThrow(LibrarySearch.KIND));
+        if (LibrarySearch.KIND_ARTIST.equals(kind)) {
+            return CursorHelpers.makeLocalArtistFromCursor(c);
+        } else if (LibrarySearch.KIND_ALBUM.equals(kind)) {
+            return CursorHelpers.makeLocalAlbumFromCursor(c);
+        } else {
+            return CursorHelpers.makeLocalSongFromCursor(c);
         }
     }
 
+    /**
+     * Every filter is a new query so nothing is cached, unsubscribing
+     * cancels the query if it is still running.
+     */
+    @Override
+    public Observable<Object> getObservable() {
+        registerContentObserver();
+        return createObservable()
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        dump(throwable);
+                    }
+                })
+                .onErrorResumeNext(Observable.empty())
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    @Override
+    public Observable<List<Object>> getListObservable() {
+        return getObservable().toList();
+    }
+
+    @Override
+    protected Cursor getCursor(Subscriber<? super Object> subscriber) {
+        if (!VersionUtils.hasApi16()) {
+            return getCursor();
+        }
+        return getCancellableCursor(subscriber);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    Cursor getCancellableCursor(Subscriber<? super Object> subscriber) {
+        final CancellationSignal signal = new CancellationSignal();
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                signal.cancel();
+            }
+        }));
+        // Throws OperationCanceledException, which goes nowhere since we are unsubscribed
+        return context.getContentResolver().query(uri, null, null, null, null, signal);
+    }
+
     public SearchLoader setFilter(String filter) {
-//        final Uri uri = Uri.parse("content://media/external/audio/search/search_suggest_query/" + Uri.encode(filter));
-        final Uri uri = Uri.parse("content://media/external/audio/search/fancy/" + Uri.encode(filter));
-        setUri(uri);
+        setUri(MusicProvider.librarySearchUri(filter));
         reset();
         return this;
     }
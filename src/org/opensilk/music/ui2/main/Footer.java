@@ -18,6 +18,9 @@ package org.opensilk.music.ui2.main;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.andrew.apollo.ProgressSnapshot;
 
 import org.opensilk.common.flow.AppFlow;
 import org.opensilk.common.mortar.PauseAndResumeRegistrar;
@@ -45,7 +48,6 @@ import rx.Observer;
 import rx.Subscription;
 import rx.android.events.OnClickEvent;
 import rx.android.observables.ViewObservable;
-import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
@@ -85,16 +87,13 @@ public class Footer {
         Subscription artworkSubscription;
         Subscription progressSubscription;
 
-        Observable<Boolean> playStateObservable;
         Observable<String[]> metaObservable;
         Observable<ArtInfo> artworkObservable;
-        Observable<Long> currentPositionObservable;
-        Observable<Long> progressObservable;
+        Observable<Integer> progressObservable;
 
-        Observer<Boolean> playStateObserver;
         Observer<String[]> metaObserver;
         Observer<ArtInfo> artworkObserver;
-        Observer<Long> progressObserver;
+        Observer<Integer> progressObserver;
 
         PaletteObserver paletteObserver;
 
@@ -131,7 +130,6 @@ public class Footer {
             if (pauseAndResumeRegistrar.isRunning()) {
                 Timber.v("missed onResume()");
                 subscribeBroadcasts();
-                //playstate will kick off progress subscription
             }
         }
 
@@ -152,7 +150,6 @@ public class Footer {
             Timber.v("onResume()");
             if (getView() == null) return;
             subscribeBroadcasts();
-            //playstate will kick off progress subscription
         }
 
         @Override
@@ -195,7 +192,6 @@ public class Footer {
         }
 
         void setupObserables() {
-            playStateObservable = BroadcastObservables.playStateChanged(appContext);
             metaObservable = observeOnMain(Observable.zip(
                     BroadcastObservables.trackChanged(appContext),
                     BroadcastObservables.artistChanged(appContext),
@@ -208,63 +204,20 @@ public class Footer {
                     }
             ));
             artworkObservable = observeOnMain(BroadcastObservables.artworkChanged(appContext, musicService));
-            currentPositionObservable = Observable.zip(
-                    musicService.getPosition(),
-                    musicService.getDuration(),
-                    new Func2<Long, Long, Long>() {
-                        @Override
-                        public Long call(Long position, Long duration) {
-//                            Timber.v("currentPositionObservable(%d, %d) %s", position, duration, Thread.currentThread().getName());
-                            if (position > 0 && duration > 0) {
-                                return (1000 * position / duration);
-                            } else {
-                                return (long) 1000;
-                            }
-                        }
-                    }
-            );
             progressObservable = observeOnMain(
-                    // construct an Observable than repeats every .5s,
-                    Observable.interval(500, TimeUnit.MILLISECONDS)
-                    // we then fetch the progress as a percentage,
-                    .flatMap(new Func1<Long, Observable<Long>>() {
+                    // the service pushes a snapshot when playback jumps,
+                    // in between we extrapolate every .5s while playing
+                    BroadcastObservables.progressTicks(appContext, 500, false)
+                    .map(new Func1<ProgressSnapshot, Integer>() {
                         @Override
-                        public Observable<Long> call(Long aLong) {
-//                            Timber.v("progressObservable(flatMap) %s", Thread.currentThread().getName());
-                            return currentPositionObservable;
+                        public Integer call(ProgressSnapshot snapshot) {
+                            return snapshot.getProgress(SystemClock.elapsedRealtime());
                         }
                     })
             );
         }
 
         void setupObservers() {
-            playStateObserver = Observers.create(
-                    new Action1<Boolean>() {
-                        @Override
-                        public void call(Boolean playing) {
-                            Timber.v("playStateObserver(result) %s", Thread.currentThread().getName());
-                            if (playing) {
-                                subscribeProgress();
-                            } else {
-                                unsubscribeProgress();
-                                // update the current position
-                                currentPositionObservable
-                                        .observeOn(AndroidSchedulers.mainThread())
-                                        .subscribe(new Action1<Long>() {
-                                            @Override
-                                            public void call(Long progress) {
-                                                setProgress(progress.intValue());
-                                            }
-                                        }, new Action1<Throwable>() {
-                                            @Override
-                                            public void call(Throwable throwable) {
-                                                //ignore
-                                            }
-                                        });
-                            }
-                        }
-                    }
-            );
             metaObserver = Observers.create(
                     new Action1<String[]>() {
                         @Override
@@ -292,11 +245,11 @@ public class Footer {
                     }
             );
             progressObserver = Observers.create(
-                    new Action1<Long>() {
+                    new Action1<Integer>() {
                         @Override
-                        public void call(Long progress) {
+                        public void call(Integer progress) {
 //                    Timber.d("progressObserver(result) %s", Thread.currentThread().getName());
-                            setProgress(progress.intValue());
+                            setProgress(progress);
                         }
                     }, new Action1<Throwable>() {
                         @Override
@@ -323,11 +276,11 @@ public class Footer {
         void subscribeBroadcasts() {
             if (notSubscribed(broadcastSubscriptions)) {
                 broadcastSubscriptions = new CompositeSubscription(
-                        playStateObservable.subscribe(playStateObserver),
                         metaObservable.subscribe(metaObserver)
                 );
             }
             subscribeArtwork();
+            subscribeProgress();
         }
 
         void unsubscribeBroadcasts() {
@@ -25,6 +25,8 @@ import android.os.Parcel;
 import android.os.SystemClock;
 import android.view.View;
 
+import com.andrew.apollo.NowPlayingInfo;
+import com.andrew.apollo.ProgressSnapshot;
 import com.andrew.apollo.menu.DeleteDialog;
 import com.andrew.apollo.provider.MusicProviderUtil;
 import com.andrew.apollo.utils.MusicUtils;
@@ -53,7 +55,6 @@ import org.opensilk.music.ui2.event.MakeToast;
 import org.opensilk.music.ui2.event.OpenDialog;
 
 import java.util.Iterator;
-import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -66,13 +67,11 @@ import flow.Layout;
 import mortar.MortarScope;
 import mortar.ViewPresenter;
 import rx.Observable;
-import rx.Scheduler;
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
-import rx.functions.Func4;
 import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 import timber.log.Timber;
@@ -113,7 +112,7 @@ public class NowPlayingScreen extends Screen {
         final AppPreferences settings;
 
         CompositeSubscription broadcastSubscription;
-        Scheduler.Worker timeWorker;
+        Subscription progressSubscription;
         
         volatile long posOverride = -1;
         long lastSeekEventTime;
@@ -347,65 +346,38 @@ public class NowPlayingScreen extends Screen {
         }
 
         void startMonitorProgress() {
-            if (timeWorker != null) timeWorker.unsubscribe();
-            timeWorker = Schedulers.newThread().createWorker();
-            timeWorker.schedule(new Action0() {
-                @Override
-                public void call() {
-                    long nextUpdate = 500;
-                    try {
-                        final long playPos = musicService.getPosition().toBlocking().first();
-                        final long playDur = musicService.getDuration().toBlocking().first();
-                        if (playPos >= 0 && playDur > 0) {
-                            final int progress = (int) (1000 * playPos / playDur);
-                            if (!fromTouch) {
-                                if (isPlaying) {
-                                    getView().post(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            refreshCurrentTimeText(playPos);
-                                            updateProgress(progress);
-                                            setCurrentTimeVisibile();
-                                        }
-                                    });
+            if (isSubscribed(progressSubscription)) progressSubscription.unsubscribe();
+            // the service pushes a snapshot when playback jumps, in between we
+            // extrapolate every .5s, ticking while paused to blink the counter
+            progressSubscription = observeOnMain(BroadcastObservables.progressTicks(appContext, 500, true))
+                    .subscribe(new Action1<ProgressSnapshot>() {
+                        @Override
+                        public void call(ProgressSnapshot snapshot) {
+                            if (getView() == null || fromTouch) return;
+                            final long now = SystemClock.elapsedRealtime();
+                            final long playPos = snapshot.getPosition(now);
+                            if (playPos >= 0 && snapshot.duration > 0) {
+                                refreshCurrentTimeText(playPos);
+                                updateProgress(snapshot.getProgress(now));
+                                if (snapshot.isPlaying()) {
+                                    setCurrentTimeVisibile();
                                 } else {
                                     // blink the counter
-                                    getView().post(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            refreshCurrentTimeText(playPos);
-                                            updateProgress(progress);
-                                            toggleCurrentTimeVisiblility();
-                                        }
-                                    });
+                                    toggleCurrentTimeVisiblility();
                                 }
+                            } else {
+                                refreshCurrentTimeText(-1);
+                                updateProgress(1000);
                             }
-                        } else {
-                            getView().post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    refreshCurrentTimeText(-1);
-                                    updateProgress(1000);
-                                }
-                            });
                         }
-                        // calculate the number of milliseconds until the next full second,
-                        // so
-                        // the counter can be updated at just the right time
-                        //nextUpdate = 1000 - pos % 1000;
-                    } catch (final Exception ignored) {
-                        nextUpdate = 500;
-                    }
-                    if (timeWorker != null && !timeWorker.isUnsubscribed()) {
-                        timeWorker.schedule(this, nextUpdate, TimeUnit.MILLISECONDS);
-                    }
-                }
-            });
+                    });
         }
 
         void stopMonitorProgress() {
-            timeWorker.unsubscribe();
-            timeWorker = null;
+            if (isSubscribed(progressSubscription)) {
+                progressSubscription.unsubscribe();
+                progressSubscription = null;
+            }
         }
 
         void setupActionBar() {
@@ -414,38 +386,27 @@ public class NowPlayingScreen extends Screen {
                 public Boolean call(Integer integer) {
                     switch (integer) {
                         case R.id.popup_menu_share:
-                            Observable.zip(
-                                    musicService.getTrackName(),
-                                    musicService.getArtistName(),
-                                    musicService.getAlbumArtistName(),
-                                    musicService.getAlbumName(),
-                                    new Func4<String, String, String, String, String[]>() {
-                                        @Override
-                                        public String[] call(String s, String s2, String s3, String s4) {
-                                            return new String[]{s, s2, s3, s4};
-                                        }
-                                    })
+                            musicService.getNowPlaying()
                                     .observeOn(AndroidSchedulers.mainThread())
-                                    .subscribe(new SimpleObserver<String[]>() {
+                                    .subscribe(new SimpleObserver<NowPlayingInfo>() {
                                         @Override
-                                        public void onNext(String[] strings) {
-                                            if (strings.length != 4
-                                                    || strings[0] == null
-                                                    || strings[1] == null
+                                        public void onNext(NowPlayingInfo nowPlaying) {
+                                            if (nowPlaying.trackName == null
+                                                    || nowPlaying.artistName == null
                                                     || getView() == null) {
                                                 notifyError();
                                             } else {
                                                 Intent si = new Intent();
                                                 String msg = getView().getContext().getString(
-                                                        R.string.now_listening_to, strings[0], strings[1]);
+                                                        R.string.now_listening_to, nowPlaying.trackName, nowPlaying.artistName);
                                                 si.setAction(Intent.ACTION_SEND);
                                                 si.setType("text/plain");
                                                 si.putExtra(Intent.EXTRA_TEXT, msg);
-                                                String albumArtist = strings[1];
-                                                if (strings[2] != null) {
-                                                    albumArtist = strings[2];
+                                                String albumArtist = nowPlaying.artistName;
+                                                if (nowPlaying.albumArtistName != null) {
+                                                    albumArtist = nowPlaying.albumArtistName;
                                                 }
-                                                String album = strings[3];
+                                                String album = nowPlaying.albumName;
                                                 if (albumArtist != null && album != null) {
                                                     si.putExtra(Intent.EXTRA_STREAM,
                                                             ArtworkProvider.createArtworkUri(albumArtist, album));
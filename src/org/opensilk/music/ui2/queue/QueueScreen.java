@@ -18,12 +18,10 @@ package org.opensilk.music.ui2.queue;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.os.Parcel;
 
 import com.andrew.apollo.menu.AddToPlaylistDialog;
-import com.andrew.apollo.model.RecentSong;
 import com.andrew.apollo.provider.MusicProvider;
 import com.andrew.apollo.provider.MusicProviderUtil;
 
@@ -43,15 +41,12 @@ import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.event.MakeToast;
 import org.opensilk.music.ui2.event.OpenDialog;
 import org.opensilk.music.ui2.loader.OrderPreservingCursor;
-import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.ui2.loader.NowPlayingCursor;
 import org.opensilk.common.dagger.qualifier.ForApplication;
 import org.opensilk.music.util.Projections;
 import org.opensilk.music.util.Selections;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -108,6 +103,8 @@ public class QueueScreen extends Screen {
         final ActionBarOwner actionBarOwner;
         final OverflowHandlers.RecentSongs overflowHandler;
 
+        NowPlayingCursor queue;
+
         @Inject
         public Presenter(@ForApplication Context context,
                          MusicServiceConnection musicService,
@@ -133,9 +130,21 @@ public class QueueScreen extends Screen {
             setupObservers();
         }
 
+        @Override
+        protected void onExitScope() {
+            super.onExitScope();
+            if (queue != null) {
+                queue.close();
+                queue = null;
+            }
+        }
+
         @Override
         protected void onLoad(Bundle savedInstanceState) {
             super.onLoad(savedInstanceState);
+            if (queue != null && getView() != null) {
+                getView().adapter.swapCursor(queue);
+            }
             if (pauseAndResumeRegistrar.isRunning()) {
                 subscribeBroadcasts();
             }
@@ -173,33 +182,29 @@ public class QueueScreen extends Screen {
         }
 
         //@DebugLog
-        List<RecentSong> getQueue() {
+        NowPlayingCursor getQueue() {
             final long[] queue = musicService.getQueue().toBlocking().first();
-            Cursor c = new NowPlayingCursor(appContext, queue);
-            List<RecentSong> songs = new ArrayList<>(c.getCount());
-            if (c.moveToFirst()) {
-                do {
-                    final RecentSong s = CursorHelpers.makeRecentSongFromRecentCursor(c);
-                    songs.add(s);
-                } while (c.moveToNext());
-            }
-            c.close();
-            return songs;
+            NowPlayingCursor c = new NowPlayingCursor(appContext, queue);
+            // load the first page here instead of on the main thread
+            c.moveToFirst();
+            return c;
         }
 
-        void updateQueue(List<RecentSong> newQueue) {
+        void updateQueue(NowPlayingCursor newQueue) {
             QueueView v = getView();
-            if (v == null) return;
-            v.adapter.setNotifyOnChange(false);
-            v.adapter.clear();
-            v.adapter.addAll(newQueue);
-            v.adapter.setNotifyOnChange(true);
-            v.adapter.notifyDataSetChanged();
+            if (v != null) {
+                v.adapter.swapCursor(newQueue);
+            }
+            // we own the cursor, the adapter only reads it
+            if (queue != null) {
+                queue.close();
+            }
+            queue = newQueue;
         }
 
         Observable<Boolean> playStateObservable;
         Observable<Long> metaChangedObservable;
-        Observable<List<RecentSong>> queueChangedObservable;
+        Observable<NowPlayingCursor> queueChangedObservable;
 
         void setupObservables() {
             playStateObservable = BroadcastObservables.playStateChanged(appContext);
@@ -208,9 +213,9 @@ public class QueueScreen extends Screen {
                     BroadcastObservables.queueChanged(appContext)
                             .debounce(150, TimeUnit.MILLISECONDS)
                             .observeOn(Schedulers.io())
-                            .map(new Func1<Intent, List<RecentSong>>() {
+                            .map(new Func1<Intent, NowPlayingCursor>() {
                                 @Override
-                                public List<RecentSong> call(Intent intent) {
+                                public NowPlayingCursor call(Intent intent) {
                                     return getQueue();
                                 }
                             })
@@ -219,7 +224,7 @@ public class QueueScreen extends Screen {
 
         Observer<Boolean> playStateObserver;
         Observer<Long> metaChangedObserver;
-        Observer<List<RecentSong>> queueChangedObserver;
+        Observer<NowPlayingCursor> queueChangedObserver;
 
         void setupObservers() {
             playStateObserver = Observers.create(new Action1<Boolean>() {
@@ -239,10 +244,10 @@ public class QueueScreen extends Screen {
                 }
             });
             queueChangedObserver = Observers.create(
-                    new Action1<List<RecentSong>>() {
+                    new Action1<NowPlayingCursor>() {
                         @Override
-                        public void call(List<RecentSong> recentSongs) {
-                            updateQueue(recentSongs);
+                        public void call(NowPlayingCursor queue) {
+                            updateQueue(queue);
                         }
                     }, new Action1<Throwable>() {
                         @Override
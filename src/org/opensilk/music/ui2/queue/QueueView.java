@@ -24,7 +24,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.ImageButton;
 import android.widget.PopupMenu;
 import android.widget.TextView;
@@ -37,6 +37,8 @@ import org.opensilk.music.R;
 import org.opensilk.music.api.meta.ArtInfo;
 import org.opensilk.music.artwork.ArtworkType;
 import org.opensilk.music.ui2.common.OverflowAction;
+import org.opensilk.music.ui2.loader.NowPlayingCursor;
+import org.opensilk.music.util.CursorHelpers;
 import org.opensilk.music.widgets.PlayingIndicator;
 
 import javax.inject.Inject;
@@ -97,9 +99,9 @@ public class QueueView extends DragSortListView implements
 
     @Override
     public void remove(final int which) {
-        RecentSong s = adapter.getItem(which);
-        adapter.remove(s);
-        presenter.removeQueueItem(s.recentId);
+        long recentId = adapter.getItemId(which);
+        adapter.remove(which);
+        presenter.removeQueueItem(recentId);
     }
 
     /*
@@ -108,12 +110,7 @@ public class QueueView extends DragSortListView implements
 
     @Override
     public void drop(final int from, final int to) {
-        RecentSong s = adapter.getItem(from);
-//        adapter.setNotifyOnChange(false);
-        adapter.remove(s);
-        adapter.insert(s, to);
-//        adapter.setNotifyOnChange(true);
-//        adapter.notifyDataSetChanged();
+        adapter.move(from, to);
         presenter.moveQueueItem(from,to);
     }
 
@@ -140,18 +137,73 @@ public class QueueView extends DragSortListView implements
         adapter.notifyDataSetChanged();
     }
 
-    static class Adapter extends ArrayAdapter<RecentSong> {
+    /**
+     * Reads rows straight from the windowed now playing cursor so only
+     * the visible part of the queue is ever materialized
+     */
+    static class Adapter extends BaseAdapter {
 
+        final Context context;
         final QueueScreen.Presenter presenter;
 
+        NowPlayingCursor cursor;
+        /** Cursor position of each row, drags and swipes edit this until the new queue arrives */
+        int[] positions = new int[0];
+        int count;
+
         long currentSong;
         boolean isPlaying;
 
         Adapter(Context context, QueueScreen.Presenter presenter) {
-            super(context, -1);
+            this.context = context;
             this.presenter = presenter;
         }
 
+        Context getContext() {
+            return context;
+        }
+
+        void swapCursor(NowPlayingCursor newCursor) {
+            cursor = newCursor;
+            count = newCursor != null ? newCursor.getCount() : 0;
+            if (positions.length < count) {
+                positions = new int[count];
+            }
+            for (int ii=0; ii<count; ii++) {
+                positions[ii] = ii;
+            }
+            notifyDataSetChanged();
+        }
+
+        void remove(int position) {
+            System.arraycopy(positions, position + 1, positions, position, count - position - 1);
+            count--;
+            notifyDataSetChanged();
+        }
+
+        void move(int from, int to) {
+            if (from == to) return;
+            final int moved = positions[from];
+            if (from < to) {
+                System.arraycopy(positions, from + 1, positions, from, to - from);
+            } else {
+                System.arraycopy(positions, to, positions, to + 1, from - to);
+            }
+            positions[to] = moved;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public RecentSong getItem(int position) {
+            cursor.moveToPosition(positions[position]);
+            return CursorHelpers.makeRecentSongFromRecentCursor(cursor);
+        }
+
         @Override
         public View getView(final int position, View convertView, ViewGroup parent) {
             View v = convertView;
@@ -218,7 +270,7 @@ public class QueueView extends DragSortListView implements
 
         @Override
         public long getItemId(int position) {
-            return getItem(position).identity.hashCode();
+            return cursor.getId(positions[position]);
         }
     }
 
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2015 OpenSilk Productions LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.opensilk.music.ui2.search;
+
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import org.opensilk.music.api.model.spi.Bundleable;
+import org.opensilk.music.ui2.library.LibraryConnection;
+import org.opensilk.music.ui2.loader.SearchLoader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Func1;
+import timber.log.Timber;
+
+/**
+ * Runs a query against the local library and every searchable plugin at once.
+ * Each source comes back as a {@link Section} as soon as it is ready, plugins
+ * that don't answer within {@link #PLUGIN_TIMEOUT_MS} are dropped and
+ * unsubscribing abandons whatever is still outstanding.
+ *
+ * Created by drew on 1/13/15.
+ */
+public class FederatedSearch {
+
+    public static final long PLUGIN_TIMEOUT_MS = 5000;
+    /** Plugin results are reused for this long, local search is cheap and always fresh */
+    static final long CACHE_TTL_MS = 2 * 60 * 1000;
+    static final int CACHE_SIZE = 32;
+    static final String LOCAL_SOURCE = "local";
+
+    public static class Section {
+        /** Sections are shown ordered by this, local is 0, plugins follow in the order given */
+        public final int order;
+        /** null for the local library */
+        public final PluginHolder holder;
+        public final List<Object> items;
+
+        Section(int order, PluginHolder holder, List<Object> items) {
+            this.order = order;
+            this.holder = holder;
+            this.items = items;
+        }
+    }
+
+    static class CacheEntry {
+        final List<Object> items;
+        final long time;
+
+        CacheEntry(List<Object> items, long time) {
+            this.items = items;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Last few latencies of a source
+     */
+    static class LatencyStats {
+        static final int SAMPLES = 64;
+        final long[] samples = new long[SAMPLES];
+        int count;
+        int next;
+
+        synchronized void add(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % SAMPLES;
+            if (count < SAMPLES) count++;
+        }
+
+        /**
+         * @return latency in ms pct percent of recent searches came in under, -1 if none
+         */
+        synchronized long percentile(int pct) {
+            if (count == 0) {
+                return -1;
+            }
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            final int idx = (int) Math.ceil(pct / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, idx))];
+        }
+    }
+
+    final SearchLoader searchLoader;
+    final LibraryConnection libraryConnection;
+    final LruCache<String, CacheEntry> cache = new LruCache<>(CACHE_SIZE);
+    final Map<String, LatencyStats> latencies = new LinkedHashMap<>();
+
+    @Inject
+    public FederatedSearch(SearchLoader searchLoader, LibraryConnection libraryConnection) {
+        this.searchLoader = searchLoader;
+        this.libraryConnection = libraryConnection;
+    }
+
+    /**
+     * @return a Section per source that found something, in the order they finish, observed on main.
+     */
+    public Observable<Section> search(final String query, List<PluginHolder> plugins) {
+        final List<Observable<Section>> sources = new ArrayList<>(plugins.size() + 1);
+        sources.add(searchLocal(query));
+        for (int ii=0; ii<plugins.size(); ii++) {
+            sources.add(searchPlugin(query, plugins.get(ii), ii + 1));
+        }
+        return Observable.merge(sources)
+                .filter(new Func1<Section, Boolean>() {
+                    @Override
+                    public Boolean call(Section section) {
+                        return !section.items.isEmpty();
+                    }
+                })
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    Observable<Section> searchLocal(final String query) {
+        final long start = SystemClock.elapsedRealtime();
+        return searchLoader.setFilter(query).getListObservable()
+                .map(new Func1<List<Object>, Section>() {
+                    @Override
+                    public Section call(List<Object> items) {
+                        getStats(LOCAL_SOURCE).add(SystemClock.elapsedRealtime() - start);
+                        return new Section(0, null, rank(items, query));
+                    }
+                });
+    }
+
+    Observable<Section> searchPlugin(final String query, final PluginHolder holder, final int order) {
+        final String source = holder.pluginInfo.componentName.getPackageName();
+        final String key = source + '/' + holder.libraryInfo.libraryId + '/' + query;
+        final CacheEntry entry = cache.get(key);
+        if (entry != null && SystemClock.elapsedRealtime() - entry.time < CACHE_TTL_MS) {
+            return Observable.just(new Section(order, holder, entry.items));
+        }
+        final long start = SystemClock.elapsedRealtime();
+        return libraryConnection.search(holder.pluginInfo, holder.libraryInfo, query)
+                .timeout(PLUGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .map(new Func1<LibraryConnection.Result, Section>() {
+                    @Override
+                    public Section call(LibraryConnection.Result result) {
+                        final long now = SystemClock.elapsedRealtime();
+                        getStats(source).add(now - start);
+                        final List<Object> items = new ArrayList<>(result.items.size());
+                        for (Bundleable b : result.items) {
+                            items.add(new BundleableHolder(holder, b));
+                        }
+                        final List<Object> ranked = Collections.unmodifiableList(rank(items, query));
+                        cache.put(key, new CacheEntry(ranked, now));
+                        return new Section(order, holder, ranked);
+                    }
+                })
+                .onErrorResumeNext(new Func1<Throwable, Observable<Section>>() {
+                    @Override
+                    public Observable<Section> call(Throwable throwable) {
+                        // timeouts count as the full timeout so slow plugins show up in the stats
+                        getStats(source).add(SystemClock.elapsedRealtime() - start);
+                        Timber.w(throwable, "Search failed for %s", source);
+                        return Observable.empty();
+                    }
+                });
+    }
+
+    LatencyStats getStats(String source) {
+        synchronized (latencies) {
+            LatencyStats stats = latencies.get(source);
+            if (stats == null) {
+                stats = new LatencyStats();
+                latencies.put(source, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * @return latency in ms under which pct percent of recent searches of source finished, -1 if unknown.
+     *         source is the plugin package name or "local"
+     */
+    public long getLatencyPercentile(String source, int pct) {
+        synchronized (latencies) {
+            LatencyStats stats = latencies.get(source);
+            return stats != null ? stats.percentile(pct) : -1;
+        }
+    }
+
+    public void dumpStats() {
+        synchronized (latencies) {
+            for (Map.Entry<String, LatencyStats> e : latencies.entrySet()) {
+                LatencyStats s = e.getValue();
+                Timber.d("Search latency %s: p50=%dms p90=%dms p99=%dms (%d samples)", e.getKey(),
+                        s.percentile(50), s.percentile(90), s.percentile(99), s.count);
+            }
+        }
+    }
+
+    /**
+     * Stable sorts items best match first: whole name, name prefix, word prefix, anywhere, not at all.
+     */
+    static List<Object> rank(List<Object> items, String query) {
+        final String q = query != null ? query.trim().toLowerCase(Locale.getDefault()) : "";
+        if (q.isEmpty() || items.size() < 2) {
+            return items;
+        }
+        final List<Object> sorted = new ArrayList<>(items);
+        final Map<Object, Integer> scores = new IdentityHashMap<>(items.size());
+        for (Object item : sorted) {
+            scores.put(item, score(nameOf(item), q));
+        }
+        Collections.sort(sorted, new Comparator<Object>() {
+            @Override
+            public int compare(Object lhs, Object rhs) {
+                return scores.get(lhs) - scores.get(rhs);
+            }
+        });
+        return sorted;
+    }
+
+    static int score(String name, String q) {
+        if (name == null) {
+            return 4;
+        }
+        final String n = name.toLowerCase(Locale.getDefault());
+        if (n.equals(q)) {
+            return 0;
+        } else if (n.startsWith(q)) {
+            return 1;
+        } else if (n.contains(" " + q)) {
+            return 2;
+        } else if (n.contains(q)) {
+            return 3;
+        }
+        return 4;
+    }
+
+    static String nameOf(Object item) {
+        if (item instanceof BundleableHolder) {
+            item = ((BundleableHolder) item).bundleable;
+        }
+        return item instanceof Bundleable ? ((Bundleable) item).getName() : null;
+    }
+
+}
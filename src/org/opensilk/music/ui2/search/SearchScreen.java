@@ -20,6 +20,7 @@ package org.opensilk.music.ui2.search;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.text.TextUtils;
+import android.util.SparseIntArray;
 
 import org.opensilk.common.flow.Screen;
 import org.opensilk.common.mortar.WithModule;
@@ -29,12 +30,10 @@ import org.opensilk.music.R;
 import org.opensilk.music.api.PluginConfig;
 import org.opensilk.music.api.meta.LibraryInfo;
 import org.opensilk.music.api.meta.PluginInfo;
-import org.opensilk.music.api.model.spi.Bundleable;
 import org.opensilk.music.ui2.SearchActivity;
 import org.opensilk.music.ui2.core.android.ActionBarOwner;
 import org.opensilk.music.ui2.library.LibraryConnection;
 import org.opensilk.music.ui2.loader.PluginLoader;
-import org.opensilk.music.ui2.loader.SearchLoader;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -51,7 +50,6 @@ import mortar.MortarScope;
 import mortar.ViewPresenter;
 import rx.Scheduler;
 import rx.Subscription;
-import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Action0;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
@@ -84,7 +82,9 @@ public class SearchScreen extends Screen {
         final LibraryConnection libraryConnection;
         final PluginLoader pluginLoader;
         final AppPreferences settings;
-        final SearchLoader searchLoader;
+        final FederatedSearch federatedSearch;
+        /** Rows of each section in the adapter, by Section.order */
+        final SparseIntArray sectionSizes = new SparseIntArray();
 
         Set<PluginHolder> searchablePlugins;
         CompositeSubscription subscriptions;
@@ -95,12 +95,12 @@ public class SearchScreen extends Screen {
                          LibraryConnection libraryConnection,
                          PluginLoader pluginLoader,
                          AppPreferences settings,
-                         SearchLoader searchLoader) {
+                         FederatedSearch federatedSearch) {
             this.actionBarOwner = actionBarOwner;
             this.libraryConnection = libraryConnection;
             this.pluginLoader = pluginLoader;
             this.settings = settings;
-            this.searchLoader = searchLoader;
+            this.federatedSearch = federatedSearch;
 
             searchablePlugins = Collections.synchronizedSet(new LinkedHashSet<PluginHolder>());
         }
@@ -127,6 +127,16 @@ public class SearchScreen extends Screen {
             setupActionBar();
         }
 
+        @Override
+        protected void onExitScope() {
+            super.onExitScope();
+            if (isSubscribed(subscriptions)) {
+                subscriptions.unsubscribe();
+                subscriptions = null;
+            }
+            federatedSearch.dumpStats();
+        }
+
         @Override
         protected void onSave(Bundle outState) {
             super.onSave(outState);
@@ -160,17 +170,20 @@ public class SearchScreen extends Screen {
                 subscriptions = null;
             }
             subscriptions = new CompositeSubscription();
+            sectionSizes.clear();
 
+            final List<PluginHolder> plugins;
+            synchronized (searchablePlugins) {
+                plugins = new ArrayList<>(searchablePlugins);
+            }
             subscriptions.add(
-                    searchLoader.setFilter(query).getListObservable().subscribe(
-                            new SimpleObserver<List<Object>>() {
+                    federatedSearch.search(query, plugins).subscribe(
+                            new SimpleObserver<FederatedSearch.Section>() {
                                 @Override
-                                public void onNext(List<Object> objects) {
+                                public void onNext(FederatedSearch.Section section) {
                                     if (getView() != null) {
-                                        getView().adapter.addItem(new SearchAdapter.ListHeader(
-                                                getView().getContext().getString(R.string.my_library)
-                                        ));
-                                        getView().adapter.addAll(objects);
+                                        addSection(section);
+                                        getView().setListShown(true, true);
                                     }
                                 }
 
@@ -183,40 +196,23 @@ public class SearchScreen extends Screen {
                             }
                     )
             );
+        }
 
-            for (final PluginHolder holder : searchablePlugins) {
-                Subscription s = libraryConnection.search(holder.pluginInfo, holder.libraryInfo, query)
-                        .map(new Func1<LibraryConnection.Result, List<BundleableHolder>>() {
-                            @Override
-                            public List<BundleableHolder> call(LibraryConnection.Result result) {
-                                List<BundleableHolder> list = new ArrayList<>(result.items.size());
-                                for (Bundleable b : result.items) {
-                                    list.add(new BundleableHolder(holder, b));
-                                }
-                                return list;
-                            }
-                        })
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(new SimpleObserver<List<BundleableHolder>>() {
-                            @Override
-                            public void onNext(List<BundleableHolder> list) {
-                                if (getView() != null) {
-                                    getView().adapter.addItem(new SearchAdapter.ListHeader(
-                                            holder.pluginInfo.title.toString()
-                                    ));
-                                    getView().adapter.addAll(list);
-                                }
-                            }
-
-                            @Override
-                            public void onCompleted() {
-                                if (getView() != null) {
-                                    getView().setListShown(true, true);
-                                }
-                            }
-                        });
-                subscriptions.add(s);
+        /**
+         * Inserts the section after those ordered before it, sections arrive as their source finishes.
+         */
+        void addSection(FederatedSearch.Section section) {
+            int pos = 0;
+            for (int ii=0; ii<sectionSizes.size() && sectionSizes.keyAt(ii) < section.order; ii++) {
+                pos += sectionSizes.valueAt(ii);
             }
+            final List<Object> rows = new ArrayList<>(section.items.size() + 1);
+            rows.add(new SearchAdapter.ListHeader(section.holder != null
+                    ? section.holder.pluginInfo.title.toString()
+                    : getView().getContext().getString(R.string.my_library)));
+            rows.addAll(section.items);
+            getView().adapter.addAll(pos, rows);
+            sectionSizes.put(section.order, rows.size());
         }
 
         Subscription searchableSubscription;
@@ -35,6 +35,9 @@ public class Uris {
     }
     public static final Uri EXTERNAL_MEDIASTORE_PLAYLISTS = MediaStore.Audio.Playlists.EXTERNAL_CONTENT_URI;
     public static final Uri EXTERNAL_MEDIASTORE_GENRES = MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI;
+    /** Members of every genre with their genre_id, one row per membership */
+    public static final Uri EXTERNAL_MEDIASTORE_GENRES_ALL_MEMBERS = EXTERNAL_MEDIASTORE_GENRES.buildUpon()
+            .appendPath("all").appendPath("members").build();
     public static Uri GENRE(long genreId) {
         return MediaStore.Audio.Genres.Members.getContentUri("external", genreId);
     }